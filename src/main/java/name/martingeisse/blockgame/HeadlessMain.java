@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2010 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame;
+
+import name.martingeisse.blockgame.game.Game;
+import name.martingeisse.blockgame.game.HeadlessRunner;
+import name.martingeisse.blockgame.game.InputRecording;
+import name.martingeisse.blockgame.game.ReplayRunner;
+import name.martingeisse.blockgame.system.HeadlessRenderBackend;
+import name.martingeisse.blockgame.system.RenderCommandBuffer;
+import name.martingeisse.blockgame.system.Texture;
+import name.martingeisse.blockgame.world.Camera;
+import name.martingeisse.blockgame.world.Plane;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+/**
+ * Runs the game simulation without a window and prints tick timings. Takes the number of ticks to run (default
+ * 10000) and optionally the tick rate (default: as fast as possible) as command-line arguments.
+ *
+ * With "replay" as the first argument, replays the recording files named by the other arguments instead (see
+ * {@link Main}) at maximum speed, and exits with status 1 if any of them does not end in its recorded state.
+ *
+ * With "render" as the first argument, records and replays frames into a {@link HeadlessRenderBackend} for a plane
+ * of the size given as the second argument (default 256), and prints the time per frame as well as the number of
+ * commands, quads and texture binds before and after sorting the quads by texture.
+ */
+public class HeadlessMain {
+
+	/**
+	 * The main method.
+	 * 
+	 * @param args command-line arguments
+	 * @throws Exception on errors
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("replay")) {
+			boolean allMatching = true;
+			for (int i = 1; i < args.length; i++) {
+				allMatching &= replay(args[i]);
+			}
+			System.exit(allMatching ? 0 : 1);
+		}
+		if (args.length > 0 && args[0].equals("render")) {
+			render(args.length > 1 ? Integer.parseInt(args[1]) : 256);
+			return;
+		}
+
+		long ticks = (args.length > 0 ? Long.parseLong(args[0]) : 10000);
+		double tickRate = (args.length > 1 ? Double.parseDouble(args[1]) : HeadlessRunner.UNTHROTTLED);
+
+		Plane plane = Main.createPlane();
+		Camera camera = new Camera();
+		camera.setZoom(2.0f);
+		HeadlessRunner runner = new HeadlessRunner(new Game(plane, camera));
+		runner.setTickRate(tickRate);
+		long ticksRun = runner.run(ticks);
+		System.out.println("ticks: " + ticksRun + ", average tick time: " + runner.getAverageTickNanos() / 1000 + " us, maximum tick time: " + runner.getMaxTickNanos() / 1000 + " us");
+	}
+
+	/**
+	 * Replays a recording and prints the tick rate, allocation rate and whether the final state matches.
+	 *
+	 * @param filename the name of the recording file
+	 * @return true if the final state matches the recording, false if not
+	 * @throws Exception on errors
+	 */
+	private static boolean replay(String filename) throws Exception {
+		InputRecording recording;
+		try (InputStream inputStream = new FileInputStream(filename)) {
+			recording = InputRecording.readFrom(inputStream);
+		}
+		ReplayRunner runner = new ReplayRunner(recording);
+		runner.run();
+		boolean matching = runner.isFinalStateMatching();
+		System.out.println(filename + ": ticks: " + recording.getTickCount() + ", ticks per second: " + Math.round(runner.getTicksPerSecond())
+			+ ", allocated bytes per tick: " + Math.round(runner.getAllocatedBytesPerTick()) + ", final state: "
+			+ (recording.getFinalState() == null ? "not recorded" : matching ? "matching" : "DIFFERENT"));
+		return matching || recording.getFinalState() == null;
+	}
+
+	/**
+	 * Records and replays frames of a plane of the specified size with a floor and a wall pattern, using placeholder
+	 * textures, and prints the frame time and command statistics.
+	 *
+	 * @param size the width and height of the plane
+	 */
+	private static void render(int size) {
+		Plane plane = new Plane(size, size);
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				plane.setBlock(x, y, (x % 7 == 0 || y % 5 == 0) ? 4 : 1);
+			}
+		}
+		Camera camera = new Camera();
+		camera.setPlane(plane);
+		camera.setZoom(2.0f);
+		camera.setScreenX(size / 2.0f);
+		camera.setScreenY(size / 2.0f);
+		final Texture[] blockTextures = new Texture[256];
+		for (int i = 0; i < blockTextures.length; i++) {
+			blockTextures[i] = Texture.createPlaceholder(16, 16);
+		}
+		camera.setTextureProvider(blockValue -> blockTextures[blockValue & 0xff]);
+		camera.setPlayerTexture(Texture.createPlaceholder(16, 16));
+
+		RenderCommandBuffer commandBuffer = new RenderCommandBuffer();
+		HeadlessRenderBackend backend = new HeadlessRenderBackend();
+		commandBuffer.reset();
+		camera.record(commandBuffer, 0.0);
+		commandBuffer.replay(backend);
+		System.out.println("unsorted: " + commandBuffer.getCommandCount() + " commands, " + backend.getQuadCount() + " quads, " + backend.getTextureBindCount() + " texture binds");
+		commandBuffer.sortQuadsByTexture();
+		commandBuffer.replay(backend);
+		System.out.println("sorted: " + commandBuffer.getCommandCount() + " commands, " + backend.getQuadCount() + " quads, " + backend.getTextureBindCount() + " texture binds");
+
+		int frames = 10000;
+		long start = System.nanoTime();
+		for (int i = 0; i < frames; i++) {
+			commandBuffer.reset();
+			camera.record(commandBuffer, 0.0);
+			commandBuffer.sortQuadsByTexture();
+			commandBuffer.replay(backend);
+		}
+		System.out.println("average frame time: " + (System.nanoTime() - start) / frames / 1000.0 + " us");
+	}
+
+}
@@ -17,6 +17,10 @@ import name.martingeisse.blockgame.system.Launcher;
 import name.martingeisse.blockgame.world.Plane;
 import name.martingeisse.blockgame.world.Player;
 import org.lwjgl.input.Mouse;
+import org.lwjgl.opengl.Display;
+
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 
 /**
  * The main class.
@@ -24,7 +28,8 @@ import org.lwjgl.input.Mouse;
 public class Main {
 
 	/**
-	 * The main method.
+	 * The main method. If the system property blockgame.record is set, the session is recorded to the file it
+	 * names, for replaying with {@link HeadlessMain}.
 	 * 
 	 * @param args command-line arguments
 	 * @throws Exception on errors
@@ -34,42 +39,62 @@ public class Main {
 //		ScriptEngineManager scriptEngineManager = new ScriptEngineManager();
 //		ScriptEngine scriptEngine = scriptEngineManager.getEngineByName("nashorn");
 
-		Plane plane = new Plane(50, 50);
-		for (int x = 0; x < 50; x++) {
-			for (int y = 0; y < 50; y++) {
-				if (x == 0 || x == 49 || y == 0 || y == 49) {
-					plane.setBlock(x, y, 4);
-				} else if ((x == 24 /*|| x == 25*/) && (y == 24 || y == 25)) {
-					plane.setBlock(x, y, 5);
-				} else {
-					plane.setBlock(x, y, 1);
-				}
-			}
-		}
-
-		Player player = new Player();
-		player.setPositionX(2.0);
-		player.setPositionY(2.0);
-		plane.setPlayer(player);
+		Plane plane = createPlane();
 
 		Camera camera = new Camera();
 		camera.setZoom(2.0f);
 		Game game = new Game(plane, camera);
+		String recordingFile = System.getProperty("blockgame.record");
+		if (recordingFile != null) {
+			game.startRecording();
+		}
 
 		Launcher launcher = new Launcher(args);
 		launcher.startup();
 		Mouse.setGrabbed(true);
+		Display.setVSyncEnabled(true);
 		Resources.setResourceManager(new DefaultResourceManager(new DefaultResouceLoader()));
 		FrameLoop frameLoop = new FrameLoop(new FrameHandler(game));
 		try {
-			frameLoop.executeLoop(20);
+			frameLoop.executeThreadedLoop(null);
 		} catch (Throwable e) {
 			e.printStackTrace();
 		} finally {
 			launcher.shutdown();
+			if (recordingFile != null) {
+				try (OutputStream outputStream = new FileOutputStream(recordingFile)) {
+					game.stopRecording().writeTo(outputStream);
+				}
+			}
 			System.exit(0);
 		}
 
 	}
 
+	/**
+	 * Creates the plane for the game, with the controlled player.
+	 *
+	 * @return the plane
+	 */
+	static Plane createPlane() {
+		Plane plane = new Plane(50, 50);
+		for (int x = 0; x < 50; x++) {
+			for (int y = 0; y < 50; y++) {
+				if (x == 0 || x == 49 || y == 0 || y == 49) {
+					plane.setBlock(x, y, 4);
+				} else if ((x == 24 /*|| x == 25*/) && (y == 24 || y == 25)) {
+					plane.setBlock(x, y, 5);
+				} else {
+					plane.setBlock(x, y, 1);
+				}
+			}
+		}
+
+		Player player = new Player();
+		player.setPositionX(2.0);
+		player.setPositionY(2.0);
+		plane.setPlayer(player);
+		return plane;
+	}
+
 }
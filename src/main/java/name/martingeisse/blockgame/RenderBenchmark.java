@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2010 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame;
+
+import name.martingeisse.blockgame.game.Game;
+import name.martingeisse.blockgame.resource.DefaultResouceLoader;
+import name.martingeisse.blockgame.resource.DefaultResourceManager;
+import name.martingeisse.blockgame.resource.Resources;
+import name.martingeisse.blockgame.system.Launcher;
+import name.martingeisse.blockgame.world.Camera;
+import name.martingeisse.blockgame.world.Plane;
+import name.martingeisse.blockgame.world.render.SectionRenderer;
+import org.lwjgl.opengl.Display;
+import org.lwjgl.opengl.GL11;
+
+/**
+ * Measures the time to draw a frame for planes of increasing size, with the camera showing the same amount of
+ * blocks each time. Since only the visible blocks are drawn, the frame time should not grow with the plane size.
+ * Draws with the section renderer (if supported) and in immediate mode, and prints the average frame time of each.
+ * Takes the plane sizes to measure as command-line arguments (default: 64, 256, 1024, 4096).
+ */
+public class RenderBenchmark {
+
+	/**
+	 * The number of frames drawn before measuring, to build the section meshes and warm up the JIT.
+	 */
+	private static final int WARMUP_FRAMES = 200;
+
+	/**
+	 * The number of frames measured.
+	 */
+	private static final int MEASURED_FRAMES = 500;
+
+	/**
+	 * The main method.
+	 *
+	 * @param args command-line arguments
+	 * @throws Exception on errors
+	 */
+	public static void main(String[] args) throws Exception {
+		int[] sizes = {64, 256, 1024, 4096};
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				sizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+
+		Launcher launcher = new Launcher(new String[0]);
+		launcher.startup();
+		Display.setVSyncEnabled(false);
+		Resources.setResourceManager(new DefaultResourceManager(new DefaultResouceLoader()));
+		try {
+			for (int size : sizes) {
+				Plane plane = createPlane(size);
+				Camera camera = new Camera();
+				camera.setZoom(2.0f);
+				camera.setScreenX(size / 2.0f);
+				camera.setScreenY(size / 2.0f);
+				Game game = new Game(plane, camera);
+
+				// the first frame sets up the section renderer, if supported
+				game.draw(0.0);
+				SectionRenderer sectionRenderer = camera.getSectionRenderer();
+				if (sectionRenderer != null) {
+					System.out.println("size " + size + ", section renderer: " + measure(game) / 1000 + " us/frame");
+					sectionRenderer.dispose();
+					camera.setSectionRenderer(null);
+				}
+				System.out.println("size " + size + ", immediate mode: " + measure(game) / 1000 + " us/frame");
+			}
+		} finally {
+			launcher.shutdown();
+		}
+	}
+
+	/**
+	 * Creates a plane of the specified size with a floor and a wall pattern.
+	 */
+	private static Plane createPlane(int size) {
+		Plane plane = new Plane(size, size);
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				plane.setBlock(x, y, (x % 7 == 0 || y % 5 == 0) ? 4 : 1);
+			}
+		}
+		return plane;
+	}
+
+	/**
+	 * Draws frames and returns the average time per frame in nanoseconds.
+	 */
+	private static long measure(Game game) {
+		for (int i = 0; i < WARMUP_FRAMES; i++) {
+			game.draw(0.0);
+			Display.update();
+		}
+		GL11.glFinish();
+		long totalNanos = 0;
+		for (int i = 0; i < MEASURED_FRAMES; i++) {
+			long start = System.nanoTime();
+			game.draw(0.0);
+			GL11.glFinish();
+			totalNanos += System.nanoTime() - start;
+			Display.update();
+		}
+		return totalNanos / MEASURED_FRAMES;
+	}
+
+}
@@ -0,0 +1,77 @@
+package name.martingeisse.blockgame.game;
+
+import name.martingeisse.blockgame.resource.Resources;
+import name.martingeisse.blockgame.world.Plane;
+import name.martingeisse.blockgame.world.Player;
+import name.martingeisse.blockgame.world.PlayerRemovalListener;
+import name.martingeisse.blockgame.world.event.CollisionEvents;
+import name.martingeisse.blockgame.world.event.CollisionHandler;
+import name.martingeisse.blockgame.world.event.GameplayEventBus;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Plays a sound when a player collides with a block. Each player plays a collision sound only once every few ticks
+ * at most. Does nothing while no resource manager is set, e.g. when running headless.
+ *
+ * The cooldown of a player is forgotten when the player is removed from the plane.
+ */
+public final class CollisionSoundHandler implements CollisionHandler, PlayerRemovalListener {
+
+	private static final String[] collisionSoundNames = {
+		null,
+		null,
+		null,
+		null,
+		"wood_and_metal_vol.2/metal6.wav",
+		"wood_and_metal_vol.2/wood3.wav",
+	};
+
+	private static final int COOLDOWN_TICKS = 10;
+
+	private final Plane plane;
+	private final Map<Player, long[]> nextSoundTicks = new IdentityHashMap<>();
+
+	/**
+	 * Constructor. Registers this handler as a removal listener with the plane's players.
+	 *
+	 * @param plane the plane whose blocks determine the sounds
+	 */
+	public CollisionSoundHandler(Plane plane) {
+		this.plane = plane;
+		plane.getPlayerSet().addRemovalListener(this);
+	}
+
+	// override
+	@Override
+	public void handleCollisions(CollisionEvents events) {
+		if (Resources.getResourceManager() == null) {
+			return;
+		}
+		GameplayEventBus bus = plane.getEventBus();
+		long tick = bus.getTick();
+		for (int i = 0; i < events.getCount(); i++) {
+			Player player = events.getPlayer(i);
+			long[] nextSoundTick = nextSoundTicks.get(player);
+			if (nextSoundTick == null) {
+				nextSoundTick = new long[1];
+				nextSoundTicks.put(player, nextSoundTick);
+			} else if (tick < nextSoundTick[0]) {
+				continue;
+			}
+			int blockType = plane.getBlock(events.getBlockX(i), events.getBlockY(i));
+			if (blockType >= 0 && blockType < collisionSoundNames.length && collisionSoundNames[blockType] != null) {
+				Resources.getSound(collisionSoundNames[blockType]).playAsSoundEffect(1.0f, 1.0f, false);
+				nextSoundTick[0] = tick + COOLDOWN_TICKS;
+			}
+		}
+	}
+
+	// override
+	@Override
+	public void onPlayerRemoved(Player player) {
+		nextSoundTicks.remove(player);
+	}
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2011 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.game;
+
+/**
+ * Decouples the simulation rate from the frame rate. Real time accumulates from frame to frame; each frame runs
+ * as many fixed-length simulation ticks as fit into the accumulated time, and the remainder is used to
+ * interpolate between the last two simulation states when rendering.
+ *
+ * If ticks take longer than real time (e.g. after a stall), the accumulator would grow without bound and each frame
+ * would have to run even more ticks to catch up. To avoid this, at most maxTicksPerFrame ticks are run per frame and
+ * any time beyond that is dropped, i.e. the simulation slows down instead of locking up.
+ */
+public final class FixedTimestep {
+
+	/**
+	 * the tickNanos
+	 */
+	private final long tickNanos;
+
+	/**
+	 * the maxTicksPerFrame
+	 */
+	private final int maxTicksPerFrame;
+
+	/**
+	 * the lastTime
+	 */
+	private long lastTime;
+
+	/**
+	 * the accumulatedNanos
+	 */
+	private long accumulatedNanos;
+
+	/**
+	 * the firstTickEndTime
+	 */
+	private long firstTickEndTime;
+
+	/**
+	 * the droppedNanos
+	 */
+	private long droppedNanos;
+
+	/**
+	 * Constructor.
+	 * @param tickInterval the length of a simulation tick in milliseconds
+	 * @param maxTicksPerFrame the maximum number of ticks to run in a single frame
+	 */
+	public FixedTimestep(int tickInterval, int maxTicksPerFrame) {
+		if (tickInterval < 1) {
+			throw new IllegalArgumentException("invalid tick interval: " + tickInterval);
+		}
+		if (maxTicksPerFrame < 1) {
+			throw new IllegalArgumentException("invalid maximum ticks per frame: " + maxTicksPerFrame);
+		}
+		this.tickNanos = tickInterval * 1000000L;
+		this.maxTicksPerFrame = maxTicksPerFrame;
+		this.lastTime = System.nanoTime();
+	}
+
+	/**
+	 * Getter method for the tick length in nanoseconds.
+	 * @return the tick length
+	 */
+	public long getTickNanos() {
+		return tickNanos;
+	}
+
+	/**
+	 * Adds the real time elapsed since the last call to the accumulator and takes as many ticks out of it as
+	 * possible, up to the per-frame maximum.
+	 *
+	 * @return the number of ticks to run now
+	 */
+	public int advance() {
+		long now = System.nanoTime();
+		accumulatedNanos += now - lastTime;
+		lastTime = now;
+		long maxNanos = maxTicksPerFrame * tickNanos;
+		if (accumulatedNanos > maxNanos) {
+			droppedNanos += accumulatedNanos - maxNanos;
+			accumulatedNanos = maxNanos;
+		}
+		int ticks = (int)(accumulatedNanos / tickNanos);
+		accumulatedNanos -= ticks * tickNanos;
+		firstTickEndTime = now - accumulatedNanos - (ticks - 1) * tickNanos;
+		return ticks;
+	}
+
+	/**
+	 * Returns the point in real time at which a tick returned by the last call to {@link #advance()} ends, i.e. the
+	 * time up to which input belongs to that tick.
+	 *
+	 * @param index the index of the tick among those returned by {@link #advance()}, starting at 0
+	 * @return the end time of the tick, as returned by {@link System#nanoTime()}
+	 */
+	public long getTickEndTime(int index) {
+		return firstTickEndTime + index * tickNanos;
+	}
+
+	/**
+	 * Returns the interpolation factor (0..1) between the previous and the current simulation state, i.e. how far
+	 * real time has advanced into the next tick.
+	 *
+	 * @return the interpolation factor
+	 */
+	public double getInterpolation() {
+		return (double)accumulatedNanos / tickNanos;
+	}
+
+	/**
+	 * Returns the total amount of real time that was dropped because the simulation could not keep up.
+	 *
+	 * @return the dropped time in nanoseconds
+	 */
+	public long getDroppedNanos() {
+		return droppedNanos;
+	}
+
+}
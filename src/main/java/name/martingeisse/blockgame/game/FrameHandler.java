@@ -6,8 +6,6 @@
 
 package name.martingeisse.blockgame.game;
 
-import org.lwjgl.input.Keyboard;
-import org.lwjgl.opengl.Display;
 import org.lwjgl.opengl.GL11;
 
 /**
@@ -16,28 +14,79 @@ import org.lwjgl.opengl.GL11;
 public final class FrameHandler {
 
 	private final Game game;
+	private final InputSource inputSource;
 
 	public FrameHandler(Game game) {
+		this(game, new LwjglInputSource());
+	}
+
+	public FrameHandler(Game game, InputSource inputSource) {
 		this.game = game;
+		this.inputSource = inputSource;
+	}
+
+	/**
+	 * Getter method for the input source.
+	 *
+	 * @return the input source
+	 */
+	public InputSource getInputSource() {
+		return inputSource;
+	}
+
+	/**
+	 * Reads the input devices. Must be called from the thread that owns them, once per frame.
+	 *
+	 * @throws BreakFrameLoopException if the user wants to quit
+	 */
+	public void pollInput() throws BreakFrameLoopException {
+		inputSource.poll();
+		if (inputSource.isQuitRequested()) {
+			throw new BreakFrameLoopException();
+		}
 	}
 
 	/**
-	 * Handles a step. This method performs the game logic.
+	 * Handles a step. This method performs the game logic, using the input from before the specified time.
 	 *
+	 * @param tickTime the time the step simulates, as returned by {@link System#nanoTime()}
 	 * @throws BreakFrameLoopException if this handler wants to break the frame loop
 	 */
-	public void handleStep() throws BreakFrameLoopException {
-		if (Display.isCloseRequested() || Keyboard.isKeyDown(Keyboard.KEY_ESCAPE)) {
+	public void handleStep(long tickTime) throws BreakFrameLoopException {
+		if (inputSource.isQuitRequested()) {
 			throw new BreakFrameLoopException();
 		}
-		game.handleStep();
+		inputSource.beginTick(tickTime);
+		game.handleStep(inputSource.consumeMouseDx(), inputSource.consumeMouseDy());
+	}
+
+	/**
+	 * Handles a step on the simulation thread, then publishes the resulting state to the render thread.
+	 *
+	 * @param tickTime the time the step simulates, as returned by {@link System#nanoTime()}
+	 * @throws BreakFrameLoopException if this handler wants to break the frame loop
+	 */
+	public void handleSimulationStep(long tickTime) throws BreakFrameLoopException {
+		handleStep(tickTime);
+		game.publishRenderState();
 	}
 
 	/**
 	 * Draws the screen contents using OpenGL.
+	 *
+	 * @param interpolation the interpolation factor (0..1) between the previous and the current simulation state
+	 */
+	public void draw(double interpolation) {
+		game.draw(interpolation);
+	}
+
+	/**
+	 * Draws the latest state published by the simulation thread.
+	 *
+	 * @param tickNanos the length of a simulation tick in nanoseconds
 	 */
-	public void draw() {
-		game.draw();
+	public void drawLatestState(long tickNanos) {
+		game.drawLatestState(tickNanos);
 	}
 
 }
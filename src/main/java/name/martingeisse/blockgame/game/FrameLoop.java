@@ -6,8 +6,6 @@
 
 package name.martingeisse.blockgame.game;
 
-import org.lwjgl.input.Keyboard;
-import org.lwjgl.input.Mouse;
 import org.lwjgl.opengl.Display;
 import org.lwjgl.opengl.Util;
 
@@ -19,13 +17,50 @@ import static org.lwjgl.opengl.GL11.glFlush;
  */
 public final class FrameLoop {
 
+	/**
+	 * The default length of a simulation tick in milliseconds.
+	 */
+	public static final int DEFAULT_SIMULATION_TICK_INTERVAL = 20;
+
+	/**
+	 * The maximum number of simulation ticks to catch up on in a single frame.
+	 */
+	public static final int MAX_TICKS_PER_FRAME = 5;
+
 	private final FrameHandler frameHandler;
-	
+	private final FixedTimestep timestep;
+
 	/**
 	 * Constructor.
 	 */
 	public FrameLoop(FrameHandler frameHandler) {
+		this(frameHandler, DEFAULT_SIMULATION_TICK_INTERVAL);
+	}
+
+	/**
+	 * Constructor.
+	 * @param frameHandler the frame handler
+	 * @param simulationTickInterval the length of a simulation tick in milliseconds
+	 */
+	public FrameLoop(FrameHandler frameHandler, int simulationTickInterval) {
 		this.frameHandler = frameHandler;
+		this.timestep = new FixedTimestep(simulationTickInterval, MAX_TICKS_PER_FRAME);
+	}
+
+	/**
+	 * Getter method for the timestep.
+	 * @return the timestep
+	 */
+	public FixedTimestep getTimestep() {
+		return timestep;
+	}
+
+	/**
+	 * Executes frames using {@link #executeFrame()} endlessly, as many as possible,
+	 * until one of the handlers throws a {@link BreakFrameLoopException}.
+	 */
+	public void executeLoop() {
+		executeLoop((FramePacer)null);
 	}
 
 	/**
@@ -33,45 +68,106 @@ public final class FrameLoop {
 	 * until one of the handlers throws a {@link BreakFrameLoopException}.
 	 *
 	 * @param fixedFrameInterval the fixed minimum length of each frame in
-	 * milliseconds, or null to run as many frames as possible
+	 * milliseconds, or null to run as many frames as possible. This only
+	 * limits the frame rate; the simulation always advances in fixed ticks.
 	 */
 	public void executeLoop(Integer fixedFrameInterval) {
-		FrameTimer frameTimer = (fixedFrameInterval == null ? null : new FrameTimer(fixedFrameInterval));
+		executeLoop(fixedFrameInterval == null ? null : new FramePacer(1000.0 / fixedFrameInterval));
+	}
+
+	/**
+	 * Executes frames using {@link #executeFrame()} endlessly
+	 * until one of the handlers throws a {@link BreakFrameLoopException}.
+	 *
+	 * @param framePacer the pacer that limits the frame rate, or null to run
+	 * as many frames as possible
+	 */
+	public void executeLoop(FramePacer framePacer) {
 		try {
 			while (true) {
 				executeFrame();
-				if (frameTimer != null) {
-					while (!frameTimer.test()) {
-						synchronized(frameTimer) {
-							frameTimer.wait();
-						}
-					}
+				if (framePacer != null) {
+					framePacer.awaitNextFrame();
 				}
 			}
 		} catch (InterruptedException e) {
 		} catch (BreakFrameLoopException e) {
 		}
 	}
+
 	/**
-	 * Executes a single frame.
+	 * Executes frames endlessly until the frame handler throws a {@link BreakFrameLoopException}, like
+	 * {@link #executeLoop(FramePacer)}, but runs the simulation ticks on a separate {@link SimulationThread}. This
+	 * thread only handles input and draws the latest state published by the simulation thread, so on multi-core
+	 * machines, logic and rendering overlap.
 	 *
-	 * @throws BreakFrameLoopException if a handler wants to break the frame loop
+	 * @param framePacer the pacer that limits the frame rate, or null to run
+	 * as many frames as possible
 	 */
-	private void executeFrame() throws BreakFrameLoopException {
-		
+	public void executeThreadedLoop(FramePacer framePacer) {
+		SimulationThread simulationThread = new SimulationThread(frameHandler, timestep.getTickNanos());
+		simulationThread.start();
+		try {
+			while (simulationThread.isAlive()) {
+				executeThreadedFrame();
+				if (framePacer != null) {
+					framePacer.awaitNextFrame();
+				}
+			}
+			Throwable failure = simulationThread.getFailure();
+			if (failure != null && !(failure instanceof BreakFrameLoopException)) {
+				throw new RuntimeException("simulation thread failed", failure);
+			}
+		} catch (InterruptedException e) {
+		} catch (BreakFrameLoopException e) {
+		} finally {
+			simulationThread.requestStop();
+			try {
+				simulationThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Executes a single frame on the render thread while the simulation runs on its own thread.
+	 */
+	private void executeThreadedFrame() throws BreakFrameLoopException {
+
+		// handle inputs and OS messages; the simulation thread takes the input from the input source
+		frameHandler.pollInput();
+
 		// draw
-		frameHandler.draw();
+		frameHandler.drawLatestState(timestep.getTickNanos());
 		Util.checkGLError();
 		glFlush();
 		Display.update();
 
+	}
+
+	/**
+	 * Executes a single frame. This runs zero or more simulation ticks, depending on the real time that has
+	 * passed, then draws the screen interpolated between the last two simulation states.
+	 *
+	 * @throws BreakFrameLoopException if a handler wants to break the frame loop
+	 */
+	private void executeFrame() throws BreakFrameLoopException {
+
 		// handle inputs and OS messages
-		Display.processMessages();
-		Mouse.poll();
-		Keyboard.poll();
-		
+		frameHandler.pollInput();
+
 		// handle logic
-		frameHandler.handleStep();
+		int ticks = timestep.advance();
+		for (int i = 0; i < ticks; i++) {
+			frameHandler.handleStep(timestep.getTickEndTime(i));
+		}
+
+		// draw
+		frameHandler.draw(timestep.getInterpolation());
+		Util.checkGLError();
+		glFlush();
+		Display.update();
 
 	}
 
@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2012 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.game;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces frames to a target rate on the calling thread. Waiting parks the thread until shortly before the deadline,
+ * then spins for the rest, since parking alone may overshoot by more than the desired precision. The spin window
+ * grows when parking overshoots into it and shrinks back slowly towards the configured minimum.
+ *
+ * Deadlines follow a fixed cadence, so a frame that is a little late does not shift the following ones. If a frame
+ * overruns by a whole interval or more, the missed deadlines are skipped rather than caught up with a burst of
+ * frames, and the cadence restarts from the current time.
+ *
+ * This class is not thread-safe; it is meant to be used by the thread that runs the frame loop.
+ */
+public final class FramePacer {
+
+	/**
+	 * The default minimum length of the final spin window in nanoseconds.
+	 */
+	public static final long DEFAULT_SPIN_NANOS = 200000;
+
+	/**
+	 * The maximum length of the spin window in nanoseconds.
+	 */
+	public static final long MAX_SPIN_NANOS = 2000000;
+
+	/**
+	 * the intervalNanos
+	 */
+	private long intervalNanos;
+
+	/**
+	 * the minimumSpinNanos
+	 */
+	private long minimumSpinNanos = DEFAULT_SPIN_NANOS;
+
+	/**
+	 * the spinNanos
+	 */
+	private long spinNanos = DEFAULT_SPIN_NANOS;
+
+	/**
+	 * the nextDeadline
+	 */
+	private long nextDeadline;
+
+	/**
+	 * the frameCount
+	 */
+	private long frameCount;
+
+	/**
+	 * the missedFrameCount
+	 */
+	private long missedFrameCount;
+
+	/**
+	 * the totalErrorNanos
+	 */
+	private long totalErrorNanos;
+
+	/**
+	 * the maxErrorNanos
+	 */
+	private long maxErrorNanos;
+
+	/**
+	 * Constructor.
+	 * @param targetRate the target frame rate in frames per second
+	 */
+	public FramePacer(double targetRate) {
+		setTargetRate(targetRate);
+		this.nextDeadline = System.nanoTime() + intervalNanos;
+	}
+
+	/**
+	 * Getter method for the frame interval in nanoseconds.
+	 * @return the frame interval
+	 */
+	public long getIntervalNanos() {
+		return intervalNanos;
+	}
+
+	/**
+	 * Sets the target frame rate. The new rate takes effect after the next frame.
+	 * @param targetRate the target frame rate in frames per second
+	 */
+	public void setTargetRate(double targetRate) {
+		if (!(targetRate > 0) || Double.isInfinite(targetRate)) {
+			throw new IllegalArgumentException("invalid target rate: " + targetRate);
+		}
+		this.intervalNanos = Math.max(1, Math.round(1.0e9 / targetRate));
+	}
+
+	/**
+	 * Sets the minimum length of the final spin window. Longer windows give more precise deadlines at the cost of
+	 * CPU time.
+	 * @param minimumSpinNanos the minimum spin window in nanoseconds
+	 */
+	public void setMinimumSpinNanos(long minimumSpinNanos) {
+		if (minimumSpinNanos < 0 || minimumSpinNanos > MAX_SPIN_NANOS) {
+			throw new IllegalArgumentException("invalid spin window: " + minimumSpinNanos);
+		}
+		this.minimumSpinNanos = minimumSpinNanos;
+		this.spinNanos = Math.max(spinNanos, minimumSpinNanos);
+	}
+
+	/**
+	 * Getter method for the current spin window in nanoseconds.
+	 * @return the spin window
+	 */
+	public long getSpinNanos() {
+		return spinNanos;
+	}
+
+	/**
+	 * Waits until the deadline of the next frame.
+	 * @throws InterruptedException if the thread gets interrupted while waiting
+	 */
+	public void awaitNextFrame() throws InterruptedException {
+
+		// skip deadlines that have been missed completely
+		long now = System.nanoTime();
+		long lateness = now - nextDeadline;
+		if (lateness >= intervalNanos) {
+			missedFrameCount += lateness / intervalNanos;
+			nextDeadline = now;
+		}
+
+		// park until the spin window, then spin
+		long remaining = nextDeadline - now;
+		if (remaining > spinNanos) {
+			LockSupport.parkNanos(remaining - spinNanos);
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			long overshoot = System.nanoTime() - (nextDeadline - spinNanos);
+			if (overshoot > 0) {
+				spinNanos = Math.min(spinNanos + overshoot, MAX_SPIN_NANOS);
+			} else {
+				spinNanos = Math.max(spinNanos - (spinNanos >> 4), minimumSpinNanos);
+			}
+		}
+		while ((now = System.nanoTime()) < nextDeadline) {
+			// spin
+		}
+
+		// record the error and schedule the next frame
+		long error = now - nextDeadline;
+		frameCount++;
+		totalErrorNanos += error;
+		maxErrorNanos = Math.max(maxErrorNanos, error);
+		nextDeadline += intervalNanos;
+
+	}
+
+	/**
+	 * Returns the number of frames paced since the last reset.
+	 * @return the number of frames
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Returns the number of deadlines that were skipped because frames overran since the last reset.
+	 * @return the number of missed frames
+	 */
+	public long getMissedFrameCount() {
+		return missedFrameCount;
+	}
+
+	/**
+	 * Returns the average time by which a frame deadline was overshot since the last reset.
+	 * @return the average error in nanoseconds
+	 */
+	public long getAverageErrorNanos() {
+		return (frameCount == 0 ? 0 : totalErrorNanos / frameCount);
+	}
+
+	/**
+	 * Returns the maximum time by which a frame deadline was overshot since the last reset.
+	 * @return the maximum error in nanoseconds
+	 */
+	public long getMaxErrorNanos() {
+		return maxErrorNanos;
+	}
+
+	/**
+	 * Resets the pacing statistics.
+	 */
+	public void resetStatistics() {
+		frameCount = 0;
+		missedFrameCount = 0;
+		totalErrorNanos = 0;
+		maxErrorNanos = 0;
+	}
+
+}
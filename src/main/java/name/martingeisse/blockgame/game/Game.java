@@ -2,10 +2,17 @@ package name.martingeisse.blockgame.game;
 
 import name.martingeisse.blockgame.resource.Resources;
 import name.martingeisse.blockgame.system.Texture;
+import name.martingeisse.blockgame.system.TextureAtlas;
+import name.martingeisse.blockgame.world.AtlasTextureProvider;
 import name.martingeisse.blockgame.world.Camera;
 import name.martingeisse.blockgame.world.Plane;
-import org.lwjgl.input.Mouse;
+import name.martingeisse.blockgame.world.PlaneSnapshot;
+import name.martingeisse.blockgame.world.render.RenderState;
+import name.martingeisse.blockgame.world.render.RenderStatePublisher;
+import name.martingeisse.blockgame.world.render.SectionRenderer;
+import org.lwjgl.opengl.Display;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GLContext;
 
 /**
  *
@@ -23,40 +30,165 @@ public final class Game {
 
 	private final Plane plane;
 	private final Camera camera;
+	private final RenderStatePublisher renderStatePublisher;
+	private final BlockTextureProvider blockTextureProvider = new BlockTextureProvider();
+	private InputRecording recording;
+	private boolean sectionRendererPrepared;
 
 	public Game(Plane plane, Camera camera) {
 		this.plane = plane;
 		this.camera = camera;
+		camera.setPlane(plane);
+		this.renderStatePublisher = new RenderStatePublisher(plane);
+		plane.getEventBus().addCollisionHandler(new CollisionSoundHandler(plane));
+	}
+
+	/**
+	 * Handles a step. This method performs the game logic. It does not access the input devices or the display,
+	 * so it can be called from a thread other than the render thread, or without a window at all.
+	 *
+	 * @param mouseDx the mouse X movement
+	 * @param mouseDy the mouse Y movement
+	 */
+	public void handleStep(int mouseDx, int mouseDy) {
+		handleStep(mouseDx, mouseDy, camera.getAspectRatio());
 	}
 
 	/**
-	 * Handles a step. This method performs the game logic.
+	 * Handles a step with a known viewport aspect ratio, which determines how the camera follows the player. This
+	 * is used to replay recorded input; the live game takes the aspect ratio from the camera.
 	 *
-	 * @throws BreakFrameLoopException if this handler wants to break the frame loop
+	 * @param mouseDx the mouse X movement
+	 * @param mouseDy the mouse Y movement
+	 * @param aspectRatio the aspect ratio (width / height) of the viewport
 	 */
-	public void handleStep() throws BreakFrameLoopException {
-		plane.getPlayer().performMouseMovement(Mouse.getDX(), Mouse.getDY(), plane);
-		camera.moveToKeepFocusOnPlayer();
+	public void handleStep(int mouseDx, int mouseDy, float aspectRatio) {
+		if (recording != null) {
+			recording.addTick(mouseDx, mouseDy, aspectRatio);
+		}
+		plane.getSimulationLod().addFocusPoint(camera.getScreenX(), camera.getScreenY());
+		plane.step(mouseDx, mouseDy);
+		camera.moveToKeepFocusOnPlayer(aspectRatio);
+	}
+
+	/**
+	 * Starts recording the input of each step, together with the current state of the plane and camera. The
+	 * recording only covers the state that determines the simulation, so it must be started before the first step
+	 * to be replayable (see {@link PlaneSnapshot}).
+	 */
+	public void startRecording() {
+		recording = new InputRecording(PlaneSnapshot.capture(plane), camera.getZoom(), camera.getScreenX(), camera.getScreenY());
+	}
+
+	/**
+	 * Stops recording and stores the current state of the plane as the final state of the recording.
+	 *
+	 * @return the recording, or null if no recording was started
+	 */
+	public InputRecording stopRecording() {
+		InputRecording result = recording;
+		if (result != null) {
+			result.setFinalState(PlaneSnapshot.capture(plane));
+			recording = null;
+		}
+		return result;
+	}
+
+	/**
+	 * Publishes the current state for drawing with {@link #drawLatestState(long)}.
+	 */
+	public void publishRenderState() {
+		renderStatePublisher.publish(camera);
 	}
 
 	/**
 	 * Draws the screen contents using OpenGL.
+	 *
+	 * @param interpolation the interpolation factor (0..1) between the previous and the current simulation state
 	 */
-	public void draw() {
+	public void draw(double interpolation) {
 		GL11.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
 		GL11.glClear(GL11.GL_COLOR_BUFFER_BIT);
-		camera.setTextureProvider(this::getTextureForBlock);
+		camera.setViewportSize(Display.getWidth(), Display.getHeight());
+		camera.setTextureProvider(blockTextureProvider);
 		camera.setPlayerTexture(Resources.getTexture("sprites/yaycandies/mmstroke_red.png"));
+		prepareSectionRenderer();
 		camera.setPlane(plane);
-		camera.draw();
+		camera.draw(interpolation);
 	}
 
-	private Texture getTextureForBlock(int block) {
-		if (block < 0 || block >= blockTextureNames.length) {
-			return null;
+	/**
+	 * Draws the latest state published with {@link #publishRenderState()}, interpolating positions based on the
+	 * time since it was published. Draws nothing if no state has been published yet.
+	 *
+	 * @param tickNanos the length of a simulation tick in nanoseconds
+	 */
+	public void drawLatestState(long tickNanos) {
+		GL11.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+		GL11.glClear(GL11.GL_COLOR_BUFFER_BIT);
+		camera.setViewportSize(Display.getWidth(), Display.getHeight());
+		RenderState state = renderStatePublisher.acquire();
+		if (state.getTick() == 0) {
+			return;
+		}
+		camera.setTextureProvider(blockTextureProvider);
+		camera.setPlayerTexture(Resources.getTexture("sprites/yaycandies/mmstroke_red.png"));
+		prepareSectionRenderer();
+		camera.draw(state, state.getInterpolation(System.nanoTime(), tickNanos));
+	}
+
+	/**
+	 * Sets up a section renderer for the camera on first use, if the OpenGL implementation supports vertex buffer
+	 * objects. Must be called on the render thread.
+	 */
+	private void prepareSectionRenderer() {
+		if (!sectionRendererPrepared) {
+			sectionRendererPrepared = true;
+			if (GLContext.getCapabilities().OpenGL15) {
+				camera.setSectionRenderer(new SectionRenderer());
+			}
+		}
+	}
+
+	/**
+	 * Provides the block textures both as individual textures and as images in the texture atlas.
+	 */
+	private static final class BlockTextureProvider implements AtlasTextureProvider {
+
+		private int[] atlasHandles;
+
+		// override
+		@Override
+		public Texture getBlockTexture(int blockValue) {
+			if (blockValue < 0 || blockValue >= blockTextureNames.length) {
+				return null;
+			}
+			String textureName = blockTextureNames[blockValue];
+			return (textureName == null ? null : Resources.getTexture(textureName));
 		}
-		String textureName = blockTextureNames[block];
-		return (textureName == null ? null : Resources.getTexture(textureName));
+
+		// override
+		@Override
+		public TextureAtlas getAtlas() {
+			return Resources.getTextureAtlas();
+		}
+
+		// override
+		@Override
+		public int getAtlasHandle(int blockValue) {
+			if (blockValue < 0 || blockValue >= blockTextureNames.length) {
+				return -1;
+			}
+			if (atlasHandles == null) {
+				TextureAtlas atlas = Resources.getTextureAtlas();
+				atlasHandles = new int[blockTextureNames.length];
+				for (int i = 0; i < blockTextureNames.length; i++) {
+					atlasHandles[i] = (blockTextureNames[i] == null ? -1 : atlas.getHandle(blockTextureNames[i]));
+				}
+			}
+			return atlasHandles[blockValue];
+		}
+
 	}
 
 }
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2011 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.game;
+
+/**
+ * Runs the simulation of a {@link Game} without a window, for dedicated servers and benchmarks. Neither the
+ * display nor the input devices are used, so no native libraries are needed. Ticks run either as fast as possible
+ * or at a fixed rate.
+ */
+public final class HeadlessRunner {
+
+	/**
+	 * The tick rate that means "as fast as possible".
+	 */
+	public static final double UNTHROTTLED = 0.0;
+
+	/**
+	 * the game
+	 */
+	private final Game game;
+
+	/**
+	 * the inputSource
+	 */
+	private final InputSource inputSource;
+
+	/**
+	 * the tickRate
+	 */
+	private double tickRate = UNTHROTTLED;
+
+	/**
+	 * the tickCount
+	 */
+	private long tickCount;
+
+	/**
+	 * the totalTickNanos
+	 */
+	private long totalTickNanos;
+
+	/**
+	 * the maxTickNanos
+	 */
+	private long maxTickNanos;
+
+	/**
+	 * Constructor for a runner without input.
+	 * @param game the game
+	 */
+	public HeadlessRunner(Game game) {
+		this(game, NullInputSource.INSTANCE);
+	}
+
+	/**
+	 * Constructor.
+	 * @param game the game
+	 * @param inputSource the input source, which is polled before each tick
+	 */
+	public HeadlessRunner(Game game, InputSource inputSource) {
+		this.game = game;
+		this.inputSource = inputSource;
+	}
+
+	/**
+	 * Getter method for the tick rate.
+	 * @return the tick rate in ticks per second, or {@link #UNTHROTTLED}
+	 */
+	public double getTickRate() {
+		return tickRate;
+	}
+
+	/**
+	 * Setter method for the tick rate.
+	 * @param tickRate the tick rate in ticks per second, or {@link #UNTHROTTLED} to run as fast as possible
+	 */
+	public void setTickRate(double tickRate) {
+		if (tickRate < 0 || Double.isNaN(tickRate) || Double.isInfinite(tickRate)) {
+			throw new IllegalArgumentException("invalid tick rate: " + tickRate);
+		}
+		this.tickRate = tickRate;
+	}
+
+	/**
+	 * Runs ticks until the specified number of ticks has been run or the input source requests to quit.
+	 * @param maxTicks the maximum number of ticks to run
+	 * @return the number of ticks actually run
+	 * @throws InterruptedException if the thread gets interrupted while waiting for the next tick
+	 */
+	public long run(long maxTicks) throws InterruptedException {
+		FramePacer pacer = (tickRate == UNTHROTTLED ? null : new FramePacer(tickRate));
+		long ticks = 0;
+		while (ticks < maxTicks) {
+			inputSource.poll();
+			if (inputSource.isQuitRequested()) {
+				break;
+			}
+			long start = System.nanoTime();
+			inputSource.beginTick(start);
+			game.handleStep(inputSource.consumeMouseDx(), inputSource.consumeMouseDy());
+			long duration = System.nanoTime() - start;
+			tickCount++;
+			totalTickNanos += duration;
+			maxTickNanos = Math.max(maxTickNanos, duration);
+			ticks++;
+			if (pacer != null) {
+				pacer.awaitNextFrame();
+			}
+		}
+		return ticks;
+	}
+
+	/**
+	 * Returns the total number of ticks run so far.
+	 * @return the number of ticks
+	 */
+	public long getTickCount() {
+		return tickCount;
+	}
+
+	/**
+	 * Returns the average time spent in a tick, not counting the time spent waiting for the next tick.
+	 * @return the average tick time in nanoseconds
+	 */
+	public long getAverageTickNanos() {
+		return (tickCount == 0 ? 0 : totalTickNanos / tickCount);
+	}
+
+	/**
+	 * Returns the maximum time spent in a single tick.
+	 * @return the maximum tick time in nanoseconds
+	 */
+	public long getMaxTickNanos() {
+		return maxTickNanos;
+	}
+
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2011 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.game;
+
+import name.martingeisse.blockgame.world.Plane;
+
+/**
+ * A world run by a {@link WorldHost}: a plane with its players, plus the scheduling state and tick time accounting
+ * for it. The host never runs two ticks of the same world at the same time, so the plane needs no synchronization
+ * of its own.
+ *
+ * The statistics are written by the pool thread that runs the tick and may be read from any thread; they are
+ * updated one field at a time, so a reader may see a tick counted in one statistic but not yet in another.
+ */
+public final class HostedWorld {
+
+	/**
+	 * the plane
+	 */
+	private final Plane plane;
+
+	/**
+	 * the inputSource
+	 */
+	private final InputSource inputSource;
+
+	/**
+	 * the nextDeadline (only accessed by the host's scheduler thread)
+	 */
+	long nextDeadline;
+
+	/**
+	 * the removed
+	 */
+	volatile boolean removed;
+
+	/**
+	 * the failure
+	 */
+	private volatile Throwable failure;
+
+	/**
+	 * the tickCount
+	 */
+	private volatile long tickCount;
+
+	/**
+	 * the shedTickCount
+	 */
+	private volatile long shedTickCount;
+
+	/**
+	 * the totalTickNanos
+	 */
+	private volatile long totalTickNanos;
+
+	/**
+	 * the maxTickNanos
+	 */
+	private volatile long maxTickNanos;
+
+	/**
+	 * the lastTickNanos
+	 */
+	private volatile long lastTickNanos;
+
+	/**
+	 * the totalLatenessNanos
+	 */
+	private volatile long totalLatenessNanos;
+
+	/**
+	 * Constructor.
+	 * @param plane the plane
+	 * @param inputSource the input for the controlled player of the plane; it is never polled
+	 */
+	HostedWorld(Plane plane, InputSource inputSource) {
+		this.plane = plane;
+		this.inputSource = inputSource;
+	}
+
+	/**
+	 * Getter method for the plane.
+	 * @return the plane
+	 */
+	public Plane getPlane() {
+		return plane;
+	}
+
+	/**
+	 * Runs a single tick and records its timing.
+	 * @param deadline the time the tick was due, as returned by {@link System#nanoTime()}
+	 */
+	void tick(long deadline) {
+		long start = System.nanoTime();
+		inputSource.beginTick(deadline);
+		plane.step(inputSource.consumeMouseDx(), inputSource.consumeMouseDy());
+		long duration = System.nanoTime() - start;
+		tickCount++;
+		totalTickNanos += duration;
+		totalLatenessNanos += Math.max(0, start - deadline);
+		lastTickNanos = duration;
+		if (duration > maxTickNanos) {
+			maxTickNanos = duration;
+		}
+	}
+
+	/**
+	 * Records ticks that were dropped because the world fell behind.
+	 * @param count the number of dropped ticks
+	 */
+	void shedTicks(long count) {
+		shedTickCount += count;
+	}
+
+	/**
+	 * Records an exception thrown by a tick. The host stops running the world after that.
+	 * @param failure the exception
+	 */
+	void fail(Throwable failure) {
+		this.failure = failure;
+		this.removed = true;
+	}
+
+	/**
+	 * Returns the exception that stopped this world, if any.
+	 * @return the exception, or null
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Checks whether this world has been removed from its host, either explicitly or because a tick failed.
+	 * @return true if removed, false if still running
+	 */
+	public boolean isRemoved() {
+		return removed;
+	}
+
+	/**
+	 * Returns the number of ticks run.
+	 * @return the number of ticks
+	 */
+	public long getTickCount() {
+		return tickCount;
+	}
+
+	/**
+	 * Returns the number of ticks that were dropped because this world fell too far behind its schedule. For
+	 * each dropped tick, the world's simulation runs one tick slower than real time.
+	 * @return the number of dropped ticks
+	 */
+	public long getShedTickCount() {
+		return shedTickCount;
+	}
+
+	/**
+	 * Returns the average time spent in a tick.
+	 * @return the average tick time in nanoseconds
+	 */
+	public long getAverageTickNanos() {
+		long count = tickCount;
+		return (count == 0 ? 0 : totalTickNanos / count);
+	}
+
+	/**
+	 * Returns the maximum time spent in a single tick.
+	 * @return the maximum tick time in nanoseconds
+	 */
+	public long getMaxTickNanos() {
+		return maxTickNanos;
+	}
+
+	/**
+	 * Returns the time spent in the last tick.
+	 * @return the last tick time in nanoseconds
+	 */
+	public long getLastTickNanos() {
+		return lastTickNanos;
+	}
+
+	/**
+	 * Returns the average time by which a tick started after its deadline.
+	 * @return the average lateness in nanoseconds
+	 */
+	public long getAverageLatenessNanos() {
+		long count = tickCount;
+		return (count == 0 ? 0 : totalLatenessNanos / count);
+	}
+
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2011 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.game;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A preallocated ring buffer of timestamped input events, passed from a single producer thread (the one that
+ * polls the input devices) to a single consumer thread (the simulation) without locks. Each event consists of a
+ * time (as returned by {@link System#nanoTime()}), a type and two int values whose meaning depends on the type.
+ *
+ * The consumer reads events LWJGL-style: {@link #next(long)} moves to the next event before the specified time,
+ * and the getEvent* methods return the fields of that event.
+ *
+ * The queue does not grow: {@link #offer(long, int, int, int)} returns false when it is full, and the producer is
+ * responsible for keeping the event until it fits (see {@link LwjglInputSource}).
+ */
+public final class InputEventQueue {
+
+	/**
+	 * Event type for mouse movement. The values are the x and y movement.
+	 */
+	public static final int TYPE_MOUSE_MOVE = 0;
+
+	/**
+	 * The default capacity.
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * the mask
+	 */
+	private final int mask;
+
+	/**
+	 * the times
+	 */
+	private final long[] times;
+
+	/**
+	 * the types
+	 */
+	private final int[] types;
+
+	/**
+	 * the x values
+	 */
+	private final int[] xs;
+
+	/**
+	 * the y values
+	 */
+	private final int[] ys;
+
+	/**
+	 * The number of events written so far; only advanced by the producer.
+	 */
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * The number of events released by the consumer so far; only advanced by the consumer.
+	 */
+	private final AtomicLong head = new AtomicLong();
+
+	/**
+	 * The index of the current event, i.e. the one returned by the last call to {@link #next(long)}.
+	 */
+	private int currentIndex;
+
+	/**
+	 * Whether the consumer holds the current event, i.e. its slot has not been released yet.
+	 */
+	private boolean holdingCurrent;
+
+	/**
+	 * Constructor.
+	 */
+	public InputEventQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor.
+	 * @param capacity the capacity, which must be a power of two
+	 */
+	public InputEventQueue(int capacity) {
+		if (Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+		}
+		this.mask = capacity - 1;
+		this.times = new long[capacity];
+		this.types = new int[capacity];
+		this.xs = new int[capacity];
+		this.ys = new int[capacity];
+	}
+
+	/**
+	 * Appends an event. Only to be called by the producer thread. Events must be appended in order of their times.
+	 * @param time the time of the event
+	 * @param type the event type
+	 * @param x the first value
+	 * @param y the second value
+	 * @return true on success, false if the queue is full
+	 */
+	public boolean offer(long time, int type, int x, int y) {
+		long tail = this.tail.get();
+		if (tail - head.get() > mask) {
+			return false;
+		}
+		int index = (int)tail & mask;
+		times[index] = time;
+		types[index] = type;
+		xs[index] = x;
+		ys[index] = y;
+		this.tail.lazySet(tail + 1);
+		return true;
+	}
+
+	/**
+	 * Moves to the next event if its time is before the specified time. Only to be called by the consumer thread.
+	 * The previous event is released, so its slot can be reused by the producer.
+	 * @param until the time limit (exclusive)
+	 * @return true if there is a next event, false if the queue has no event before the time limit
+	 */
+	public boolean next(long until) {
+		long head = this.head.get();
+		if (holdingCurrent) {
+			head++;
+			this.head.lazySet(head);
+			holdingCurrent = false;
+		}
+		if (head == tail.get()) {
+			return false;
+		}
+		int index = (int)head & mask;
+		if (times[index] - until >= 0) {
+			return false;
+		}
+		currentIndex = index;
+		holdingCurrent = true;
+		return true;
+	}
+
+	/**
+	 * Returns the time of the current event.
+	 * @return the time
+	 */
+	public long getEventTime() {
+		return times[currentIndex];
+	}
+
+	/**
+	 * Returns the type of the current event.
+	 * @return the type
+	 */
+	public int getEventType() {
+		return types[currentIndex];
+	}
+
+	/**
+	 * Returns the first value of the current event.
+	 * @return the value
+	 */
+	public int getEventX() {
+		return xs[currentIndex];
+	}
+
+	/**
+	 * Returns the second value of the current event.
+	 * @return the value
+	 */
+	public int getEventY() {
+		return ys[currentIndex];
+	}
+
+}
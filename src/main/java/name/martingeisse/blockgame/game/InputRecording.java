@@ -0,0 +1,275 @@
+/**
+ * Copyright (c) 2011 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.game;
+
+import name.martingeisse.blockgame.world.PlaneSnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Everything needed to replay a session deterministically: the initial state of the plane and camera, and the
+ * input of each tick. The input of a tick is the mouse movement for the controlled player and the aspect ratio of
+ * the viewport, which affects the camera and through it the simulation level of detail. Optionally, the final
+ * state of the plane is stored too, so a replay can check that it ended up in exactly the same state.
+ *
+ * The tick input is kept in primitive arrays, so recording a tick does not allocate except when the arrays grow.
+ */
+public final class InputRecording {
+
+	/**
+	 * The magic number at the start of a recording file.
+	 */
+	private static final int MAGIC = 0x42475243;
+
+	/**
+	 * The file format version.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * the initialState
+	 */
+	private final PlaneSnapshot initialState;
+
+	/**
+	 * the cameraZoom
+	 */
+	private final float cameraZoom;
+
+	/**
+	 * the cameraScreenX
+	 */
+	private final float cameraScreenX;
+
+	/**
+	 * the cameraScreenY
+	 */
+	private final float cameraScreenY;
+
+	/**
+	 * the tickCount
+	 */
+	private int tickCount;
+
+	/**
+	 * The mouse movement of each tick, as (dx, dy) pairs.
+	 */
+	private int[] mouseMovement;
+
+	/**
+	 * The aspect ratio of each tick.
+	 */
+	private float[] aspectRatios;
+
+	/**
+	 * the finalState
+	 */
+	private PlaneSnapshot finalState;
+
+	/**
+	 * Constructor.
+	 * @param initialState the state of the plane before the first tick
+	 * @param cameraZoom the zoom of the camera
+	 * @param cameraScreenX the screen x position of the camera before the first tick
+	 * @param cameraScreenY the screen y position of the camera before the first tick
+	 */
+	public InputRecording(PlaneSnapshot initialState, float cameraZoom, float cameraScreenX, float cameraScreenY) {
+		this(initialState, cameraZoom, cameraScreenX, cameraScreenY, 0, new int[2 * 1024], new float[1024]);
+	}
+
+	/**
+	 * Constructor.
+	 */
+	private InputRecording(PlaneSnapshot initialState, float cameraZoom, float cameraScreenX, float cameraScreenY, int tickCount, int[] mouseMovement, float[] aspectRatios) {
+		this.initialState = initialState;
+		this.cameraZoom = cameraZoom;
+		this.cameraScreenX = cameraScreenX;
+		this.cameraScreenY = cameraScreenY;
+		this.tickCount = tickCount;
+		this.mouseMovement = mouseMovement;
+		this.aspectRatios = aspectRatios;
+	}
+
+	/**
+	 * Getter method for the initial state of the plane.
+	 * @return the initial state
+	 */
+	public PlaneSnapshot getInitialState() {
+		return initialState;
+	}
+
+	/**
+	 * Getter method for the camera zoom.
+	 * @return the camera zoom
+	 */
+	public float getCameraZoom() {
+		return cameraZoom;
+	}
+
+	/**
+	 * Getter method for the initial screen x position of the camera.
+	 * @return the screen x position
+	 */
+	public float getCameraScreenX() {
+		return cameraScreenX;
+	}
+
+	/**
+	 * Getter method for the initial screen y position of the camera.
+	 * @return the screen y position
+	 */
+	public float getCameraScreenY() {
+		return cameraScreenY;
+	}
+
+	/**
+	 * Appends the input of a tick.
+	 * @param mouseDx the mouse X movement
+	 * @param mouseDy the mouse Y movement
+	 * @param aspectRatio the aspect ratio of the viewport
+	 */
+	public void addTick(int mouseDx, int mouseDy, float aspectRatio) {
+		if (tickCount == aspectRatios.length) {
+			int capacity = Math.max(1024, 2 * tickCount);
+			mouseMovement = Arrays.copyOf(mouseMovement, 2 * capacity);
+			aspectRatios = Arrays.copyOf(aspectRatios, capacity);
+		}
+		mouseMovement[2 * tickCount] = mouseDx;
+		mouseMovement[2 * tickCount + 1] = mouseDy;
+		aspectRatios[tickCount] = aspectRatio;
+		tickCount++;
+	}
+
+	/**
+	 * Returns the number of recorded ticks.
+	 * @return the number of ticks
+	 */
+	public int getTickCount() {
+		return tickCount;
+	}
+
+	/**
+	 * Returns the mouse X movement of a tick.
+	 * @param tick the tick index
+	 * @return the mouse X movement
+	 */
+	public int getMouseDx(int tick) {
+		return mouseMovement[2 * checkTick(tick)];
+	}
+
+	/**
+	 * Returns the mouse Y movement of a tick.
+	 * @param tick the tick index
+	 * @return the mouse Y movement
+	 */
+	public int getMouseDy(int tick) {
+		return mouseMovement[2 * checkTick(tick) + 1];
+	}
+
+	/**
+	 * Returns the aspect ratio of the viewport during a tick.
+	 * @param tick the tick index
+	 * @return the aspect ratio
+	 */
+	public float getAspectRatio(int tick) {
+		return aspectRatios[checkTick(tick)];
+	}
+
+	private int checkTick(int tick) {
+		if (tick < 0 || tick >= tickCount) {
+			throw new IndexOutOfBoundsException("invalid tick index " + tick + " for " + tickCount + " ticks");
+		}
+		return tick;
+	}
+
+	/**
+	 * Getter method for the final state of the plane.
+	 * @return the final state, or null if not known
+	 */
+	public PlaneSnapshot getFinalState() {
+		return finalState;
+	}
+
+	/**
+	 * Setter method for the final state of the plane.
+	 * @param finalState the state of the plane after the last tick
+	 */
+	public void setFinalState(PlaneSnapshot finalState) {
+		this.finalState = finalState;
+	}
+
+	/**
+	 * Writes this recording in binary form. The stream is not closed.
+	 * @param outputStream the stream to write to
+	 * @throws IOException on I/O errors
+	 */
+	public void writeTo(OutputStream outputStream) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		initialState.writeTo(out);
+		out.writeFloat(cameraZoom);
+		out.writeFloat(cameraScreenX);
+		out.writeFloat(cameraScreenY);
+		out.writeInt(tickCount);
+		for (int i = 0; i < tickCount; i++) {
+			out.writeInt(mouseMovement[2 * i]);
+			out.writeInt(mouseMovement[2 * i + 1]);
+			out.writeFloat(aspectRatios[i]);
+		}
+		out.writeBoolean(finalState != null);
+		if (finalState != null) {
+			finalState.writeTo(out);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Reads a recording written by {@link #writeTo(OutputStream)}. The stream is not closed.
+	 * @param inputStream the stream to read from
+	 * @return the recording
+	 * @throws IOException on I/O errors or if the data is not a valid recording
+	 */
+	public static InputRecording readFrom(InputStream inputStream) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+		if (in.readInt() != MAGIC) {
+			throw new IOException("not an input recording");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("unsupported input recording version: " + version);
+		}
+		PlaneSnapshot initialState = PlaneSnapshot.readFrom(in);
+		float cameraZoom = in.readFloat();
+		float cameraScreenX = in.readFloat();
+		float cameraScreenY = in.readFloat();
+		int tickCount = in.readInt();
+		if (tickCount < 0) {
+			throw new IOException("invalid tick count: " + tickCount);
+		}
+		int[] mouseMovement = new int[2 * tickCount];
+		float[] aspectRatios = new float[tickCount];
+		for (int i = 0; i < tickCount; i++) {
+			mouseMovement[2 * i] = in.readInt();
+			mouseMovement[2 * i + 1] = in.readInt();
+			aspectRatios[i] = in.readFloat();
+		}
+		InputRecording recording = new InputRecording(initialState, cameraZoom, cameraScreenX, cameraScreenY, tickCount, mouseMovement, aspectRatios);
+		if (in.readBoolean()) {
+			recording.setFinalState(PlaneSnapshot.readFrom(in));
+		}
+		return recording;
+	}
+
+}
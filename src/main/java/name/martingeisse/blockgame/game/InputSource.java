@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2011 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.game;
+
+/**
+ * Provides the player input to the game. This decouples the simulation from the input devices, so it can run
+ * without a window, e.g. with {@link NullInputSource} in a {@link HeadlessRunner}.
+ *
+ * {@link #poll()} is called by the thread that owns the input devices. {@link #beginTick(long)} and the consume
+ * methods are called by the simulation, possibly on a different thread, so implementations must hand the input
+ * over in a thread-safe way.
+ */
+public interface InputSource {
+
+	/**
+	 * Reads the current input from the input devices.
+	 */
+	public void poll();
+
+	/**
+	 * Checks whether the user wants to quit.
+	 * @return true to quit, false to go on
+	 */
+	public boolean isQuitRequested();
+
+	/**
+	 * Prepares the input for a simulation tick. Sources with timestamped input only release the input from before
+	 * the specified time to the consume methods; later input is left for later ticks. Called by the simulation
+	 * before each tick.
+	 * @param tickTime the time the tick simulates, as returned by {@link System#nanoTime()}
+	 */
+	public void beginTick(long tickTime);
+
+	/**
+	 * Returns the mouse X movement released for the current tick, or accumulated since the last call for sources
+	 * without timestamps. Returns 0 when called again within the same tick.
+	 * @return the mouse X movement
+	 */
+	public int consumeMouseDx();
+
+	/**
+	 * Returns the mouse Y movement released for the current tick, like {@link #consumeMouseDx()}.
+	 * @return the mouse Y movement
+	 */
+	public int consumeMouseDy();
+
+}
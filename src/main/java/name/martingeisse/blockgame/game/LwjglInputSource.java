@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2011 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.game;
+
+import org.lwjgl.input.Keyboard;
+import org.lwjgl.input.Mouse;
+import org.lwjgl.opengl.Display;
+
+import java.util.Arrays;
+
+/**
+ * Takes the input from the LWJGL window, mouse and keyboard. Must be polled by the thread that created the display.
+ *
+ * Polling reads the mouse event buffer into an {@link InputEventQueue}, keeping the time of each event, so the
+ * simulation can assign each event to the tick it happened in, even if a frame runs several ticks or the simulation
+ * runs on its own thread. LWJGL event times have no defined origin, so they are mapped to {@link System#nanoTime()}
+ * by aligning the last event of each poll with the poll time, and clamped to the time since the previous poll. The
+ * keyboard is only used to detect the quit key.
+ *
+ * A tick only takes the events that happened before its end time. Events that happen after the end of the last tick
+ * of a frame wait for the first tick of a later frame, so input can arrive up to one tick later than when the input
+ * devices were read directly at the start of each step.
+ *
+ * No movement is lost when the queue is full: it is summed up and offered again on the next poll, and newer movement
+ * is added to it until it fits, so the events stay in time order.
+ */
+public final class LwjglInputSource implements InputSource {
+
+	/**
+	 * the queue
+	 */
+	private final InputEventQueue queue;
+
+	/**
+	 * the lastPollTime (producer side)
+	 */
+	private long lastPollTime = System.nanoTime();
+
+	/**
+	 * Event times of the current poll (producer side).
+	 */
+	private long[] eventTimes = new long[64];
+
+	/**
+	 * Event values of the current poll (producer side).
+	 */
+	private int[] eventXs = new int[64];
+
+	/**
+	 * Event values of the current poll (producer side).
+	 */
+	private int[] eventYs = new int[64];
+
+	/**
+	 * Mouse movement that did not fit into the queue (producer side).
+	 */
+	private int overflowDx;
+
+	/**
+	 * Mouse movement that did not fit into the queue (producer side).
+	 */
+	private int overflowDy;
+
+	/**
+	 * the tickDx (consumer side)
+	 */
+	private int tickDx;
+
+	/**
+	 * the tickDy (consumer side)
+	 */
+	private int tickDy;
+
+	/**
+	 * the quitRequested
+	 */
+	private volatile boolean quitRequested;
+
+	/**
+	 * Constructor.
+	 */
+	public LwjglInputSource() {
+		this(new InputEventQueue());
+	}
+
+	/**
+	 * Constructor.
+	 * @param queue the queue to pass the events through
+	 */
+	public LwjglInputSource(InputEventQueue queue) {
+		this.queue = queue;
+	}
+
+	/**
+	 * Getter method for the queue.
+	 * @return the queue
+	 */
+	public InputEventQueue getQueue() {
+		return queue;
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.game.InputSource#poll()
+	 */
+	@Override
+	public void poll() {
+		Display.processMessages();
+		Mouse.poll();
+		Keyboard.poll();
+		long now = System.nanoTime();
+
+		// mouse movement that did not fit into the queue last time goes first, since it is older
+		if ((overflowDx != 0 || overflowDy != 0) && queue.offer(lastPollTime, InputEventQueue.TYPE_MOUSE_MOVE, overflowDx, overflowDy)) {
+			overflowDx = 0;
+			overflowDy = 0;
+		}
+
+		// mouse events
+		int count = 0;
+		while (Mouse.next()) {
+			if (Mouse.getEventDX() != 0 || Mouse.getEventDY() != 0) {
+				count = addEvent(count, Mouse.getEventNanoseconds(), Mouse.getEventDX(), Mouse.getEventDY());
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			long time = mapEventTime(eventTimes[i], eventTimes[count - 1], now);
+			boolean overflowPending = (overflowDx != 0 || overflowDy != 0);
+			if (overflowPending || !queue.offer(time, InputEventQueue.TYPE_MOUSE_MOVE, eventXs[i], eventYs[i])) {
+				overflowDx += eventXs[i];
+				overflowDy += eventYs[i];
+			}
+		}
+
+		quitRequested = Display.isCloseRequested() || Keyboard.isKeyDown(Keyboard.KEY_ESCAPE);
+		lastPollTime = now;
+	}
+
+	private int addEvent(int count, long time, int x, int y) {
+		if (count == eventTimes.length) {
+			eventTimes = Arrays.copyOf(eventTimes, 2 * count);
+			eventXs = Arrays.copyOf(eventXs, 2 * count);
+			eventYs = Arrays.copyOf(eventYs, 2 * count);
+		}
+		eventTimes[count] = time;
+		eventXs[count] = x;
+		eventYs[count] = y;
+		return count + 1;
+	}
+
+	private long mapEventTime(long eventTime, long lastEventTime, long now) {
+		long time = now - (lastEventTime - eventTime);
+		return (time - lastPollTime < 0 ? lastPollTime : time);
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.game.InputSource#isQuitRequested()
+	 */
+	@Override
+	public boolean isQuitRequested() {
+		return quitRequested;
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.game.InputSource#beginTick(long)
+	 */
+	@Override
+	public void beginTick(long tickTime) {
+		while (queue.next(tickTime)) {
+			if (queue.getEventType() == InputEventQueue.TYPE_MOUSE_MOVE) {
+				tickDx += queue.getEventX();
+				tickDy += queue.getEventY();
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.game.InputSource#consumeMouseDx()
+	 */
+	@Override
+	public int consumeMouseDx() {
+		int result = tickDx;
+		tickDx = 0;
+		return result;
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.game.InputSource#consumeMouseDy()
+	 */
+	@Override
+	public int consumeMouseDy() {
+		int result = tickDy;
+		tickDy = 0;
+		return result;
+	}
+
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2011 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.game;
+
+/**
+ * An input source without any input, for running the simulation headless. Never requests to quit.
+ */
+public final class NullInputSource implements InputSource {
+
+	/**
+	 * The shared instance.
+	 */
+	public static final NullInputSource INSTANCE = new NullInputSource();
+
+	/**
+	 * Constructor.
+	 */
+	private NullInputSource() {
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.game.InputSource#poll()
+	 */
+	@Override
+	public void poll() {
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.game.InputSource#isQuitRequested()
+	 */
+	@Override
+	public boolean isQuitRequested() {
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.game.InputSource#beginTick(long)
+	 */
+	@Override
+	public void beginTick(long tickTime) {
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.game.InputSource#consumeMouseDx()
+	 */
+	@Override
+	public int consumeMouseDx() {
+		return 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.game.InputSource#consumeMouseDy()
+	 */
+	@Override
+	public int consumeMouseDy() {
+		return 0;
+	}
+
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2011 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.game;
+
+import name.martingeisse.blockgame.world.Camera;
+import name.martingeisse.blockgame.world.PlaneSnapshot;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Replays an {@link InputRecording} headlessly, as fast as possible, and measures the tick rate and the memory
+ * allocated by the simulation. Since the simulation is deterministic, the replay must end up in exactly the
+ * recorded final state; comparing the tick rate and allocation of the same recordings between builds makes a
+ * performance regression test out of real gameplay sessions.
+ *
+ * Allocation is measured per thread, which needs the HotSpot extension of {@link ThreadMXBean}. On other VMs it is
+ * reported as unknown.
+ */
+public final class ReplayRunner {
+
+	/**
+	 * the recording
+	 */
+	private final InputRecording recording;
+
+	/**
+	 * the finalState
+	 */
+	private PlaneSnapshot finalState;
+
+	/**
+	 * the elapsedNanos
+	 */
+	private long elapsedNanos;
+
+	/**
+	 * the allocatedBytes
+	 */
+	private long allocatedBytes = -1;
+
+	/**
+	 * Constructor.
+	 * @param recording the recording to replay
+	 */
+	public ReplayRunner(InputRecording recording) {
+		this.recording = recording;
+	}
+
+	/**
+	 * Getter method for the recording.
+	 * @return the recording
+	 */
+	public InputRecording getRecording() {
+		return recording;
+	}
+
+	/**
+	 * Replays the recording from its initial state. The plane and camera are built before measuring starts, so
+	 * the measurements only cover the ticks.
+	 */
+	public void run() {
+		Camera camera = new Camera();
+		camera.setZoom(recording.getCameraZoom());
+		camera.setScreenX(recording.getCameraScreenX());
+		camera.setScreenY(recording.getCameraScreenY());
+		Game game = new Game(recording.getInitialState().createPlane(), camera);
+		int tickCount = recording.getTickCount();
+
+		long startBytes = getCurrentThreadAllocatedBytes();
+		long startTime = System.nanoTime();
+		for (int i = 0; i < tickCount; i++) {
+			game.handleStep(recording.getMouseDx(i), recording.getMouseDy(i), recording.getAspectRatio(i));
+		}
+		elapsedNanos = System.nanoTime() - startTime;
+		long endBytes = getCurrentThreadAllocatedBytes();
+		allocatedBytes = (startBytes < 0 || endBytes < 0 ? -1 : endBytes - startBytes);
+
+		finalState = PlaneSnapshot.capture(camera.getPlane());
+	}
+
+	private static long getCurrentThreadAllocatedBytes() {
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean hotSpotThreadMXBean = (com.sun.management.ThreadMXBean)threadMXBean;
+			if (hotSpotThreadMXBean.isThreadAllocatedMemorySupported() && hotSpotThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+				return hotSpotThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the state of the plane after the replay.
+	 * @return the final state, or null if not run yet
+	 */
+	public PlaneSnapshot getFinalState() {
+		return finalState;
+	}
+
+	/**
+	 * Checks whether the replay ended in the final state stored in the recording.
+	 * @return true if the states are identical, false if they differ, if the recording has no final state, or if
+	 * the replay has not been run yet
+	 */
+	public boolean isFinalStateMatching() {
+		return finalState != null && finalState.equals(recording.getFinalState());
+	}
+
+	/**
+	 * Returns the time spent running the ticks.
+	 * @return the time in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * Returns the number of ticks run per second of real time.
+	 * @return the tick rate
+	 */
+	public double getTicksPerSecond() {
+		return (elapsedNanos == 0 ? 0 : recording.getTickCount() * 1.0e9 / elapsedNanos);
+	}
+
+	/**
+	 * Returns the number of bytes allocated while running the ticks.
+	 * @return the number of bytes, or -1 if unknown
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * Returns the average number of bytes allocated per tick.
+	 * @return the number of bytes per tick, or -1 if unknown
+	 */
+	public double getAllocatedBytesPerTick() {
+		return (allocatedBytes < 0 ? -1 : recording.getTickCount() == 0 ? 0 : (double)allocatedBytes / recording.getTickCount());
+	}
+
+}
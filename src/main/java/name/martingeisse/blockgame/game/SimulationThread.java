@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2012 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.game;
+
+/**
+ * Runs simulation ticks at a fixed rate, separately from the render thread. After each tick, the frame handler
+ * publishes a render state that the render thread picks up without waiting.
+ *
+ * Input devices can only be polled on the render thread, so the render thread polls the frame handler's
+ * {@link InputSource} and each tick takes the input that has accumulated so far.
+ */
+public final class SimulationThread extends Thread {
+
+	/**
+	 * the frameHandler
+	 */
+	private final FrameHandler frameHandler;
+
+	/**
+	 * the tickNanos
+	 */
+	private final long tickNanos;
+
+	/**
+	 * the stopRequested
+	 */
+	private volatile boolean stopRequested;
+
+	/**
+	 * the failure
+	 */
+	private volatile Throwable failure;
+
+	/**
+	 * Constructor.
+	 * @param frameHandler the frame handler
+	 * @param tickNanos the length of a simulation tick in nanoseconds
+	 */
+	public SimulationThread(FrameHandler frameHandler, long tickNanos) {
+		super("simulation");
+		this.frameHandler = frameHandler;
+		this.tickNanos = tickNanos;
+		setDaemon(true);
+	}
+
+	/**
+	 * Asks this thread to stop after the current tick.
+	 */
+	public void requestStop() {
+		stopRequested = true;
+		interrupt();
+	}
+
+	/**
+	 * Returns the exception that ended this thread, if any.
+	 * @return the exception, or null
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Thread#run()
+	 */
+	@Override
+	public void run() {
+		FramePacer pacer = new FramePacer(1.0e9 / tickNanos);
+		try {
+			while (!stopRequested) {
+				frameHandler.handleSimulationStep(System.nanoTime());
+				pacer.awaitNextFrame();
+			}
+		} catch (InterruptedException e) {
+		} catch (Throwable e) {
+			failure = e;
+		}
+	}
+
+}
@@ -0,0 +1,323 @@
+/**
+ * Copyright (c) 2011 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.game;
+
+import name.martingeisse.blockgame.world.Plane;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs many independent worlds in one process. A scheduler thread keeps a deadline per world and submits each tick
+ * to a work-stealing pool when it is due, earliest deadline first. The pool runs in FIFO mode, so ticks are served
+ * roughly in deadline order. At most one tick per world is in flight at any time, which also bounds the number of
+ * queued tasks by the number of worlds.
+ *
+ * Worlds start at staggered offsets within the tick interval, so their ticks do not all become due at once. A world
+ * that falls behind catches up by running ticks back to back, but only up to a limit; ticks beyond that are dropped
+ * (and counted), so an overloaded world slows down instead of flooding the pool, and the other worlds keep their
+ * rate.
+ */
+public final class WorldHost {
+
+	/**
+	 * The default tick rate in ticks per second.
+	 */
+	public static final double DEFAULT_TICK_RATE = 50.0;
+
+	/**
+	 * The default maximum number of ticks a world may be behind its schedule before ticks get dropped.
+	 */
+	public static final int DEFAULT_MAX_CATCH_UP_TICKS = 2;
+
+	/**
+	 * The maximum time the scheduler sleeps when no world is scheduled, in nanoseconds.
+	 */
+	private static final long MAX_IDLE_NANOS = 10000000;
+
+	/**
+	 * The fraction of the tick interval between the start offsets of consecutive worlds (golden ratio, so the
+	 * offsets spread evenly for any number of worlds).
+	 */
+	private static final double STAGGER_STEP = 0.6180339887498949;
+
+	/**
+	 * the pool
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * the ownsPool
+	 */
+	private final boolean ownsPool;
+
+	/**
+	 * the tickNanos
+	 */
+	private final long tickNanos;
+
+	/**
+	 * the worlds
+	 */
+	private final List<HostedWorld> worlds = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Worlds that were added or have finished a tick, to be put back into the schedule by the scheduler thread.
+	 */
+	private final ConcurrentLinkedQueue<HostedWorld> returnedWorlds = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * the schedule (only accessed by the scheduler thread)
+	 */
+	private final PriorityQueue<HostedWorld> schedule = new PriorityQueue<>(Comparator.comparingLong((HostedWorld world) -> world.nextDeadline));
+
+	/**
+	 * the maxCatchUpTicks
+	 */
+	private volatile int maxCatchUpTicks = DEFAULT_MAX_CATCH_UP_TICKS;
+
+	/**
+	 * the addedCount
+	 */
+	private long addedCount;
+
+	/**
+	 * the schedulerThread
+	 */
+	private volatile Thread schedulerThread;
+
+	/**
+	 * the stopRequested
+	 */
+	private volatile boolean stopRequested;
+
+	/**
+	 * Constructor for a host with its own pool.
+	 * @param parallelism the number of pool threads, typically the number of cores
+	 * @param tickRate the tick rate in ticks per second
+	 */
+	public WorldHost(int parallelism, double tickRate) {
+		this(new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true), true, tickRate);
+	}
+
+	/**
+	 * Constructor for a host that uses an existing pool. The pool is not shut down when the host stops.
+	 * @param pool the pool
+	 * @param tickRate the tick rate in ticks per second
+	 */
+	public WorldHost(ForkJoinPool pool, double tickRate) {
+		this(pool, false, tickRate);
+	}
+
+	/**
+	 * Constructor.
+	 */
+	private WorldHost(ForkJoinPool pool, boolean ownsPool, double tickRate) {
+		if (!(tickRate > 0) || Double.isInfinite(tickRate)) {
+			throw new IllegalArgumentException("invalid tick rate: " + tickRate);
+		}
+		this.pool = pool;
+		this.ownsPool = ownsPool;
+		this.tickNanos = Math.max(1, Math.round(1.0e9 / tickRate));
+	}
+
+	/**
+	 * Getter method for the tick length in nanoseconds.
+	 * @return the tick length
+	 */
+	public long getTickNanos() {
+		return tickNanos;
+	}
+
+	/**
+	 * Getter method for the maximum number of ticks a world may be behind before ticks get dropped.
+	 * @return the maximum number of catch-up ticks
+	 */
+	public int getMaxCatchUpTicks() {
+		return maxCatchUpTicks;
+	}
+
+	/**
+	 * Setter method for the maximum number of ticks a world may be behind before ticks get dropped.
+	 * @param maxCatchUpTicks the maximum number of catch-up ticks
+	 */
+	public void setMaxCatchUpTicks(int maxCatchUpTicks) {
+		if (maxCatchUpTicks < 0) {
+			throw new IllegalArgumentException("invalid maximum catch-up ticks: " + maxCatchUpTicks);
+		}
+		this.maxCatchUpTicks = maxCatchUpTicks;
+	}
+
+	/**
+	 * Adds a world without input.
+	 * @param plane the plane of the world
+	 * @return the hosted world
+	 */
+	public HostedWorld add(Plane plane) {
+		return add(plane, NullInputSource.INSTANCE);
+	}
+
+	/**
+	 * Adds a world. Its first tick is due within one tick interval. Worlds added before {@link #start()} are due
+	 * from the time they were added, so they should be added shortly before starting.
+	 * @param plane the plane of the world
+	 * @param inputSource the input for the controlled player of the plane; it is never polled, and the tick methods
+	 * are called from pool threads
+	 * @return the hosted world
+	 */
+	public HostedWorld add(Plane plane, InputSource inputSource) {
+		HostedWorld world = new HostedWorld(plane, inputSource);
+		synchronized (this) {
+			double offset = (addedCount * STAGGER_STEP) % 1.0;
+			addedCount++;
+			world.nextDeadline = System.nanoTime() + (long)(offset * tickNanos);
+		}
+		worlds.add(world);
+		returnWorld(world);
+		return world;
+	}
+
+	/**
+	 * Removes a world. A tick that is already running will still finish.
+	 * @param world the world to remove
+	 */
+	public void remove(HostedWorld world) {
+		world.removed = true;
+		worlds.remove(world);
+	}
+
+	/**
+	 * Returns the worlds of this host, including worlds that were stopped by a failing tick.
+	 * @return the worlds
+	 */
+	public List<HostedWorld> getWorlds() {
+		return Collections.unmodifiableList(worlds);
+	}
+
+	/**
+	 * Estimates the load of the pool, as the sum of the average tick times of all running worlds relative to the
+	 * time the pool threads have per tick interval. Values above 1 mean that the host cannot keep up.
+	 * @return the estimated load
+	 */
+	public double getLoad() {
+		long totalNanos = 0;
+		for (HostedWorld world : worlds) {
+			if (!world.isRemoved()) {
+				totalNanos += world.getAverageTickNanos();
+			}
+		}
+		return (double)totalNanos / ((double)tickNanos * pool.getParallelism());
+	}
+
+	/**
+	 * Starts the scheduler thread.
+	 */
+	public synchronized void start() {
+		if (schedulerThread != null) {
+			throw new IllegalStateException("already started");
+		}
+		Thread thread = new Thread(this::runScheduler, "world-host");
+		thread.setDaemon(true);
+		schedulerThread = thread;
+		thread.start();
+	}
+
+	/**
+	 * Stops the scheduler thread and waits until it has stopped and all running ticks have finished.
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void stop() throws InterruptedException {
+		Thread thread = schedulerThread;
+		if (thread == null) {
+			return;
+		}
+		stopRequested = true;
+		LockSupport.unpark(thread);
+		thread.join();
+		if (ownsPool) {
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} else {
+			pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Hands a world back to the scheduler thread and wakes it up.
+	 */
+	private void returnWorld(HostedWorld world) {
+		returnedWorlds.add(world);
+		Thread thread = schedulerThread;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * The main loop of the scheduler thread.
+	 */
+	private void runScheduler() {
+		while (!stopRequested) {
+
+			// put worlds back into the schedule
+			HostedWorld returned;
+			while ((returned = returnedWorlds.poll()) != null) {
+				if (!returned.isRemoved()) {
+					schedule.add(returned);
+				}
+			}
+
+			// submit the ticks that are due
+			long now = System.nanoTime();
+			while (!schedule.isEmpty() && schedule.peek().nextDeadline - now <= 0) {
+				HostedWorld world = schedule.poll();
+				if (world.isRemoved()) {
+					continue;
+				}
+				long deadline = world.nextDeadline;
+				long behind = (now - deadline) / tickNanos;
+				int maxCatchUpTicks = this.maxCatchUpTicks;
+				if (behind > maxCatchUpTicks) {
+					world.shedTicks(behind - maxCatchUpTicks);
+					deadline += (behind - maxCatchUpTicks) * tickNanos;
+				}
+				world.nextDeadline = deadline + tickNanos;
+				submitTick(world, deadline);
+			}
+
+			// sleep until the next tick is due or a world comes back
+			long waitNanos = (schedule.isEmpty() ? MAX_IDLE_NANOS : Math.min(schedule.peek().nextDeadline - now, MAX_IDLE_NANOS));
+			if (waitNanos > 0 && returnedWorlds.isEmpty()) {
+				LockSupport.parkNanos(this, waitNanos);
+			}
+
+		}
+	}
+
+	/**
+	 * Runs a tick of a world in the pool and returns the world to the scheduler afterwards.
+	 */
+	private void submitTick(HostedWorld world, long deadline) {
+		pool.execute(() -> {
+			try {
+				world.tick(deadline);
+			} catch (Throwable e) {
+				world.fail(e);
+			} finally {
+				returnWorld(world);
+			}
+		});
+	}
+
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2010 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.geometry;
+
+/**
+ * Helper methods for 48.16 fixed-point numbers stored in a long. All operations are pure integer arithmetic, so
+ * they produce bit-exact results on every platform and JIT mode.
+ *
+ * Multiplication and division truncate towards zero, so repeatedly scaling a value by a factor below one (e.g.
+ * friction) decays it to exactly zero from either side.
+ */
+public final class FixedPoint {
+
+	/**
+	 * The number of fractional bits.
+	 */
+	public static final int FRACTION_BITS = 16;
+
+	/**
+	 * The fixed-point value 1.
+	 */
+	public static final long ONE = 1L << FRACTION_BITS;
+
+	/**
+	 * The fixed-point value 0.5.
+	 */
+	public static final long HALF = ONE >> 1;
+
+	/**
+	 * Prevent instantiation.
+	 */
+	private FixedPoint() {
+	}
+
+	/**
+	 * Converts a double to fixed-point, rounding to the nearest representable value. This is only meant for
+	 * constants and for importing state; the conversion itself is deterministic, but results computed in double
+	 * before the conversion might not be.
+	 *
+	 * @param value the value to convert
+	 * @return the fixed-point value
+	 */
+	public static long fromDouble(double value) {
+		return Math.round(value * ONE);
+	}
+
+	/**
+	 * Converts a fixed-point value to double. This conversion is exact for all values below 2^37.
+	 *
+	 * @param value the value to convert
+	 * @return the double value
+	 */
+	public static double toDouble(long value) {
+		return (double)value / ONE;
+	}
+
+	/**
+	 * Converts an integer to fixed-point.
+	 *
+	 * @param value the value to convert
+	 * @return the fixed-point value
+	 */
+	public static long fromInt(int value) {
+		return (long)value << FRACTION_BITS;
+	}
+
+	/**
+	 * Multiplies two fixed-point values.
+	 *
+	 * @param a the first factor
+	 * @param b the second factor
+	 * @return the product
+	 */
+	public static long mul(long a, long b) {
+		return a * b / ONE;
+	}
+
+	/**
+	 * Divides two fixed-point values.
+	 *
+	 * @param a the dividend
+	 * @param b the divisor
+	 * @return the quotient
+	 */
+	public static long div(long a, long b) {
+		return (a << FRACTION_BITS) / b;
+	}
+
+	/**
+	 * Computes (a * b / c) without losing precision in the intermediate product.
+	 *
+	 * @param a the first factor
+	 * @param b the second factor
+	 * @param c the divisor
+	 * @return the result
+	 */
+	public static long mulDiv(long a, long b, long c) {
+		return a * b / c;
+	}
+
+	/**
+	 * Rounds down to the next integer.
+	 *
+	 * @param value the value to round
+	 * @return the integer
+	 */
+	public static int floor(long value) {
+		return (int)(value >> FRACTION_BITS);
+	}
+
+	/**
+	 * Rounds to the nearest integer, with halves rounded up. This matches {@link Math#round(double)}.
+	 *
+	 * @param value the value to round
+	 * @return the integer
+	 */
+	public static int round(long value) {
+		return (int)((value + HALF) >> FRACTION_BITS);
+	}
+
+	/**
+	 * Computes the square root of a fixed-point value.
+	 *
+	 * @param value the value, which must not be negative
+	 * @return the square root
+	 */
+	public static long sqrt(long value) {
+		return sqrtOfProduct(value << FRACTION_BITS);
+	}
+
+	/**
+	 * Computes the square root of a raw product of two fixed-point values, i.e. a value with twice the number of
+	 * fractional bits, as produced by (a * b) without rescaling. This is useful to compute vector lengths without
+	 * losing precision. The result is a normal fixed-point value.
+	 *
+	 * @param product the product, which must not be negative
+	 * @return the square root
+	 */
+	public static long sqrtOfProduct(long product) {
+		if (product < 0) {
+			throw new IllegalArgumentException("cannot compute square root of negative value: " + product);
+		}
+		long result = 0;
+		long bit = 1L << 62;
+		while (bit > product) {
+			bit >>= 2;
+		}
+		while (bit != 0) {
+			if (product >= result + bit) {
+				product -= result + bit;
+				result = (result >> 1) + bit;
+			} else {
+				result >>= 1;
+			}
+			bit >>= 2;
+		}
+		return result;
+	}
+
+}
@@ -7,12 +7,15 @@ package name.martingeisse.blockgame.resource;
 import name.martingeisse.blockgame.system.FixedWidthFont;
 import name.martingeisse.blockgame.system.Font;
 import name.martingeisse.blockgame.system.Texture;
+import name.martingeisse.blockgame.system.TextureAtlas;
+import name.martingeisse.blockgame.system.TextureAtlasBuilder;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import javax.imageio.ImageIO;
 
@@ -38,6 +41,37 @@ public final class DefaultResouceLoader implements ResourceLoader {
 		}
 	}
 	
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.resource.ResourceLoader#loadTextureAtlas(java.lang.String[])
+	 */
+	@Override
+	public TextureAtlas loadTextureAtlas(String... folders) throws IOException {
+		TextureAtlasBuilder builder = new TextureAtlasBuilder();
+		for (String folder : folders) {
+			addTextureImages(builder, new File("resource/textures", folder), folder);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Adds the PNG images in a folder and its subfolders to an atlas builder, in a fixed order.
+	 */
+	private void addTextureImages(final TextureAtlasBuilder builder, final File folder, final String name) throws IOException {
+		File[] files = folder.listFiles();
+		if (files == null) {
+			throw new IOException("not a folder: " + folder);
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			String fileName = name + '/' + file.getName();
+			if (file.isDirectory()) {
+				addTextureImages(builder, file, fileName);
+			} else if (file.getName().toLowerCase().endsWith(".png")) {
+				builder.add(fileName, loadImage(file));
+			}
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see name.martingeisse.blockgame.resource.ResourceLoader#loadFont(java.lang.String)
 	 */
@@ -6,6 +6,7 @@ package name.martingeisse.blockgame.resource;
 
 import name.martingeisse.blockgame.system.Font;
 import name.martingeisse.blockgame.system.Texture;
+import name.martingeisse.blockgame.system.TextureAtlas;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -28,6 +29,11 @@ public final class DefaultResourceManager implements ResourceManager {
 	 */
 	private final Map<String, Texture> textures = new HashMap<>();
 	
+	/**
+	 * the textureAtlas
+	 */
+	private TextureAtlas textureAtlas;
+
 	/**
 	 * the fonts
 	 */
@@ -63,6 +69,21 @@ public final class DefaultResourceManager implements ResourceManager {
 		return texture;
 	}
 	
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.resource.ResourceManager#getTextureAtlas()
+	 */
+	@Override
+	public TextureAtlas getTextureAtlas() {
+		if (textureAtlas == null) {
+			try {
+				textureAtlas = loader.loadTextureAtlas("blockmap", "sprites");
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return textureAtlas;
+	}
+
 	/* (non-Javadoc)
 	 * @see name.martingeisse.blockgame.resource.ResourceManager#getFont(java.lang.String)
 	 */
@@ -6,6 +6,7 @@ package name.martingeisse.blockgame.resource;
 
 import name.martingeisse.blockgame.system.Font;
 import name.martingeisse.blockgame.system.Texture;
+import name.martingeisse.blockgame.system.TextureAtlas;
 
 import java.io.IOException;
 
@@ -25,6 +26,17 @@ public interface ResourceLoader {
 	 */
 	public Texture loadTexture(final String filename) throws IOException;
 
+	/**
+	 * Loads all texture images in the specified folders and their subfolders into a texture atlas. Each image is
+	 * named by its filename relative to the texture folder, i.e. the name that would be passed to
+	 * {@link #loadTexture(String)}.
+	 * 
+	 * @param folders the folders to load, relative to the texture folder
+	 * @return the texture atlas
+	 * @throws IOException on I/O errors
+	 */
+	public TextureAtlas loadTextureAtlas(final String... folders) throws IOException;
+
 	/**
 	 * Loads a font.
 	 * 
@@ -6,6 +6,7 @@ package name.martingeisse.blockgame.resource;
 
 import name.martingeisse.blockgame.system.Font;
 import name.martingeisse.blockgame.system.Texture;
+import name.martingeisse.blockgame.system.TextureAtlas;
 
 import org.newdawn.slick.openal.Audio;
 
@@ -22,6 +23,14 @@ public interface ResourceManager {
 	 */
 	public Texture getTexture(final String name);
 
+	/**
+	 * Returns the texture atlas that contains the block and sprite textures. The images in the atlas
+	 * have the same names as the corresponding textures.
+	 * 
+	 * @return the texture atlas
+	 */
+	public TextureAtlas getTextureAtlas();
+
 	/**
 	 * Returns a font by name.
 	 * 
@@ -6,6 +6,7 @@ package name.martingeisse.blockgame.resource;
 
 import name.martingeisse.blockgame.system.Font;
 import name.martingeisse.blockgame.system.Texture;
+import name.martingeisse.blockgame.system.TextureAtlas;
 
 import org.newdawn.slick.openal.Audio;
 
@@ -61,6 +62,15 @@ public final class Resources {
 		 return enforceHasResourceManager().getTexture(name);
 	}
 	
+	/**
+	 * Returns the texture atlas that contains the block and sprite textures.
+	 * 
+	 * @return the texture atlas
+	 */
+	public static TextureAtlas getTextureAtlas() {
+		return enforceHasResourceManager().getTextureAtlas();
+	}
+
 	/**
 	 * Returns an font by name.
 	 * 
@@ -6,15 +6,10 @@
 
 package name.martingeisse.blockgame.system;
 
-import static org.lwjgl.opengl.GL11.GL_UNPACK_ROW_LENGTH;
-import static org.lwjgl.opengl.GL11.GL_UNPACK_SKIP_PIXELS;
-import static org.lwjgl.opengl.GL11.GL_UNPACK_SKIP_ROWS;
-import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
-import static org.lwjgl.opengl.GL11.glBitmap;
-import static org.lwjgl.opengl.GL11.glDrawPixels;
-import static org.lwjgl.opengl.GL11.glPixelStorei;
-import static org.lwjgl.opengl.GL11.glPixelZoom;
 import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
 
 /**
@@ -30,90 +25,197 @@ import org.lwjgl.opengl.GL11;
  * - The character is automatically y-flipped to handle OpenGL's reversed
  *   coordinate system compared to image files.
  * 
- * Drawing characters with this font uses OpenGL's current raster position
- * and assumes that this position has been set before. This allows using the
- * font both for the HUD (using glWindowPos) or "floating" text
- * in the 3d world (using glRasterPos).
+ * The atlas image is uploaded once as an alpha texture, and text is drawn
+ * as one textured quad per character, recorded into a {@link RenderCommandBuffer}.
+ * Text is positioned in the coordinate system set up by the caller, with one
+ * unit per font pixel at zoom 1, so the same font can be used both for the HUD
+ * and for "floating" text in the world. The color of the text is the current
+ * color of the command buffer.
+ * 
+ * The quads of recently drawn strings are cached by string, zoom and alignment,
+ * so text that is drawn every frame is not laid out again. A font must only be
+ * used on the render thread.
  */
 public abstract class Font {
 
 	/**
-	 * Aligns the top boundary of the text with the current raster position.
+	 * Aligns the top boundary of the text with the text position.
 	 */
 	public static final int ALIGN_TOP = 0;
 	
 	/**
-	 * Aligns the left boundary of the text with the current raster position.
+	 * Aligns the left boundary of the text with the text position.
 	 */
 	public static final int ALIGN_LEFT = 0;
 	
 	/**
-	 * Aligns the horizontal or vertical center of the text with the current raster position.
+	 * Aligns the horizontal or vertical center of the text with the text position.
 	 */
 	public static final int ALIGN_CENTER = 1;
 	
 	/**
-	 * Aligns the bottom boundary of the text with the current raster position.
+	 * Aligns the bottom boundary of the text with the text position.
 	 */
 	public static final int ALIGN_BOTTOM = 2;
 	
 	/**
-	 * Aligns the right boundary of the text with the current raster position.
+	 * Aligns the right boundary of the text with the text position.
 	 */
 	public static final int ALIGN_RIGHT = 2;
 	
 	/**
-	 * Draws text using this font.
+	 * The maximum number of laid-out strings kept in the cache.
+	 */
+	private static final int MAX_CACHED_LAYOUTS = 256;
+	
+	/**
+	 * The quads of recently drawn strings, as (minX, minY, maxX, maxY, minU, minV, maxU, maxV) per character
+	 * relative to the text position. The least recently used layout is dropped when the cache is full.
+	 */
+	private final Map<LayoutKey, float[]> layouts = new LinkedHashMap<LayoutKey, float[]>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<LayoutKey, float[]> eldest) {
+			return size() > MAX_CACHED_LAYOUTS;
+		}
+	};
+	
+	/**
+	 * the key used to look up layouts, reused to avoid allocating a key per call
+	 */
+	private final LayoutKey lookupKey = new LayoutKey();
+	
+	/**
+	 * the glyphTexture
+	 */
+	private Texture glyphTexture;
+	
+	/**
+	 * Draws text using this font. The text is separated from earlier quads by a barrier, so it is drawn
+	 * on top of them.
 	 * 
+	 * @param commandBuffer the command buffer to record into
 	 * @param s the string of text to draw
+	 * @param x the x coordinate of the text position
+	 * @param y the y coordinate of the text position
 	 * @param zoom the zoom factor
 	 * @param horizontalAlignment how to align the text horizontally
 	 * @param verticalAlignment how to align the text vertically
 	 */
-	public void drawText(final String s, final float zoom, final int horizontalAlignment, final int verticalAlignment) {
+	public void drawText(final RenderCommandBuffer commandBuffer, final String s, final float x, final float y, final float zoom, final int horizontalAlignment, final int verticalAlignment) {
+		float[] quads = getLayout(s, zoom, horizontalAlignment, verticalAlignment);
+		if (quads.length == 0) {
+			return;
+		}
+		commandBuffer.barrier();
+		commandBuffer.bindTexture(getGlyphTexture());
+		for (int i=0; i<quads.length; i+=8) {
+			commandBuffer.drawQuad(x + quads[i], y + quads[i + 1], x + quads[i + 2], y + quads[i + 3], quads[i + 4], quads[i + 5], quads[i + 6], quads[i + 7]);
+		}
+	}
+
+	/**
+	 * Returns the quads for a string, laying it out if it is not in the cache.
+	 */
+	private float[] getLayout(final String s, final float zoom, final int horizontalAlignment, final int verticalAlignment) {
+		lookupKey.set(s, zoom, horizontalAlignment, verticalAlignment);
+		float[] quads = layouts.get(lookupKey);
+		if (quads == null) {
+			quads = layout(s, zoom, horizontalAlignment, verticalAlignment);
+			LayoutKey key = new LayoutKey();
+			key.set(s, zoom, horizontalAlignment, verticalAlignment);
+			layouts.put(key, quads);
+		}
+		return quads;
+	}
+	
+	/**
+	 * Lays out a string as quads.
+	 */
+	private float[] layout(final String s, final float zoom, final int horizontalAlignment, final int verticalAlignment) {
 		
 		// determine width and height of the string
 		int stringWidth = getStringWidth(s), height = getCharacterHeight();
 		
-		// move the current raster position according to the alignment
-		{
-			int dx, dy;
-			if (horizontalAlignment == ALIGN_CENTER) {
-				dx = -stringWidth / 2;
-			} else if (horizontalAlignment == ALIGN_RIGHT) {
-				dx = -stringWidth;
-			} else {
-				dx = 0;
-			}
-			if (verticalAlignment == ALIGN_CENTER) {
-				dy = height / 2;
-			} else if (verticalAlignment == ALIGN_BOTTOM) {
-				dy = height;
-			} else {
-				dy = 0;
-			}
-			glBitmap(0, 0, 0, 0, dx * zoom, dy * zoom, null);
+		// determine the top left corner according to the alignment
+		int dx, dy;
+		if (horizontalAlignment == ALIGN_CENTER) {
+			dx = -stringWidth / 2;
+		} else if (horizontalAlignment == ALIGN_RIGHT) {
+			dx = -stringWidth;
+		} else {
+			dx = 0;
+		}
+		if (verticalAlignment == ALIGN_CENTER) {
+			dy = height / 2;
+		} else if (verticalAlignment == ALIGN_BOTTOM) {
+			dy = height;
+		} else {
+			dy = 0;
 		}
 		
-		// draw the characters
-		ByteBuffer image = getImage();
-		glPixelStorei(GL_UNPACK_ROW_LENGTH, getImageWidth());
+		// create a quad per character
+		int characterCount = 0;
+		for (int i=0; i<s.length(); i++) {
+			if (getCharacterIndex(s.charAt(i)) >= 0) {
+				characterCount++;
+			}
+		}
+		float[] quads = new float[8 * characterCount];
+		float textureWidth = roundUpToPowerOfTwo(getImageWidth()), textureHeight = roundUpToPowerOfTwo(getImageHeight());
+		float maxY = dy * zoom, minY = (dy - height) * zoom;
+		int left = dx, position = 0;
 		for (int i=0; i<s.length(); i++) {
 			int characterIndex = getCharacterIndex(s.charAt(i));
 			if (characterIndex >= 0) {
 				int characterWidth = getCharacterWidth(characterIndex);
-				glPixelStorei(GL_UNPACK_SKIP_ROWS, getCharacterTopBoundary(characterIndex));
-				glPixelStorei(GL_UNPACK_SKIP_PIXELS, getCharacterLeftBoundary(characterIndex));
-				glPixelZoom(zoom, -zoom);
-				glDrawPixels(characterWidth, height, GL11.GL_ALPHA, GL_UNSIGNED_BYTE, image);
-				glBitmap(0, 0, 0, 0, characterWidth * zoom, 0, null);
+				int imageLeft = getCharacterLeftBoundary(characterIndex), imageTop = getCharacterTopBoundary(characterIndex);
+				quads[position] = left * zoom;
+				quads[position + 1] = minY;
+				quads[position + 2] = (left + characterWidth) * zoom;
+				quads[position + 3] = maxY;
+				quads[position + 4] = imageLeft / textureWidth;
+				quads[position + 5] = imageTop / textureHeight;
+				quads[position + 6] = (imageLeft + characterWidth) / textureWidth;
+				quads[position + 7] = (imageTop + height) / textureHeight;
+				left += characterWidth;
+				position += 8;
 			}
 		}
-		glPixelStorei(GL_UNPACK_ROW_LENGTH, 0);
-		glPixelStorei(GL_UNPACK_SKIP_ROWS, 0);
-		glPixelStorei(GL_UNPACK_SKIP_PIXELS, 0);
+		return quads;
 		
 	}
+	
+	/**
+	 * Returns the texture that contains the font atlas image, uploading it on the first call. The
+	 * texture size is rounded up to powers of two, with the image in the top left corner. Must be
+	 * called on the render thread.
+	 * 
+	 * @return the texture
+	 */
+	public Texture getGlyphTexture() {
+		if (glyphTexture == null) {
+			ByteBuffer image = getImage();
+			int imageWidth = getImageWidth(), imageHeight = getImageHeight();
+			int textureWidth = roundUpToPowerOfTwo(imageWidth), textureHeight = roundUpToPowerOfTwo(imageHeight);
+			ByteBuffer buffer = BufferUtils.createByteBuffer(textureWidth * textureHeight);
+			for (int y=0; y<imageHeight; y++) {
+				for (int x=0; x<imageWidth; x++) {
+					buffer.put(y * textureWidth + x, image.get(y * imageWidth + x));
+				}
+			}
+			int textureId = GL11.glGenTextures();
+			GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureId);
+			GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+			GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_ALPHA8, textureWidth, textureHeight, 0, GL11.GL_ALPHA, GL11.GL_UNSIGNED_BYTE, buffer);
+			GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 4);
+			glyphTexture = new Texture(textureId, textureWidth, textureHeight);
+		}
+		return glyphTexture;
+	}
+	
+	private static int roundUpToPowerOfTwo(final int value) {
+		return (value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1);
+	}
 
 	/**
 	 * Returns the font atlas image.
@@ -127,6 +229,14 @@ public abstract class Font {
 	 */
 	protected abstract int getImageWidth();
 	
+	/**
+	 * Returns the height of the font atlas image
+	 * @return the image height
+	 */
+	protected int getImageHeight() {
+		return getImage().limit() / getImageWidth();
+	}
+	
 	/**
 	 * Determines the character index for the specified character.
 	 * May return -1 to indicate a character that is not supported by this font.
@@ -170,4 +280,44 @@ public abstract class Font {
 	 */
 	public abstract int getCharacterHeight();
 	
+	/**
+	 * Identifies a laid-out string.
+	 */
+	private static final class LayoutKey {
+
+		private String s;
+		private float zoom;
+		private int horizontalAlignment;
+		private int verticalAlignment;
+
+		void set(final String s, final float zoom, final int horizontalAlignment, final int verticalAlignment) {
+			this.s = s;
+			this.zoom = zoom;
+			this.horizontalAlignment = horizontalAlignment;
+			this.verticalAlignment = verticalAlignment;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof LayoutKey)) {
+				return false;
+			}
+			LayoutKey other = (LayoutKey)obj;
+			return s.equals(other.s) && Float.floatToIntBits(zoom) == Float.floatToIntBits(other.zoom)
+				&& horizontalAlignment == other.horizontalAlignment && verticalAlignment == other.verticalAlignment;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return ((s.hashCode() * 31 + Float.floatToIntBits(zoom)) * 31 + horizontalAlignment) * 31 + verticalAlignment;
+		}
+
+	}
+	
 }
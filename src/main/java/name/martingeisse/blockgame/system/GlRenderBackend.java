@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2010 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.system;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+
+/**
+ * Executes render commands with OpenGL. Consecutive quads are drawn within a single glBegin() / glEnd() pair, and
+ * the vertex array state is only set up once for consecutive vertex buffer draws.
+ *
+ * Must be used on the render thread. Vertex buffers require OpenGL 1.5.
+ */
+public final class GlRenderBackend implements RenderBackend {
+
+	/**
+	 * The distance between two vertices of a vertex buffer in bytes.
+	 */
+	private static final int VERTEX_STRIDE = 16;
+
+	/**
+	 * The offset of the texture coordinates within a vertex of a vertex buffer in bytes.
+	 */
+	private static final int TEXTURE_COORDINATE_OFFSET = 8;
+
+	/**
+	 * whether glBegin() has been called without a matching glEnd()
+	 */
+	private boolean drawingQuads;
+
+	/**
+	 * whether the vertex and texture coordinate arrays are enabled
+	 */
+	private boolean vertexArraysEnabled;
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#begin()
+	 */
+	@Override
+	public void begin() {
+		GL11.glEnable(GL11.GL_TEXTURE_2D);
+		GL11.glColor4ub((byte)255, (byte)255, (byte)255, (byte)255);
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#clearScreen(int)
+	 */
+	@Override
+	public void clearScreen(int rgba) {
+		finishDrawing();
+		GL11.glClearColor((rgba >>> 24) / 255.0f, ((rgba >> 16) & 0xff) / 255.0f, ((rgba >> 8) & 0xff) / 255.0f, (rgba & 0xff) / 255.0f);
+		GL11.glClear(GL11.GL_COLOR_BUFFER_BIT);
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#setProjection(float, float, float, float)
+	 */
+	@Override
+	public void setProjection(float left, float right, float bottom, float top) {
+		finishDrawing();
+		GL11.glMatrixMode(GL11.GL_PROJECTION);
+		GL11.glLoadIdentity();
+		GL11.glOrtho(left, right, bottom, top, -1, 1);
+		GL11.glMatrixMode(GL11.GL_MODELVIEW);
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#setTranslation(float, float)
+	 */
+	@Override
+	public void setTranslation(float x, float y) {
+		finishDrawing();
+		GL11.glMatrixMode(GL11.GL_MODELVIEW);
+		GL11.glLoadIdentity();
+		GL11.glTranslatef(x, y, 0.0f);
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#setBlending(boolean)
+	 */
+	@Override
+	public void setBlending(boolean blending) {
+		finishDrawing();
+		if (blending) {
+			GL11.glEnable(GL11.GL_BLEND);
+			GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+		} else {
+			GL11.glDisable(GL11.GL_BLEND);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#setColor(int)
+	 */
+	@Override
+	public void setColor(int rgba) {
+		// allowed between glBegin() and glEnd()
+		GL11.glColor4ub((byte)(rgba >>> 24), (byte)(rgba >> 16), (byte)(rgba >> 8), (byte)rgba);
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#bindTexture(name.martingeisse.blockgame.system.Texture)
+	 */
+	@Override
+	public void bindTexture(Texture texture) {
+		endQuads();
+		texture.glBindTexture();
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#drawQuad(float, float, float, float, float, float, float, float)
+	 */
+	@Override
+	public void drawQuad(float minX, float minY, float maxX, float maxY, float minU, float minV, float maxU, float maxV) {
+		if (!drawingQuads) {
+			disableVertexArrays();
+			GL11.glBegin(GL11.GL_QUADS);
+			drawingQuads = true;
+		}
+		GL11.glTexCoord2f(minU, maxV);
+		GL11.glVertex2f(minX, minY);
+		GL11.glTexCoord2f(maxU, maxV);
+		GL11.glVertex2f(maxX, minY);
+		GL11.glTexCoord2f(maxU, minV);
+		GL11.glVertex2f(maxX, maxY);
+		GL11.glTexCoord2f(minU, minV);
+		GL11.glVertex2f(minX, maxY);
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#drawVertexBuffer(int, int, int)
+	 */
+	@Override
+	public void drawVertexBuffer(int bufferId, int firstVertex, int vertexCount) {
+		endQuads();
+		if (!vertexArraysEnabled) {
+			GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+			GL11.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+			vertexArraysEnabled = true;
+		}
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, bufferId);
+		GL11.glVertexPointer(2, GL11.GL_FLOAT, VERTEX_STRIDE, 0);
+		GL11.glTexCoordPointer(2, GL11.GL_FLOAT, VERTEX_STRIDE, TEXTURE_COORDINATE_OFFSET);
+		GL11.glDrawArrays(GL11.GL_QUADS, firstVertex, vertexCount);
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#barrier()
+	 */
+	@Override
+	public void barrier() {
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#end()
+	 */
+	@Override
+	public void end() {
+		finishDrawing();
+	}
+
+	private void finishDrawing() {
+		endQuads();
+		disableVertexArrays();
+	}
+
+	private void endQuads() {
+		if (drawingQuads) {
+			GL11.glEnd();
+			drawingQuads = false;
+		}
+	}
+
+	private void disableVertexArrays() {
+		if (vertexArraysEnabled) {
+			GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+			GL11.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+			GL11.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+			vertexArraysEnabled = false;
+		}
+	}
+
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2010 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.system;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A render backend that does not draw anything, but counts the commands it is given, so the work done by draw code
+ * can be inspected and measured without an OpenGL context. The counters are reset at the beginning of each replay.
+ */
+public final class HeadlessRenderBackend implements RenderBackend {
+
+	/**
+	 * The number of commands per opcode.
+	 */
+	private final int[] commandCounts = new int[RenderCommandBuffer.OPCODE_COUNT];
+
+	/**
+	 * The number of quads drawn with each texture.
+	 */
+	private final Map<Texture, int[]> quadCountsByTexture = new HashMap<>();
+
+	/**
+	 * the currently bound texture
+	 */
+	private Texture boundTexture;
+
+	/**
+	 * the number of vertices drawn from vertex buffers
+	 */
+	private long vertexBufferVertexCount;
+
+	/**
+	 * the total area covered by quads, in world units
+	 */
+	private double quadArea;
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#begin()
+	 */
+	@Override
+	public void begin() {
+		Arrays.fill(commandCounts, 0);
+		quadCountsByTexture.clear();
+		boundTexture = null;
+		vertexBufferVertexCount = 0;
+		quadArea = 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#clearScreen(int)
+	 */
+	@Override
+	public void clearScreen(int rgba) {
+		commandCounts[RenderCommandBuffer.CLEAR_SCREEN]++;
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#setProjection(float, float, float, float)
+	 */
+	@Override
+	public void setProjection(float left, float right, float bottom, float top) {
+		commandCounts[RenderCommandBuffer.SET_PROJECTION]++;
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#setTranslation(float, float)
+	 */
+	@Override
+	public void setTranslation(float x, float y) {
+		commandCounts[RenderCommandBuffer.SET_TRANSLATION]++;
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#setBlending(boolean)
+	 */
+	@Override
+	public void setBlending(boolean blending) {
+		commandCounts[RenderCommandBuffer.SET_BLENDING]++;
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#setColor(int)
+	 */
+	@Override
+	public void setColor(int rgba) {
+		commandCounts[RenderCommandBuffer.SET_COLOR]++;
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#bindTexture(name.martingeisse.blockgame.system.Texture)
+	 */
+	@Override
+	public void bindTexture(Texture texture) {
+		commandCounts[RenderCommandBuffer.BIND_TEXTURE]++;
+		boundTexture = texture;
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#drawQuad(float, float, float, float, float, float, float, float)
+	 */
+	@Override
+	public void drawQuad(float minX, float minY, float maxX, float maxY, float minU, float minV, float maxU, float maxV) {
+		commandCounts[RenderCommandBuffer.QUAD]++;
+		quadArea += (double)(maxX - minX) * (maxY - minY);
+		if (boundTexture != null) {
+			int[] count = quadCountsByTexture.get(boundTexture);
+			if (count == null) {
+				count = new int[1];
+				quadCountsByTexture.put(boundTexture, count);
+			}
+			count[0]++;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#drawVertexBuffer(int, int, int)
+	 */
+	@Override
+	public void drawVertexBuffer(int bufferId, int firstVertex, int vertexCount) {
+		commandCounts[RenderCommandBuffer.DRAW_VERTEX_BUFFER]++;
+		vertexBufferVertexCount += vertexCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#barrier()
+	 */
+	@Override
+	public void barrier() {
+		commandCounts[RenderCommandBuffer.BARRIER]++;
+	}
+
+	/* (non-Javadoc)
+	 * @see name.martingeisse.blockgame.system.RenderBackend#end()
+	 */
+	@Override
+	public void end() {
+	}
+
+	/**
+	 * Returns the number of commands of the last replay with the specified opcode.
+	 *
+	 * @param opcode the opcode (see {@link RenderCommandBuffer})
+	 * @return the number of commands
+	 */
+	public int getCommandCount(int opcode) {
+		return commandCounts[opcode];
+	}
+
+	/**
+	 * Returns the number of quads of the last replay.
+	 *
+	 * @return the number of quads
+	 */
+	public int getQuadCount() {
+		return commandCounts[RenderCommandBuffer.QUAD];
+	}
+
+	/**
+	 * Returns the number of quads of the last replay that were drawn with the specified texture.
+	 *
+	 * @param texture the texture
+	 * @return the number of quads
+	 */
+	public int getQuadCount(Texture texture) {
+		int[] count = quadCountsByTexture.get(texture);
+		return (count == null ? 0 : count[0]);
+	}
+
+	/**
+	 * Returns the number of texture binds of the last replay.
+	 *
+	 * @return the number of texture binds
+	 */
+	public int getTextureBindCount() {
+		return commandCounts[RenderCommandBuffer.BIND_TEXTURE];
+	}
+
+	/**
+	 * Returns the number of distinct textures that quads were drawn with in the last replay.
+	 *
+	 * @return the number of textures
+	 */
+	public int getQuadTextureCount() {
+		return quadCountsByTexture.size();
+	}
+
+	/**
+	 * Returns the number of vertices drawn from vertex buffers in the last replay.
+	 *
+	 * @return the number of vertices
+	 */
+	public long getVertexBufferVertexCount() {
+		return vertexBufferVertexCount;
+	}
+
+	/**
+	 * Returns the total area covered by the quads of the last replay, in world units, which is a measure for the
+	 * fill rate they need.
+	 *
+	 * @return the area
+	 */
+	public double getQuadArea() {
+		return quadArea;
+	}
+
+}
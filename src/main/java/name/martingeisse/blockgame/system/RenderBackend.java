@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2010 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.system;
+
+/**
+ * Executes the commands of a {@link RenderCommandBuffer}. Each method corresponds to one kind of command; see the
+ * recording methods of the command buffer for their meaning. A replay starts with {@link #begin()} and ends with
+ * {@link #end()}.
+ */
+public interface RenderBackend {
+
+	/**
+	 * Called before the first command of a replay.
+	 */
+	public void begin();
+
+	/**
+	 * Clears the screen.
+	 *
+	 * @param rgba the color, packed as in {@link RenderCommandBuffer#packColor(int, int, int, int)}
+	 */
+	public void clearScreen(int rgba);
+
+	/**
+	 * Sets an orthographic projection.
+	 *
+	 * @param left the world x coordinate of the left screen edge, relative to the translation
+	 * @param right the world x coordinate of the right screen edge, relative to the translation
+	 * @param bottom the world y coordinate of the bottom screen edge, relative to the translation
+	 * @param top the world y coordinate of the top screen edge, relative to the translation
+	 */
+	public void setProjection(float left, float right, float bottom, float top);
+
+	/**
+	 * Sets the translation applied to all following vertices.
+	 *
+	 * @param x the x offset
+	 * @param y the y offset
+	 */
+	public void setTranslation(float x, float y);
+
+	/**
+	 * Turns alpha blending on or off.
+	 *
+	 * @param blending true for alpha blending, false for opaque drawing
+	 */
+	public void setBlending(boolean blending);
+
+	/**
+	 * Sets the color that textures are multiplied with.
+	 *
+	 * @param rgba the color, packed as in {@link RenderCommandBuffer#packColor(int, int, int, int)}
+	 */
+	public void setColor(int rgba);
+
+	/**
+	 * Binds a texture for the following quads and vertex buffers.
+	 *
+	 * @param texture the texture
+	 */
+	public void bindTexture(Texture texture);
+
+	/**
+	 * Draws a textured quad. The minimum v texture coordinate belongs to the top edge (maxY).
+	 *
+	 * @param minX the left edge
+	 * @param minY the bottom edge
+	 * @param maxX the right edge
+	 * @param maxY the top edge
+	 * @param minU the texture coordinate of the left edge
+	 * @param minV the texture coordinate of the top edge
+	 * @param maxU the texture coordinate of the right edge
+	 * @param maxV the texture coordinate of the bottom edge
+	 */
+	public void drawQuad(float minX, float minY, float maxX, float maxY, float minU, float minV, float maxU, float maxV);
+
+	/**
+	 * Draws quads from a vertex buffer object with the vertex layout of a section mesh (x, y, u, v as floats).
+	 *
+	 * @param bufferId the OpenGL buffer name
+	 * @param firstVertex the index of the first vertex to draw
+	 * @param vertexCount the number of vertices to draw
+	 */
+	public void drawVertexBuffer(int bufferId, int firstVertex, int vertexCount);
+
+	/**
+	 * Separates quads that must be drawn in order, e.g. because they overlap. Does nothing when drawing.
+	 */
+	public void barrier();
+
+	/**
+	 * Called after the last command of a replay.
+	 */
+	public void end();
+
+}
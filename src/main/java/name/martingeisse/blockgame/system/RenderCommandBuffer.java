@@ -0,0 +1,474 @@
+/**
+ * Copyright (c) 2010 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.system;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records drawing commands so they can be inspected, reordered and then executed by a {@link RenderBackend}. Draw
+ * code writes into a buffer instead of calling OpenGL directly, so it can also run without an OpenGL context.
+ *
+ * Commands are stored in a single int array: an opcode followed by its arguments, with float arguments stored as
+ * their raw bits. Textures are stored in a separate table and referred to by index. A buffer is meant to be reused
+ * for each frame: {@link #reset()} keeps the allocated arrays.
+ *
+ * Quads that overlap must be separated by a state change or a {@link #barrier()}, so that
+ * {@link #sortQuadsByTexture()} does not change their order.
+ */
+public final class RenderCommandBuffer {
+
+	/**
+	 * Opcode for clearing the screen. Argument: color.
+	 */
+	public static final int CLEAR_SCREEN = 1;
+
+	/**
+	 * Opcode for setting the projection. Arguments: left, right, bottom, top as floats.
+	 */
+	public static final int SET_PROJECTION = 2;
+
+	/**
+	 * Opcode for setting the translation. Arguments: x, y as floats.
+	 */
+	public static final int SET_TRANSLATION = 3;
+
+	/**
+	 * Opcode for turning alpha blending on or off. Argument: 1 for on, 0 for off.
+	 */
+	public static final int SET_BLENDING = 4;
+
+	/**
+	 * Opcode for setting the color. Argument: color.
+	 */
+	public static final int SET_COLOR = 5;
+
+	/**
+	 * Opcode for binding a texture. Argument: texture index.
+	 */
+	public static final int BIND_TEXTURE = 6;
+
+	/**
+	 * Opcode for drawing a quad. Arguments: minX, minY, maxX, maxY, minU, minV, maxU, maxV as floats.
+	 */
+	public static final int QUAD = 7;
+
+	/**
+	 * Opcode for drawing from a vertex buffer. Arguments: buffer id, first vertex, vertex count.
+	 */
+	public static final int DRAW_VERTEX_BUFFER = 8;
+
+	/**
+	 * Opcode for a barrier. No arguments.
+	 */
+	public static final int BARRIER = 9;
+
+	/**
+	 * The number of opcodes, which is also one more than the highest opcode.
+	 */
+	public static final int OPCODE_COUNT = 10;
+
+	/**
+	 * The number of ints used by each command, including the opcode, by opcode.
+	 */
+	private static final int[] COMMAND_SIZES = {0, 2, 5, 3, 2, 2, 2, 9, 4, 1};
+
+	/**
+	 * The packed color for opaque white.
+	 */
+	public static final int WHITE = packColor(255, 255, 255, 255);
+
+	private int[] commands = new int[4096];
+	private int[] sortedCommands = new int[0];
+	private int size;
+	private int commandCount;
+	private Texture[] textures = new Texture[16];
+	private int textureCount;
+	private final Map<Texture, Integer> textureIndices = new HashMap<>();
+	private int boundTexture = -1;
+	private int[] quadPositions = new int[0];
+	private int[] quadTextures = new int[0];
+	private int[] sortedQuadPositions = new int[0];
+	private int[] sortedQuadTextures = new int[0];
+	private int[] textureQuadCounts = new int[0];
+
+	/**
+	 * Packs a color into an int, with red in the highest and alpha in the lowest byte.
+	 *
+	 * @param red the red component (0..255)
+	 * @param green the green component (0..255)
+	 * @param blue the blue component (0..255)
+	 * @param alpha the alpha component (0..255)
+	 * @return the packed color
+	 */
+	public static int packColor(int red, int green, int blue, int alpha) {
+		return (red << 24) | ((green & 0xff) << 16) | ((blue & 0xff) << 8) | (alpha & 0xff);
+	}
+
+	/**
+	 * Removes all commands and textures.
+	 */
+	public void reset() {
+		size = 0;
+		commandCount = 0;
+		Arrays.fill(textures, 0, textureCount, null);
+		textureCount = 0;
+		textureIndices.clear();
+		boundTexture = -1;
+	}
+
+	/**
+	 * Records a command to clear the screen.
+	 *
+	 * @param rgba the color, see {@link #packColor(int, int, int, int)}
+	 */
+	public void clearScreen(int rgba) {
+		int position = beginCommand(CLEAR_SCREEN);
+		commands[position + 1] = rgba;
+	}
+
+	/**
+	 * Records a command to set an orthographic projection.
+	 *
+	 * @param left the world x coordinate of the left screen edge, relative to the translation
+	 * @param right the world x coordinate of the right screen edge, relative to the translation
+	 * @param bottom the world y coordinate of the bottom screen edge, relative to the translation
+	 * @param top the world y coordinate of the top screen edge, relative to the translation
+	 */
+	public void setProjection(float left, float right, float bottom, float top) {
+		int position = beginCommand(SET_PROJECTION);
+		commands[position + 1] = Float.floatToRawIntBits(left);
+		commands[position + 2] = Float.floatToRawIntBits(right);
+		commands[position + 3] = Float.floatToRawIntBits(bottom);
+		commands[position + 4] = Float.floatToRawIntBits(top);
+	}
+
+	/**
+	 * Records a command to set the translation applied to all following vertices.
+	 *
+	 * @param x the x offset
+	 * @param y the y offset
+	 */
+	public void setTranslation(float x, float y) {
+		int position = beginCommand(SET_TRANSLATION);
+		commands[position + 1] = Float.floatToRawIntBits(x);
+		commands[position + 2] = Float.floatToRawIntBits(y);
+	}
+
+	/**
+	 * Records a command to turn alpha blending on or off.
+	 *
+	 * @param blending true for alpha blending, false for opaque drawing
+	 */
+	public void setBlending(boolean blending) {
+		int position = beginCommand(SET_BLENDING);
+		commands[position + 1] = (blending ? 1 : 0);
+	}
+
+	/**
+	 * Records a command to set the color that textures are multiplied with.
+	 *
+	 * @param rgba the color, see {@link #packColor(int, int, int, int)}
+	 */
+	public void setColor(int rgba) {
+		int position = beginCommand(SET_COLOR);
+		commands[position + 1] = rgba;
+	}
+
+	/**
+	 * Records a command to bind a texture, unless it is bound already.
+	 *
+	 * @param texture the texture
+	 */
+	public void bindTexture(Texture texture) {
+		Integer index = textureIndices.get(texture);
+		if (index == null) {
+			if (textureCount == textures.length) {
+				textures = Arrays.copyOf(textures, 2 * textureCount);
+			}
+			index = textureCount;
+			textures[textureCount] = texture;
+			textureCount++;
+			textureIndices.put(texture, index);
+		}
+		if (index != boundTexture) {
+			int position = beginCommand(BIND_TEXTURE);
+			commands[position + 1] = index;
+			boundTexture = index;
+		}
+	}
+
+	/**
+	 * Records a command to draw a quad that shows a whole texture.
+	 *
+	 * @param centerX the x position of the center
+	 * @param centerY the y position of the center
+	 * @param radius half the width and height
+	 */
+	public void drawQuad(float centerX, float centerY, float radius) {
+		drawQuad(centerX - radius, centerY - radius, centerX + radius, centerY + radius, 0.0f, 0.0f, 1.0f, 1.0f);
+	}
+
+	/**
+	 * Records a command to draw a textured quad. The minimum v texture coordinate belongs to the top edge (maxY).
+	 *
+	 * @param minX the left edge
+	 * @param minY the bottom edge
+	 * @param maxX the right edge
+	 * @param maxY the top edge
+	 * @param minU the texture coordinate of the left edge
+	 * @param minV the texture coordinate of the top edge
+	 * @param maxU the texture coordinate of the right edge
+	 * @param maxV the texture coordinate of the bottom edge
+	 */
+	public void drawQuad(float minX, float minY, float maxX, float maxY, float minU, float minV, float maxU, float maxV) {
+		int position = beginCommand(QUAD);
+		commands[position + 1] = Float.floatToRawIntBits(minX);
+		commands[position + 2] = Float.floatToRawIntBits(minY);
+		commands[position + 3] = Float.floatToRawIntBits(maxX);
+		commands[position + 4] = Float.floatToRawIntBits(maxY);
+		commands[position + 5] = Float.floatToRawIntBits(minU);
+		commands[position + 6] = Float.floatToRawIntBits(minV);
+		commands[position + 7] = Float.floatToRawIntBits(maxU);
+		commands[position + 8] = Float.floatToRawIntBits(maxV);
+	}
+
+	/**
+	 * Records a command to draw quads from a vertex buffer object with the vertex layout of a section mesh.
+	 *
+	 * @param bufferId the OpenGL buffer name
+	 * @param firstVertex the index of the first vertex to draw
+	 * @param vertexCount the number of vertices to draw
+	 */
+	public void drawVertexBuffer(int bufferId, int firstVertex, int vertexCount) {
+		int position = beginCommand(DRAW_VERTEX_BUFFER);
+		commands[position + 1] = bufferId;
+		commands[position + 2] = firstVertex;
+		commands[position + 3] = vertexCount;
+	}
+
+	/**
+	 * Records a barrier, which keeps {@link #sortQuadsByTexture()} from moving quads across it.
+	 */
+	public void barrier() {
+		beginCommand(BARRIER);
+	}
+
+	private int beginCommand(int opcode) {
+		int position = size;
+		int newSize = size + COMMAND_SIZES[opcode];
+		if (newSize > commands.length) {
+			commands = Arrays.copyOf(commands, Math.max(newSize, 2 * commands.length));
+		}
+		commands[position] = opcode;
+		size = newSize;
+		commandCount++;
+		return position;
+	}
+
+	/**
+	 * Returns the number of recorded commands.
+	 *
+	 * @return the number of commands
+	 */
+	public int getCommandCount() {
+		return commandCount;
+	}
+
+	/**
+	 * Returns the number of ints used by the recorded commands.
+	 *
+	 * @return the size
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of distinct textures used by the recorded commands.
+	 *
+	 * @return the number of textures
+	 */
+	public int getTextureCount() {
+		return textureCount;
+	}
+
+	/**
+	 * Reorders the quads so that each texture is bound at most once per batch. A batch is a sequence of quads and
+	 * texture binds that is not interrupted by any other command. Quads with the same texture keep their order,
+	 * and the texture that is bound after each batch stays the same.
+	 */
+	public void sortQuadsByTexture() {
+		if (sortedCommands.length < commands.length) {
+			sortedCommands = new int[commands.length];
+		}
+		if (textureQuadCounts.length < textureCount + 1) {
+			textureQuadCounts = new int[textureCount + 1];
+		}
+		int sortedSize = 0;
+		int sortedCommandCount = 0;
+		int position = 0;
+		int bound = -1;
+		while (position < size) {
+			int opcode = commands[position];
+			if (opcode != QUAD && opcode != BIND_TEXTURE) {
+				int commandSize = COMMAND_SIZES[opcode];
+				System.arraycopy(commands, position, sortedCommands, sortedSize, commandSize);
+				sortedSize += commandSize;
+				sortedCommandCount++;
+				position += commandSize;
+				continue;
+			}
+
+			// collect the quads of the batch and the texture each one is drawn with
+			int incoming = bound;
+			int quadCount = 0;
+			while (position < size && (commands[position] == QUAD || commands[position] == BIND_TEXTURE)) {
+				if (commands[position] == BIND_TEXTURE) {
+					bound = commands[position + 1];
+					position += COMMAND_SIZES[BIND_TEXTURE];
+				} else {
+					if (quadCount == quadPositions.length) {
+						quadPositions = Arrays.copyOf(quadPositions, Math.max(256, 2 * quadCount));
+						quadTextures = Arrays.copyOf(quadTextures, quadPositions.length);
+					}
+					quadPositions[quadCount] = position;
+					quadTextures[quadCount] = bound;
+					quadCount++;
+					position += COMMAND_SIZES[QUAD];
+				}
+			}
+
+			// Sort the quads by texture, keeping their order otherwise. The texture that was bound before the batch
+			// comes first, so it needs no bind, and the one that is bound after the batch comes last, so it needs no
+			// bind to restore it. This way, the sorted batch never needs more binds than the original one.
+			Arrays.fill(textureQuadCounts, 0, textureCount + 1, 0);
+			for (int i = 0; i < quadCount; i++) {
+				textureQuadCounts[quadTextures[i] + 1]++;
+			}
+			int quadPosition = 0;
+			quadPosition = assignGroupStart(incoming, quadPosition);
+			for (int texture = 0; texture < textureCount; texture++) {
+				if (texture != incoming && texture != bound) {
+					quadPosition = assignGroupStart(texture, quadPosition);
+				}
+			}
+			if (bound != incoming) {
+				assignGroupStart(bound, quadPosition);
+			}
+			if (sortedQuadPositions.length < quadCount) {
+				sortedQuadPositions = new int[quadPositions.length];
+				sortedQuadTextures = new int[quadPositions.length];
+			}
+			for (int i = 0; i < quadCount; i++) {
+				int sortedIndex = textureQuadCounts[quadTextures[i] + 1]++;
+				sortedQuadPositions[sortedIndex] = quadPositions[i];
+				sortedQuadTextures[sortedIndex] = quadTextures[i];
+			}
+
+			// write the sorted batch
+			int current = incoming;
+			for (int i = 0; i < quadCount; i++) {
+				if (sortedQuadTextures[i] != current) {
+					current = sortedQuadTextures[i];
+					sortedCommands[sortedSize] = BIND_TEXTURE;
+					sortedCommands[sortedSize + 1] = current;
+					sortedSize += COMMAND_SIZES[BIND_TEXTURE];
+					sortedCommandCount++;
+				}
+				System.arraycopy(commands, sortedQuadPositions[i], sortedCommands, sortedSize, COMMAND_SIZES[QUAD]);
+				sortedSize += COMMAND_SIZES[QUAD];
+				sortedCommandCount++;
+			}
+			if (bound != current) {
+				sortedCommands[sortedSize] = BIND_TEXTURE;
+				sortedCommands[sortedSize + 1] = bound;
+				sortedSize += COMMAND_SIZES[BIND_TEXTURE];
+				sortedCommandCount++;
+			}
+
+		}
+		int[] temp = commands;
+		commands = sortedCommands;
+		sortedCommands = temp;
+		size = sortedSize;
+		commandCount = sortedCommandCount;
+	}
+
+	/**
+	 * Turns the quad count of a texture group into the start position of the group in the sorted quads.
+	 */
+	private int assignGroupStart(int texture, int position) {
+		int count = textureQuadCounts[texture + 1];
+		textureQuadCounts[texture + 1] = position;
+		return position + count;
+	}
+
+	/**
+	 * Executes the recorded commands with a backend. The commands are kept, so they can be replayed again.
+	 *
+	 * @param backend the backend
+	 */
+	public void replay(RenderBackend backend) {
+		backend.begin();
+		int position = 0;
+		while (position < size) {
+			int opcode = commands[position];
+			switch (opcode) {
+
+			case CLEAR_SCREEN:
+				backend.clearScreen(commands[position + 1]);
+				break;
+
+			case SET_PROJECTION:
+				backend.setProjection(getFloat(position + 1), getFloat(position + 2), getFloat(position + 3), getFloat(position + 4));
+				break;
+
+			case SET_TRANSLATION:
+				backend.setTranslation(getFloat(position + 1), getFloat(position + 2));
+				break;
+
+			case SET_BLENDING:
+				backend.setBlending(commands[position + 1] != 0);
+				break;
+
+			case SET_COLOR:
+				backend.setColor(commands[position + 1]);
+				break;
+
+			case BIND_TEXTURE:
+				backend.bindTexture(textures[commands[position + 1]]);
+				break;
+
+			case QUAD:
+				backend.drawQuad(getFloat(position + 1), getFloat(position + 2), getFloat(position + 3), getFloat(position + 4),
+					getFloat(position + 5), getFloat(position + 6), getFloat(position + 7), getFloat(position + 8));
+				break;
+
+			case DRAW_VERTEX_BUFFER:
+				backend.drawVertexBuffer(commands[position + 1], commands[position + 2], commands[position + 3]);
+				break;
+
+			case BARRIER:
+				backend.barrier();
+				break;
+
+			default:
+				throw new IllegalStateException("invalid opcode: " + opcode);
+
+			}
+			position += COMMAND_SIZES[opcode];
+		}
+		backend.end();
+	}
+
+	private float getFloat(int position) {
+		return Float.intBitsToFloat(commands[position]);
+	}
+
+}
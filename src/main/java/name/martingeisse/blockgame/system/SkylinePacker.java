@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2010 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.system;
+
+import java.util.Arrays;
+
+/**
+ * Packs rectangles into a fixed-size area using the skyline bottom-left heuristic. The packer keeps the upper edge
+ * of the used area as a "skyline" of horizontal segments and puts each rectangle where its top edge ends up lowest,
+ * preferring the leftmost position among equal ones. Works best if the rectangles are packed tallest first.
+ *
+ * Coordinates start at (0, 0) in the corner where packing starts; whether that is the top or bottom of an image is
+ * up to the caller.
+ */
+public final class SkylinePacker {
+
+	/**
+	 * the width
+	 */
+	private final int width;
+
+	/**
+	 * the height
+	 */
+	private final int height;
+
+	/**
+	 * The x position of each skyline segment.
+	 */
+	private int[] segmentX;
+
+	/**
+	 * The y position of each skyline segment, i.e. the height of the used area below it.
+	 */
+	private int[] segmentY;
+
+	/**
+	 * The width of each skyline segment.
+	 */
+	private int[] segmentWidth;
+
+	/**
+	 * the segmentCount
+	 */
+	private int segmentCount;
+
+	/**
+	 * the lastX
+	 */
+	private int lastX;
+
+	/**
+	 * the lastY
+	 */
+	private int lastY;
+
+	/**
+	 * Constructor.
+	 * @param width the width of the area
+	 * @param height the height of the area
+	 */
+	public SkylinePacker(int width, int height) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("invalid area size: " + width + " x " + height);
+		}
+		this.width = width;
+		this.height = height;
+		this.segmentX = new int[16];
+		this.segmentY = new int[16];
+		this.segmentWidth = new int[16];
+		this.segmentWidth[0] = width;
+		this.segmentCount = 1;
+	}
+
+	/**
+	 * Getter method for the width.
+	 * @return the width
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Getter method for the height.
+	 * @return the height
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Packs a rectangle. On success, its position can be obtained from {@link #getLastX()} and {@link #getLastY()}.
+	 * @param rectangleWidth the width of the rectangle
+	 * @param rectangleHeight the height of the rectangle
+	 * @return true on success, false if the rectangle does not fit anymore
+	 */
+	public boolean pack(int rectangleWidth, int rectangleHeight) {
+		if (rectangleWidth <= 0 || rectangleHeight <= 0) {
+			throw new IllegalArgumentException("invalid rectangle size: " + rectangleWidth + " x " + rectangleHeight);
+		}
+
+		// find the position where the top edge of the rectangle is lowest
+		int bestSegment = -1;
+		int bestY = Integer.MAX_VALUE;
+		for (int i = 0; i < segmentCount; i++) {
+			int y = getFitY(i, rectangleWidth);
+			if (y >= 0 && y + rectangleHeight <= height && y < bestY) {
+				bestSegment = i;
+				bestY = y;
+			}
+		}
+		if (bestSegment < 0) {
+			return false;
+		}
+		lastX = segmentX[bestSegment];
+		lastY = bestY;
+
+		// the new segment on top of the rectangle replaces the covered part of the skyline
+		insertSegment(bestSegment, lastX, lastY + rectangleHeight, rectangleWidth);
+		int end = lastX + rectangleWidth;
+		int next = bestSegment + 1;
+		while (next < segmentCount && segmentX[next] < end) {
+			int overlap = end - segmentX[next];
+			if (overlap >= segmentWidth[next]) {
+				removeSegment(next);
+			} else {
+				segmentX[next] += overlap;
+				segmentWidth[next] -= overlap;
+				break;
+			}
+		}
+		mergeSegments();
+		return true;
+
+	}
+
+	/**
+	 * Returns the y position at which a rectangle of the specified width would rest if its left edge is placed at
+	 * the start of the specified segment, or -1 if it would stick out to the right.
+	 */
+	private int getFitY(int segment, int rectangleWidth) {
+		if (segmentX[segment] + rectangleWidth > width) {
+			return -1;
+		}
+		int y = 0;
+		int remainingWidth = rectangleWidth;
+		for (int i = segment; remainingWidth > 0; i++) {
+			y = Math.max(y, segmentY[i]);
+			remainingWidth -= segmentWidth[i];
+		}
+		return y;
+	}
+
+	private void insertSegment(int index, int x, int y, int newWidth) {
+		if (segmentCount == segmentX.length) {
+			segmentX = Arrays.copyOf(segmentX, 2 * segmentCount);
+			segmentY = Arrays.copyOf(segmentY, 2 * segmentCount);
+			segmentWidth = Arrays.copyOf(segmentWidth, 2 * segmentCount);
+		}
+		System.arraycopy(segmentX, index, segmentX, index + 1, segmentCount - index);
+		System.arraycopy(segmentY, index, segmentY, index + 1, segmentCount - index);
+		System.arraycopy(segmentWidth, index, segmentWidth, index + 1, segmentCount - index);
+		segmentX[index] = x;
+		segmentY[index] = y;
+		segmentWidth[index] = newWidth;
+		segmentCount++;
+	}
+
+	private void removeSegment(int index) {
+		System.arraycopy(segmentX, index + 1, segmentX, index, segmentCount - index - 1);
+		System.arraycopy(segmentY, index + 1, segmentY, index, segmentCount - index - 1);
+		System.arraycopy(segmentWidth, index + 1, segmentWidth, index, segmentCount - index - 1);
+		segmentCount--;
+	}
+
+	private void mergeSegments() {
+		for (int i = 0; i < segmentCount - 1; i++) {
+			if (segmentY[i] == segmentY[i + 1]) {
+				segmentWidth[i] += segmentWidth[i + 1];
+				removeSegment(i + 1);
+				i--;
+			}
+		}
+	}
+
+	/**
+	 * Returns the x position of the rectangle packed by the last successful call to {@link #pack(int, int)}.
+	 * @return the x position
+	 */
+	public int getLastX() {
+		return lastX;
+	}
+
+	/**
+	 * Returns the y position of the rectangle packed by the last successful call to {@link #pack(int, int)}.
+	 * @return the y position
+	 */
+	public int getLastY() {
+		return lastY;
+	}
+
+}
@@ -14,9 +14,19 @@ import org.lwjgl.opengl.GL11;
 public final class Texture {
 
 	/**
-	 * the slickTexture
+	 * the textureId
 	 */
-	private final org.newdawn.slick.opengl.Texture slickTexture;
+	private final int textureId;
+
+	/**
+	 * the width
+	 */
+	private final int width;
+
+	/**
+	 * the height
+	 */
+	private final int height;
 	
 	/**
 	 * Constructor.
@@ -27,7 +37,33 @@ public final class Texture {
 	 * @param slickTexture the wrapped Slick texture
 	 */
 	public Texture(final org.newdawn.slick.opengl.Texture slickTexture) {
-		this.slickTexture = slickTexture;
+		this(slickTexture.getTextureID(), slickTexture.getImageWidth(), slickTexture.getImageHeight());
+	}
+
+	/**
+	 * Constructor for a texture that has been created directly through OpenGL.
+	 * 
+	 * Note that this constructor changes the currently active texture unit
+	 * to GL_TEXTURE_2D to set the texture parameters.
+	 * 
+	 * @param textureId the OpenGL texture name
+	 * @param width the width of the image in pixels
+	 * @param height the height of the image in pixels
+	 */
+	public Texture(final int textureId, final int width, final int height) {
+		this(textureId, width, height, true);
+	}
+
+	/**
+	 * Constructor.
+	 */
+	private Texture(final int textureId, final int width, final int height, final boolean configure) {
+		this.textureId = textureId;
+		this.width = width;
+		this.height = height;
+		if (!configure) {
+			return;
+		}
 		glBindTexture();
 		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
 		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
@@ -35,11 +71,46 @@ public final class Texture {
 		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL11.GL_CLAMP);
 	}
 
+	/**
+	 * Creates a texture object that does not refer to an actual OpenGL texture, for drawing into a
+	 * {@link RenderCommandBuffer} that is not replayed with OpenGL. Does not use OpenGL.
+	 * 
+	 * @param width the width of the image in pixels
+	 * @param height the height of the image in pixels
+	 * @return the texture
+	 */
+	public static Texture createPlaceholder(final int width, final int height) {
+		return new Texture(0, width, height, false);
+	}
+
 	/**
 	 * Calls glBindTexture() on this texture.
 	 */
 	public void glBindTexture() {
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, slickTexture.getTextureID());
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureId);
+	}
+	
+	/**
+	 * Sets whether this texture repeats for texture coordinates outside the range 0..1, so a single quad can show
+	 * it several times. Textures do not repeat by default.
+	 * 
+	 * Note that this method binds the texture.
+	 * 
+	 * @param repeating true to repeat, false to clamp
+	 */
+	public void setRepeating(final boolean repeating) {
+		int wrapMode = (repeating ? GL11.GL_REPEAT : GL11.GL_CLAMP);
+		glBindTexture();
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, wrapMode);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, wrapMode);
+	}
+	
+	/**
+	 * Getter method for the OpenGL texture name.
+	 * @return the texture name
+	 */
+	public int getTextureId() {
+		return textureId;
 	}
 	
 	/**
@@ -47,7 +118,7 @@ public final class Texture {
 	 * @return the width
 	 */
 	public int getWidth() {
-		return slickTexture.getImageWidth();
+		return width;
 	}
 	
 	/**
@@ -55,7 +126,7 @@ public final class Texture {
 	 * @return the height
 	 */
 	public int getHeight() {
-		return slickTexture.getImageHeight();
+		return height;
 	}
 	
 }
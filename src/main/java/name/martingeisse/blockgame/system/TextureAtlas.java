@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2010 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.system;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Many images combined into a single texture, so things that use different images can be drawn without switching
+ * textures. Built by a {@link TextureAtlasBuilder}. Each image is identified by an int handle, which gives access to
+ * the rectangle of texture coordinates that the image occupies. The v coordinate increases downwards in the
+ * images, i.e. the top of an image is at its minimum v.
+ *
+ * The atlas keeps its pixels in memory until the OpenGL texture is created on the first call to
+ * {@link #getTexture()}, which must happen on the render thread. Everything else works without OpenGL.
+ */
+public final class TextureAtlas {
+
+	/**
+	 * the width
+	 */
+	private final int width;
+
+	/**
+	 * the height
+	 */
+	private final int height;
+
+	/**
+	 * The handle of each image, by name.
+	 */
+	private final Map<String, Integer> handles;
+
+	/**
+	 * The texture coordinates of each image, as (minU, minV, maxU, maxV) per handle.
+	 */
+	private final float[] textureCoordinates;
+
+	/**
+	 * The pixels in ARGB format, row by row from the top, until uploaded.
+	 */
+	private int[] pixels;
+
+	/**
+	 * the texture
+	 */
+	private Texture texture;
+
+	/**
+	 * Constructor.
+	 */
+	TextureAtlas(int width, int height, Map<String, Integer> handles, float[] textureCoordinates, int[] pixels) {
+		this.width = width;
+		this.height = height;
+		this.handles = handles;
+		this.textureCoordinates = textureCoordinates;
+		this.pixels = pixels;
+	}
+
+	/**
+	 * Getter method for the width.
+	 * @return the width in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Getter method for the height.
+	 * @return the height in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the number of images in this atlas. Handles range from 0 to this number minus one.
+	 * @return the number of images
+	 */
+	public int getImageCount() {
+		return textureCoordinates.length / 4;
+	}
+
+	/**
+	 * Returns the handle of an image.
+	 * @param name the name the image was added with
+	 * @return the handle, or -1 if this atlas has no image with that name
+	 */
+	public int getHandle(String name) {
+		Integer handle = handles.get(name);
+		return (handle == null ? -1 : handle);
+	}
+
+	/**
+	 * Returns the minimum u texture coordinate (left edge) of an image.
+	 * @param handle the image handle
+	 * @return the texture coordinate
+	 */
+	public float getMinU(int handle) {
+		return textureCoordinates[4 * handle];
+	}
+
+	/**
+	 * Returns the minimum v texture coordinate (top edge) of an image.
+	 * @param handle the image handle
+	 * @return the texture coordinate
+	 */
+	public float getMinV(int handle) {
+		return textureCoordinates[4 * handle + 1];
+	}
+
+	/**
+	 * Returns the maximum u texture coordinate (right edge) of an image.
+	 * @param handle the image handle
+	 * @return the texture coordinate
+	 */
+	public float getMaxU(int handle) {
+		return textureCoordinates[4 * handle + 2];
+	}
+
+	/**
+	 * Returns the maximum v texture coordinate (bottom edge) of an image.
+	 * @param handle the image handle
+	 * @return the texture coordinate
+	 */
+	public float getMaxV(int handle) {
+		return textureCoordinates[4 * handle + 3];
+	}
+
+	/**
+	 * Returns a pixel of the atlas image. Only available until the texture has been created.
+	 * @param x the x position
+	 * @param y the y position, from the top
+	 * @return the pixel in ARGB format
+	 */
+	public int getPixel(int x, int y) {
+		if (pixels == null) {
+			throw new IllegalStateException("the pixels have been released after creating the texture");
+		}
+		return pixels[y * width + x];
+	}
+
+	/**
+	 * Returns the OpenGL texture of this atlas, creating it on the first call. Must be called on the render thread.
+	 * @return the texture
+	 */
+	public Texture getTexture() {
+		if (texture == null) {
+			ByteBuffer buffer = BufferUtils.createByteBuffer(width * height * 4);
+			for (int pixel : pixels) {
+				buffer.put((byte)(pixel >> 16)).put((byte)(pixel >> 8)).put((byte)pixel).put((byte)(pixel >> 24));
+			}
+			buffer.flip();
+			int textureId = GL11.glGenTextures();
+			GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureId);
+			GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 4);
+			GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA8, width, height, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, buffer);
+			texture = new Texture(textureId, width, height);
+			pixels = null;
+		}
+		return texture;
+	}
+
+}
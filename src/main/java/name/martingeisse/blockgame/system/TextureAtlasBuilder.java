@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2010 Martin Geisse
+ *
+ * This file is distributed under the terms of the MIT license.
+ */
+
+package name.martingeisse.blockgame.system;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Combines images into a {@link TextureAtlas}. The images are packed tallest first with a {@link SkylinePacker},
+ * into the smallest power-of-two size they fit in. Each image is surrounded by a border of padding pixels that
+ * repeat its edge pixels, so texture coordinates that are slightly off at the edges of an image, or filtering,
+ * do not pick up colors from neighboring images.
+ *
+ * Building does not use OpenGL.
+ */
+public final class TextureAtlasBuilder {
+
+	/**
+	 * The default padding in pixels.
+	 */
+	public static final int DEFAULT_PADDING = 2;
+
+	/**
+	 * The maximum width and height of an atlas.
+	 */
+	public static final int MAX_SIZE = 8192;
+
+	/**
+	 * the names
+	 */
+	private final List<String> names = new ArrayList<>();
+
+	/**
+	 * the images
+	 */
+	private final List<BufferedImage> images = new ArrayList<>();
+
+	/**
+	 * the padding
+	 */
+	private int padding = DEFAULT_PADDING;
+
+	/**
+	 * Getter method for the padding.
+	 * @return the padding in pixels
+	 */
+	public int getPadding() {
+		return padding;
+	}
+
+	/**
+	 * Setter method for the padding.
+	 * @param padding the padding in pixels
+	 */
+	public void setPadding(int padding) {
+		if (padding < 0) {
+			throw new IllegalArgumentException("invalid padding: " + padding);
+		}
+		this.padding = padding;
+	}
+
+	/**
+	 * Adds an image. Its handle in the atlas will be the number of images added before it.
+	 * @param name the name of the image
+	 * @param image the image
+	 */
+	public void add(String name, BufferedImage image) {
+		if (names.contains(name)) {
+			throw new IllegalArgumentException("duplicate image name: " + name);
+		}
+		names.add(name);
+		images.add(image);
+	}
+
+	/**
+	 * Builds the atlas from the images added so far.
+	 * @return the atlas
+	 */
+	public TextureAtlas build() {
+		int count = images.size();
+
+		// pack tallest first, then widest first
+		Integer[] order = new Integer[count];
+		long totalArea = 0;
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+			totalArea += (long)getPaddedWidth(i) * getPaddedHeight(i);
+		}
+		Arrays.sort(order, (a, b) -> getPaddedHeight(a) != getPaddedHeight(b) ? getPaddedHeight(b) - getPaddedHeight(a) : getPaddedWidth(b) - getPaddedWidth(a));
+
+		// start with the smallest size that has enough area, and grow until everything fits
+		int width = 1;
+		int height = 1;
+		while ((long)width * height < totalArea) {
+			if (width <= height) {
+				width *= 2;
+			} else {
+				height *= 2;
+			}
+		}
+		int[] x = new int[count];
+		int[] y = new int[count];
+		while (!pack(order, width, height, x, y)) {
+			if (width <= height) {
+				width *= 2;
+			} else {
+				height *= 2;
+			}
+			if (width > MAX_SIZE || height > MAX_SIZE) {
+				throw new IllegalStateException("images do not fit into a texture atlas of " + MAX_SIZE + " x " + MAX_SIZE);
+			}
+		}
+
+		// copy the images and compute their texture coordinates
+		int[] pixels = new int[width * height];
+		float[] textureCoordinates = new float[4 * count];
+		Map<String, Integer> handles = new HashMap<>();
+		for (int i = 0; i < count; i++) {
+			BufferedImage image = images.get(i);
+			copyPadded(image, pixels, width, x[i], y[i]);
+			int imageX = x[i] + padding;
+			int imageY = y[i] + padding;
+			textureCoordinates[4 * i] = (float)imageX / width;
+			textureCoordinates[4 * i + 1] = (float)imageY / height;
+			textureCoordinates[4 * i + 2] = (float)(imageX + image.getWidth()) / width;
+			textureCoordinates[4 * i + 3] = (float)(imageY + image.getHeight()) / height;
+			handles.put(names.get(i), i);
+		}
+		return new TextureAtlas(width, height, handles, textureCoordinates, pixels);
+
+	}
+
+	private int getPaddedWidth(int index) {
+		return images.get(index).getWidth() + 2 * padding;
+	}
+
+	private int getPaddedHeight(int index) {
+		return images.get(index).getHeight() + 2 * padding;
+	}
+
+	private boolean pack(Integer[] order, int width, int height, int[] x, int[] y) {
+		SkylinePacker packer = new SkylinePacker(width, height);
+		for (int index : order) {
+			if (!packer.pack(getPaddedWidth(index), getPaddedHeight(index))) {
+				return false;
+			}
+			x[index] = packer.getLastX();
+			y[index] = packer.getLastY();
+		}
+		return true;
+	}
+
+	/**
+	 * Copies an image into the atlas pixels, filling the padding with the nearest edge pixel of the image.
+	 */
+	private void copyPadded(BufferedImage image, int[] pixels, int atlasWidth, int x, int y) {
+		int imageWidth = image.getWidth();
+		int imageHeight = image.getHeight();
+		int[] row = new int[imageWidth];
+		for (int paddedY = 0; paddedY < imageHeight + 2 * padding; paddedY++) {
+			int imageY = Math.min(Math.max(paddedY - padding, 0), imageHeight - 1);
+			image.getRGB(0, imageY, imageWidth, 1, row, 0, imageWidth);
+			int rowStart = (y + paddedY) * atlasWidth + x;
+			for (int paddedX = 0; paddedX < imageWidth + 2 * padding; paddedX++) {
+				pixels[rowStart + paddedX] = row[Math.min(Math.max(paddedX - padding, 0), imageWidth - 1)];
+			}
+		}
+	}
+
+}
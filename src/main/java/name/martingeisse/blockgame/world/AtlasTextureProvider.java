@@ -0,0 +1,30 @@
+/**
+ * Copyright (c) 2013 Shopgate GmbH
+ */
+
+package name.martingeisse.blockgame.world;
+
+import name.martingeisse.blockgame.system.TextureAtlas;
+
+/**
+ * A {@link TextureProvider} whose block textures are also available as images in a texture atlas. Renderers that
+ * recognize this interface draw all blocks with a single texture bind.
+ */
+public interface AtlasTextureProvider extends TextureProvider {
+
+	/**
+	 * Returns the atlas that contains the block textures.
+	 *
+	 * @return the atlas, or null to fall back to the individual block textures
+	 */
+	public TextureAtlas getAtlas();
+
+	/**
+	 * Returns the handle of the atlas image for a block.
+	 *
+	 * @param blockValue the block value
+	 * @return the handle, or -1 if the block is not drawn
+	 */
+	public int getAtlasHandle(int blockValue);
+
+}
@@ -0,0 +1,19 @@
+package name.martingeisse.blockgame.world;
+
+/**
+ * Gets notified by a {@link Plane} whenever one of its blocks changes. Listeners are called synchronously from
+ * {@link Plane#setBlock(int, int, int)}, and only if the new value differs from the old one.
+ */
+public interface BlockChangeListener {
+
+	/**
+	 * Called after a block has changed.
+	 *
+	 * @param x        the x position of the block
+	 * @param y        the y position of the block
+	 * @param oldValue the previous block value
+	 * @param newValue the new block value
+	 */
+	public void onBlockChanged(int x, int y, int oldValue, int newValue);
+
+}
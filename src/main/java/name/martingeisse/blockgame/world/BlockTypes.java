@@ -0,0 +1,33 @@
+package name.martingeisse.blockgame.world;
+
+/**
+ * Static properties of the block types that can appear in a {@link Plane}.
+ */
+public final class BlockTypes {
+
+	private static final boolean[] blockSolid = {
+			true,
+			false,
+			false,
+			false,
+			true,
+			true,
+	};
+
+	/**
+	 * Prevent instantiation.
+	 */
+	private BlockTypes() {
+	}
+
+	/**
+	 * Checks whether a block type is solid. Unknown block types are solid.
+	 *
+	 * @param blockType the block type
+	 * @return true if solid, false if not
+	 */
+	public static boolean isSolid(int blockType) {
+		return blockType < 0 || blockType >= blockSolid.length || blockSolid[blockType];
+	}
+
+}
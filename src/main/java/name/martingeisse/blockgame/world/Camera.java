@@ -4,9 +4,13 @@
 
 package name.martingeisse.blockgame.world;
 
+import name.martingeisse.blockgame.geometry.RectangularRegion;
+import name.martingeisse.blockgame.system.GlRenderBackend;
+import name.martingeisse.blockgame.system.RenderBackend;
+import name.martingeisse.blockgame.system.RenderCommandBuffer;
 import name.martingeisse.blockgame.system.Texture;
-import org.lwjgl.opengl.Display;
-import org.lwjgl.opengl.GL11;
+import name.martingeisse.blockgame.world.render.RenderState;
+import name.martingeisse.blockgame.world.render.SectionRenderer;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -20,10 +24,16 @@ public final class Camera {
 
 	private Plane plane;
 	private float zoom = 1.0f;
+	private volatile float aspectRatio = 4.0f / 3.0f;
 	private float screenX = 0.0f;
 	private float screenY = 0.0f;
+	private float previousScreenX = 0.0f;
+	private float previousScreenY = 0.0f;
 	private TextureProvider textureProvider;
 	private Texture playerTexture;
+	private SectionRenderer sectionRenderer;
+	private final RenderCommandBuffer commandBuffer = new RenderCommandBuffer();
+	private RenderBackend renderBackend = new GlRenderBackend();
 
 	public Plane getPlane() {
 		return plane;
@@ -67,6 +77,7 @@ public final class Camera {
 	 */
 	public void setScreenX(float screenX) {
 		this.screenX = screenX;
+		this.previousScreenX = screenX;
 	}
 
 	/**
@@ -85,6 +96,25 @@ public final class Camera {
 	 */
 	public void setScreenY(float screenY) {
 		this.screenY = screenY;
+		this.previousScreenY = screenY;
+	}
+
+	/**
+	 * Returns the screen x position before the last camera movement, for interpolation.
+	 *
+	 * @return the previous screen x position
+	 */
+	public float getPreviousScreenX() {
+		return previousScreenX;
+	}
+
+	/**
+	 * Returns the screen y position before the last camera movement, for interpolation.
+	 *
+	 * @return the previous screen y position
+	 */
+	public float getPreviousScreenY() {
+		return previousScreenY;
 	}
 
 	public TextureProvider getTextureProvider() {
@@ -103,13 +133,72 @@ public final class Camera {
 		this.playerTexture = playerTexture;
 	}
 
+	/**
+	 * Getter method for the section renderer.
+	 *
+	 * @return the section renderer, or null if blocks are drawn in immediate mode
+	 */
+	public SectionRenderer getSectionRenderer() {
+		return sectionRenderer;
+	}
+
+	/**
+	 * Setter method for the section renderer. If set, blocks are drawn from per-section vertex buffers through it;
+	 * otherwise, they are drawn block by block in immediate mode.
+	 *
+	 * @param sectionRenderer the section renderer, or null
+	 */
+	public void setSectionRenderer(SectionRenderer sectionRenderer) {
+		this.sectionRenderer = sectionRenderer;
+	}
+
+	/**
+	 * Getter method for the render backend.
+	 *
+	 * @return the backend that executes the commands recorded by {@link #draw(double)}
+	 */
+	public RenderBackend getRenderBackend() {
+		return renderBackend;
+	}
+
+	/**
+	 * Setter method for the render backend. The default backend draws with OpenGL.
+	 *
+	 * @param renderBackend the backend that executes the commands recorded by {@link #draw(double)}
+	 */
+	public void setRenderBackend(RenderBackend renderBackend) {
+		this.renderBackend = renderBackend;
+	}
+
+	/**
+	 * Getter method for the aspect ratio (width / height) of the viewport.
+	 *
+	 * @return the aspect ratio
+	 */
+	public float getAspectRatio() {
+		return aspectRatio;
+	}
+
+	/**
+	 * Sets the size of the viewport. Only the aspect ratio is used; it determines the width of the visible area.
+	 * Until this is called, the camera assumes a 4:3 viewport, which is also used when running without a display.
+	 *
+	 * @param width the viewport width in pixels
+	 * @param height the viewport height in pixels
+	 */
+	public void setViewportSize(int width, int height) {
+		if (width > 0 && height > 0) {
+			this.aspectRatio = (float)width / height;
+		}
+	}
+
 	/**
 	 * Getter method for the screen width, in units.
 	 *
 	 * @return the screen width, in units
 	 */
 	public float getScreenWidthUnits() {
-		return 30.0f * Display.getWidth() / Display.getHeight() / zoom;
+		return 30.0f * aspectRatio / zoom;
 	}
 
 	/**
@@ -121,24 +210,123 @@ public final class Camera {
 		return 30.0f / zoom;
 	}
 
+	/**
+	 * Returns the cells that are at least partially visible at the current camera position.
+	 *
+	 * @return the visible region
+	 */
+	public RectangularRegion getVisibleRegion() {
+		return getVisibleRegion(screenX, screenY, getScreenWidthUnits(), getScreenHeightUnits());
+	}
+
+	/**
+	 * Returns the cells that are at least partially visible in a screen area. Since block centers are at integer
+	 * coordinates, a cell covers half a unit to each side of its position. The region is not clipped to the plane.
+	 *
+	 * @param centerX the x position of the screen center
+	 * @param centerY the y position of the screen center
+	 * @param widthUnits the screen width, in units
+	 * @param heightUnits the screen height, in units
+	 * @return the visible region
+	 */
+	public static RectangularRegion getVisibleRegion(float centerX, float centerY, float widthUnits, float heightUnits) {
+		int startX = (int)Math.floor(centerX - widthUnits / 2.0f - 0.5f) + 1;
+		int startY = (int)Math.floor(centerY - heightUnits / 2.0f - 0.5f) + 1;
+		int endX = (int)Math.ceil(centerX + widthUnits / 2.0f + 0.5f);
+		int endY = (int)Math.ceil(centerY + heightUnits / 2.0f + 0.5f);
+		return new RectangularRegion(startX, startY, endX, endY);
+	}
+
 	/**
 	 * Prepare drawing the screen.
+	 *
+	 * @param interpolation the interpolation factor (0..1) between the previous and the current simulation state
+	 */
+	public void draw(double interpolation) {
+		commandBuffer.reset();
+		record(commandBuffer, interpolation);
+		commandBuffer.sortQuadsByTexture();
+		commandBuffer.replay(renderBackend);
+	}
+
+	/**
+	 * Records the commands to draw the screen into a command buffer, without executing them. This does not use
+	 * OpenGL unless a section renderer is set, which uploads meshes when recording.
+	 *
+	 * @param commandBuffer the command buffer to record into
+	 * @param interpolation the interpolation factor (0..1) between the previous and the current simulation state
 	 */
-	public void draw() {
-		GL11.glMatrixMode(GL11.GL_PROJECTION);
-		GL11.glLoadIdentity();
-		GL11.glOrtho(-getScreenWidthUnits() / 2.0, getScreenWidthUnits() / 2.0, -getScreenHeightUnits() / 2.0, getScreenHeightUnits() / 2.0, -1, 1);
-		GL11.glMatrixMode(GL11.GL_MODELVIEW);
-		GL11.glLoadIdentity();
-		GL11.glTranslatef(-screenX, -screenY, 0.0f);
-		GL11.glEnable(GL11.GL_BLEND);
-		GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
-		plane.drawInternal(textureProvider, playerTexture);
+	public void record(RenderCommandBuffer commandBuffer, double interpolation) {
+		float alpha = (float)interpolation;
+		float interpolatedScreenX = previousScreenX + (screenX - previousScreenX) * alpha;
+		float interpolatedScreenY = previousScreenY + (screenY - previousScreenY) * alpha;
+		RectangularRegion visibleRegion = getVisibleRegion(interpolatedScreenX, interpolatedScreenY, getScreenWidthUnits(), getScreenHeightUnits());
+		commandBuffer.setProjection(-getScreenWidthUnits() / 2.0f, getScreenWidthUnits() / 2.0f, -getScreenHeightUnits() / 2.0f, getScreenHeightUnits() / 2.0f);
+		commandBuffer.setTranslation(-interpolatedScreenX, -interpolatedScreenY);
+		commandBuffer.setBlending(true);
+		if (sectionRenderer == null) {
+			plane.drawInternal(commandBuffer, textureProvider, playerTexture, interpolation, visibleRegion);
+		} else {
+			sectionRenderer.draw(commandBuffer, plane.getSectionSource(), textureProvider, interpolatedScreenX, interpolatedScreenY, visibleRegion);
+			plane.drawPlayersInternal(commandBuffer, playerTexture, interpolation);
+		}
+	}
+
+	/**
+	 * Draws a render state. Unlike {@link #draw(double)}, this only uses the camera's texture settings; the camera
+	 * position and zoom are taken from the render state.
+	 *
+	 * @param state the render state
+	 * @param interpolation the interpolation factor (0..1) between the previous and the current simulation state
+	 */
+	public void draw(RenderState state, double interpolation) {
+		commandBuffer.reset();
+		record(commandBuffer, state, interpolation);
+		commandBuffer.sortQuadsByTexture();
+		commandBuffer.replay(renderBackend);
+	}
+
+	/**
+	 * Records the commands to draw a render state into a command buffer, without executing them. This does not use
+	 * OpenGL unless a section renderer is set, which uploads meshes when recording.
+	 *
+	 * @param commandBuffer the command buffer to record into
+	 * @param state the render state
+	 * @param interpolation the interpolation factor (0..1) between the previous and the current simulation state
+	 */
+	public void record(RenderCommandBuffer commandBuffer, RenderState state, double interpolation) {
+		float screenWidthUnits = 30.0f * aspectRatio / state.getZoom();
+		float screenHeightUnits = 30.0f / state.getZoom();
+		float interpolatedScreenX = state.getScreenX(interpolation);
+		float interpolatedScreenY = state.getScreenY(interpolation);
+		RectangularRegion visibleRegion = getVisibleRegion(interpolatedScreenX, interpolatedScreenY, screenWidthUnits, screenHeightUnits);
+		commandBuffer.setProjection(-screenWidthUnits / 2.0f, screenWidthUnits / 2.0f, -screenHeightUnits / 2.0f, screenHeightUnits / 2.0f);
+		commandBuffer.setTranslation(-interpolatedScreenX, -interpolatedScreenY);
+		commandBuffer.setBlending(true);
+		if (sectionRenderer == null) {
+			state.draw(commandBuffer, textureProvider, playerTexture, interpolation, visibleRegion);
+		} else {
+			sectionRenderer.draw(commandBuffer, state, textureProvider, interpolatedScreenX, interpolatedScreenY, visibleRegion);
+			state.drawPlayers(commandBuffer, playerTexture, interpolation);
+		}
 	}
 
 	public void moveToKeepFocusOnPlayer() {
+		moveToKeepFocusOnPlayer(aspectRatio);
+	}
+
+	/**
+	 * Moves the camera to keep the player in focus, assuming the specified aspect ratio instead of the one of the
+	 * current viewport. The viewport size is set by the render thread, so the simulation uses this method to
+	 * work with a single, known value for the whole tick.
+	 *
+	 * @param aspectRatio the aspect ratio (width / height) of the viewport
+	 */
+	public void moveToKeepFocusOnPlayer(float aspectRatio) {
 		Player player = plane.getPlayer();
-		screenX += getFocusMovementDeltaBothSides(getScreenWidthUnits(), player.getPositionX() - screenX);
+		previousScreenX = screenX;
+		previousScreenY = screenY;
+		screenX += getFocusMovementDeltaBothSides(30.0f * aspectRatio / zoom, player.getPositionX() - screenX);
 		screenY += getFocusMovementDeltaBothSides(getScreenHeightUnits(), player.getPositionY() - screenY);
 	}
 
@@ -0,0 +1,54 @@
+package name.martingeisse.blockgame.world;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.geometry.SectionId;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Listens to the block changes of a {@link Plane} and collects the sections that contain changed blocks. Each
+ * consumer of section-level caches (meshes, path graphs, ...) uses its own tracker and drains it at its own pace.
+ */
+public final class DirtySectionTracker implements BlockChangeListener {
+
+	private final Set<SectionId> dirtySections = new LinkedHashSet<>();
+
+	/**
+	 * Constructor. Registers this tracker as a listener with the plane.
+	 *
+	 * @param plane the plane to track
+	 */
+	public DirtySectionTracker(Plane plane) {
+		plane.addBlockChangeListener(this);
+	}
+
+	// override
+	@Override
+	public void onBlockChanged(int x, int y, int oldValue, int newValue) {
+		dirtySections.add(new SectionId(x, y, GeometryConstants.SECTION_CLUSTER_SIZE));
+	}
+
+	/**
+	 * Checks whether any section is dirty.
+	 *
+	 * @return true if there are no dirty sections, false if there are some
+	 */
+	public boolean isEmpty() {
+		return dirtySections.isEmpty();
+	}
+
+	/**
+	 * Returns the dirty sections, in the order they became dirty, and marks them clean.
+	 *
+	 * @return the dirty sections
+	 */
+	public List<SectionId> drain() {
+		List<SectionId> result = new ArrayList<>(dirtySections);
+		dirtySections.clear();
+		return result;
+	}
+
+}
@@ -4,18 +4,42 @@
 
 package name.martingeisse.blockgame.world;
 
+import name.martingeisse.blockgame.geometry.RectangularRegion;
+import name.martingeisse.blockgame.system.RenderCommandBuffer;
 import name.martingeisse.blockgame.system.Texture;
-import org.lwjgl.opengl.GL11;
+import name.martingeisse.blockgame.world.blockupdate.BlockUpdateEngine;
+import name.martingeisse.blockgame.world.blockupdate.PushableBlockBehavior;
+import name.martingeisse.blockgame.world.event.GameplayEventBus;
+import name.martingeisse.blockgame.world.history.RewindBuffer;
+import name.martingeisse.blockgame.world.render.BlockRenderUtil;
+import name.martingeisse.blockgame.world.render.BlockSource;
+import name.martingeisse.blockgame.world.render.PlaneSectionSource;
+import name.martingeisse.blockgame.world.trigger.TriggerIndex;
+import name.martingeisse.blockgame.world.trigger.TriggerMonitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * A single world plane.
  */
-public final class Plane {
+public final class Plane implements BlockSource {
 
 	private final int width;
 	private final int height;
 	private final byte[] data;
+	private final List<BlockChangeListener> blockChangeListeners = new ArrayList<>();
+	private final PlayerSet playerSet = new PlayerSet();
+	private final BlockUpdateEngine blockUpdateEngine;
+	private final SimulationLod simulationLod;
+	private final GameplayEventBus eventBus;
 	private Player player;
+	private SolidityMap solidityMap;
+	private Raycaster raycaster;
+	private PlaneSectionSource sectionSource;
+	private TriggerMonitor triggerMonitor;
+	private RewindBuffer rewindBuffer;
 
 	/**
 	 * Constructor.
@@ -27,6 +51,12 @@ public final class Plane {
 		this.width = width;
 		this.height = height;
 		this.data = new byte[width * height];
+		addBlockChangeListener(playerSet);
+		this.simulationLod = new SimulationLod(width, height);
+		this.blockUpdateEngine = new BlockUpdateEngine(this);
+		blockUpdateEngine.register(5, new PushableBlockBehavior());
+		this.eventBus = new GameplayEventBus(this);
+		eventBus.addCollisionHandler(blockUpdateEngine::handleCollisions);
 	}
 
 	/**
@@ -62,6 +92,32 @@ public final class Plane {
 		}
 	}
 
+	/**
+	 * Copies a rectangular area of blocks to an array, row by row. Blocks outside the map are returned as 0, like
+	 * {@link #getBlock(int, int)} does.
+	 *
+	 * @param minX        the x position of the first column
+	 * @param minY        the y position of the first row
+	 * @param sizeX       the number of columns
+	 * @param sizeY       the number of rows
+	 * @param destination the array to copy to, with at least sizeX * sizeY elements
+	 */
+	public void getBlocks(int minX, int minY, int sizeX, int sizeY, byte[] destination) {
+		int clippedMinX = Math.max(minX, 0);
+		int clippedMaxX = Math.min(minX + sizeX, width);
+		for (int row = 0; row < sizeY; row++) {
+			int y = minY + row;
+			int rowStart = row * sizeX;
+			if (y < 0 || y >= height || clippedMinX >= clippedMaxX) {
+				Arrays.fill(destination, rowStart, rowStart + sizeX, (byte)0);
+				continue;
+			}
+			Arrays.fill(destination, rowStart, rowStart + clippedMinX - minX, (byte)0);
+			System.arraycopy(data, y * width + clippedMinX, destination, rowStart + clippedMinX - minX, clippedMaxX - clippedMinX);
+			Arrays.fill(destination, rowStart + clippedMaxX - minX, rowStart + sizeX, (byte)0);
+		}
+	}
+
 	/**
 	 * Changes a single map block.
 	 *
@@ -76,46 +132,244 @@ public final class Plane {
 		if (value < 0 || value > 255) {
 			throw new IllegalArgumentException("invalid block value: " + value);
 		}
-		data[y * width + x] = (byte) value;
+		int index = y * width + x;
+		int oldValue = data[index] & 0xff;
+		if (oldValue != value) {
+			data[index] = (byte) value;
+			for (BlockChangeListener listener : blockChangeListeners) {
+				listener.onBlockChanged(x, y, oldValue, value);
+			}
+		}
+	}
+
+	/**
+	 * Adds a listener that gets notified about block changes.
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addBlockChangeListener(BlockChangeListener listener) {
+		blockChangeListeners.add(listener);
 	}
 
+	/**
+	 * Removes a block change listener.
+	 *
+	 * @param listener the listener to remove
+	 */
+	public void removeBlockChangeListener(BlockChangeListener listener) {
+		blockChangeListeners.remove(listener);
+	}
+
+	/**
+	 * Returns the solidity map for this plane, creating it on first access.
+	 *
+	 * @return the solidity map
+	 */
+	public SolidityMap getSolidityMap() {
+		if (solidityMap == null) {
+			solidityMap = new SolidityMap(this);
+		}
+		return solidityMap;
+	}
+
+	/**
+	 * Returns the raycaster for this plane, creating it on first access.
+	 *
+	 * @return the raycaster
+	 */
+	public Raycaster getRaycaster() {
+		if (raycaster == null) {
+			raycaster = new Raycaster(getSolidityMap());
+		}
+		return raycaster;
+	}
+
+	/**
+	 * Returns the section source for rendering this plane directly, creating it on first access.
+	 *
+	 * @return the section source
+	 */
+	public PlaneSectionSource getSectionSource() {
+		if (sectionSource == null) {
+			sectionSource = new PlaneSectionSource(this);
+		}
+		return sectionSource;
+	}
+
+	/**
+	 * Returns the controlled player.
+	 *
+	 * @return the player
+	 */
 	public Player getPlayer() {
 		return player;
 	}
 
+	/**
+	 * Sets the controlled player, adding it to the {@link PlayerSet} of this plane if necessary.
+	 *
+	 * @param player the player
+	 */
 	public void setPlayer(Player player) {
+		if (player != null && !playerSet.getPlayers().contains(player)) {
+			playerSet.add(player);
+		}
 		this.player = player;
 	}
 
 	/**
-	 * Draws this plane.
+	 * Getter method for the player set.
+	 *
+	 * @return the player set
+	 */
+	public PlayerSet getPlayerSet() {
+		return playerSet;
+	}
+
+	/**
+	 * Getter method for the block update engine.
+	 *
+	 * @return the block update engine
 	 */
-	void drawInternal(TextureProvider textureProvider, Texture playerTexture) {
+	public BlockUpdateEngine getBlockUpdateEngine() {
+		return blockUpdateEngine;
+	}
+
+	/**
+	 * Getter method for the simulation level of detail.
+	 *
+	 * @return the simulation level of detail
+	 */
+	public SimulationLod getSimulationLod() {
+		return simulationLod;
+	}
+
+	/**
+	 * Getter method for the gameplay event bus.
+	 *
+	 * @return the gameplay event bus
+	 */
+	public GameplayEventBus getEventBus() {
+		return eventBus;
+	}
+
+	/**
+	 * Returns the trigger index of this plane.
+	 *
+	 * @return the trigger index, or null if this plane has no triggers
+	 */
+	public TriggerIndex getTriggerIndex() {
+		return (triggerMonitor == null ? null : triggerMonitor.getIndex());
+	}
+
+	/**
+	 * Sets the trigger index of this plane. Players entering and leaving trigger regions are then published as
+	 * trigger events on the event bus.
+	 *
+	 * @param triggerIndex the trigger index, or null to remove all triggers
+	 */
+	public void setTriggerIndex(TriggerIndex triggerIndex) {
+		this.triggerMonitor = (triggerIndex == null ? null : new TriggerMonitor(triggerIndex, eventBus));
+	}
+
+	/**
+	 * Getter method for the trigger monitor.
+	 *
+	 * @return the trigger monitor, or null if this plane has no triggers
+	 */
+	public TriggerMonitor getTriggerMonitor() {
+		return triggerMonitor;
+	}
+
+	/**
+	 * Getter method for the rewind buffer.
+	 *
+	 * @return the rewind buffer, or null if this plane keeps no history
+	 */
+	public RewindBuffer getRewindBuffer() {
+		return rewindBuffer;
+	}
+
+	/**
+	 * Sets the rewind buffer that keeps the recent history of this plane. The buffer gets notified of all block
+	 * changes, of removed players and of the end of each tick.
+	 *
+	 * @param rewindBuffer the rewind buffer for this plane, or null to stop keeping history
+	 */
+	public void setRewindBuffer(RewindBuffer rewindBuffer) {
+		if (rewindBuffer != null && rewindBuffer.getPlane() != this) {
+			throw new IllegalArgumentException("rewind buffer belongs to a different plane");
+		}
+		if (this.rewindBuffer != null) {
+			removeBlockChangeListener(this.rewindBuffer);
+			playerSet.removeRemovalListener(this.rewindBuffer);
+		}
+		this.rewindBuffer = rewindBuffer;
+		if (rewindBuffer != null) {
+			addBlockChangeListener(rewindBuffer);
+			playerSet.addRemovalListener(rewindBuffer);
+		}
+	}
+
+	/**
+	 * Performs a simulation tick: updates the simulation level of detail (with the controlled player as an
+	 * additional focus point), steps all active players, checks them against the trigger regions, runs the block
+	 * updates that are due, then dispatches the gameplay events published during the tick. Finally, the tick is
+	 * recorded in the rewind buffer, if any.
+	 *
+	 * @param mouseDx the mouse X movement for the controlled player
+	 * @param mouseDy the mouse Y movement for the controlled player
+	 */
+	public void step(int mouseDx, int mouseDy) {
+		if (player != null) {
+			simulationLod.addFocusPoint(player.getPositionX(), player.getPositionY());
+		}
+		simulationLod.update();
+		stepPlayers(mouseDx, mouseDy);
+		if (triggerMonitor != null) {
+			triggerMonitor.update(playerSet.getPlayers());
+		}
+		blockUpdateEngine.tick();
+		eventBus.dispatch();
+		if (rewindBuffer != null) {
+			rewindBuffer.onTickCompleted();
+		}
+	}
+
+	/**
+	 * Steps all active players. The controlled player receives the specified mouse movement.
+	 *
+	 * @param mouseDx the mouse X movement
+	 * @param mouseDy the mouse Y movement
+	 */
+	public void stepPlayers(int mouseDx, int mouseDy) {
+		playerSet.step(this, player, mouseDx, mouseDy);
+	}
+
+	/**
+	 * Draws the blocks of this plane within the visible region, and the players.
+	 */
+	void drawInternal(RenderCommandBuffer commandBuffer, TextureProvider textureProvider, Texture playerTexture, double interpolation, RectangularRegion visibleRegion) {
 		if (textureProvider == null) {
 			return;
 		}
-		GL11.glEnable(GL11.GL_TEXTURE_2D);
-		GL11.glColor3ub((byte) 255, (byte) 255, (byte) 255);
-		for (int x = 0; x < width; x++) {
-			for (int y = 0; y < height; y++) {
-				Texture texture = textureProvider.getBlockTexture(getBlock(x, y));
-				if (texture == null) {
-					continue;
-				}
-				texture.glBindTexture();
-				GL11.glBegin(GL11.GL_QUADS);
-				GL11.glTexCoord2f(0.0f, 1.0f);
-				GL11.glVertex2d(x - 0.5, y - 0.5);
-				GL11.glTexCoord2f(1.0f, 1.0f);
-				GL11.glVertex2d(x + 0.5, y - 0.5);
-				GL11.glTexCoord2f(1.0f, 0.0f);
-				GL11.glVertex2d(x + 0.5, y + 0.5);
-				GL11.glTexCoord2f(0.0f, 0.0f);
-				GL11.glVertex2d(x - 0.5, y + 0.5);
-				GL11.glEnd();
-			}
+		BlockRenderUtil.drawBlocks(commandBuffer, this, textureProvider, visibleRegion);
+		drawPlayersInternal(commandBuffer, playerTexture, interpolation);
+	}
+
+	/**
+	 * Draws the players of this plane, for renderers that draw the blocks by other means. The players are separated
+	 * from the blocks by a barrier, so they stay on top when the commands get sorted.
+	 */
+	void drawPlayersInternal(RenderCommandBuffer commandBuffer, Texture playerTexture, double interpolation) {
+		if (playerTexture == null) {
+			return;
+		}
+		commandBuffer.barrier();
+		commandBuffer.setColor(RenderCommandBuffer.WHITE);
+		for (Player player : playerSet.getPlayers()) {
+			player.drawInternal(commandBuffer, playerTexture, interpolation);
 		}
-		player.drawInternal(playerTexture);
 	}
 
 }
@@ -0,0 +1,186 @@
+package name.martingeisse.blockgame.world;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The state of a plane that determines how it evolves: its blocks and the position, velocity and physics mode of
+ * each player. A snapshot taken before the first tick can be turned back into an equivalent plane, which is what
+ * input recordings start from. Snapshots compare equal only if all values are identical bit for bit, so comparing
+ * the final state of a replay with the recorded one detects any divergence.
+ *
+ * Derived and transient state (sleeping players, scheduled block updates, the simulation level of detail) is not
+ * part of a snapshot. A plane created from a snapshot starts with all players awake and nothing scheduled, which
+ * matches a plane that has been built but not stepped yet.
+ */
+public final class PlaneSnapshot {
+
+	private static final int PLAYER_VALUE_COUNT = 4;
+
+	private final int width;
+	private final int height;
+	private final byte[] blocks;
+	private final int controlledPlayerIndex;
+	private final double[] playerValues;
+	private final boolean[] playerFixedPointModes;
+
+	private PlaneSnapshot(int width, int height, byte[] blocks, int controlledPlayerIndex, double[] playerValues, boolean[] playerFixedPointModes) {
+		this.width = width;
+		this.height = height;
+		this.blocks = blocks;
+		this.controlledPlayerIndex = controlledPlayerIndex;
+		this.playerValues = playerValues;
+		this.playerFixedPointModes = playerFixedPointModes;
+	}
+
+	/**
+	 * Takes a snapshot of a plane.
+	 *
+	 * @param plane the plane
+	 * @return the snapshot
+	 */
+	public static PlaneSnapshot capture(Plane plane) {
+		byte[] blocks = new byte[plane.getWidth() * plane.getHeight()];
+		plane.getBlocks(0, 0, plane.getWidth(), plane.getHeight(), blocks);
+		List<Player> players = plane.getPlayerSet().getPlayers();
+		double[] playerValues = new double[players.size() * PLAYER_VALUE_COUNT];
+		boolean[] playerFixedPointModes = new boolean[players.size()];
+		for (int i = 0; i < players.size(); i++) {
+			Player player = players.get(i);
+			playerValues[i * PLAYER_VALUE_COUNT] = player.getPositionX();
+			playerValues[i * PLAYER_VALUE_COUNT + 1] = player.getPositionY();
+			playerValues[i * PLAYER_VALUE_COUNT + 2] = player.getVelocityX();
+			playerValues[i * PLAYER_VALUE_COUNT + 3] = player.getVelocityY();
+			playerFixedPointModes[i] = player.isFixedPointMode();
+		}
+		return new PlaneSnapshot(plane.getWidth(), plane.getHeight(), blocks, players.indexOf(plane.getPlayer()), playerValues, playerFixedPointModes);
+	}
+
+	/**
+	 * Creates a new plane with the state of this snapshot.
+	 *
+	 * @return the plane
+	 */
+	public Plane createPlane() {
+		Plane plane = new Plane(width, height);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				plane.setBlock(x, y, blocks[y * width + x] & 0xff);
+			}
+		}
+		for (int i = 0; i < playerFixedPointModes.length; i++) {
+			Player player = new Player();
+			player.setFixedPointMode(playerFixedPointModes[i]);
+			player.setPositionX(playerValues[i * PLAYER_VALUE_COUNT]);
+			player.setPositionY(playerValues[i * PLAYER_VALUE_COUNT + 1]);
+			player.setVelocityX(playerValues[i * PLAYER_VALUE_COUNT + 2]);
+			player.setVelocityY(playerValues[i * PLAYER_VALUE_COUNT + 3]);
+			if (i == controlledPlayerIndex) {
+				plane.setPlayer(player);
+			} else {
+				plane.getPlayerSet().add(player);
+			}
+		}
+		return plane;
+	}
+
+	/**
+	 * Getter method for the width.
+	 *
+	 * @return the width
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Getter method for the height.
+	 *
+	 * @return the height
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the number of players.
+	 *
+	 * @return the number of players
+	 */
+	public int getPlayerCount() {
+		return playerFixedPointModes.length;
+	}
+
+	/**
+	 * Writes this snapshot in binary form.
+	 *
+	 * @param out the output to write to
+	 * @throws IOException on I/O errors
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(width);
+		out.writeInt(height);
+		out.write(blocks);
+		out.writeInt(controlledPlayerIndex);
+		out.writeInt(playerFixedPointModes.length);
+		for (int i = 0; i < playerFixedPointModes.length; i++) {
+			out.writeBoolean(playerFixedPointModes[i]);
+			for (int j = 0; j < PLAYER_VALUE_COUNT; j++) {
+				out.writeDouble(playerValues[i * PLAYER_VALUE_COUNT + j]);
+			}
+		}
+	}
+
+	/**
+	 * Reads a snapshot written by {@link #writeTo(DataOutput)}.
+	 *
+	 * @param in the input to read from
+	 * @return the snapshot
+	 * @throws IOException on I/O errors or if the data is malformed
+	 */
+	public static PlaneSnapshot readFrom(DataInput in) throws IOException {
+		int width = in.readInt();
+		int height = in.readInt();
+		if (width < 0 || height < 0 || (long)width * height > Integer.MAX_VALUE) {
+			throw new IOException("invalid plane size: " + width + " x " + height);
+		}
+		byte[] blocks = new byte[width * height];
+		in.readFully(blocks);
+		int controlledPlayerIndex = in.readInt();
+		int playerCount = in.readInt();
+		if (playerCount < 0 || controlledPlayerIndex < -1 || controlledPlayerIndex >= playerCount) {
+			throw new IOException("invalid player count / controlled player: " + playerCount + " / " + controlledPlayerIndex);
+		}
+		double[] playerValues = new double[playerCount * PLAYER_VALUE_COUNT];
+		boolean[] playerFixedPointModes = new boolean[playerCount];
+		for (int i = 0; i < playerCount; i++) {
+			playerFixedPointModes[i] = in.readBoolean();
+			for (int j = 0; j < PLAYER_VALUE_COUNT; j++) {
+				playerValues[i * PLAYER_VALUE_COUNT + j] = in.readDouble();
+			}
+		}
+		return new PlaneSnapshot(width, height, blocks, controlledPlayerIndex, playerValues, playerFixedPointModes);
+	}
+
+	// override
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof PlaneSnapshot)) {
+			return false;
+		}
+		PlaneSnapshot other = (PlaneSnapshot)obj;
+		return width == other.width && height == other.height && controlledPlayerIndex == other.controlledPlayerIndex
+			&& Arrays.equals(blocks, other.blocks) && Arrays.equals(playerValues, other.playerValues)
+			&& Arrays.equals(playerFixedPointModes, other.playerFixedPointModes);
+	}
+
+	// override
+	@Override
+	public int hashCode() {
+		return ((width * 31 + height) * 31 + Arrays.hashCode(blocks)) * 31 + Arrays.hashCode(playerValues);
+	}
+
+}
@@ -1,10 +1,13 @@
 package name.martingeisse.blockgame.world;
 
-import name.martingeisse.blockgame.resource.Resources;
+import name.martingeisse.blockgame.geometry.FixedPoint;
+import name.martingeisse.blockgame.system.RenderCommandBuffer;
 import name.martingeisse.blockgame.system.Texture;
+import name.martingeisse.blockgame.world.collision.CircleShape;
 import name.martingeisse.blockgame.world.collision.Collision;
 import name.martingeisse.blockgame.world.collision.CollisionUtil;
-import org.lwjgl.opengl.GL11;
+import name.martingeisse.blockgame.world.collision.FixedPointCollision;
+import name.martingeisse.blockgame.world.collision.FixedPointCollisionUtil;
 
 /**
  *
@@ -13,62 +16,201 @@ public final class Player {
 
 	public static final double FAST_COLLISION_MIN_SPEED = 0.7;
 
-	private static final boolean[] blockSolid = {
-			true,
-			false,
-			false,
-			false,
-			true,
-			true,
-	};
-
-	private static final String[] collidionSoundNames = {
-		null,
-		null,
-		null,
-		null,
-		"wood_and_metal_vol.2/metal6.wav",
-		"wood_and_metal_vol.2/wood3.wav",
-	};
-
 	public static final double PLAYER_RADIUS = 0.35;
+	public static final CircleShape PLAYER_SHAPE = new CircleShape(PLAYER_RADIUS);
 	public static final double MOUSE_SENSITIVITY = 0.02;
 	public static final double FRICTION = 0.15;
 	public static final double COLLISION_FRICTION = 0.7;
 
+	/**
+	 * A player is considered at rest while its speed stays below this value (units per tick)...
+	 */
+	public static final double REST_VELOCITY_THRESHOLD = 0.002;
+
+	/**
+	 * ... and it stays within this distance of the position where it started resting...
+	 */
+	public static final double REST_POSITION_THRESHOLD = 0.01;
+
+	/**
+	 * ... for this many ticks in a row. Friction only decays velocity asymptotically, so without these thresholds
+	 * a player would never actually stop moving.
+	 */
+	public static final int REST_TICK_COUNT = 25;
+
+	// fixed-point versions of the above constants
+	private static final long FIXED_PLAYER_RADIUS = FixedPoint.fromDouble(PLAYER_RADIUS);
+	private static final long FIXED_MOUSE_SENSITIVITY = FixedPoint.fromDouble(MOUSE_SENSITIVITY);
+	private static final long FIXED_FRICTION_FACTOR = FixedPoint.fromDouble(1 - FRICTION);
+	private static final long FIXED_REFLECTION_FACTOR = FixedPoint.fromDouble(2 - COLLISION_FRICTION);
+
 	private double positionX;
 	private double positionY;
+	private double previousPositionX;
+	private double previousPositionY;
 	private double velocityX;
 	private double velocityY;
 
-	private int collisionSoundCooldown = 0;
+	private boolean sleeping;
+	private int skippedTicks;
+	private int restTickCount;
+	private double restAnchorX;
+	private double restAnchorY;
+
+	/**
+	 * In fixed-point mode, the following fields hold the authoritative state and the double fields above are
+	 * derived from them after each step.
+	 */
+	private boolean fixedPointMode;
+	private long fixedPositionX;
+	private long fixedPositionY;
+	private long fixedVelocityX;
+	private long fixedVelocityY;
 
 	public void performMouseMovement(int mouseDx, int mouseDy, Plane plane) {
 
-		// handle acceleration and friction
-		velocityX += mouseDx * MOUSE_SENSITIVITY;
-		velocityX *= (1 - FRICTION);
-		velocityY += mouseDy * MOUSE_SENSITIVITY;
-		velocityY *= (1 - FRICTION);
+		// remember the old position for render interpolation
+		previousPositionX = positionX;
+		previousPositionY = positionY;
+
+		if (fixedPointMode) {
 
-		// actually move, checking for collisions
-		performMovement(1.0, plane, 0);
+			// handle acceleration and friction
+			fixedVelocityX = FixedPoint.mul(fixedVelocityX + mouseDx * FIXED_MOUSE_SENSITIVITY, FIXED_FRICTION_FACTOR);
+			fixedVelocityY = FixedPoint.mul(fixedVelocityY + mouseDy * FIXED_MOUSE_SENSITIVITY, FIXED_FRICTION_FACTOR);
+
+			// actually move, checking for collisions
+			performFixedPointMovement(FixedPoint.ONE, plane, 0);
+			positionX = FixedPoint.toDouble(fixedPositionX);
+			positionY = FixedPoint.toDouble(fixedPositionY);
+			velocityX = FixedPoint.toDouble(fixedVelocityX);
+			velocityY = FixedPoint.toDouble(fixedVelocityY);
+
+		} else {
+
+			// handle acceleration and friction
+			velocityX += mouseDx * MOUSE_SENSITIVITY;
+			velocityX *= (1 - FRICTION);
+			velocityY += mouseDy * MOUSE_SENSITIVITY;
+			velocityY *= (1 - FRICTION);
+
+			// actually move, checking for collisions
+			performMovement(1.0, plane, 0);
 
-		// play a collision sound only once every few frames at most
-		if (collisionSoundCooldown > 0) {
-			collisionSoundCooldown--;
 		}
 
+		// detect whether we have come to rest
+		updateRestDetection(1);
+
+	}
+
+	/**
+	 * Advances this player by several ticks without input in a single, larger step. This is used for players in
+	 * sections with a reduced simulation rate (see {@link SimulationLod}). Friction is applied for all ticks at
+	 * once, and the distance is the one the player would have moved in that many ticks, but collisions are only
+	 * checked along the straight line of the combined movement.
+	 *
+	 * In fixed-point mode, the ticks are simulated one by one to stay deterministic.
+	 */
+	void performCoarseStep(Plane plane, int tickCount) {
+		if (fixedPointMode || tickCount == 1) {
+			for (int i = 0; i < tickCount; i++) {
+				performMouseMovement(0, 0, plane);
+			}
+			return;
+		}
+		previousPositionX = positionX;
+		previousPositionY = positionY;
+
+		// Each tick multiplies the velocity by (1 - FRICTION) and then moves by it, so after n ticks the velocity
+		// has decayed by (1 - FRICTION)^n and the distance is the velocity times the sum of that geometric series.
+		double decay = Math.pow(1 - FRICTION, tickCount);
+		double distanceFactor = (1 - FRICTION) * (1 - decay) / FRICTION;
+		performMovement(distanceFactor, plane, 0);
+		velocityX *= decay;
+		velocityY *= decay;
+
+		updateRestDetection(tickCount);
+	}
+
+	/**
+	 * Called instead of a step in ticks where this player is not simulated, to keep render interpolation from
+	 * jumping back to an old position.
+	 *
+	 * @param frozen true if the player is frozen (time does not pass for it), false if it will catch up on this
+	 * tick in a later, larger step
+	 */
+	void skipTick(boolean frozen) {
+		previousPositionX = positionX;
+		previousPositionY = positionY;
+		if (!frozen) {
+			skippedTicks++;
+		}
+	}
+
+	/**
+	 * Returns the number of skipped ticks the player has not caught up on yet and resets it to zero.
+	 */
+	int takeSkippedTicks() {
+		int result = skippedTicks;
+		skippedTicks = 0;
+		return result;
+	}
+
+	private void updateRestDetection(int tickCount) {
+		double anchorDx = positionX - restAnchorX;
+		double anchorDy = positionY - restAnchorY;
+		boolean slow = (velocityX * velocityX + velocityY * velocityY < REST_VELOCITY_THRESHOLD * REST_VELOCITY_THRESHOLD);
+		boolean near = (anchorDx * anchorDx + anchorDy * anchorDy < REST_POSITION_THRESHOLD * REST_POSITION_THRESHOLD);
+		if (slow && near) {
+			restTickCount += tickCount;
+		} else {
+			restTickCount = 0;
+			restAnchorX = positionX;
+			restAnchorY = positionY;
+		}
+	}
+
+	/**
+	 * Checks whether this player has been at rest long enough to be put to sleep.
+	 *
+	 * @return true if resting, false if not
+	 */
+	public boolean isResting() {
+		return restTickCount >= REST_TICK_COUNT;
+	}
+
+	/**
+	 * Checks whether this player is sleeping, i.e. not being stepped by its {@link PlayerSet}.
+	 *
+	 * @return true if sleeping, false if active
+	 */
+	public boolean isSleeping() {
+		return sleeping;
+	}
+
+	void fallAsleep() {
+		sleeping = true;
+		previousPositionX = positionX;
+		previousPositionY = positionY;
+		velocityX = 0;
+		velocityY = 0;
+		fixedVelocityX = 0;
+		fixedVelocityY = 0;
+	}
+
+	void wakeUp() {
+		sleeping = false;
+		restTickCount = 0;
+		restAnchorX = positionX;
+		restAnchorY = positionY;
 	}
 
 	private void performMovement(double remainingFraction, Plane plane, int recursionDepth) {
 		double deltaX = velocityX * remainingFraction;
 		double deltaY = velocityY * remainingFraction;
-		CollisionUtil.BlockMapCollider blockMapCollider = (x, y) -> {
-			int block = plane.getBlock(x, y);
-			return block < 0 || block >= blockSolid.length || blockSolid[block];
-		};
-		Collision collision = CollisionUtil.checkSphereBlockCollision(positionX, positionY, deltaX, deltaY, PLAYER_RADIUS, blockMapCollider);
+		CollisionUtil.BlockMapCollider blockMapCollider = plane.getSolidityMap();
+		Collision collision = CollisionUtil.sweep(PLAYER_SHAPE, positionX, positionY, deltaX, deltaY, blockMapCollider);
 		if (collision == null) {
 			positionX += deltaX;
 			positionY += deltaY;
@@ -78,8 +220,8 @@ public final class Player {
 			positionX += deltaX * collision.getMovementFraction();
 			positionY += deltaY * collision.getMovementFraction();
 
-			// Determine velocity perpendicular to the surface, to trigger effects on "fast" collisions. This is simply
-			// the negated dot product of the velocity and the surface normal.
+			// Determine velocity perpendicular to the surface, which gameplay code uses to tell "fast" collisions.
+			// This is simply the negated dot product of the velocity and the surface normal.
 			double perpendicularVelocity = -(velocityX * collision.getSurfaceNormalX() + velocityY * collision.getSurfaceNormalY());
 
 			// reflect movement
@@ -92,31 +234,78 @@ public final class Player {
 				performMovement(remainingFraction * (1 - collision.getMovementFraction()), plane, recursionDepth + 1);
 			}
 
-			// play a collision sound
-			if (collisionSoundCooldown == 0) {
-				int blockType = plane.getBlock(collision.getBlockX(), collision.getBlockY());
-				if (blockType >= 0 || blockType < collidionSoundNames.length && collidionSoundNames[blockType] != null) {
-					Resources.getSound(collidionSoundNames[blockType]).playAsSoundEffect(1.0f, 1.0f, false);
-					collisionSoundCooldown = 10;
-				}
-			}
+			// report the collision to gameplay code
+			plane.getEventBus().publishCollision(this, collision.getBlockX(), collision.getBlockY(), collision.getSurfaceNormalX(),
+				collision.getSurfaceNormalY(), perpendicularVelocity);
+
+		}
 
-			// trigger effects for "fast" collisions
-			if (perpendicularVelocity > FAST_COLLISION_MIN_SPEED) {
-				int blockX = collision.getBlockX();
-				int blockY = collision.getBlockY();
-				int blockType = plane.getBlock(blockX, blockY);
-				int behindBlockX = collision.getBlockX() - (int)collision.getSurfaceNormalX();
-				int behindBlockY = collision.getBlockY() - (int)collision.getSurfaceNormalY();
-				int behindBlockType = plane.getBlock(behindBlockX, behindBlockY);
-				if (blockType == 5 && behindBlockType == 1) {
-					plane.setBlock(blockX, blockY, 1);
-					plane.setBlock(behindBlockX, behindBlockY, 5);
-				}
+	}
+
+	/**
+	 * Fixed-point version of {@link #performMovement(double, Plane, int)}.
+	 */
+	private void performFixedPointMovement(long remainingFraction, Plane plane, int recursionDepth) {
+		long deltaX = FixedPoint.mul(fixedVelocityX, remainingFraction);
+		long deltaY = FixedPoint.mul(fixedVelocityY, remainingFraction);
+		CollisionUtil.BlockMapCollider blockMapCollider = plane.getSolidityMap();
+		FixedPointCollision collision = FixedPointCollisionUtil.checkSphereBlockCollision(fixedPositionX, fixedPositionY, deltaX, deltaY, FIXED_PLAYER_RADIUS, blockMapCollider);
+		if (collision == null) {
+			fixedPositionX += deltaX;
+			fixedPositionY += deltaY;
+		} else {
+
+			// move the first part
+			fixedPositionX += FixedPoint.mul(deltaX, collision.getMovementFraction());
+			fixedPositionY += FixedPoint.mul(deltaY, collision.getMovementFraction());
+
+			// reflect movement
+			long dotProduct = FixedPoint.mul(fixedVelocityX, collision.getSurfaceNormalX()) + FixedPoint.mul(fixedVelocityY, collision.getSurfaceNormalY());
+			long perpendicularVelocity = -dotProduct;
+			long temp = FixedPoint.mul(FIXED_REFLECTION_FACTOR, dotProduct);
+			fixedVelocityX -= FixedPoint.mul(temp, collision.getSurfaceNormalX());
+			fixedVelocityY -= FixedPoint.mul(temp, collision.getSurfaceNormalY());
+
+			// move the second part, checking for collisions again
+			if (recursionDepth < 10) {
+				performFixedPointMovement(FixedPoint.mul(remainingFraction, FixedPoint.ONE - collision.getMovementFraction()), plane, recursionDepth + 1);
 			}
 
+			// report the collision to gameplay code
+			plane.getEventBus().publishCollision(this, collision.getBlockX(), collision.getBlockY(), FixedPoint.toDouble(collision.getSurfaceNormalX()),
+				FixedPoint.toDouble(collision.getSurfaceNormalY()), FixedPoint.toDouble(perpendicularVelocity));
+
 		}
+	}
+
+	/**
+	 * Checks whether this player uses deterministic fixed-point physics.
+	 *
+	 * @return true for fixed-point physics, false for floating-point physics
+	 */
+	public boolean isFixedPointMode() {
+		return fixedPointMode;
+	}
 
+	/**
+	 * Switches between floating-point and deterministic fixed-point physics. When switching to fixed-point mode,
+	 * the current position and velocity are rounded to fixed-point. For bit-exact results across machines, all
+	 * of them must switch at the same point of the simulation, typically before the first step.
+	 *
+	 * @param fixedPointMode true for fixed-point physics, false for floating-point physics
+	 */
+	public void setFixedPointMode(boolean fixedPointMode) {
+		this.fixedPointMode = fixedPointMode;
+		if (fixedPointMode) {
+			fixedPositionX = FixedPoint.fromDouble(positionX);
+			fixedPositionY = FixedPoint.fromDouble(positionY);
+			fixedVelocityX = FixedPoint.fromDouble(velocityX);
+			fixedVelocityY = FixedPoint.fromDouble(velocityY);
+			positionX = FixedPoint.toDouble(fixedPositionX);
+			positionY = FixedPoint.toDouble(fixedPositionY);
+			velocityX = FixedPoint.toDouble(fixedVelocityX);
+			velocityY = FixedPoint.toDouble(fixedVelocityY);
+		}
 	}
 
 	public double getPositionX() {
@@ -124,7 +313,9 @@ public final class Player {
 	}
 
 	public void setPositionX(double positionX) {
-		this.positionX = positionX;
+		this.fixedPositionX = FixedPoint.fromDouble(positionX);
+		this.positionX = (fixedPointMode ? FixedPoint.toDouble(fixedPositionX) : positionX);
+		this.previousPositionX = this.positionX;
 	}
 
 	public double getPositionY() {
@@ -132,7 +323,27 @@ public final class Player {
 	}
 
 	public void setPositionY(double positionY) {
-		this.positionY = positionY;
+		this.fixedPositionY = FixedPoint.fromDouble(positionY);
+		this.positionY = (fixedPointMode ? FixedPoint.toDouble(fixedPositionY) : positionY);
+		this.previousPositionY = this.positionY;
+	}
+
+	/**
+	 * Returns the x position at the start of the last tick, for interpolation.
+	 *
+	 * @return the previous x position
+	 */
+	public double getPreviousPositionX() {
+		return previousPositionX;
+	}
+
+	/**
+	 * Returns the y position at the start of the last tick, for interpolation.
+	 *
+	 * @return the previous y position
+	 */
+	public double getPreviousPositionY() {
+		return previousPositionY;
 	}
 
 	public double getVelocityX() {
@@ -140,7 +351,8 @@ public final class Player {
 	}
 
 	public void setVelocityX(double velocityX) {
-		this.velocityX = velocityX;
+		this.fixedVelocityX = FixedPoint.fromDouble(velocityX);
+		this.velocityX = (fixedPointMode ? FixedPoint.toDouble(fixedVelocityX) : velocityX);
 	}
 
 	public double getVelocityY() {
@@ -148,21 +360,15 @@ public final class Player {
 	}
 
 	public void setVelocityY(double velocityY) {
-		this.velocityY = velocityY;
-	}
-
-	void drawInternal(Texture playerTexture) {
-		playerTexture.glBindTexture();
-		GL11.glBegin(GL11.GL_QUADS);
-		GL11.glTexCoord2f(0.0f, 1.0f);
-		GL11.glVertex2d(positionX - PLAYER_RADIUS, positionY - PLAYER_RADIUS);
-		GL11.glTexCoord2f(1.0f, 1.0f);
-		GL11.glVertex2d(positionX + PLAYER_RADIUS, positionY - PLAYER_RADIUS);
-		GL11.glTexCoord2f(1.0f, 0.0f);
-		GL11.glVertex2d(positionX + PLAYER_RADIUS, positionY + PLAYER_RADIUS);
-		GL11.glTexCoord2f(0.0f, 0.0f);
-		GL11.glVertex2d(positionX - PLAYER_RADIUS, positionY + PLAYER_RADIUS);
-		GL11.glEnd();
+		this.fixedVelocityY = FixedPoint.fromDouble(velocityY);
+		this.velocityY = (fixedPointMode ? FixedPoint.toDouble(fixedVelocityY) : velocityY);
+	}
+
+	void drawInternal(RenderCommandBuffer commandBuffer, Texture playerTexture, double interpolation) {
+		double positionX = previousPositionX + (this.positionX - previousPositionX) * interpolation;
+		double positionY = previousPositionY + (this.positionY - previousPositionY) * interpolation;
+		commandBuffer.bindTexture(playerTexture);
+		commandBuffer.drawQuad((float)positionX, (float)positionY, (float)PLAYER_RADIUS);
 	}
 
 }
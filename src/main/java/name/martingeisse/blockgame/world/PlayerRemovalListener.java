@@ -0,0 +1,15 @@
+package name.martingeisse.blockgame.world;
+
+/**
+ * Gets notified by a {@link PlayerSet} when a player is removed, so objects that keep per-player state can drop it.
+ */
+public interface PlayerRemovalListener {
+
+	/**
+	 * Called after a player has been removed.
+	 *
+	 * @param player the removed player
+	 */
+	public void onPlayerRemoved(Player player);
+
+}
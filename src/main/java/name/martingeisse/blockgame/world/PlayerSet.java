@@ -0,0 +1,249 @@
+package name.martingeisse.blockgame.world;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.geometry.SectionId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the players in a plane. Players that have come to rest are put to sleep and removed from the
+ * active list, so stepping costs time proportional to the number of active players only. Sleeping players are
+ * bucketed by section so they can be found quickly when something nearby wakes them up -- either a changed block
+ * (this set listens to the plane's block changes) or an active player touching them.
+ */
+public final class PlayerSet implements BlockChangeListener {
+
+	/**
+	 * A sleeping player wakes up when a block changes that is at most this far from the player's edge.
+	 */
+	public static final double BLOCK_WAKE_DISTANCE = 1.0;
+
+	private final List<Player> players = new ArrayList<>();
+	private final List<Player> activePlayers = new ArrayList<>();
+	private final Map<SectionId, List<Player>> sleepingPlayersBySection = new HashMap<>();
+	private final List<PlayerRemovalListener> removalListeners = new ArrayList<>();
+
+	/**
+	 * Adds a player. The player starts out active.
+	 *
+	 * @param player the player to add
+	 */
+	public void add(Player player) {
+		players.add(player);
+		player.wakeUp();
+		activePlayers.add(player);
+	}
+
+	/**
+	 * Removes a player and notifies the removal listeners.
+	 *
+	 * @param player the player to remove
+	 */
+	public void remove(Player player) {
+		if (!players.remove(player)) {
+			return;
+		}
+		if (player.isSleeping()) {
+			removeSleeping(player);
+		} else {
+			activePlayers.remove(player);
+		}
+		for (PlayerRemovalListener listener : removalListeners) {
+			listener.onPlayerRemoved(player);
+		}
+	}
+
+	/**
+	 * Adds a listener that gets notified about removed players.
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addRemovalListener(PlayerRemovalListener listener) {
+		removalListeners.add(listener);
+	}
+
+	/**
+	 * Removes a player removal listener.
+	 *
+	 * @param listener the listener to remove
+	 */
+	public void removeRemovalListener(PlayerRemovalListener listener) {
+		removalListeners.remove(listener);
+	}
+
+	/**
+	 * Returns all players, active or sleeping.
+	 *
+	 * @return the players
+	 */
+	public List<Player> getPlayers() {
+		return Collections.unmodifiableList(players);
+	}
+
+	/**
+	 * Returns the active players.
+	 *
+	 * @return the active players
+	 */
+	public List<Player> getActivePlayers() {
+		return Collections.unmodifiableList(activePlayers);
+	}
+
+	/**
+	 * Wakes up a sleeping player. Does nothing if the player is already active.
+	 *
+	 * @param player the player to wake up
+	 */
+	public void wakeUp(Player player) {
+		if (player.isSleeping()) {
+			removeSleeping(player);
+			player.wakeUp();
+			activePlayers.add(player);
+		}
+	}
+
+	/**
+	 * Steps all active players, then puts those to sleep that have come to rest. Players woken up during the step
+	 * will be stepped in the next tick. Players other than the controlled one are stepped according to the
+	 * plane's {@link SimulationLod}.
+	 *
+	 * @param plane             the plane that contains the players
+	 * @param controlledPlayer  the player that receives the mouse movement (others receive none), or null
+	 * @param mouseDx           the mouse X movement
+	 * @param mouseDy           the mouse Y movement
+	 */
+	public void step(Plane plane, Player controlledPlayer, int mouseDx, int mouseDy) {
+		if (controlledPlayer != null && (mouseDx != 0 || mouseDy != 0)) {
+			wakeUp(controlledPlayer);
+		}
+		SimulationLod lod = plane.getSimulationLod();
+		int count = activePlayers.size();
+		for (int i = 0; i < count; i++) {
+			Player player = activePlayers.get(i);
+			if (player == controlledPlayer) {
+				catchUp(player, plane);
+				player.performMouseMovement(mouseDx, mouseDy, plane);
+			} else {
+				int level = lod.getLevelAt(player.getPositionX(), player.getPositionY());
+				if (level == SimulationLod.LEVEL_NEAR) {
+					catchUp(player, plane);
+					player.performMouseMovement(0, 0, plane);
+				} else if (level == SimulationLod.LEVEL_FAR) {
+					player.skipTick(true);
+					continue;
+				} else if (shouldTick(lod, player)) {
+					player.performCoarseStep(plane, player.takeSkippedTicks() + 1);
+				} else {
+					player.skipTick(false);
+					continue;
+				}
+			}
+			wakeTouchedPlayers(player);
+		}
+		int writeIndex = 0;
+		for (int readIndex = 0; readIndex < activePlayers.size(); readIndex++) {
+			Player player = activePlayers.get(readIndex);
+			if (player.isResting()) {
+				player.fallAsleep();
+				getSleepingBucket(getSectionId(player), true).add(player);
+			} else {
+				activePlayers.set(writeIndex, player);
+				writeIndex++;
+			}
+		}
+		activePlayers.subList(writeIndex, activePlayers.size()).clear();
+	}
+
+	/**
+	 * Catches up on ticks skipped while the player was in a mid-range section.
+	 */
+	private static void catchUp(Player player, Plane plane) {
+		int skippedTicks = player.takeSkippedTicks();
+		if (skippedTicks > 0) {
+			player.performCoarseStep(plane, skippedTicks);
+		}
+	}
+
+	private static boolean shouldTick(SimulationLod lod, Player player) {
+		int shift = GeometryConstants.SECTION_SHIFT;
+		return lod.shouldTick(toBlock(player.getPositionX()) >> shift, toBlock(player.getPositionY()) >> shift);
+	}
+
+	private void wakeTouchedPlayers(Player player) {
+		double touchDistance = 2 * Player.PLAYER_RADIUS;
+		wakePlayersNear(player.getPositionX(), player.getPositionY(), touchDistance, player);
+	}
+
+	// override
+	@Override
+	public void onBlockChanged(int x, int y, int oldValue, int newValue) {
+		wakePlayersNear(x, y, 0.5 + BLOCK_WAKE_DISTANCE + Player.PLAYER_RADIUS, null);
+	}
+
+	/**
+	 * Wakes up all sleeping players whose center lies within the specified axis-aligned distance of (x, y).
+	 */
+	private void wakePlayersNear(double x, double y, double distance, Player exclude) {
+		if (sleepingPlayersBySection.isEmpty()) {
+			return;
+		}
+		int shift = GeometryConstants.SECTION_SHIFT;
+		int minSectionX = toBlock(x - distance) >> shift;
+		int maxSectionX = toBlock(x + distance) >> shift;
+		int minSectionY = toBlock(y - distance) >> shift;
+		int maxSectionY = toBlock(y + distance) >> shift;
+		for (int sectionX = minSectionX; sectionX <= maxSectionX; sectionX++) {
+			for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+				List<Player> bucket = sleepingPlayersBySection.get(new SectionId(sectionX, sectionY));
+				if (bucket == null) {
+					continue;
+				}
+				for (int i = bucket.size() - 1; i >= 0; i--) {
+					Player sleeper = bucket.get(i);
+					if (sleeper != exclude && Math.abs(sleeper.getPositionX() - x) <= distance && Math.abs(sleeper.getPositionY() - y) <= distance) {
+						wakeUp(sleeper);
+					}
+				}
+			}
+		}
+	}
+
+	private void removeSleeping(Player player) {
+		SectionId sectionId = getSectionId(player);
+		List<Player> bucket = getSleepingBucket(sectionId, false);
+		if (bucket != null) {
+			bucket.remove(player);
+			if (bucket.isEmpty()) {
+				sleepingPlayersBySection.remove(sectionId);
+			}
+		}
+	}
+
+	private List<Player> getSleepingBucket(SectionId sectionId, boolean create) {
+		List<Player> bucket = sleepingPlayersBySection.get(sectionId);
+		if (bucket == null && create) {
+			bucket = new ArrayList<>();
+			sleepingPlayersBySection.put(sectionId, bucket);
+		}
+		return bucket;
+	}
+
+	/**
+	 * Sleeping players don't move, so the section they were filed under stays valid until they wake up.
+	 */
+	private static SectionId getSectionId(Player player) {
+		return new SectionId(toBlock(player.getPositionX()), toBlock(player.getPositionY()), GeometryConstants.SECTION_CLUSTER_SIZE);
+	}
+
+	/**
+	 * Block centers have integer coordinates, so this rounds to the nearest block.
+	 */
+	private static int toBlock(double coordinate) {
+		return (int)Math.floor(coordinate + 0.5);
+	}
+
+}
@@ -0,0 +1,164 @@
+package name.martingeisse.blockgame.world;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+
+/**
+ * Casts rays against the solid blocks of a {@link Plane}, using DDA grid traversal over a {@link SolidityMap}.
+ * Sections without solid blocks are crossed in a single step.
+ *
+ * Block centers have integer coordinates, so block (x, y) covers the area from (x - 0.5, y - 0.5) to
+ * (x + 0.5, y + 0.5). Blocks outside the plane are solid, so every ray hits something eventually.
+ *
+ * Casting rays does not allocate any memory and does not modify this object, so it is safe to cast rays from
+ * several threads as long as the plane is not modified at the same time.
+ */
+public final class Raycaster {
+
+	private final SolidityMap solidityMap;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param solidityMap the solidity map to cast rays against
+	 */
+	public Raycaster(SolidityMap solidityMap) {
+		this.solidityMap = solidityMap;
+	}
+
+	/**
+	 * Casts a single ray.
+	 *
+	 * @param originX     the x position of the ray origin
+	 * @param originY     the y position of the ray origin
+	 * @param directionX  the x component of the ray direction (need not be normalized)
+	 * @param directionY  the y component of the ray direction (need not be normalized)
+	 * @param maxDistance the maximum distance to trace
+	 * @return the distance to the first solid block, or {@link Double#POSITIVE_INFINITY} if no solid block was hit
+	 * within the maximum distance
+	 */
+	public double castRay(double originX, double originY, double directionX, double directionY, double maxDistance) {
+		return cast(originX, originY, directionX, directionY, maxDistance, null, 0);
+	}
+
+	/**
+	 * Checks whether there is no solid block between two points. A solid block that contains the target point
+	 * blocks the line of sight.
+	 *
+	 * @param fromX the x position of the first point
+	 * @param fromY the y position of the first point
+	 * @param toX   the x position of the second point
+	 * @param toY   the y position of the second point
+	 * @return true if the second point can be seen from the first one, false if not
+	 */
+	public boolean hasLineOfSight(double fromX, double fromY, double toX, double toY) {
+		double dx = toX - fromX;
+		double dy = toY - fromY;
+		double distance = Math.sqrt(dx * dx + dy * dy);
+		return cast(fromX, fromY, dx, dy, distance, null, 0) > distance;
+	}
+
+	/**
+	 * Casts a batch of rays. Coordinate pairs are stored interleaved, i.e. ray i uses origins[2 * i] and
+	 * origins[2 * i + 1] as its origin, and so on.
+	 *
+	 * @param origins      the ray origins (x, y pairs)
+	 * @param directions   the ray directions (x, y pairs, need not be normalized)
+	 * @param count        the number of rays to cast
+	 * @param maxDistance  the maximum distance to trace
+	 * @param hitDistances receives the distance to the first solid block for each ray, or
+	 *                     {@link Double#POSITIVE_INFINITY} if no block was hit within the maximum distance
+	 * @param hitBlocks    receives the (x, y) position of the first solid block for each ray (unchanged for rays that
+	 *                     did not hit anything)
+	 */
+	public void castRays(double[] origins, double[] directions, int count, double maxDistance, double[] hitDistances, int[] hitBlocks) {
+		for (int i = 0; i < count; i++) {
+			hitDistances[i] = cast(origins[2 * i], origins[2 * i + 1], directions[2 * i], directions[2 * i + 1], maxDistance, hitBlocks, 2 * i);
+		}
+	}
+
+	private double cast(double originX, double originY, double directionX, double directionY, double maxDistance, int[] hitBlocks, int hitIndex) {
+
+		// shift by half a block so cells start at integer coordinates
+		double u = originX + 0.5;
+		double v = originY + 0.5;
+		int cellX = (int)Math.floor(u);
+		int cellY = (int)Math.floor(v);
+		double length = Math.sqrt(directionX * directionX + directionY * directionY);
+		if (length == 0) {
+			return solidityMap.isSolid(cellX, cellY) ? hit(0, cellX, cellY, hitBlocks, hitIndex) : Double.POSITIVE_INFINITY;
+		}
+
+		// prepare DDA: t is the distance along the ray, tMax* the distance to the next cell boundary on each axis
+		double normalizedX = directionX / length;
+		double normalizedY = directionY / length;
+		int stepX = (normalizedX > 0 ? 1 : normalizedX < 0 ? -1 : 0);
+		int stepY = (normalizedY > 0 ? 1 : normalizedY < 0 ? -1 : 0);
+		double tDeltaX = (stepX == 0 ? Double.POSITIVE_INFINITY : Math.abs(1.0 / normalizedX));
+		double tDeltaY = (stepY == 0 ? Double.POSITIVE_INFINITY : Math.abs(1.0 / normalizedY));
+		double tMaxX = (stepX > 0 ? (cellX + 1 - u) * tDeltaX : stepX < 0 ? (u - cellX) * tDeltaX : Double.POSITIVE_INFINITY);
+		double tMaxY = (stepY > 0 ? (cellY + 1 - v) * tDeltaY : stepY < 0 ? (v - cellY) * tDeltaY : Double.POSITIVE_INFINITY);
+		double t = 0;
+
+		int shift = GeometryConstants.SECTION_SHIFT;
+		int sectionMask = GeometryConstants.SECTION_SIZE - 1;
+		int width = solidityMap.getWidth();
+		int height = solidityMap.getHeight();
+		while (true) {
+			if (cellX < 0 || cellX >= width || cellY < 0 || cellY >= height) {
+				return hit(t, cellX, cellY, hitBlocks, hitIndex);
+			}
+			if (solidityMap.isSectionEmpty(cellX >> shift, cellY >> shift)) {
+
+				// skip to the last cell of the section (clipped to the plane) along the ray, then step out of it
+				int lastX = (stepX > 0 ? Math.min(cellX | sectionMask, width - 1) : cellX & ~sectionMask);
+				int lastY = (stepY > 0 ? Math.min(cellY | sectionMask, height - 1) : cellY & ~sectionMask);
+				double exitX = (stepX == 0 ? Double.POSITIVE_INFINITY : tMaxX + Math.abs(lastX - cellX) * tDeltaX);
+				double exitY = (stepY == 0 ? Double.POSITIVE_INFINITY : tMaxY + Math.abs(lastY - cellY) * tDeltaY);
+				if (exitX <= exitY) {
+					t = exitX;
+					cellX = lastX + stepX;
+					tMaxX = exitX + tDeltaX;
+					while (tMaxY < t) {
+						cellY += stepY;
+						tMaxY += tDeltaY;
+					}
+				} else {
+					t = exitY;
+					cellY = lastY + stepY;
+					tMaxY = exitY + tDeltaY;
+					while (tMaxX < t) {
+						cellX += stepX;
+						tMaxX += tDeltaX;
+					}
+				}
+
+			} else {
+				if (solidityMap.isSolid(cellX, cellY)) {
+					return hit(t, cellX, cellY, hitBlocks, hitIndex);
+				}
+				if (tMaxX < tMaxY) {
+					t = tMaxX;
+					cellX += stepX;
+					tMaxX += tDeltaX;
+				} else {
+					t = tMaxY;
+					cellY += stepY;
+					tMaxY += tDeltaY;
+				}
+			}
+			if (t > maxDistance) {
+				return Double.POSITIVE_INFINITY;
+			}
+		}
+
+	}
+
+	private static double hit(double distance, int blockX, int blockY, int[] hitBlocks, int hitIndex) {
+		if (hitBlocks != null) {
+			hitBlocks[hitIndex] = blockX;
+			hitBlocks[hitIndex + 1] = blockY;
+		}
+		return distance;
+	}
+
+}
@@ -0,0 +1,23 @@
+package name.martingeisse.blockgame.world;
+
+/**
+ * Gets notified by a {@link SimulationLod} when frozen sections get promoted to a level at which they are simulated
+ * again. Listeners are called synchronously at the end of {@link SimulationLod#update()}, so consumers that do not
+ * run every tick still learn about every promotion.
+ */
+public interface SectionPromotionListener {
+
+	/**
+	 * Called after a section has been promoted from far to near or mid-range.
+	 *
+	 * @param sectionX the x position of the section
+	 * @param sectionY the y position of the section
+	 */
+	public void onSectionPromoted(int sectionX, int sectionY);
+
+	/**
+	 * Called after the level of detail has been disabled, which promotes all sections at once.
+	 */
+	public void onAllSectionsPromoted();
+
+}
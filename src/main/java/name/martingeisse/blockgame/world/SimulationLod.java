@@ -0,0 +1,333 @@
+package name.martingeisse.blockgame.world;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Simulation level of detail for the sections of a {@link Plane}. Each tick, the owner adds focus points (typically
+ * the camera and the controlled player) and calls {@link #update()}. Sections are then classified by their distance
+ * (in sections, along either axis) to the nearest focus point:
+ *
+ * - {@link #LEVEL_NEAR} sections are simulated every tick.
+ * - {@link #LEVEL_MID} sections are simulated every {@link #getMidInterval()} ticks, catching up on the skipped ticks
+ *   in a single larger step. Sections are staggered, so only a fraction of them is simulated in any one tick.
+ * - {@link #LEVEL_FAR} sections are frozen: time does not pass for them until they get promoted again.
+ *
+ * Updating costs time proportional to the number of focus points and the mid radius, not to the size of the plane,
+ * so the total simulation cost per tick stays bounded as the plane grows.
+ *
+ * As long as no focus points are added, the level of detail is disabled and all sections count as near.
+ *
+ * Consumers that do not run every tick can register a {@link SectionPromotionListener} to learn about every section
+ * that gets promoted, instead of polling {@link #getPromotedSectionCount()} after each update.
+ */
+public final class SimulationLod {
+
+	public static final int LEVEL_NEAR = 0;
+	public static final int LEVEL_MID = 1;
+	public static final int LEVEL_FAR = 2;
+
+	public static final int DEFAULT_NEAR_RADIUS = 1;
+	public static final int DEFAULT_MID_RADIUS = 4;
+	public static final int DEFAULT_MID_INTERVAL = 4;
+
+	private final int sectionCountX;
+	private final int sectionCountY;
+	private final byte[] levels;
+	private final long[] nonFarStamps;
+	private final List<SectionPromotionListener> promotionListeners = new ArrayList<>();
+	private int nearRadius = DEFAULT_NEAR_RADIUS;
+	private int midRadius = DEFAULT_MID_RADIUS;
+	private int midInterval = DEFAULT_MID_INTERVAL;
+	private boolean enabled;
+	private boolean allPromoted;
+	private long tick;
+
+	private double[] focusPoints = new double[8];
+	private int focusPointCount;
+	private int[] nonFarSections = new int[16];
+	private int nonFarSectionCount;
+	private int[] promotedSections = new int[16];
+	private int promotedSectionCount;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param width the width of the plane
+	 * @param height the height of the plane
+	 */
+	public SimulationLod(int width, int height) {
+		int shift = GeometryConstants.SECTION_SHIFT;
+		int mask = GeometryConstants.SECTION_SIZE - 1;
+		this.sectionCountX = (width + mask) >> shift;
+		this.sectionCountY = (height + mask) >> shift;
+		this.levels = new byte[sectionCountX * sectionCountY];
+		this.nonFarStamps = new long[sectionCountX * sectionCountY];
+		Arrays.fill(levels, (byte)LEVEL_FAR);
+		Arrays.fill(nonFarStamps, -1);
+	}
+
+	/**
+	 * Sets the radii (in sections) around focus points for near and mid-range sections.
+	 *
+	 * @param nearRadius the radius for near sections
+	 * @param midRadius the radius for mid-range sections (at least the near radius)
+	 */
+	public void setRadii(int nearRadius, int midRadius) {
+		if (nearRadius < 0 || midRadius < nearRadius) {
+			throw new IllegalArgumentException("invalid radii: " + nearRadius + ", " + midRadius);
+		}
+		this.nearRadius = nearRadius;
+		this.midRadius = midRadius;
+	}
+
+	/**
+	 * Getter method for the number of ticks between simulation steps of mid-range sections.
+	 *
+	 * @return the interval
+	 */
+	public int getMidInterval() {
+		return midInterval;
+	}
+
+	/**
+	 * Setter method for the number of ticks between simulation steps of mid-range sections.
+	 *
+	 * @param midInterval the interval (at least 1)
+	 */
+	public void setMidInterval(int midInterval) {
+		if (midInterval < 1) {
+			throw new IllegalArgumentException("invalid interval: " + midInterval);
+		}
+		this.midInterval = midInterval;
+	}
+
+	/**
+	 * Adds a listener that gets notified about promoted sections.
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addPromotionListener(SectionPromotionListener listener) {
+		promotionListeners.add(listener);
+	}
+
+	/**
+	 * Removes a promotion listener.
+	 *
+	 * @param listener the listener to remove
+	 */
+	public void removePromotionListener(SectionPromotionListener listener) {
+		promotionListeners.remove(listener);
+	}
+
+	/**
+	 * Adds a focus point for the next {@link #update()}.
+	 *
+	 * @param x the x position
+	 * @param y the y position
+	 */
+	public void addFocusPoint(double x, double y) {
+		if (2 * focusPointCount == focusPoints.length) {
+			focusPoints = Arrays.copyOf(focusPoints, 2 * focusPoints.length);
+		}
+		focusPoints[2 * focusPointCount] = x;
+		focusPoints[2 * focusPointCount + 1] = y;
+		focusPointCount++;
+	}
+
+	/**
+	 * Advances to the next tick and classifies the sections using the focus points added since the last update.
+	 * The focus points are cleared afterwards.
+	 */
+	public void update() {
+		tick++;
+		promotedSectionCount = 0;
+		allPromoted = false;
+		boolean wasEnabled = enabled;
+		enabled = (focusPointCount > 0);
+
+		// demote everything that was not far
+		for (int i = 0; i < nonFarSectionCount; i++) {
+			levels[nonFarSections[i]] = LEVEL_FAR;
+		}
+		nonFarSectionCount = 0;
+		if (!enabled) {
+			allPromoted = wasEnabled;
+			if (allPromoted) {
+				for (SectionPromotionListener listener : promotionListeners) {
+					listener.onAllSectionsPromoted();
+				}
+			}
+			return;
+		}
+
+		// promote sections around the focus points
+		int shift = GeometryConstants.SECTION_SHIFT;
+		for (int i = 0; i < focusPointCount; i++) {
+			int focusSectionX = toBlock(focusPoints[2 * i]) >> shift;
+			int focusSectionY = toBlock(focusPoints[2 * i + 1]) >> shift;
+			int minSectionX = Math.max(0, focusSectionX - midRadius);
+			int maxSectionX = Math.min(sectionCountX - 1, focusSectionX + midRadius);
+			int minSectionY = Math.max(0, focusSectionY - midRadius);
+			int maxSectionY = Math.min(sectionCountY - 1, focusSectionY + midRadius);
+			for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+				for (int sectionX = minSectionX; sectionX <= maxSectionX; sectionX++) {
+					int distance = Math.max(Math.abs(sectionX - focusSectionX), Math.abs(sectionY - focusSectionY));
+					int level = (distance <= nearRadius ? LEVEL_NEAR : LEVEL_MID);
+					int section = sectionY * sectionCountX + sectionX;
+					if (levels[section] == LEVEL_FAR) {
+						nonFarSections = append(nonFarSections, nonFarSectionCount, section);
+						nonFarSectionCount++;
+						if (wasEnabled && nonFarStamps[section] != tick - 1) {
+							promotedSections = append(promotedSections, promotedSectionCount, section);
+							promotedSectionCount++;
+						}
+						nonFarStamps[section] = tick;
+					}
+					if (level < levels[section]) {
+						levels[section] = (byte)level;
+					}
+				}
+			}
+		}
+		focusPointCount = 0;
+
+		// notify listeners
+		for (SectionPromotionListener listener : promotionListeners) {
+			for (int i = 0; i < promotedSectionCount; i++) {
+				listener.onSectionPromoted(getPromotedSectionX(i), getPromotedSectionY(i));
+			}
+		}
+
+	}
+
+	/**
+	 * Getter method for the current tick.
+	 *
+	 * @return the tick
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Returns the level of a section.
+	 *
+	 * @param sectionX the x position of the section
+	 * @param sectionY the y position of the section
+	 * @return the level
+	 */
+	public int getLevel(int sectionX, int sectionY) {
+		if (!enabled) {
+			return LEVEL_NEAR;
+		}
+		if (sectionX < 0 || sectionX >= sectionCountX || sectionY < 0 || sectionY >= sectionCountY) {
+			return LEVEL_FAR;
+		}
+		return levels[sectionY * sectionCountX + sectionX];
+	}
+
+	/**
+	 * Returns the level of the section that contains a position.
+	 *
+	 * @param x the x position
+	 * @param y the y position
+	 * @return the level
+	 */
+	public int getLevelAt(double x, double y) {
+		int shift = GeometryConstants.SECTION_SHIFT;
+		return getLevel(toBlock(x) >> shift, toBlock(y) >> shift);
+	}
+
+	/**
+	 * Checks whether a section should be simulated in the current tick.
+	 *
+	 * @param sectionX the x position of the section
+	 * @param sectionY the y position of the section
+	 * @return true to simulate, false to skip
+	 */
+	public boolean shouldTick(int sectionX, int sectionY) {
+		return getTicksUntilDue(sectionX, sectionY) == 0;
+	}
+
+	/**
+	 * Returns the number of ticks until a section is simulated next, assuming its level stays the same.
+	 *
+	 * @param sectionX the x position of the section
+	 * @param sectionY the y position of the section
+	 * @return 0 if the section is simulated in the current tick, the number of ticks to wait for mid-range
+	 * sections that are not, or -1 for frozen sections
+	 */
+	public int getTicksUntilDue(int sectionX, int sectionY) {
+		switch (getLevel(sectionX, sectionY)) {
+
+			case LEVEL_NEAR:
+				return 0;
+
+			case LEVEL_MID:
+				return (int)Math.floorMod(-(tick + 7 * sectionX + 13 * sectionY), (long)midInterval);
+
+			default:
+				return -1;
+
+		}
+	}
+
+	/**
+	 * Checks whether the last update promoted all frozen sections because the level of detail got disabled.
+	 *
+	 * @return true if all sections were promoted, false if only those listed by
+	 * {@link #getPromotedSectionCount()} were
+	 */
+	public boolean isAllPromoted() {
+		return allPromoted;
+	}
+
+	/**
+	 * Returns the number of sections that were far before the last update and are not anymore.
+	 *
+	 * @return the number of promoted sections
+	 */
+	public int getPromotedSectionCount() {
+		return promotedSectionCount;
+	}
+
+	/**
+	 * Returns the x position of a promoted section.
+	 *
+	 * @param index the index in the list of promoted sections
+	 * @return the section x position
+	 */
+	public int getPromotedSectionX(int index) {
+		return promotedSections[index] % sectionCountX;
+	}
+
+	/**
+	 * Returns the y position of a promoted section.
+	 *
+	 * @param index the index in the list of promoted sections
+	 * @return the section y position
+	 */
+	public int getPromotedSectionY(int index) {
+		return promotedSections[index] / sectionCountX;
+	}
+
+	private static int[] append(int[] array, int count, int value) {
+		if (count == array.length) {
+			array = Arrays.copyOf(array, 2 * array.length);
+		}
+		array[count] = value;
+		return array;
+	}
+
+	/**
+	 * Block centers have integer coordinates, so this rounds to the nearest block.
+	 */
+	private static int toBlock(double coordinate) {
+		return (int)Math.floor(coordinate + 0.5);
+	}
+
+}
@@ -0,0 +1,137 @@
+package name.martingeisse.blockgame.world;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.world.collision.CollisionUtil;
+
+/**
+ * A bitmap that stores one "solid" bit per block of a {@link Plane}, organized by section, plus the number of solid
+ * blocks per section. It is built once and then kept up to date through the plane's block change feed.
+ *
+ * Each section row of {@link GeometryConstants#SECTION_SIZE} blocks is stored in a single int, so a lookup is one
+ * array access and a bit test. Sections without any solid block can be skipped as a whole by traversal algorithms.
+ *
+ * Blocks outside the plane are solid, like the (solid) block 0 that {@link Plane#getBlock(int, int)} returns for them.
+ *
+ * The map also serves as the block map collider for collision detection in the plane, so movement code does not need
+ * an adapter around it.
+ */
+public final class SolidityMap implements BlockChangeListener, CollisionUtil.BlockMapCollider {
+
+	private final int width;
+	private final int height;
+	private final int sectionCountX;
+	private final int[] rows;
+	private final int[] sectionSolidCounts;
+
+	/**
+	 * Constructor. Builds the bitmap from the current contents of the plane and registers itself as a listener.
+	 *
+	 * @param plane the plane
+	 */
+	public SolidityMap(Plane plane) {
+		this.width = plane.getWidth();
+		this.height = plane.getHeight();
+		int shift = GeometryConstants.SECTION_SHIFT;
+		int mask = GeometryConstants.SECTION_SIZE - 1;
+		this.sectionCountX = (width + mask) >> shift;
+		int sectionCountY = (height + mask) >> shift;
+		this.rows = new int[(sectionCountX * sectionCountY) << shift];
+		this.sectionSolidCounts = new int[sectionCountX * sectionCountY];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (BlockTypes.isSolid(plane.getBlock(x, y))) {
+					rows[getRowIndex(x, y)] |= (1 << (x & mask));
+					sectionSolidCounts[getSectionIndex(x >> shift, y >> shift)]++;
+				}
+			}
+		}
+		plane.addBlockChangeListener(this);
+	}
+
+	/**
+	 * Getter method for the width.
+	 *
+	 * @return the width
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Getter method for the height.
+	 *
+	 * @return the height
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	private int getSectionIndex(int sectionX, int sectionY) {
+		return sectionY * sectionCountX + sectionX;
+	}
+
+	private int getRowIndex(int x, int y) {
+		int shift = GeometryConstants.SECTION_SHIFT;
+		return (getSectionIndex(x >> shift, y >> shift) << shift) + (y & (GeometryConstants.SECTION_SIZE - 1));
+	}
+
+	/**
+	 * Checks whether a block is solid.
+	 *
+	 * @param x the x position
+	 * @param y the y position
+	 * @return true if solid, false if not
+	 */
+	@Override
+	public boolean isSolid(int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height) {
+			return true;
+		}
+		return (rows[getRowIndex(x, y)] & (1 << (x & (GeometryConstants.SECTION_SIZE - 1)))) != 0;
+	}
+
+	/**
+	 * Checks whether a section contains no solid block. The section must lie (at least partially) within the plane.
+	 *
+	 * @param sectionX the x position of the section, in section units
+	 * @param sectionY the y position of the section, in section units
+	 * @return true if the section is empty, false if not
+	 */
+	public boolean isSectionEmpty(int sectionX, int sectionY) {
+		return sectionSolidCounts[getSectionIndex(sectionX, sectionY)] == 0;
+	}
+
+	/**
+	 * Copies the rows of a section to an array. Each row is an int with one bit per block, the lowest bit for the
+	 * block at the smallest x position. Bits for blocks outside the plane are 0.
+	 *
+	 * @param sectionX the x position of the section, in section units
+	 * @param sectionY the y position of the section, in section units
+	 * @param destination the array to copy to, with at least {@link GeometryConstants#SECTION_SIZE} elements
+	 */
+	public void copySectionRows(int sectionX, int sectionY, int[] destination) {
+		int shift = GeometryConstants.SECTION_SHIFT;
+		System.arraycopy(rows, getSectionIndex(sectionX, sectionY) << shift, destination, 0, GeometryConstants.SECTION_SIZE);
+	}
+
+	// override
+	@Override
+	public void onBlockChanged(int x, int y, int oldValue, int newValue) {
+		boolean oldSolid = BlockTypes.isSolid(oldValue);
+		boolean newSolid = BlockTypes.isSolid(newValue);
+		if (oldSolid == newSolid) {
+			return;
+		}
+		int shift = GeometryConstants.SECTION_SHIFT;
+		int bit = 1 << (x & (GeometryConstants.SECTION_SIZE - 1));
+		int sectionIndex = getSectionIndex(x >> shift, y >> shift);
+		if (newSolid) {
+			rows[getRowIndex(x, y)] |= bit;
+			sectionSolidCounts[sectionIndex]++;
+		} else {
+			rows[getRowIndex(x, y)] &= ~bit;
+			sectionSolidCounts[sectionIndex]--;
+		}
+	}
+
+}
@@ -0,0 +1,156 @@
+package name.martingeisse.blockgame.world.automaton;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.world.Plane;
+
+/**
+ * The working buffers used by a {@link CellularAutomaton} to update a single section. They cover the section plus
+ * a border of one cell, so rules can read and change the neighbors of every cell in the section.
+ *
+ * The grid is double-buffered: the front buffer holds the blocks as they were when the section was loaded, the
+ * back buffer receives the changes. Rules read and write the back buffer, so they see the changes done by earlier
+ * updates for the same section.
+ */
+public final class CellGrid {
+
+	/**
+	 * The number of cells along each side of the grid.
+	 */
+	public static final int SIZE = GeometryConstants.SECTION_SIZE + 2;
+
+	private final byte[] front = new byte[SIZE * SIZE];
+	private final byte[] back = new byte[SIZE * SIZE];
+	private int minX;
+	private int minY;
+	private long tick;
+	private long seed;
+
+	CellGrid() {
+	}
+
+	/**
+	 * Loads the section with its border from the plane into both buffers.
+	 */
+	void load(Plane plane, int sectionX, int sectionY, long tick, long seed) {
+		this.minX = (sectionX << GeometryConstants.SECTION_SHIFT) - 1;
+		this.minY = (sectionY << GeometryConstants.SECTION_SHIFT) - 1;
+		this.tick = tick;
+		this.seed = seed;
+		plane.getBlocks(minX, minY, SIZE, SIZE, front);
+		System.arraycopy(front, 0, back, 0, SIZE * SIZE);
+	}
+
+	/**
+	 * Getter method for the x position of the first column of the grid.
+	 *
+	 * @return the x position of the first column
+	 */
+	public int getMinX() {
+		return minX;
+	}
+
+	/**
+	 * Getter method for the y position of the first row of the grid.
+	 *
+	 * @return the y position of the first row
+	 */
+	public int getMinY() {
+		return minY;
+	}
+
+	/**
+	 * Getter method for the tick being computed.
+	 *
+	 * @return the tick
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Checks whether a position lies within this grid.
+	 *
+	 * @param x the x position
+	 * @param y the y position
+	 * @return true if inside, false if not
+	 */
+	public boolean contains(int x, int y) {
+		return x >= minX && x < minX + SIZE && y >= minY && y < minY + SIZE;
+	}
+
+	/**
+	 * Returns a block from the back buffer, i.e. including the changes done so far.
+	 *
+	 * @param x the x position
+	 * @param y the y position
+	 * @return the block
+	 */
+	public int get(int x, int y) {
+		return back[getIndex(x, y)] & 0xff;
+	}
+
+	/**
+	 * Returns a block as it was when the section was loaded.
+	 *
+	 * @param x the x position
+	 * @param y the y position
+	 * @return the block
+	 */
+	public int getOriginal(int x, int y) {
+		return front[getIndex(x, y)] & 0xff;
+	}
+
+	/**
+	 * Changes a block in the back buffer. Changes to blocks outside the plane are dropped when the changes are
+	 * applied.
+	 *
+	 * @param x the x position
+	 * @param y the y position
+	 * @param value the new block value, in the range 0..255
+	 */
+	public void set(int x, int y, int value) {
+		back[getIndex(x, y)] = (byte)value;
+	}
+
+	/**
+	 * Returns a pseudo-random number that only depends on the position, the tick and the automaton's seed, so
+	 * results do not depend on the order or thread in which sections are processed.
+	 *
+	 * @param x the x position
+	 * @param y the y position
+	 * @return a non-negative pseudo-random number
+	 */
+	public int getRandom(int x, int y) {
+		long value = seed + tick * 0x9E3779B97F4A7C15L + x * 0xC2B2AE3D27D4EB4FL + y * 0x165667B19E3779F9L;
+		value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+		value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+		value = value ^ (value >>> 31);
+		return (int)(value >>> 33);
+	}
+
+	/**
+	 * Checks whether a grid cell (by index) has been changed since loading.
+	 */
+	boolean isChanged(int index) {
+		return front[index] != back[index];
+	}
+
+	/**
+	 * Returns the value of a grid cell (by index) in the back buffer.
+	 */
+	int getBack(int index) {
+		return back[index] & 0xff;
+	}
+
+	/**
+	 * Returns the value of a grid cell (by index) in the front buffer.
+	 */
+	int getFront(int index) {
+		return front[index] & 0xff;
+	}
+
+	private int getIndex(int x, int y) {
+		return (y - minY) * SIZE + (x - minX);
+	}
+
+}
@@ -0,0 +1,30 @@
+package name.martingeisse.blockgame.world.automaton;
+
+/**
+ * The rule of a {@link CellularAutomaton}: decides how cells of certain block types change from tick to tick.
+ *
+ * Rules are called concurrently from several threads, so they must not keep mutable state. To stay deterministic,
+ * they must only depend on the contents of the {@link CellGrid} and on {@link CellGrid#getRandom(int, int)}.
+ */
+public interface CellRule {
+
+	/**
+	 * Checks whether cells of the specified block type are updated by this rule.
+	 *
+	 * @param blockType the block type
+	 * @return true if updated, false if not
+	 */
+	public boolean isActiveType(int blockType);
+
+	/**
+	 * Updates a single cell. The rule may change this cell and its 8 neighbors.
+	 *
+	 * @param grid the grid that contains the cell
+	 * @param x the x position of the cell
+	 * @param y the y position of the cell
+	 * @return true if the cell may change in a later tick even if nothing around it changes (for example, when its
+	 * change depends on chance), false if it will only change again after a change in its neighborhood
+	 */
+	public boolean update(CellGrid grid, int x, int y);
+
+}
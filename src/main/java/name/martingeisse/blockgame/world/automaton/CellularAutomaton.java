@@ -0,0 +1,289 @@
+package name.martingeisse.blockgame.world.automaton;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.world.BlockChangeListener;
+import name.martingeisse.blockgame.world.Plane;
+import name.martingeisse.blockgame.world.SectionPromotionListener;
+import name.martingeisse.blockgame.world.SimulationLod;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a {@link CellRule} over the blocks of a {@link Plane}, for block types such as fluids or spreading blocks.
+ *
+ * Work is done per section. Only active sections are processed: a section becomes active when a block in it or
+ * next to it changes, and stays active while its rule updates cause changes or ask to stay active. Sections without
+ * activity cost nothing.
+ *
+ * A rule may change the neighbors of a cell, which can lie in a neighbor section. To process sections in parallel
+ * without conflicts, each tick runs in four phases, one for each combination of even/odd section x and y. Sections
+ * of the same phase are at least one full section apart, so the areas they read and write never overlap. Within a
+ * phase, sections are processed in parallel as fork/join tasks, each into its own {@link CellGrid}. When a step
+ * runs on a thread of the pool itself, such as a tick of the {@link name.martingeisse.blockgame.game.WorldHost},
+ * that thread joins the tasks by running them rather than blocking, so steps cannot starve the pool. The resulting changes are then applied to the plane on the calling thread, in section order,
+ * before the next phase starts. The result is therefore independent of the number of threads and of scheduling.
+ *
+ * Active sections are processed according to the plane's {@link SimulationLod}: mid-range sections only in the
+ * ticks in which they are due, and frozen sections not at all until they get promoted again. Promotions are
+ * received as events, so a frozen section wakes up on the next step even if steps do not run every tick.
+ *
+ * {@link #step()} must be called from the tick thread, which is also the only thread that changes the plane.
+ */
+public final class CellularAutomaton implements BlockChangeListener, SectionPromotionListener {
+
+	private static final int PHASE_COUNT = 4;
+
+	private final Plane plane;
+	private final CellRule rule;
+	private final ForkJoinPool pool;
+	private final int threadCount;
+	private final long seed;
+	private final int sectionCountX;
+	private final int sectionCountY;
+	private final boolean[] activeTypes = new boolean[256];
+	private final BitSet activeSections = new BitSet();
+	private final BitSet frozenSections = new BitSet();
+	private final int[][] phaseSections = new int[PHASE_COUNT][];
+	private final int[] phaseSectionCounts = new int[PHASE_COUNT];
+	private final int[][] sectionChanges;
+	private final int[] sectionChangeCounts;
+	private final boolean[] sectionKeepActive;
+	private final ThreadLocal<CellGrid> grids = ThreadLocal.withInitial(CellGrid::new);
+	private long tick;
+
+	/**
+	 * Constructor. Activates all sections that contain blocks handled by the rule, and registers this automaton as
+	 * a listener with the plane and its level of detail.
+	 *
+	 * @param plane the plane
+	 * @param rule the rule
+	 * @param pool the pool used to process sections in parallel
+	 * @param threadCount the number of tasks to split each phase into
+	 * @param seed the seed for {@link CellGrid#getRandom(int, int)}
+	 */
+	public CellularAutomaton(Plane plane, CellRule rule, ForkJoinPool pool, int threadCount, long seed) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("invalid thread count: " + threadCount);
+		}
+		this.plane = plane;
+		this.rule = rule;
+		this.pool = pool;
+		this.threadCount = threadCount;
+		this.seed = seed;
+		int shift = GeometryConstants.SECTION_SHIFT;
+		int mask = GeometryConstants.SECTION_SIZE - 1;
+		this.sectionCountX = (plane.getWidth() + mask) >> shift;
+		this.sectionCountY = (plane.getHeight() + mask) >> shift;
+		int sectionCount = sectionCountX * sectionCountY;
+		for (int phase = 0; phase < PHASE_COUNT; phase++) {
+			phaseSections[phase] = new int[((sectionCountX + 1) / 2) * ((sectionCountY + 1) / 2)];
+		}
+		this.sectionChanges = new int[sectionCount][];
+		this.sectionChangeCounts = new int[sectionCount];
+		this.sectionKeepActive = new boolean[sectionCount];
+		for (int blockType = 0; blockType < activeTypes.length; blockType++) {
+			activeTypes[blockType] = rule.isActiveType(blockType);
+		}
+		for (int y = 0; y < plane.getHeight(); y++) {
+			for (int x = 0; x < plane.getWidth(); x++) {
+				if (activeTypes[plane.getBlock(x, y)]) {
+					activeSections.set(getSectionIndex(x >> shift, y >> shift));
+				}
+			}
+		}
+		plane.addBlockChangeListener(this);
+		plane.getSimulationLod().addPromotionListener(this);
+	}
+
+	/**
+	 * Unregisters this automaton from the plane. The automaton must not be used anymore afterwards.
+	 */
+	public void dispose() {
+		plane.removeBlockChangeListener(this);
+		plane.getSimulationLod().removePromotionListener(this);
+	}
+
+	/**
+	 * Getter method for the number of ticks computed so far.
+	 *
+	 * @return the tick
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Returns the number of sections that have pending work, including frozen ones.
+	 *
+	 * @return the number of active sections
+	 */
+	public int getActiveSectionCount() {
+		return activeSections.cardinality() + frozenSections.cardinality();
+	}
+
+	// override
+	@Override
+	public void onBlockChanged(int x, int y, int oldValue, int newValue) {
+		int shift = GeometryConstants.SECTION_SHIFT;
+		int minSectionX = Math.max(0, (x - 1) >> shift);
+		int maxSectionX = Math.min(sectionCountX - 1, (x + 1) >> shift);
+		int minSectionY = Math.max(0, (y - 1) >> shift);
+		int maxSectionY = Math.min(sectionCountY - 1, (y + 1) >> shift);
+		for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+			for (int sectionX = minSectionX; sectionX <= maxSectionX; sectionX++) {
+				activeSections.set(getSectionIndex(sectionX, sectionY));
+			}
+		}
+	}
+
+	// override
+	@Override
+	public void onSectionPromoted(int sectionX, int sectionY) {
+		int section = getSectionIndex(sectionX, sectionY);
+		if (frozenSections.get(section)) {
+			frozenSections.clear(section);
+			activeSections.set(section);
+		}
+	}
+
+	// override
+	@Override
+	public void onAllSectionsPromoted() {
+		activeSections.or(frozenSections);
+		frozenSections.clear();
+	}
+
+	/**
+	 * Computes the next tick.
+	 */
+	public void step() {
+		tick++;
+		SimulationLod lod = plane.getSimulationLod();
+
+		// sort the active sections that are due into phases; the others stay active or get frozen
+		Arrays.fill(phaseSectionCounts, 0);
+		for (int section = activeSections.nextSetBit(0); section >= 0; section = activeSections.nextSetBit(section + 1)) {
+			int sectionX = section % sectionCountX;
+			int sectionY = section / sectionCountX;
+			if (!lod.shouldTick(sectionX, sectionY)) {
+				if (lod.getLevel(sectionX, sectionY) == SimulationLod.LEVEL_FAR) {
+					activeSections.clear(section);
+					frozenSections.set(section);
+				}
+				continue;
+			}
+			activeSections.clear(section);
+			int phase = (sectionX & 1) | ((sectionY & 1) << 1);
+			phaseSections[phase][phaseSectionCounts[phase]] = section;
+			phaseSectionCounts[phase]++;
+		}
+
+		for (int phase = 0; phase < PHASE_COUNT; phase++) {
+			int count = phaseSectionCounts[phase];
+			if (count == 0) {
+				continue;
+			}
+			processInParallel(phaseSections[phase], count);
+			for (int i = 0; i < count; i++) {
+				applyChanges(phaseSections[phase][i]);
+			}
+		}
+	}
+
+	private void processInParallel(int[] sections, int count) {
+		AtomicInteger nextSection = new AtomicInteger();
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[Math.min(threadCount, count)];
+		for (int i = 0; i < tasks.length; i++) {
+			tasks[i] = ForkJoinTask.adapt(() -> processSections(sections, count, nextSection));
+		}
+		if (ForkJoinTask.getPool() == pool) {
+			ForkJoinTask.invokeAll(tasks);
+		} else {
+			pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+		}
+	}
+
+	private void processSections(int[] sections, int count, AtomicInteger nextSection) {
+		while (true) {
+			int i = nextSection.getAndIncrement();
+			if (i >= count) {
+				break;
+			}
+			processSection(sections[i]);
+		}
+	}
+
+	/**
+	 * Runs the rule for all cells of a section and stores the resulting changes. Cells that have already been
+	 * changed by an earlier update for the same section are skipped, so each cell is handled at most once per tick.
+	 */
+	private void processSection(int section) {
+		int shift = GeometryConstants.SECTION_SHIFT;
+		int sectionX = section % sectionCountX;
+		int sectionY = section / sectionCountX;
+		CellGrid grid = grids.get();
+		grid.load(plane, sectionX, sectionY, tick, seed);
+		int minX = sectionX << shift;
+		int minY = sectionY << shift;
+		int maxX = Math.min(minX + GeometryConstants.SECTION_SIZE, plane.getWidth()) - 1;
+		int maxY = Math.min(minY + GeometryConstants.SECTION_SIZE, plane.getHeight()) - 1;
+		boolean keepActive = false;
+		for (int y = minY; y <= maxY; y++) {
+			int index = (y - grid.getMinY()) * CellGrid.SIZE + (minX - grid.getMinX());
+			for (int x = minX; x <= maxX; x++, index++) {
+				if (activeTypes[grid.getFront(index)] && !grid.isChanged(index)) {
+					keepActive |= rule.update(grid, x, y);
+				}
+			}
+		}
+
+		// collect the changes, dropping those outside the plane
+		int[] changes = sectionChanges[section];
+		int changeCount = 0;
+		for (int index = 0; index < CellGrid.SIZE * CellGrid.SIZE; index++) {
+			if (!grid.isChanged(index)) {
+				continue;
+			}
+			int x = grid.getMinX() + index % CellGrid.SIZE;
+			int y = grid.getMinY() + index / CellGrid.SIZE;
+			if (x < 0 || x >= plane.getWidth() || y < 0 || y >= plane.getHeight()) {
+				continue;
+			}
+			if (changes == null || changeCount == changes.length) {
+				changes = (changes == null ? new int[64] : Arrays.copyOf(changes, 2 * changes.length));
+				sectionChanges[section] = changes;
+			}
+			changes[changeCount] = (index << 8) | grid.getBack(index);
+			changeCount++;
+		}
+		sectionChangeCounts[section] = changeCount;
+		sectionKeepActive[section] = keepActive;
+
+	}
+
+	/**
+	 * Applies the changes computed for a section to the plane. The plane notifies this automaton about each change,
+	 * which activates the affected sections for the next tick.
+	 */
+	private void applyChanges(int section) {
+		int gridMinX = ((section % sectionCountX) << GeometryConstants.SECTION_SHIFT) - 1;
+		int gridMinY = ((section / sectionCountX) << GeometryConstants.SECTION_SHIFT) - 1;
+		int[] changes = sectionChanges[section];
+		for (int i = 0; i < sectionChangeCounts[section]; i++) {
+			int index = changes[i] >>> 8;
+			plane.setBlock(gridMinX + index % CellGrid.SIZE, gridMinY + index / CellGrid.SIZE, changes[i] & 0xff);
+		}
+		if (sectionKeepActive[section]) {
+			activeSections.set(section);
+		}
+	}
+
+	private int getSectionIndex(int sectionX, int sectionY) {
+		return sectionY * sectionCountX + sectionX;
+	}
+
+}
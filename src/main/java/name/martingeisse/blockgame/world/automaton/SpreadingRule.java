@@ -0,0 +1,57 @@
+package name.martingeisse.blockgame.world.automaton;
+
+/**
+ * A rule for blocks that spread into neighboring blocks of another type, such as fungus growing over floor. Each
+ * tick, every straight neighbor of the target type is taken over with a fixed chance.
+ */
+public final class SpreadingRule implements CellRule {
+
+	private final int spreadingType;
+	private final int targetType;
+	private final int chanceDivisor;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param spreadingType the type of the spreading block
+	 * @param targetType the type of the blocks it spreads into
+	 * @param chanceDivisor a neighbor is taken over with a chance of 1 / chanceDivisor per tick
+	 */
+	public SpreadingRule(int spreadingType, int targetType, int chanceDivisor) {
+		this.spreadingType = spreadingType;
+		this.targetType = targetType;
+		this.chanceDivisor = chanceDivisor;
+	}
+
+	// override
+	@Override
+	public boolean isActiveType(int blockType) {
+		return blockType == spreadingType;
+	}
+
+	// override
+	@Override
+	public boolean update(CellGrid grid, int x, int y) {
+		boolean targetsLeft = false;
+		targetsLeft |= spreadTo(grid, x + 1, y);
+		targetsLeft |= spreadTo(grid, x - 1, y);
+		targetsLeft |= spreadTo(grid, x, y + 1);
+		targetsLeft |= spreadTo(grid, x, y - 1);
+		return targetsLeft;
+	}
+
+	/**
+	 * Returns true if the neighbor is still a target afterwards.
+	 */
+	private boolean spreadTo(CellGrid grid, int x, int y) {
+		if (grid.get(x, y) != targetType) {
+			return false;
+		}
+		if (grid.getRandom(x, y) % chanceDivisor == 0) {
+			grid.set(x, y, spreadingType);
+			return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,30 @@
+package name.martingeisse.blockgame.world.blockupdate;
+
+/**
+ * Dynamic behavior of a block type, registered with a {@link BlockUpdateEngine}. The engine dispatches events for a
+ * cell to the behavior of the block type the cell contains at the time of the event.
+ */
+public interface BlockBehavior {
+
+	/**
+	 * Called when an update scheduled through {@link BlockUpdateEngine#schedule(int, int, int, int)} becomes due.
+	 *
+	 * @param engine the engine
+	 * @param x the x position of the block
+	 * @param y the y position of the block
+	 * @param data the data passed when scheduling the update
+	 */
+	public void onScheduledUpdate(BlockUpdateEngine engine, int x, int y, int data);
+
+	/**
+	 * Called when a player hits the block fast.
+	 *
+	 * @param engine the engine
+	 * @param x the x position of the block
+	 * @param y the y position of the block
+	 * @param normalX the x component of the surface normal (-1, 0 or 1), pointing away from the block
+	 * @param normalY the y component of the surface normal (-1, 0 or 1), pointing away from the block
+	 */
+	public void onFastCollision(BlockUpdateEngine engine, int x, int y, int normalX, int normalY);
+
+}
@@ -0,0 +1,403 @@
+package name.martingeisse.blockgame.world.blockupdate;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.world.Plane;
+import name.martingeisse.blockgame.world.Player;
+import name.martingeisse.blockgame.world.SimulationLod;
+import name.martingeisse.blockgame.world.event.CollisionEvents;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Runs the dynamic behavior of blocks in a {@link Plane}. Block types register a {@link BlockBehavior}, and
+ * behaviors schedule updates for single cells some number of ticks in the future.
+ *
+ * Pending updates are kept in a hierarchical timing wheel: {@link #LEVEL_COUNT} levels of {@link #SLOT_COUNT} slots
+ * each, where a slot on level n covers SLOT_COUNT^n ticks. Scheduling is a constant-time list append, and each tick
+ * only touches the updates that are due (plus, every SLOT_COUNT^n ticks, the updates of one higher-level slot that
+ * get moved down a level). The cost of a tick therefore depends on the number of active cells, not on the size of
+ * the plane. Updates are stored in primitive arrays, so scheduling does not allocate memory once these have grown
+ * large enough.
+ *
+ * Each cell has at most one pending update; scheduling another update for a cell that already has one does
+ * nothing. Updates that become due in the same tick run in the order they were scheduled. Each slot list is kept in
+ * that order: new updates are appended, and only updates that move down from a higher level or get postponed are
+ * inserted in front of updates scheduled after them.
+ *
+ * Updates that become due in a mid-range section of the plane's {@link SimulationLod} are postponed to the next
+ * tick in which that section is simulated, so they run in batches at the section's reduced rate. Updates that
+ * become due in a frozen section are parked with that section and run in the tick in which the section gets
+ * promoted again.
+ */
+public final class BlockUpdateEngine {
+
+	/**
+	 * The number of slots per level of the timing wheel.
+	 */
+	public static final int SLOT_COUNT = 64;
+
+	/**
+	 * The number of levels of the timing wheel. Delays are limited to SLOT_COUNT^LEVEL_COUNT - 1 ticks.
+	 */
+	public static final int LEVEL_COUNT = 4;
+
+	private static final int SLOT_BITS = 6;
+	private static final int SLOT_MASK = SLOT_COUNT - 1;
+	private static final long MAX_DELAY = (1L << (SLOT_BITS * LEVEL_COUNT)) - 1;
+
+	private final Plane plane;
+	private final BlockBehavior[] behaviors = new BlockBehavior[256];
+	private final BitSet scheduledCells = new BitSet();
+	private final int[] slotHeads = new int[LEVEL_COUNT * SLOT_COUNT];
+	private final int[] slotTails = new int[LEVEL_COUNT * SLOT_COUNT];
+	private final int sectionCountX;
+	private final int[] parkedHeads;
+	private final int[] parkedTails;
+	private int[] parkedSections = new int[16];
+	private int parkedSectionCount;
+	private long currentTick;
+	private long nextSequenceNumber;
+	private int activeCellCount;
+
+	// the update entries, linked into slot lists by entryNext; unused entries form the free list
+	private int[] entryX = new int[64];
+	private int[] entryY = new int[64];
+	private int[] entryData = new int[64];
+	private long[] entryDueTick = new long[64];
+	private long[] entrySequenceNumber = new long[64];
+	private int[] entryNext = new int[64];
+	private int entryCapacityUsed;
+	private int freeEntry = -1;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param plane the plane whose blocks are updated
+	 */
+	public BlockUpdateEngine(Plane plane) {
+		this.plane = plane;
+		Arrays.fill(slotHeads, -1);
+		Arrays.fill(slotTails, -1);
+		int shift = GeometryConstants.SECTION_SHIFT;
+		int mask = GeometryConstants.SECTION_SIZE - 1;
+		this.sectionCountX = (plane.getWidth() + mask) >> shift;
+		int sectionCount = sectionCountX * ((plane.getHeight() + mask) >> shift);
+		this.parkedHeads = new int[sectionCount];
+		this.parkedTails = new int[sectionCount];
+		Arrays.fill(parkedHeads, -1);
+		Arrays.fill(parkedTails, -1);
+	}
+
+	/**
+	 * Getter method for the plane.
+	 *
+	 * @return the plane
+	 */
+	public Plane getPlane() {
+		return plane;
+	}
+
+	/**
+	 * Getter method for the current tick.
+	 *
+	 * @return the current tick
+	 */
+	public long getCurrentTick() {
+		return currentTick;
+	}
+
+	/**
+	 * Returns the number of cells that have a pending update.
+	 *
+	 * @return the number of active cells
+	 */
+	public int getActiveCellCount() {
+		return activeCellCount;
+	}
+
+	/**
+	 * Registers the behavior for a block type, replacing any behavior registered for it before.
+	 *
+	 * @param blockType the block type
+	 * @param behavior the behavior, or null to remove the behavior
+	 */
+	public void register(int blockType, BlockBehavior behavior) {
+		behaviors[blockType] = behavior;
+	}
+
+	/**
+	 * Returns the behavior for a block type.
+	 *
+	 * @param blockType the block type
+	 * @return the behavior, or null if the block type has none
+	 */
+	public BlockBehavior getBehavior(int blockType) {
+		return (blockType < 0 || blockType >= behaviors.length ? null : behaviors[blockType]);
+	}
+
+	/**
+	 * Checks whether a cell has a pending update.
+	 *
+	 * @param x the x position
+	 * @param y the y position
+	 * @return true if an update is pending, false if not
+	 */
+	public boolean isScheduled(int x, int y) {
+		return isInPlane(x, y) && scheduledCells.get(getCellIndex(x, y));
+	}
+
+	/**
+	 * Schedules an update for a cell. When it becomes due, the behavior of the block type contained in the cell at
+	 * that time is invoked (if any). Does nothing if the cell already has a pending update.
+	 *
+	 * @param x the x position
+	 * @param y the y position
+	 * @param delay the number of ticks from now (at least 1)
+	 * @param data arbitrary data passed to the behavior
+	 */
+	public void schedule(int x, int y, int delay, int data) {
+		if (delay < 1) {
+			throw new IllegalArgumentException("invalid delay: " + delay);
+		}
+		if (!isInPlane(x, y)) {
+			return;
+		}
+		int cellIndex = getCellIndex(x, y);
+		if (scheduledCells.get(cellIndex)) {
+			return;
+		}
+		scheduledCells.set(cellIndex);
+		activeCellCount++;
+		int entry = allocateEntry();
+		entryX[entry] = x;
+		entryY[entry] = y;
+		entryData[entry] = data;
+		entryDueTick[entry] = currentTick + Math.min(delay, MAX_DELAY);
+		entrySequenceNumber[entry] = nextSequenceNumber;
+		nextSequenceNumber++;
+		insert(entry);
+	}
+
+	/**
+	 * Dispatches a fast player collision to the behavior of the block that was hit.
+	 *
+	 * @param x the x position of the block
+	 * @param y the y position of the block
+	 * @param normalX the x component of the surface normal (-1, 0 or 1), pointing away from the block
+	 * @param normalY the y component of the surface normal (-1, 0 or 1), pointing away from the block
+	 */
+	public void onFastCollision(int x, int y, int normalX, int normalY) {
+		BlockBehavior behavior = getBehavior(plane.getBlock(x, y));
+		if (behavior != null) {
+			behavior.onFastCollision(this, x, y, normalX, normalY);
+		}
+	}
+
+	/**
+	 * Dispatches the "fast" collisions from a batch of collision events, i.e. those whose impact speed exceeds
+	 * {@link Player#FAST_COLLISION_MIN_SPEED}. Intended to be registered as a collision handler with the plane's
+	 * gameplay event bus.
+	 *
+	 * @param events the collision events
+	 */
+	public void handleCollisions(CollisionEvents events) {
+		for (int i = 0; i < events.getCount(); i++) {
+			if (events.getImpactSpeed(i) > Player.FAST_COLLISION_MIN_SPEED) {
+				// only the integral part of the normal counts, which is nonzero only for side collisions
+				onFastCollision(events.getBlockX(i), events.getBlockY(i), (int)events.getNormalX(i), (int)events.getNormalY(i));
+			}
+		}
+	}
+
+	/**
+	 * Advances to the next tick and runs the updates that are due.
+	 */
+	public void tick() {
+		currentTick++;
+
+		// move the updates of higher-level slots whose time has come down the wheel
+		for (int level = 1; level < LEVEL_COUNT; level++) {
+			if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+				break;
+			}
+			int slot = level * SLOT_COUNT + (int)((currentTick >> (SLOT_BITS * level)) & SLOT_MASK);
+			int entry = detachSlot(slot);
+			while (entry >= 0) {
+				int next = entryNext[entry];
+				insert(entry);
+				entry = next;
+			}
+		}
+
+		// make the parked updates of promoted sections due now
+		SimulationLod lod = plane.getSimulationLod();
+		if (parkedSectionCount > 0) {
+			if (lod.isAllPromoted()) {
+				for (int i = 0; i < parkedSectionCount; i++) {
+					unpark(parkedSections[i]);
+				}
+				parkedSectionCount = 0;
+			} else {
+				for (int i = 0; i < lod.getPromotedSectionCount(); i++) {
+					unpark(lod.getPromotedSectionY(i) * sectionCountX + lod.getPromotedSectionX(i));
+				}
+				if (lod.getPromotedSectionCount() > 0) {
+					removeUnparkedSections();
+				}
+			}
+		}
+
+		// run the due updates. Updates scheduled by these go to other slots since their delay is at least 1.
+		int shift = GeometryConstants.SECTION_SHIFT;
+		int entry = detachSlot((int)(currentTick & SLOT_MASK));
+		while (entry >= 0) {
+			int next = entryNext[entry];
+			int x = entryX[entry];
+			int y = entryY[entry];
+			int data = entryData[entry];
+			int ticksUntilDue = lod.getTicksUntilDue(x >> shift, y >> shift);
+			if (ticksUntilDue < 0) {
+				park(entry, (y >> shift) * sectionCountX + (x >> shift));
+				entry = next;
+				continue;
+			}
+			if (ticksUntilDue > 0) {
+				entryDueTick[entry] = currentTick + ticksUntilDue;
+				insert(entry);
+				entry = next;
+				continue;
+			}
+			freeEntry(entry);
+			scheduledCells.clear(getCellIndex(x, y));
+			activeCellCount--;
+			BlockBehavior behavior = getBehavior(plane.getBlock(x, y));
+			if (behavior != null) {
+				behavior.onScheduledUpdate(this, x, y, data);
+			}
+			entry = next;
+		}
+
+	}
+
+	/**
+	 * Adds an entry to the slot that matches its due tick, relative to the current tick, keeping the slot list sorted
+	 * by sequence number.
+	 */
+	private void insert(int entry) {
+		long dueTick = entryDueTick[entry];
+		long delay = dueTick - currentTick;
+		int level = 0;
+		while (level < LEVEL_COUNT - 1 && delay >= (1L << (SLOT_BITS * (level + 1)))) {
+			level++;
+		}
+		int slot = level * SLOT_COUNT + (int)((dueTick >> (SLOT_BITS * level)) & SLOT_MASK);
+		long sequenceNumber = entrySequenceNumber[entry];
+		int tail = slotTails[slot];
+		if (tail < 0 || entrySequenceNumber[tail] < sequenceNumber) {
+			entryNext[entry] = -1;
+			if (tail < 0) {
+				slotHeads[slot] = entry;
+			} else {
+				entryNext[tail] = entry;
+			}
+			slotTails[slot] = entry;
+			return;
+		}
+		int previous = -1;
+		int current = slotHeads[slot];
+		while (entrySequenceNumber[current] < sequenceNumber) {
+			previous = current;
+			current = entryNext[current];
+		}
+		entryNext[entry] = current;
+		if (previous < 0) {
+			slotHeads[slot] = entry;
+		} else {
+			entryNext[previous] = entry;
+		}
+	}
+
+	private void park(int entry, int section) {
+		entryNext[entry] = -1;
+		if (parkedTails[section] < 0) {
+			parkedHeads[section] = entry;
+			if (parkedSectionCount == parkedSections.length) {
+				parkedSections = Arrays.copyOf(parkedSections, 2 * parkedSections.length);
+			}
+			parkedSections[parkedSectionCount] = section;
+			parkedSectionCount++;
+		} else {
+			entryNext[parkedTails[section]] = entry;
+		}
+		parkedTails[section] = entry;
+	}
+
+	/**
+	 * Moves the parked updates of a section to the current slot. The section stays in the list of parked sections
+	 * until {@link #removeUnparkedSections()} is called.
+	 */
+	private void unpark(int section) {
+		int entry = parkedHeads[section];
+		parkedHeads[section] = -1;
+		parkedTails[section] = -1;
+		while (entry >= 0) {
+			int next = entryNext[entry];
+			entryDueTick[entry] = currentTick;
+			insert(entry);
+			entry = next;
+		}
+	}
+
+	private void removeUnparkedSections() {
+		int writeIndex = 0;
+		for (int readIndex = 0; readIndex < parkedSectionCount; readIndex++) {
+			if (parkedHeads[parkedSections[readIndex]] >= 0) {
+				parkedSections[writeIndex] = parkedSections[readIndex];
+				writeIndex++;
+			}
+		}
+		parkedSectionCount = writeIndex;
+	}
+
+	private int detachSlot(int slot) {
+		int head = slotHeads[slot];
+		slotHeads[slot] = -1;
+		slotTails[slot] = -1;
+		return head;
+	}
+
+	private int allocateEntry() {
+		if (freeEntry >= 0) {
+			int entry = freeEntry;
+			freeEntry = entryNext[entry];
+			return entry;
+		}
+		if (entryCapacityUsed == entryX.length) {
+			int capacity = 2 * entryX.length;
+			entryX = Arrays.copyOf(entryX, capacity);
+			entryY = Arrays.copyOf(entryY, capacity);
+			entryData = Arrays.copyOf(entryData, capacity);
+			entryDueTick = Arrays.copyOf(entryDueTick, capacity);
+			entrySequenceNumber = Arrays.copyOf(entrySequenceNumber, capacity);
+			entryNext = Arrays.copyOf(entryNext, capacity);
+		}
+		int entry = entryCapacityUsed;
+		entryCapacityUsed++;
+		return entry;
+	}
+
+	private void freeEntry(int entry) {
+		entryNext[entry] = freeEntry;
+		freeEntry = entry;
+	}
+
+	private boolean isInPlane(int x, int y) {
+		return x >= 0 && x < plane.getWidth() && y >= 0 && y < plane.getHeight();
+	}
+
+	private int getCellIndex(int x, int y) {
+		return y * plane.getWidth() + x;
+	}
+
+}
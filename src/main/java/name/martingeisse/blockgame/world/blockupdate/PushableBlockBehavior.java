@@ -0,0 +1,35 @@
+package name.martingeisse.blockgame.world.blockupdate;
+
+import name.martingeisse.blockgame.world.Plane;
+
+/**
+ * A block that gets pushed one cell away from a player that hits it fast, provided that the cell behind it is
+ * floor. The push happens in the tick after the hit.
+ */
+public final class PushableBlockBehavior implements BlockBehavior {
+
+	/**
+	 * The floor block type, which is the only block type a pushable block can be pushed into.
+	 */
+	public static final int FLOOR_BLOCK_TYPE = 1;
+
+	// override
+	@Override
+	public void onFastCollision(BlockUpdateEngine engine, int x, int y, int normalX, int normalY) {
+		engine.schedule(x, y, 1, (normalX + 1) * 3 + (normalY + 1));
+	}
+
+	// override
+	@Override
+	public void onScheduledUpdate(BlockUpdateEngine engine, int x, int y, int data) {
+		Plane plane = engine.getPlane();
+		int behindX = x - (data / 3 - 1);
+		int behindY = y - (data % 3 - 1);
+		if (plane.getBlock(behindX, behindY) == FLOOR_BLOCK_TYPE) {
+			int blockType = plane.getBlock(x, y);
+			plane.setBlock(x, y, FLOOR_BLOCK_TYPE);
+			plane.setBlock(behindX, behindY, blockType);
+		}
+	}
+
+}
@@ -0,0 +1,34 @@
+package name.martingeisse.blockgame.world.collision;
+
+/**
+ * An axis-aligned box.
+ */
+public final class BoxShape implements SweepShape {
+
+	private final double halfWidth;
+	private final double halfHeight;
+
+	public BoxShape(double halfWidth, double halfHeight) {
+		this.halfWidth = halfWidth;
+		this.halfHeight = halfHeight;
+	}
+
+	// override
+	@Override
+	public double getHalfExtentX() {
+		return halfWidth;
+	}
+
+	// override
+	@Override
+	public double getHalfExtentY() {
+		return halfHeight;
+	}
+
+	// override
+	@Override
+	public Collision sweepAgainstBlock(double x0, double y0, double dx, double dy, int blockX, int blockY) {
+		return CollisionUtil.sweepRoundedBoxAgainstBlock(x0, y0, dx, dy, halfWidth, halfHeight, 0, blockX, blockY);
+	}
+
+}
@@ -0,0 +1,47 @@
+package name.martingeisse.blockgame.world.collision;
+
+/**
+ * A capsule, i.e. all points within a radius of a line segment. The segment is centered at the shape position and
+ * aligned with either the X or the Y axis. Since blocks are axis-aligned too, such a capsule collides with a block
+ * exactly like a circle collides with a block that has been stretched by the segment length.
+ */
+public final class CapsuleShape implements SweepShape {
+
+	private final double halfLength;
+	private final double radius;
+	private final boolean vertical;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param halfLength half the length of the center segment
+	 * @param radius the radius around the segment
+	 * @param vertical true if the segment is aligned with the Y axis, false for the X axis
+	 */
+	public CapsuleShape(double halfLength, double radius, boolean vertical) {
+		this.halfLength = halfLength;
+		this.radius = radius;
+		this.vertical = vertical;
+	}
+
+	// override
+	@Override
+	public double getHalfExtentX() {
+		return (vertical ? 0 : halfLength) + radius;
+	}
+
+	// override
+	@Override
+	public double getHalfExtentY() {
+		return (vertical ? halfLength : 0) + radius;
+	}
+
+	// override
+	@Override
+	public Collision sweepAgainstBlock(double x0, double y0, double dx, double dy, int blockX, int blockY) {
+		double segmentX = (vertical ? 0 : halfLength);
+		double segmentY = (vertical ? halfLength : 0);
+		return CollisionUtil.sweepRoundedBoxAgainstBlock(x0, y0, dx, dy, segmentX, segmentY, radius, blockX, blockY);
+	}
+
+}
@@ -0,0 +1,36 @@
+package name.martingeisse.blockgame.world.collision;
+
+/**
+ * A circle (or sphere, seen from above).
+ */
+public final class CircleShape implements SweepShape {
+
+	private final double radius;
+
+	public CircleShape(double radius) {
+		this.radius = radius;
+	}
+
+	public double getRadius() {
+		return radius;
+	}
+
+	// override
+	@Override
+	public double getHalfExtentX() {
+		return radius;
+	}
+
+	// override
+	@Override
+	public double getHalfExtentY() {
+		return radius;
+	}
+
+	// override
+	@Override
+	public Collision sweepAgainstBlock(double x0, double y0, double dx, double dy, int blockX, int blockY) {
+		return CollisionUtil.sweepRoundedBoxAgainstBlock(x0, y0, dx, dy, 0, 0, radius, blockX, blockY);
+	}
+
+}
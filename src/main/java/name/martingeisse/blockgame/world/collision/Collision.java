@@ -4,7 +4,8 @@ package name.martingeisse.blockgame.world.collision;
  * A collision object describes the way two game objects collide. It consists of:
  * - the movement fraction coefficient. This tells the fraction (0..1) of the intended movement that could be
  *   performed before a collision occurred
- * - the surface normal vector (unit length), pointing from the first colliding object towards the second one
+ * - the surface normal vector (unit length), pointing away from the block towards the moving object
+ * - the position of the block
  */
 public class Collision {
 
@@ -1,7 +1,5 @@
 package name.martingeisse.blockgame.world.collision;
 
-import java.util.Random;
-
 /**
  *
  */
@@ -25,119 +23,182 @@ public final class CollisionUtil {
 	 * @return information about a collision, or null if no collision occurred
 	 */
 	public static Collision checkSphereBlockCollision(double x0, double y0, double dx, double dy, double radius, BlockMapCollider blockMapCollider) {
+		return sweep(new CircleShape(radius), x0, y0, dx, dy, blockMapCollider);
+	}
 
-		// Check for the nearest collisions with a block side.
-		Collision sideCollision = checkSphereSideCollision(x0, y0, dx, dy, radius, blockMapCollider);
-
-		// Check for the nearest collision with a block corner. Given a corner with at least one solid block, this may
-		// yield any solid block with that corner: Either there is only one solid block -- then that block is the one
-		// whose corner the player collided with. Or there are multiple solid blocks, then the player cannot collide
-		// with its corner because he'll collide with one of the sides first, so the corner has a greater distance.
-		// Also, the collision normal is computed as the vector from the player center to the corner. This may be
-		// the inverse of the actual normal if that collision happens "from inside" a solid block, but again, the player
-		// would collide with a side or other corner first.
-		Collision cornerCollision = checkSphereCornerCollision(x0, y0, dx, dy, radius, blockMapCollider);
-
-		// choose the nearer collision of those two
-		return chooseNearer(sideCollision, cornerCollision);
-
+	/**
+	 * Checks whether a moving shape collides with a block from the block map (non-moving).
+	 *
+	 * The movement is split into segments no longer than one block along either axis. For each segment, every solid
+	 * block that intersects the bounding box swept by the shape during that segment is passed to the shape's
+	 * narrow-phase test. Any collision during a segment must involve one of these blocks, so the search can stop
+	 * after the first segment that yields a collision within its own range, and the number of blocks tested stays
+	 * proportional to the movement length instead of the area of the whole swept bounding box.
+	 *
+	 * @param shape the shape
+	 * @param x0 the movement start point X for the shape center
+	 * @param y0 the movement start point Y for the shape center
+	 * @param dx the X movement amount for the shape
+	 * @param dy the Y movement amount for the shape
+	 * @param blockMapCollider the collider for the block map
+	 * @return information about the nearest collision, or null if no collision occurred
+	 */
+	public static Collision sweep(SweepShape shape, double x0, double y0, double dx, double dy, BlockMapCollider blockMapCollider) {
+		if (dx == 0 && dy == 0) {
+			return null;
+		}
+		double halfExtentX = shape.getHalfExtentX();
+		double halfExtentY = shape.getHalfExtentY();
+		int segmentCount = Math.max(1, (int)Math.ceil(Math.max(Math.abs(dx), Math.abs(dy))));
+		Collision nearest = null;
+		for (int segment = 0; segment < segmentCount; segment++) {
+			double startFraction = (double)segment / segmentCount;
+			double endFraction = (double)(segment + 1) / segmentCount;
+			double startX = x0 + dx * startFraction;
+			double startY = y0 + dy * startFraction;
+			double endX = x0 + dx * endFraction;
+			double endY = y0 + dy * endFraction;
+			int minBlockX = toBlock(Math.min(startX, endX) - halfExtentX);
+			int maxBlockX = toBlock(Math.max(startX, endX) + halfExtentX);
+			int minBlockY = toBlock(Math.min(startY, endY) - halfExtentY);
+			int maxBlockY = toBlock(Math.max(startY, endY) + halfExtentY);
+			for (int blockX = minBlockX; blockX <= maxBlockX; blockX++) {
+				for (int blockY = minBlockY; blockY <= maxBlockY; blockY++) {
+					if (blockMapCollider.isSolid(blockX, blockY)) {
+						nearest = chooseNearer(nearest, shape.sweepAgainstBlock(x0, y0, dx, dy, blockX, blockY));
+					}
+				}
+			}
+			if (nearest != null && nearest.getMovementFraction() <= endFraction) {
+				return nearest;
+			}
+		}
+		return nearest;
 	}
 
-	private static Collision checkSphereSideCollision(double x0, double y0, double dx, double dy, double radius, BlockMapCollider blockMapCollider) {
+	/**
+	 * Block centers have integer coordinates, so this returns the block that contains the specified coordinate.
+	 */
+	private static int toBlock(double coordinate) {
+		return (int)Math.floor(coordinate + 0.5);
+	}
 
-		Collision eastCollision = null;
-		for (double dx2 = (1.5 - (x0 + radius) % 1.0) % 1.0; dx2 <= dx; dx2++) {
-			double dy2 = dy * dx2 / dx;
-			int x2 = (int)Math.round(x0 + dx2 + 0.5);
-			int y2 = (int)Math.round(y0 + dy2);
-			if (blockMapCollider.isSolid(x2, y2)) {
-				eastCollision = new Collision(dx2 / dx, -1.0, 0.0, x2, y2);
-				break;
+	/**
+	 * Narrow-phase test for shapes whose Minkowski sum with a block is a rounded rectangle: a center box with the
+	 * specified half extents, grown by the specified radius with rounded corners. This covers circles (zero half
+	 * extents), axis-aligned boxes (zero radius) and axis-aligned capsules.
+	 *
+	 * The test is done by casting the movement of the shape center as a ray against the block grown by the shape.
+	 *
+	 * @param x0 the movement start point X for the shape center
+	 * @param y0 the movement start point Y for the shape center
+	 * @param dx the X movement amount
+	 * @param dy the Y movement amount
+	 * @param halfExtentX half the width of the center box
+	 * @param halfExtentY half the height of the center box
+	 * @param radius the radius of the rounding
+	 * @param blockX the x position of the block
+	 * @param blockY the y position of the block
+	 * @return information about the collision, or null if no collision occurs
+	 */
+	public static Collision sweepRoundedBoxAgainstBlock(double x0, double y0, double dx, double dy, double halfExtentX, double halfExtentY, double radius, int blockX, int blockY) {
+
+		// work relative to the block center; (innerX, innerY) are the half extents of the grown block without rounding
+		double px = x0 - blockX;
+		double py = y0 - blockY;
+		double innerX = 0.5 + halfExtentX;
+		double innerY = 0.5 + halfExtentY;
+		double outerX = innerX + radius;
+		double outerY = innerY + radius;
+
+		// slab test against the outer box
+		double enter = Double.NEGATIVE_INFINITY;
+		double exit = Double.POSITIVE_INFINITY;
+		double normalX = 0, normalY = 0;
+		if (dx == 0) {
+			if (Math.abs(px) >= outerX) {
+				return null;
 			}
+		} else {
+			double near = ((dx > 0 ? -outerX : outerX) - px) / dx;
+			double far = ((dx > 0 ? outerX : -outerX) - px) / dx;
+			enter = near;
+			exit = far;
+			normalX = (dx > 0 ? -1.0 : 1.0);
 		}
-
-		Collision westCollision = null;
-		for (double dx2 = (1.5 - (x0 - radius) % 1.0) % 1.0 - 1.0; dx2 >= dx; dx2--) {
-			double dy2 = dy * dx2 / dx;
-			int x2 = (int)Math.round(x0 + dx2 - 0.5);
-			int y2 = (int)Math.round(y0 + dy2);
-			if (blockMapCollider.isSolid(x2, y2)) {
-				westCollision = new Collision(dx2 / dx, +1.0, 0.0, x2, y2);
-				break;
+		if (dy == 0) {
+			if (Math.abs(py) >= outerY) {
+				return null;
+			}
+		} else {
+			double near = ((dy > 0 ? -outerY : outerY) - py) / dy;
+			double far = ((dy > 0 ? outerY : -outerY) - py) / dy;
+			if (near > enter) {
+				enter = near;
+				normalX = 0;
+				normalY = (dy > 0 ? -1.0 : 1.0);
 			}
+			if (far < exit) {
+				exit = far;
+			}
+		}
+		if (enter >= exit || exit <= 0 || enter > 1) {
+			return null;
 		}
 
-		Collision northCollision = null;
-		for (double dy2 = (1.5 - (y0 + radius) % 1.0) % 1.0; dy2 <= dy; dy2++) {
-			double dx2 = dx * dy2 / dy;
-			int x2 = (int)Math.round(x0 + dx2);
-			int y2 = (int)Math.round(y0 + dy2 + 0.5);
-			if (blockMapCollider.isSolid(x2, y2)) {
-				northCollision = new Collision(dy2 / dy, 0.0, -1.0, x2, y2);
-				break;
+		// if the entry point lies next to a corner of the inner box, the rounded corner decides
+		double t = Math.max(enter, 0);
+		double hitX = px + dx * t;
+		double hitY = py + dy * t;
+		if (radius > 0 && Math.abs(hitX) > innerX && Math.abs(hitY) > innerY) {
+			double cornerX = (hitX > 0 ? innerX : -innerX);
+			double cornerY = (hitY > 0 ? innerY : -innerY);
+			double relativeX = px - cornerX;
+			double relativeY = py - cornerY;
+			double a = dx * dx + dy * dy;
+			double b = 2 * (relativeX * dx + relativeY * dy);
+			double c = relativeX * relativeX + relativeY * relativeY - radius * radius;
+			if (c <= 0) {
+				// already touching the corner: collide only when moving further in
+				if (b >= 0) {
+					return null;
+				}
+				double norm = Math.sqrt(relativeX * relativeX + relativeY * relativeY);
+				if (norm == 0) {
+					return null;
+				}
+				return new Collision(0, relativeX / norm, relativeY / norm, blockX, blockY);
 			}
+			double discriminant = b * b - 4 * a * c;
+			if (b >= 0 || discriminant < 0) {
+				return null;
+			}
+			t = (-b - Math.sqrt(discriminant)) / (2 * a);
+			if (t > 1) {
+				return null;
+			}
+			return new Collision(t, (relativeX + dx * t) / radius, (relativeY + dy * t) / radius, blockX, blockY);
 		}
 
-		Collision southCollision = null;
-		for (double dy2 = (1.5 - (y0 - radius) % 1.0) % 1.0 - 1.0; dy2 >= dy; dy2--) {
-			double dx2 = dx * dy2 / dy;
-			int x2 = (int)Math.round(x0 + dx2);
-			int y2 = (int)Math.round(y0 + dy2 - 0.5);
-			if (blockMapCollider.isSolid(x2, y2)) {
-				southCollision = new Collision(dy2 / dy, 0.0, +1.0, x2, y2);
-				break;
+		// If we started inside the outer box, the slab test picks the axis by time, not by distance, which is wrong
+		// when moving almost parallel to a side. Use the side that is nearest to the start point instead.
+		if (enter < 0) {
+			if (outerX - Math.abs(px) < outerY - Math.abs(py)) {
+				normalX = (px > 0 ? 1.0 : -1.0);
+				normalY = 0;
+			} else {
+				normalX = 0;
+				normalY = (py > 0 ? 1.0 : -1.0);
 			}
 		}
 
-		return chooseNearer(chooseNearer(westCollision, eastCollision), chooseNearer(northCollision, southCollision));
-	}
-
-	private static Collision checkSphereCornerCollision(double x0, double y0, double dx, double dy, double radius, BlockMapCollider blockMapCollider) {
-		double movementLength = Math.sqrt(dx * dx + dy * dy);
-		int stepCount = (int)(movementLength / 0.1) + 1;
-		double stepDx = dx / stepCount;
-		double stepDy = dy / stepCount;
-		for (int i=1; i<=stepCount; i++) {
-			double x = x0 + i * stepDx;
-			double y = y0 + i * stepDy;
-			// The relevant corner changes when the player crosses a block center. Block centers have integer coordinates,
-			// so we need floor/ceil rounding here, not round-to-nearest.
-			int ix = (int)Math.floor(x);
-			int iy = (int)Math.floor(y);
-			double cornerX = ix + 0.5;
-			double cornerY = iy + 0.5;
-			double normalX = cornerX - x;
-			double normalY = cornerY - y;
-			double normalNormSquared = normalX * normalX + normalY * normalY;
-			if (normalNormSquared < radius * radius) {
-				double normalNorm = Math.sqrt(normalNormSquared);
-				int cx = 0, cy = 0;
-				boolean found = false;
-				if (blockMapCollider.isSolid(ix, iy)) {
-					cx = ix;
-					cy = iy;
-					found = true;
-				} else if (blockMapCollider.isSolid(ix + 1, iy)) {
-					cx = ix + 1;
-					cy = iy;
-					found = true;
-				} else if (blockMapCollider.isSolid(ix, iy + 1)) {
-					cx = ix;
-					cy = iy + 1;
-					found = true;
-				} else if (blockMapCollider.isSolid(ix + 1, iy + 1)) {
-					cx = ix + 1;
-					cy = iy + 1;
-					found = true;
-				}
-				if (found) {
-					return new Collision(((double)(i - 1)) / stepCount, normalX / normalNorm, normalY / normalNorm, cx, cy);
-				}
-			}
+		// already touching a side: collide only when moving further in
+		if (normalX * dx + normalY * dy >= 0) {
+			return null;
 		}
-		return null;
-	}
+		return new Collision(t, normalX, normalY, blockX, blockY);
 
+	}
 
 	private static Collision chooseNearer(Collision a, Collision b) {
 		if (a == null) {
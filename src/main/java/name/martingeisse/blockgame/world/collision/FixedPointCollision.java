@@ -0,0 +1,44 @@
+package name.martingeisse.blockgame.world.collision;
+
+import name.martingeisse.blockgame.geometry.FixedPoint;
+
+/**
+ * The fixed-point counterpart of {@link Collision}. All non-integer values use the format from {@link FixedPoint}.
+ */
+public class FixedPointCollision {
+
+	private final long movementFraction;
+	private final long surfaceNormalX;
+	private final long surfaceNormalY;
+	private final int blockX;
+	private final int blockY;
+
+	public FixedPointCollision(long movementFraction, long surfaceNormalX, long surfaceNormalY, int blockX, int blockY) {
+		this.movementFraction = movementFraction;
+		this.surfaceNormalX = surfaceNormalX;
+		this.surfaceNormalY = surfaceNormalY;
+		this.blockX = blockX;
+		this.blockY = blockY;
+	}
+
+	public long getMovementFraction() {
+		return movementFraction;
+	}
+
+	public long getSurfaceNormalX() {
+		return surfaceNormalX;
+	}
+
+	public long getSurfaceNormalY() {
+		return surfaceNormalY;
+	}
+
+	public int getBlockX() {
+		return blockX;
+	}
+
+	public int getBlockY() {
+		return blockY;
+	}
+
+}
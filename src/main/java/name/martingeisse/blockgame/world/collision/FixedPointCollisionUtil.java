@@ -0,0 +1,163 @@
+package name.martingeisse.blockgame.world.collision;
+
+import name.martingeisse.blockgame.geometry.FixedPoint;
+
+import static name.martingeisse.blockgame.geometry.FixedPoint.HALF;
+import static name.martingeisse.blockgame.geometry.FixedPoint.ONE;
+
+/**
+ * Fixed-point collision check for spheres. This uses only integer arithmetic (see {@link FixedPoint}), so results
+ * are bit-exact on all platforms. This allows lockstep simulation and replays that only need to exchange inputs.
+ *
+ * Unlike {@link CollisionUtil#sweep}, which computes exact times of impact, this checks block sides by stepping
+ * along the movement one block boundary at a time and approximates corner collisions by sampling the movement in
+ * steps of 0.1, which keeps the integer math simple.
+ */
+public final class FixedPointCollisionUtil {
+
+	/**
+	 * The reciprocal of the step size (0.1) used to sample corner collisions.
+	 */
+	private static final long CORNER_STEP_SIZE_RECIPROCAL = 10;
+
+	/**
+	 * Prevent instantiation.
+	 */
+	private FixedPointCollisionUtil() {
+	}
+
+	/**
+	 * Checks whether a moving sphere collides with a block from the block map (non-moving).
+	 *
+	 * @param x0 the movement start point X for the sphere
+	 * @param y0 the movement start point Y for the sphere
+	 * @param dx the X movement amount for the sphere
+	 * @param dy the Y movement amount for the sphere
+	 * @param radius the sphere radius
+	 * @param blockMapCollider the collider for the block map
+	 * @return information about a collision, or null if no collision occurred
+	 */
+	public static FixedPointCollision checkSphereBlockCollision(long x0, long y0, long dx, long dy, long radius, CollisionUtil.BlockMapCollider blockMapCollider) {
+		FixedPointCollision sideCollision = checkSphereSideCollision(x0, y0, dx, dy, radius, blockMapCollider);
+		FixedPointCollision cornerCollision = checkSphereCornerCollision(x0, y0, dx, dy, radius, blockMapCollider);
+		return chooseNearer(sideCollision, cornerCollision);
+	}
+
+	private static FixedPointCollision checkSphereSideCollision(long x0, long y0, long dx, long dy, long radius, CollisionUtil.BlockMapCollider blockMapCollider) {
+
+		// Unlike the floating-point version, a zero movement along an axis must be skipped explicitly since it
+		// would cause a division by zero.
+		FixedPointCollision eastCollision = null;
+		if (dx > 0) {
+			for (long dx2 = (3 * HALF - (x0 + radius) % ONE) % ONE; dx2 <= dx; dx2 += ONE) {
+				long dy2 = FixedPoint.mulDiv(dy, dx2, dx);
+				int x2 = FixedPoint.round(x0 + dx2 + HALF);
+				int y2 = FixedPoint.round(y0 + dy2);
+				if (blockMapCollider.isSolid(x2, y2)) {
+					eastCollision = new FixedPointCollision(FixedPoint.div(dx2, dx), -ONE, 0, x2, y2);
+					break;
+				}
+			}
+		}
+
+		FixedPointCollision westCollision = null;
+		if (dx < 0) {
+			for (long dx2 = (3 * HALF - (x0 - radius) % ONE) % ONE - ONE; dx2 >= dx; dx2 -= ONE) {
+				long dy2 = FixedPoint.mulDiv(dy, dx2, dx);
+				int x2 = FixedPoint.round(x0 + dx2 - HALF);
+				int y2 = FixedPoint.round(y0 + dy2);
+				if (blockMapCollider.isSolid(x2, y2)) {
+					westCollision = new FixedPointCollision(FixedPoint.div(dx2, dx), +ONE, 0, x2, y2);
+					break;
+				}
+			}
+		}
+
+		FixedPointCollision northCollision = null;
+		if (dy > 0) {
+			for (long dy2 = (3 * HALF - (y0 + radius) % ONE) % ONE; dy2 <= dy; dy2 += ONE) {
+				long dx2 = FixedPoint.mulDiv(dx, dy2, dy);
+				int x2 = FixedPoint.round(x0 + dx2);
+				int y2 = FixedPoint.round(y0 + dy2 + HALF);
+				if (blockMapCollider.isSolid(x2, y2)) {
+					northCollision = new FixedPointCollision(FixedPoint.div(dy2, dy), 0, -ONE, x2, y2);
+					break;
+				}
+			}
+		}
+
+		FixedPointCollision southCollision = null;
+		if (dy < 0) {
+			for (long dy2 = (3 * HALF - (y0 - radius) % ONE) % ONE - ONE; dy2 >= dy; dy2 -= ONE) {
+				long dx2 = FixedPoint.mulDiv(dx, dy2, dy);
+				int x2 = FixedPoint.round(x0 + dx2);
+				int y2 = FixedPoint.round(y0 + dy2 - HALF);
+				if (blockMapCollider.isSolid(x2, y2)) {
+					southCollision = new FixedPointCollision(FixedPoint.div(dy2, dy), 0, +ONE, x2, y2);
+					break;
+				}
+			}
+		}
+
+		return chooseNearer(chooseNearer(westCollision, eastCollision), chooseNearer(northCollision, southCollision));
+	}
+
+	private static FixedPointCollision checkSphereCornerCollision(long x0, long y0, long dx, long dy, long radius, CollisionUtil.BlockMapCollider blockMapCollider) {
+		long movementLength = FixedPoint.sqrtOfProduct(dx * dx + dy * dy);
+		int stepCount = (int)(movementLength * CORNER_STEP_SIZE_RECIPROCAL / ONE) + 1;
+		long stepDx = dx / stepCount;
+		long stepDy = dy / stepCount;
+		long radiusSquared = radius * radius;
+		for (int i=1; i<=stepCount; i++) {
+			long x = x0 + i * stepDx;
+			long y = y0 + i * stepDy;
+			int ix = FixedPoint.floor(x);
+			int iy = FixedPoint.floor(y);
+			// the normal points from the corner towards the sphere, i.e. away from the block
+			long normalX = x - (FixedPoint.fromInt(ix) + HALF);
+			long normalY = y - (FixedPoint.fromInt(iy) + HALF);
+			long normalNormSquared = normalX * normalX + normalY * normalY;
+			if (normalNormSquared < radiusSquared) {
+				int cx = 0, cy = 0;
+				boolean found = false;
+				if (blockMapCollider.isSolid(ix, iy)) {
+					cx = ix;
+					cy = iy;
+					found = true;
+				} else if (blockMapCollider.isSolid(ix + 1, iy)) {
+					cx = ix + 1;
+					cy = iy;
+					found = true;
+				} else if (blockMapCollider.isSolid(ix, iy + 1)) {
+					cx = ix;
+					cy = iy + 1;
+					found = true;
+				} else if (blockMapCollider.isSolid(ix + 1, iy + 1)) {
+					cx = ix + 1;
+					cy = iy + 1;
+					found = true;
+				}
+				if (found) {
+					long normalNorm = FixedPoint.sqrtOfProduct(normalNormSquared);
+					if (normalNorm == 0) {
+						// exactly on the corner; any direction is as good as another
+						return new FixedPointCollision(FixedPoint.div(i - 1, stepCount), ONE, 0, cx, cy);
+					}
+					return new FixedPointCollision(FixedPoint.div(i - 1, stepCount), FixedPoint.div(normalX, normalNorm), FixedPoint.div(normalY, normalNorm), cx, cy);
+				}
+			}
+		}
+		return null;
+	}
+
+	private static FixedPointCollision chooseNearer(FixedPointCollision a, FixedPointCollision b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		return (a.getMovementFraction() < b.getMovementFraction() ? a : b);
+	}
+
+}
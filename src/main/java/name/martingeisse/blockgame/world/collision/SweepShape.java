@@ -0,0 +1,43 @@
+package name.martingeisse.blockgame.world.collision;
+
+/**
+ * A convex shape that can be swept through the block map by {@link CollisionUtil#sweep}. The shape only has to
+ * provide its bounding box and a narrow-phase test against a single block; cell traversal is done by the kernel.
+ *
+ * Implementations must be immutable so that they can be shared.
+ */
+public interface SweepShape {
+
+	/**
+	 * Returns half the width of the bounding box of this shape.
+	 *
+	 * @return the half width
+	 */
+	public double getHalfExtentX();
+
+	/**
+	 * Returns half the height of the bounding box of this shape.
+	 *
+	 * @return the half height
+	 */
+	public double getHalfExtentY();
+
+	/**
+	 * Checks whether this shape, moving from (x0, y0) by (dx, dy), collides with a single solid block. The
+	 * movement fraction of the result must be relative to the whole movement, and the surface normal must point
+	 * away from the block.
+	 *
+	 * A shape that already touches or overlaps the block collides at fraction 0 if the movement goes into the
+	 * block, and does not collide at all if the movement leads away from it.
+	 *
+	 * @param x0 the movement start point X for the shape center
+	 * @param y0 the movement start point Y for the shape center
+	 * @param dx the X movement amount
+	 * @param dy the Y movement amount
+	 * @param blockX the x position of the block
+	 * @param blockY the y position of the block
+	 * @return information about the collision, or null if no collision occurs
+	 */
+	public Collision sweepAgainstBlock(double x0, double y0, double dx, double dy, int blockX, int blockY);
+
+}
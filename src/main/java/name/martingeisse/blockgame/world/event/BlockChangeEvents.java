@@ -0,0 +1,79 @@
+package name.martingeisse.blockgame.world.event;
+
+/**
+ * The ring buffer for block changes. Handlers read the events of the current batch by index, from 0 to
+ * {@link #getCount()} - 1.
+ */
+public final class BlockChangeEvents extends EventRing {
+
+	private int[] x;
+	private int[] y;
+	private int[] oldValue;
+	private int[] newValue;
+
+	BlockChangeEvents(int initialCapacity) {
+		super(initialCapacity);
+		this.x = new int[initialCapacity];
+		this.y = new int[initialCapacity];
+		this.oldValue = new int[initialCapacity];
+		this.newValue = new int[initialCapacity];
+	}
+
+	// override
+	@Override
+	void resize(int newCapacity) {
+		x = grow(x, newCapacity);
+		y = grow(y, newCapacity);
+		oldValue = grow(oldValue, newCapacity);
+		newValue = grow(newValue, newCapacity);
+	}
+
+	void add(int x, int y, int oldValue, int newValue) {
+		int index = append();
+		this.x[index] = x;
+		this.y[index] = y;
+		this.oldValue[index] = oldValue;
+		this.newValue[index] = newValue;
+	}
+
+	/**
+	 * Returns the x position of the changed block.
+	 *
+	 * @param index the event index within the batch
+	 * @return the x position
+	 */
+	public int getX(int index) {
+		return x[toArrayIndex(index)];
+	}
+
+	/**
+	 * Returns the y position of the changed block.
+	 *
+	 * @param index the event index within the batch
+	 * @return the y position
+	 */
+	public int getY(int index) {
+		return y[toArrayIndex(index)];
+	}
+
+	/**
+	 * Returns the previous block value.
+	 *
+	 * @param index the event index within the batch
+	 * @return the old value
+	 */
+	public int getOldValue(int index) {
+		return oldValue[toArrayIndex(index)];
+	}
+
+	/**
+	 * Returns the new block value.
+	 *
+	 * @param index the event index within the batch
+	 * @return the new value
+	 */
+	public int getNewValue(int index) {
+		return newValue[toArrayIndex(index)];
+	}
+
+}
@@ -0,0 +1,15 @@
+package name.martingeisse.blockgame.world.event;
+
+/**
+ * Handles batches of block change events from a {@link GameplayEventBus}.
+ */
+public interface BlockChangeHandler {
+
+	/**
+	 * Handles a batch of block changes.
+	 *
+	 * @param events the events; only valid during this call
+	 */
+	public void handleBlockChanges(BlockChangeEvents events);
+
+}
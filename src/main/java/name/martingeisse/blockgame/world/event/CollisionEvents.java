@@ -0,0 +1,115 @@
+package name.martingeisse.blockgame.world.event;
+
+import name.martingeisse.blockgame.world.Player;
+
+/**
+ * The ring buffer for collisions between players and blocks. Handlers read the events of the current batch by
+ * index, from 0 to {@link #getCount()} - 1.
+ */
+public final class CollisionEvents extends EventRing {
+
+	private Player[] players;
+	private int[] blockX;
+	private int[] blockY;
+	private double[] normalX;
+	private double[] normalY;
+	private double[] impactSpeed;
+
+	CollisionEvents(int initialCapacity) {
+		super(initialCapacity);
+		this.players = new Player[initialCapacity];
+		this.blockX = new int[initialCapacity];
+		this.blockY = new int[initialCapacity];
+		this.normalX = new double[initialCapacity];
+		this.normalY = new double[initialCapacity];
+		this.impactSpeed = new double[initialCapacity];
+	}
+
+	// override
+	@Override
+	void resize(int newCapacity) {
+		players = grow(players, newCapacity);
+		blockX = grow(blockX, newCapacity);
+		blockY = grow(blockY, newCapacity);
+		normalX = grow(normalX, newCapacity);
+		normalY = grow(normalY, newCapacity);
+		impactSpeed = grow(impactSpeed, newCapacity);
+	}
+
+	// override
+	@Override
+	void release(int start, int count) {
+		clearReferences(players, start, count);
+	}
+
+	void add(Player player, int blockX, int blockY, double normalX, double normalY, double impactSpeed) {
+		int index = append();
+		this.players[index] = player;
+		this.blockX[index] = blockX;
+		this.blockY[index] = blockY;
+		this.normalX[index] = normalX;
+		this.normalY[index] = normalY;
+		this.impactSpeed[index] = impactSpeed;
+	}
+
+	/**
+	 * Returns the player that collided.
+	 *
+	 * @param index the event index within the batch
+	 * @return the player
+	 */
+	public Player getPlayer(int index) {
+		return players[toArrayIndex(index)];
+	}
+
+	/**
+	 * Returns the x position of the block that was hit.
+	 *
+	 * @param index the event index within the batch
+	 * @return the block x position
+	 */
+	public int getBlockX(int index) {
+		return blockX[toArrayIndex(index)];
+	}
+
+	/**
+	 * Returns the y position of the block that was hit.
+	 *
+	 * @param index the event index within the batch
+	 * @return the block y position
+	 */
+	public int getBlockY(int index) {
+		return blockY[toArrayIndex(index)];
+	}
+
+	/**
+	 * Returns the x component of the surface normal, pointing away from the block.
+	 *
+	 * @param index the event index within the batch
+	 * @return the normal x component
+	 */
+	public double getNormalX(int index) {
+		return normalX[toArrayIndex(index)];
+	}
+
+	/**
+	 * Returns the y component of the surface normal, pointing away from the block.
+	 *
+	 * @param index the event index within the batch
+	 * @return the normal y component
+	 */
+	public double getNormalY(int index) {
+		return normalY[toArrayIndex(index)];
+	}
+
+	/**
+	 * Returns the speed of the player perpendicular to the surface at the time of impact.
+	 *
+	 * @param index the event index within the batch
+	 * @return the impact speed
+	 */
+	public double getImpactSpeed(int index) {
+		return impactSpeed[toArrayIndex(index)];
+	}
+
+}
@@ -0,0 +1,15 @@
+package name.martingeisse.blockgame.world.event;
+
+/**
+ * Handles batches of collision events from a {@link GameplayEventBus}.
+ */
+public interface CollisionHandler {
+
+	/**
+	 * Handles a batch of collisions.
+	 *
+	 * @param events the events; only valid during this call
+	 */
+	public void handleCollisions(CollisionEvents events);
+
+}
@@ -0,0 +1,121 @@
+package name.martingeisse.blockgame.world.event;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * Base class for the ring buffers of an event type. Subclasses store the fields of their event records in parallel
+ * primitive arrays; this class manages the positions.
+ *
+ * Events are appended at the tail and consumed from the head in batches: a batch consists of the events that were
+ * in the buffer when it started, and events appended while a batch is being handled go into the next one. The
+ * buffer grows if it runs full, so no event is lost; once it is large enough, it does not allocate memory anymore.
+ * Consumed events release the objects they refer to, so the buffer does not keep e.g. removed players alive.
+ */
+abstract class EventRing {
+
+	private int capacity;
+	private int head;
+	private int size;
+	private int batchCount;
+
+	EventRing(int initialCapacity) {
+		if (Integer.bitCount(initialCapacity) != 1) {
+			throw new IllegalArgumentException("capacity must be a power of two: " + initialCapacity);
+		}
+		this.capacity = initialCapacity;
+	}
+
+	/**
+	 * Returns the number of events in the current batch.
+	 *
+	 * @return the number of events
+	 */
+	public final int getCount() {
+		return batchCount;
+	}
+
+	final boolean isEmpty() {
+		return size == 0;
+	}
+
+	final void beginBatch() {
+		batchCount = size;
+	}
+
+	final void endBatch() {
+		release(head, batchCount);
+		head = (head + batchCount) & (capacity - 1);
+		size -= batchCount;
+		batchCount = 0;
+	}
+
+	final void clear() {
+		release(head, size);
+		head = 0;
+		size = 0;
+		batchCount = 0;
+	}
+
+	/**
+	 * Reserves space for a new event and returns the array index to store its fields at.
+	 */
+	final int append() {
+		if (size == capacity) {
+			int newCapacity = 2 * capacity;
+			resize(newCapacity);
+			head = 0;
+			capacity = newCapacity;
+		}
+		int index = (head + size) & (capacity - 1);
+		size++;
+		return index;
+	}
+
+	/**
+	 * Maps the index of an event within the current batch to an array index.
+	 */
+	final int toArrayIndex(int batchIndex) {
+		if (batchIndex < 0 || batchIndex >= batchCount) {
+			throw new IndexOutOfBoundsException("invalid event index: " + batchIndex);
+		}
+		return (head + batchIndex) & (capacity - 1);
+	}
+
+	/**
+	 * Called before events are dropped from the buffer. Subclasses that store object references clear them here,
+	 * using {@link #clearReferences(Object[], int, int)}.
+	 *
+	 * @param start the array index of the first event
+	 * @param count the number of events, which may wrap around the end of the arrays
+	 */
+	void release(int start, int count) {
+	}
+
+	/**
+	 * Sets the entries of the specified events in a field array to null.
+	 */
+	final void clearReferences(Object[] array, int start, int count) {
+		int firstPart = Math.min(count, capacity - start);
+		Arrays.fill(array, start, start + firstPart, null);
+		Arrays.fill(array, 0, count - firstPart, null);
+	}
+
+	/**
+	 * Replaces all field arrays by larger ones, using {@link #grow(Object, int)}.
+	 */
+	abstract void resize(int newCapacity);
+
+	/**
+	 * Returns a larger copy of a field array, with the events moved to the start in order.
+	 */
+	@SuppressWarnings("unchecked")
+	final <T> T grow(T array, int newCapacity) {
+		Object result = Array.newInstance(array.getClass().getComponentType(), newCapacity);
+		int firstPart = Math.min(size, capacity - head);
+		System.arraycopy(array, head, result, 0, firstPart);
+		System.arraycopy(array, 0, result, firstPart, size - firstPart);
+		return (T)result;
+	}
+
+}
@@ -0,0 +1,191 @@
+package name.martingeisse.blockgame.world.event;
+
+import name.martingeisse.blockgame.world.BlockChangeListener;
+import name.martingeisse.blockgame.world.Plane;
+import name.martingeisse.blockgame.world.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decouples gameplay logic from physics. Physics code publishes events while it runs -- this is a plain method call
+ * that stores a few primitive values in a ring buffer, without allocating memory or calling handlers. After the
+ * physics tick, {@link #dispatch()} hands the collected events to the handlers, one batch per event type and handler.
+ *
+ * Block changes are taken from the plane's block change feed. {@link BlockChangeListener}s are still needed for
+ * state that must be consistent with the blocks at all times (such as collision data); handlers registered here are
+ * meant for gameplay reactions that can wait until the end of the tick. Block changes are only recorded while at
+ * least one block change handler is registered.
+ *
+ * Handlers may publish events themselves, for example by changing blocks. Those are dispatched in further rounds,
+ * up to {@link #MAX_DISPATCH_ROUNDS} per tick; anything left after that is dispatched in the next tick.
+ */
+public final class GameplayEventBus implements BlockChangeListener {
+
+	/**
+	 * The maximum number of dispatch rounds per tick.
+	 */
+	public static final int MAX_DISPATCH_ROUNDS = 8;
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private final CollisionEvents collisionEvents = new CollisionEvents(INITIAL_CAPACITY);
+	private final BlockChangeEvents blockChangeEvents = new BlockChangeEvents(INITIAL_CAPACITY);
+	private final TriggerEvents triggerEvents = new TriggerEvents(INITIAL_CAPACITY);
+	private final List<CollisionHandler> collisionHandlers = new ArrayList<>();
+	private final List<BlockChangeHandler> blockChangeHandlers = new ArrayList<>();
+	private final List<TriggerHandler> triggerHandlers = new ArrayList<>();
+	private long tick;
+
+	/**
+	 * Constructor. Registers the bus as a listener with the plane.
+	 *
+	 * @param plane the plane
+	 */
+	public GameplayEventBus(Plane plane) {
+		plane.addBlockChangeListener(this);
+	}
+
+	/**
+	 * Returns the number of times {@link #dispatch()} has been called.
+	 *
+	 * @return the tick
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Adds a collision handler.
+	 *
+	 * @param handler the handler
+	 */
+	public void addCollisionHandler(CollisionHandler handler) {
+		collisionHandlers.add(handler);
+	}
+
+	/**
+	 * Removes a collision handler.
+	 *
+	 * @param handler the handler
+	 */
+	public void removeCollisionHandler(CollisionHandler handler) {
+		collisionHandlers.remove(handler);
+		if (collisionHandlers.isEmpty()) {
+			collisionEvents.clear();
+		}
+	}
+
+	/**
+	 * Adds a block change handler.
+	 *
+	 * @param handler the handler
+	 */
+	public void addBlockChangeHandler(BlockChangeHandler handler) {
+		blockChangeHandlers.add(handler);
+	}
+
+	/**
+	 * Removes a block change handler.
+	 *
+	 * @param handler the handler
+	 */
+	public void removeBlockChangeHandler(BlockChangeHandler handler) {
+		blockChangeHandlers.remove(handler);
+		if (blockChangeHandlers.isEmpty()) {
+			blockChangeEvents.clear();
+		}
+	}
+
+	/**
+	 * Adds a trigger handler.
+	 *
+	 * @param handler the handler
+	 */
+	public void addTriggerHandler(TriggerHandler handler) {
+		triggerHandlers.add(handler);
+	}
+
+	/**
+	 * Removes a trigger handler.
+	 *
+	 * @param handler the handler
+	 */
+	public void removeTriggerHandler(TriggerHandler handler) {
+		triggerHandlers.remove(handler);
+		if (triggerHandlers.isEmpty()) {
+			triggerEvents.clear();
+		}
+	}
+
+	/**
+	 * Publishes a collision between a player and a block.
+	 *
+	 * @param player the player
+	 * @param blockX the x position of the block
+	 * @param blockY the y position of the block
+	 * @param normalX the x component of the surface normal, pointing away from the block
+	 * @param normalY the y component of the surface normal, pointing away from the block
+	 * @param impactSpeed the speed of the player perpendicular to the surface
+	 */
+	public void publishCollision(Player player, int blockX, int blockY, double normalX, double normalY, double impactSpeed) {
+		if (!collisionHandlers.isEmpty()) {
+			collisionEvents.add(player, blockX, blockY, normalX, normalY, impactSpeed);
+		}
+	}
+
+	/**
+	 * Publishes a player entering or leaving a trigger region.
+	 *
+	 * @param player the player
+	 * @param triggerId the ID of the trigger
+	 * @param entered true if the player entered the region, false if it left the region
+	 */
+	public void publishTrigger(Player player, int triggerId, boolean entered) {
+		if (!triggerHandlers.isEmpty()) {
+			triggerEvents.add(player, triggerId, entered);
+		}
+	}
+
+	// override
+	@Override
+	public void onBlockChanged(int x, int y, int oldValue, int newValue) {
+		if (!blockChangeHandlers.isEmpty()) {
+			blockChangeEvents.add(x, y, oldValue, newValue);
+		}
+	}
+
+	/**
+	 * Hands the published events to the handlers. Must be called once per tick, after the physics step.
+	 */
+	public void dispatch() {
+		tick++;
+		for (int round = 0; round < MAX_DISPATCH_ROUNDS; round++) {
+			if (collisionEvents.isEmpty() && blockChangeEvents.isEmpty() && triggerEvents.isEmpty()) {
+				break;
+			}
+			if (!collisionEvents.isEmpty()) {
+				collisionEvents.beginBatch();
+				for (int i = 0; i < collisionHandlers.size(); i++) {
+					collisionHandlers.get(i).handleCollisions(collisionEvents);
+				}
+				collisionEvents.endBatch();
+			}
+			if (!blockChangeEvents.isEmpty()) {
+				blockChangeEvents.beginBatch();
+				for (int i = 0; i < blockChangeHandlers.size(); i++) {
+					blockChangeHandlers.get(i).handleBlockChanges(blockChangeEvents);
+				}
+				blockChangeEvents.endBatch();
+			}
+			if (!triggerEvents.isEmpty()) {
+				triggerEvents.beginBatch();
+				for (int i = 0; i < triggerHandlers.size(); i++) {
+					triggerHandlers.get(i).handleTriggers(triggerEvents);
+				}
+				triggerEvents.endBatch();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package name.martingeisse.blockgame.world.event;
+
+import name.martingeisse.blockgame.world.Player;
+
+/**
+ * The ring buffer for players entering and leaving trigger regions. Handlers read the events of the current batch by
+ * index, from 0 to {@link #getCount()} - 1.
+ */
+public final class TriggerEvents extends EventRing {
+
+	private Player[] players;
+	private int[] triggerIds;
+	private boolean[] entered;
+
+	TriggerEvents(int initialCapacity) {
+		super(initialCapacity);
+		this.players = new Player[initialCapacity];
+		this.triggerIds = new int[initialCapacity];
+		this.entered = new boolean[initialCapacity];
+	}
+
+	// override
+	@Override
+	void resize(int newCapacity) {
+		players = grow(players, newCapacity);
+		triggerIds = grow(triggerIds, newCapacity);
+		entered = grow(entered, newCapacity);
+	}
+
+	// override
+	@Override
+	void release(int start, int count) {
+		clearReferences(players, start, count);
+	}
+
+	void add(Player player, int triggerId, boolean entered) {
+		int index = append();
+		this.players[index] = player;
+		this.triggerIds[index] = triggerId;
+		this.entered[index] = entered;
+	}
+
+	/**
+	 * Returns the player that entered or left the trigger region.
+	 *
+	 * @param index the event index within the batch
+	 * @return the player
+	 */
+	public Player getPlayer(int index) {
+		return players[toArrayIndex(index)];
+	}
+
+	/**
+	 * Returns the ID of the trigger, i.e. its index in the trigger index.
+	 *
+	 * @param index the event index within the batch
+	 * @return the trigger ID
+	 */
+	public int getTriggerId(int index) {
+		return triggerIds[toArrayIndex(index)];
+	}
+
+	/**
+	 * Checks whether the player entered or left the trigger region.
+	 *
+	 * @param index the event index within the batch
+	 * @return true if the player entered the region, false if it left the region
+	 */
+	public boolean isEntered(int index) {
+		return entered[toArrayIndex(index)];
+	}
+
+}
@@ -0,0 +1,15 @@
+package name.martingeisse.blockgame.world.event;
+
+/**
+ * Handles batches of trigger events from a {@link GameplayEventBus}.
+ */
+public interface TriggerHandler {
+
+	/**
+	 * Handles a batch of trigger events.
+	 *
+	 * @param events the events; only valid during this call
+	 */
+	public void handleTriggers(TriggerEvents events);
+
+}
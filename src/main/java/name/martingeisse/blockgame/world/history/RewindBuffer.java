@@ -0,0 +1,325 @@
+package name.martingeisse.blockgame.world.history;
+
+import name.martingeisse.blockgame.world.BlockChangeListener;
+import name.martingeisse.blockgame.world.Plane;
+import name.martingeisse.blockgame.world.Player;
+import name.martingeisse.blockgame.world.PlayerRemovalListener;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the recent history of a plane so it can be rewound to the state at the end of any tick in a sliding
+ * window. Instead of snapshots, this is an undo log: each block change is logged with the old value of the block,
+ * and at the end of each tick, each player whose position or velocity changed is logged with its values from the
+ * end of the previous tick. Rewinding walks the log backwards and restores the old values, so memory use and
+ * rewind time scale with the number of changes, not with the size of the plane.
+ *
+ * The log is stored in fixed-size primitive ring buffers. When a buffer is full, the oldest ticks are dropped, so
+ * the window covers fewer ticks while many changes happen. Changes made between ticks count towards the next tick.
+ *
+ * Only blocks and the position and velocity of players are rewound. Players that have been added or removed are
+ * not, and neither are transient state such as scheduled block updates. A rewind wakes up all players it moves.
+ * Each player is tracked in a slot; when a player is removed, its log entries are dropped and its slot is reused
+ * for the next new player.
+ */
+public final class RewindBuffer implements BlockChangeListener, PlayerRemovalListener {
+
+	/**
+	 * The default capacity for block changes.
+	 */
+	public static final int DEFAULT_BLOCK_CHANGE_CAPACITY = 1 << 16;
+
+	/**
+	 * The default capacity for player changes.
+	 */
+	public static final int DEFAULT_PLAYER_CHANGE_CAPACITY = 1 << 14;
+
+	private static final int PLAYER_VALUE_COUNT = 4;
+
+	private final Plane plane;
+
+	// the end of each tick in the window, as positions in the block and player change logs
+	private final long[] tickBlockPositions;
+	private final long[] tickPlayerPositions;
+
+	// block changes: the cell index shifted left by 8 bits, or'ed with the old block value
+	private final long[] blockChanges;
+
+	// player changes: the slot of the player, or -1 if the player has been removed, and its old values
+	private final int[] playerChangeIndices;
+	private final double[] playerChangeValues;
+
+	// absolute write positions in the logs
+	private long blockPosition;
+	private long playerPosition;
+
+	// the newest completed tick, and the oldest tick that can still be rewound to
+	private long newestTick;
+	private long oldestTick;
+
+	// the slots of the tracked players, the player in each slot (null for free slots), and their values at the end
+	// of the newest tick
+	private final Map<Player, Integer> playerSlots = new IdentityHashMap<>();
+	private Player[] slotPlayers = new Player[16];
+	private double[] trackedPlayerValues = new double[16 * PLAYER_VALUE_COUNT];
+	private int usedSlotCount;
+	private int[] freeSlots = new int[16];
+	private int freeSlotCount;
+
+	private boolean rewinding;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param plane the plane whose history is kept
+	 * @param tickCapacity the maximum number of ticks that can be rewound
+	 */
+	public RewindBuffer(Plane plane, int tickCapacity) {
+		this(plane, tickCapacity, DEFAULT_BLOCK_CHANGE_CAPACITY, DEFAULT_PLAYER_CHANGE_CAPACITY);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param plane the plane whose history is kept
+	 * @param tickCapacity the maximum number of ticks that can be rewound
+	 * @param blockChangeCapacity the maximum number of block changes kept
+	 * @param playerChangeCapacity the maximum number of player changes kept
+	 */
+	public RewindBuffer(Plane plane, int tickCapacity, int blockChangeCapacity, int playerChangeCapacity) {
+		if (tickCapacity < 1 || blockChangeCapacity < 1 || playerChangeCapacity < 1) {
+			throw new IllegalArgumentException("capacities must be positive");
+		}
+		this.plane = plane;
+		this.tickBlockPositions = new long[tickCapacity + 1];
+		this.tickPlayerPositions = new long[tickCapacity + 1];
+		this.blockChanges = new long[blockChangeCapacity];
+		this.playerChangeIndices = new int[playerChangeCapacity];
+		this.playerChangeValues = new double[playerChangeCapacity * PLAYER_VALUE_COUNT];
+		capturePlayers(false);
+	}
+
+	/**
+	 * Getter method for the plane.
+	 *
+	 * @return the plane
+	 */
+	public Plane getPlane() {
+		return plane;
+	}
+
+	/**
+	 * Returns the number of the newest tick, i.e. the number of ticks completed since this buffer was created,
+	 * minus the ticks that have been rewound. The state before the first tick is tick 0.
+	 *
+	 * @return the newest tick
+	 */
+	public long getNewestTick() {
+		return newestTick;
+	}
+
+	/**
+	 * Returns the oldest tick that can be rewound to.
+	 *
+	 * @return the oldest tick, or {@link #getNewestTick()} + 1 if the changes since the newest tick did not fit
+	 * into the buffer, so not even the newest tick can be restored
+	 */
+	public long getOldestTick() {
+		return oldestTick;
+	}
+
+	/**
+	 * Checks whether the plane can be rewound to the specified tick.
+	 *
+	 * @param tick the tick
+	 * @return true if the tick is within the window, false if not
+	 */
+	public boolean canRewindTo(long tick) {
+		return tick >= oldestTick && tick <= newestTick;
+	}
+
+	// override
+	@Override
+	public void onBlockChanged(int x, int y, int oldValue, int newValue) {
+		if (rewinding) {
+			return;
+		}
+		makeRoom(blockPosition, tickBlockPositions, blockChanges.length);
+		blockChanges[(int)(blockPosition % blockChanges.length)] = ((long)(y * plane.getWidth() + x) << 8) | oldValue;
+		blockPosition++;
+	}
+
+	/**
+	 * Ends the current tick. Called by the plane at the end of each step.
+	 */
+	public void onTickCompleted() {
+		capturePlayers(true);
+		newestTick++;
+		int slot = (int)(newestTick % tickBlockPositions.length);
+		tickBlockPositions[slot] = blockPosition;
+		tickPlayerPositions[slot] = playerPosition;
+		if (newestTick - oldestTick >= tickBlockPositions.length) {
+			oldestTick = newestTick - tickBlockPositions.length + 1;
+		}
+	}
+
+	/**
+	 * Drops the oldest ticks until a log entry can be written at the specified position without overwriting an
+	 * entry that is still needed.
+	 */
+	private void makeRoom(long position, long[] tickPositions, int capacity) {
+		while (oldestTick <= newestTick && position - tickPositions[(int)(oldestTick % tickPositions.length)] >= capacity) {
+			oldestTick++;
+		}
+	}
+
+	/**
+	 * Compares the players with their values from the end of the previous tick, logs the old values of those that
+	 * have changed, and remembers the new values.
+	 */
+	private void capturePlayers(boolean log) {
+		List<Player> players = plane.getPlayerSet().getPlayers();
+		for (int i = 0; i < players.size(); i++) {
+			Player player = players.get(i);
+			Integer slot = playerSlots.get(player);
+			if (slot == null) {
+				int newSlot = allocateSlot();
+				slotPlayers[newSlot] = player;
+				playerSlots.put(player, newSlot);
+				storeValues(player, trackedPlayerValues, newSlot * PLAYER_VALUE_COUNT);
+				continue;
+			}
+			int offset = slot * PLAYER_VALUE_COUNT;
+			if (player.getPositionX() == trackedPlayerValues[offset] && player.getPositionY() == trackedPlayerValues[offset + 1]
+				&& player.getVelocityX() == trackedPlayerValues[offset + 2] && player.getVelocityY() == trackedPlayerValues[offset + 3]) {
+				continue;
+			}
+			if (log) {
+				makeRoom(playerPosition, tickPlayerPositions, playerChangeIndices.length);
+				int logSlot = (int)(playerPosition % playerChangeIndices.length);
+				playerChangeIndices[logSlot] = slot;
+				System.arraycopy(trackedPlayerValues, offset, playerChangeValues, logSlot * PLAYER_VALUE_COUNT, PLAYER_VALUE_COUNT);
+				playerPosition++;
+			}
+			storeValues(player, trackedPlayerValues, offset);
+		}
+	}
+
+	private int allocateSlot() {
+		if (freeSlotCount > 0) {
+			freeSlotCount--;
+			return freeSlots[freeSlotCount];
+		}
+		if (usedSlotCount == slotPlayers.length) {
+			slotPlayers = Arrays.copyOf(slotPlayers, 2 * slotPlayers.length);
+			trackedPlayerValues = Arrays.copyOf(trackedPlayerValues, 2 * trackedPlayerValues.length);
+		}
+		usedSlotCount++;
+		return usedSlotCount - 1;
+	}
+
+	// override
+	@Override
+	public void onPlayerRemoved(Player player) {
+		Integer slot = playerSlots.remove(player);
+		if (slot == null) {
+			return;
+		}
+		slotPlayers[slot] = null;
+		for (long position = Math.max(0, playerPosition - playerChangeIndices.length); position < playerPosition; position++) {
+			int logSlot = (int)(position % playerChangeIndices.length);
+			if (playerChangeIndices[logSlot] == slot) {
+				playerChangeIndices[logSlot] = -1;
+			}
+		}
+		if (freeSlotCount == freeSlots.length) {
+			freeSlots = Arrays.copyOf(freeSlots, 2 * freeSlots.length);
+		}
+		freeSlots[freeSlotCount] = slot;
+		freeSlotCount++;
+	}
+
+	private static void storeValues(Player player, double[] destination, int offset) {
+		destination[offset] = player.getPositionX();
+		destination[offset + 1] = player.getPositionY();
+		destination[offset + 2] = player.getVelocityX();
+		destination[offset + 3] = player.getVelocityY();
+	}
+
+	/**
+	 * Restores the state of the plane at the end of the specified tick. The ticks after it are removed from the
+	 * history, so the simulation continues from the restored state as if they had never happened. Changes made
+	 * since the newest tick are undone as well.
+	 *
+	 * @param tick the tick to rewind to
+	 * @throws IllegalArgumentException if the tick is not within the window
+	 */
+	public void rewindTo(long tick) {
+		// player changes since the newest tick are not logged yet; log them now so they get undone, too
+		capturePlayers(true);
+		if (!canRewindTo(tick)) {
+			throw new IllegalArgumentException("tick " + tick + " is outside the rewind window " + oldestTick + ".." + newestTick);
+		}
+		int slot = (int)(tick % tickBlockPositions.length);
+		long targetBlockPosition = tickBlockPositions[slot];
+		long targetPlayerPosition = tickPlayerPositions[slot];
+
+		// undo block changes, newest first, so each cell ends up with the value it had at the target tick
+		rewinding = true;
+		try {
+			int width = plane.getWidth();
+			while (blockPosition > targetBlockPosition) {
+				blockPosition--;
+				long entry = blockChanges[(int)(blockPosition % blockChanges.length)];
+				int cellIndex = (int)(entry >>> 8);
+				plane.setBlock(cellIndex % width, cellIndex / width, (int)(entry & 0xff));
+			}
+		} finally {
+			rewinding = false;
+		}
+
+		// undo player changes, newest first
+		while (playerPosition > targetPlayerPosition) {
+			playerPosition--;
+			int logSlot = (int)(playerPosition % playerChangeIndices.length);
+			int playerSlot = playerChangeIndices[logSlot];
+			if (playerSlot >= 0) {
+				System.arraycopy(playerChangeValues, logSlot * PLAYER_VALUE_COUNT, trackedPlayerValues, playerSlot * PLAYER_VALUE_COUNT, PLAYER_VALUE_COUNT);
+			}
+		}
+		for (int playerSlot = 0; playerSlot < usedSlotCount; playerSlot++) {
+			Player player = slotPlayers[playerSlot];
+			if (player == null) {
+				continue;
+			}
+			int offset = playerSlot * PLAYER_VALUE_COUNT;
+			if (player.getPositionX() != trackedPlayerValues[offset] || player.getPositionY() != trackedPlayerValues[offset + 1]
+				|| player.getVelocityX() != trackedPlayerValues[offset + 2] || player.getVelocityY() != trackedPlayerValues[offset + 3]) {
+				player.setPositionX(trackedPlayerValues[offset]);
+				player.setPositionY(trackedPlayerValues[offset + 1]);
+				player.setVelocityX(trackedPlayerValues[offset + 2]);
+				player.setVelocityY(trackedPlayerValues[offset + 3]);
+				if (player.isSleeping()) {
+					plane.getPlayerSet().wakeUp(player);
+				}
+			}
+		}
+
+		newestTick = tick;
+	}
+
+	/**
+	 * Removes all ticks from the history, so the current state becomes the only one that can be rewound to.
+	 */
+	public void clear() {
+		capturePlayers(false);
+		oldestTick = newestTick;
+		int slot = (int)(newestTick % tickBlockPositions.length);
+		tickBlockPositions[slot] = blockPosition;
+		tickPlayerPositions[slot] = playerPosition;
+	}
+
+}
@@ -0,0 +1,71 @@
+package name.martingeisse.blockgame.world.pathfinding;
+
+/**
+ * The working arrays for the A* search over the entrance graph of a {@link PathfindingService}. Nodes are stored
+ * in slots: one for the start, one for the goal, and a fixed range per section for its entrances, so the arrays
+ * are indexed directly without hashing or boxing. A stamp that is incremented for each search marks which slots
+ * have been reached or closed in the current search, so the arrays never need to be cleared.
+ *
+ * An instance keeps its arrays between searches and must only be used by one thread at a time.
+ */
+final class EntranceSearch {
+
+	static final int START_SLOT = 0;
+	static final int GOAL_SLOT = 1;
+
+	final LongHeap heap = new LongHeap(64);
+	int[] nodes = new int[0];
+	int[] costs = new int[0];
+	int[] parents = new int[0];
+	private int[] openStamps = new int[0];
+	private int[] closedStamps = new int[0];
+	private int stamp;
+
+	/**
+	 * Starts a new search.
+	 *
+	 * @param slotCount the number of slots needed
+	 */
+	void begin(int slotCount) {
+		if (openStamps.length < slotCount) {
+			nodes = new int[slotCount];
+			costs = new int[slotCount];
+			parents = new int[slotCount];
+			openStamps = new int[slotCount];
+			closedStamps = new int[slotCount];
+			stamp = 0;
+		}
+		stamp++;
+		heap.clear();
+	}
+
+	/**
+	 * Records a path to a slot if it is the first one found in this search or cheaper than the one found before.
+	 *
+	 * @return true if the path was recorded, false if it was not better
+	 */
+	boolean reach(int slot, int node, int cost, int parentSlot) {
+		if (openStamps[slot] == stamp && cost >= costs[slot]) {
+			return false;
+		}
+		openStamps[slot] = stamp;
+		nodes[slot] = node;
+		costs[slot] = cost;
+		parents[slot] = parentSlot;
+		return true;
+	}
+
+	/**
+	 * Closes a slot.
+	 *
+	 * @return true if the slot was closed now, false if it had already been closed in this search
+	 */
+	boolean close(int slot) {
+		if (closedStamps[slot] == stamp) {
+			return false;
+		}
+		closedStamps[slot] = stamp;
+		return true;
+	}
+
+}
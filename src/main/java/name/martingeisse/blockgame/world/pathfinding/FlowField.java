@@ -0,0 +1,447 @@
+package name.martingeisse.blockgame.world.pathfinding;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.world.BlockChangeListener;
+import name.martingeisse.blockgame.world.BlockTypes;
+import name.martingeisse.blockgame.world.Plane;
+import name.martingeisse.blockgame.world.SolidityMap;
+
+import java.util.Arrays;
+
+/**
+ * A direction field that leads from every free block in a region of a {@link Plane} to a common goal, so any number
+ * of agents can steer toward the goal with a single lookup per agent and tick.
+ *
+ * The field covers the sections within a fixed radius around the section of the goal. It is built by a Dijkstra
+ * search from an anchor cell using the same movement rules as {@link PathfindingService} (8-connected, no corner
+ * cutting). After that, it is repaired instead of rebuilt:
+ *
+ * - Block changes are collected from the plane and applied in {@link #update()}. Cells whose path ran through a block
+ *   that became solid are invalidated and then refilled from their valid neighbors, together with the cells that can
+ *   now be reached more cheaply through blocks that became free.
+ * - When the goal moves by at most {@link #MAX_GOAL_DRIFT} cells from the anchor, only a small window around the
+ *   anchor is searched again from the new goal. Cells outside that window keep leading to the anchor, which in turn
+ *   leads to the new goal. Larger moves rebuild the field around the new goal.
+ *
+ * This class is not thread-safe; it is meant to be used from the tick thread.
+ */
+public final class FlowField implements BlockChangeListener {
+
+	/**
+	 * The direction returned for the goal itself and for cells that cannot reach the goal.
+	 */
+	public static final int NO_DIRECTION = -1;
+
+	/**
+	 * The maximum distance (along either axis) the goal may move from the anchor before the field is rebuilt.
+	 */
+	public static final int MAX_GOAL_DRIFT = 4;
+
+	private static final int WINDOW_RADIUS = 2 * MAX_GOAL_DRIFT;
+	private static final int WINDOW_SIZE = 2 * WINDOW_RADIUS + 1;
+	private static final int UNREACHABLE = Integer.MAX_VALUE;
+	private static final int[] DIRECTION_X = {1, 1, 0, -1, -1, -1, 0, 1};
+	private static final int[] DIRECTION_Y = {0, 1, 1, 1, 0, -1, -1, -1};
+
+	private final Plane plane;
+	private final SolidityMap solidityMap;
+	private final int sectionRadius;
+	private final LongHeap heap = new LongHeap(256);
+	private final IntList pendingChanges = new IntList();
+	private final IntList invalidatedCells = new IntList();
+	private final IntList touchedCells = new IntList();
+	private final int[] windowCosts = new int[WINDOW_SIZE * WINDOW_SIZE];
+
+	private int minX;
+	private int minY;
+	private int maxX;
+	private int maxY;
+	private int regionWidth;
+
+	/**
+	 * the cost from each cell to the anchor
+	 */
+	private int[] costs;
+
+	/**
+	 * the directions toward the anchor
+	 */
+	private byte[] baseDirections;
+
+	/**
+	 * the directions toward the goal, i.e. the base directions with the goal window applied
+	 */
+	private byte[] directions;
+
+	private int anchorX;
+	private int anchorY;
+	private int goalX;
+	private int goalY;
+	private int windowMinX;
+	private int windowMinY;
+	private int windowMaxX;
+	private int windowMaxY;
+
+	/**
+	 * Constructor. Builds the field and registers it as a listener with the plane.
+	 *
+	 * @param plane the plane
+	 * @param sectionRadius the number of sections around the goal section (in each direction) covered by the field
+	 * @param goalX the x position of the goal
+	 * @param goalY the y position of the goal
+	 */
+	public FlowField(Plane plane, int sectionRadius, int goalX, int goalY) {
+		this.plane = plane;
+		this.solidityMap = plane.getSolidityMap();
+		this.sectionRadius = sectionRadius;
+		rebuild(goalX, goalY);
+		plane.addBlockChangeListener(this);
+	}
+
+	/**
+	 * Unregisters this field from the plane. The field must not be used anymore afterwards.
+	 */
+	public void dispose() {
+		plane.removeBlockChangeListener(this);
+	}
+
+	/**
+	 * Getter method for the goal x position.
+	 *
+	 * @return the goal x position
+	 */
+	public int getGoalX() {
+		return goalX;
+	}
+
+	/**
+	 * Getter method for the goal y position.
+	 *
+	 * @return the goal y position
+	 */
+	public int getGoalY() {
+		return goalY;
+	}
+
+	/**
+	 * Moves the goal. Small moves are repaired locally, large ones rebuild the field.
+	 *
+	 * @param x the x position of the new goal
+	 * @param y the y position of the new goal
+	 */
+	public void setGoal(int x, int y) {
+		if (x == goalX && y == goalY) {
+			return;
+		}
+		if (Math.abs(x - anchorX) > MAX_GOAL_DRIFT || Math.abs(y - anchorY) > MAX_GOAL_DRIFT || !isInRegion(x, y)) {
+			rebuild(x, y);
+			return;
+		}
+		goalX = x;
+		goalY = y;
+		if (!updateWindow()) {
+			rebuild(x, y);
+		}
+	}
+
+	/**
+	 * Returns the direction to move from the specified cell to get closer to the goal. Use
+	 * {@link #getDirectionX(int)} and {@link #getDirectionY(int)} to turn it into a step.
+	 *
+	 * @param x the x position of the cell
+	 * @param y the y position of the cell
+	 * @return the direction, or {@link #NO_DIRECTION} for the goal itself and for cells outside the field or
+	 * without a path to the goal
+	 */
+	public int getDirection(int x, int y) {
+		return isInRegion(x, y) ? directions[getIndex(x, y)] : NO_DIRECTION;
+	}
+
+	/**
+	 * Returns the x step (-1, 0 or 1) for a direction returned by {@link #getDirection(int, int)}.
+	 *
+	 * @param direction the direction
+	 * @return the x step
+	 */
+	public static int getDirectionX(int direction) {
+		return direction < 0 ? 0 : DIRECTION_X[direction];
+	}
+
+	/**
+	 * Returns the y step (-1, 0 or 1) for a direction returned by {@link #getDirection(int, int)}.
+	 *
+	 * @param direction the direction
+	 * @return the y step
+	 */
+	public static int getDirectionY(int direction) {
+		return direction < 0 ? 0 : DIRECTION_Y[direction];
+	}
+
+	// override
+	@Override
+	public void onBlockChanged(int x, int y, int oldValue, int newValue) {
+		if (isInRegion(x, y) && BlockTypes.isSolid(oldValue) != BlockTypes.isSolid(newValue)) {
+			pendingChanges.add(getIndex(x, y));
+		}
+	}
+
+	/**
+	 * Repairs the field for the blocks that changed since the last call.
+	 */
+	public void update() {
+		if (pendingChanges.size() == 0) {
+			return;
+		}
+
+		// invalidate cells that became solid, and every cell whose path leads through one of them
+		invalidatedCells.clear();
+		for (int i = 0; i < pendingChanges.size(); i++) {
+			int index = pendingChanges.get(i);
+			int x = getX(index);
+			int y = getY(index);
+			if (isOpen(x, y)) {
+				continue;
+			}
+			invalidate(index);
+			for (int direction = 0; direction < 8; direction++) {
+				int neighborX = x + DIRECTION_X[direction];
+				int neighborY = y + DIRECTION_Y[direction];
+				if (isInRegion(neighborX, neighborY) && isMoveThrough(neighborX, neighborY, x, y)) {
+					invalidate(getIndex(neighborX, neighborY));
+				}
+			}
+		}
+		for (int i = 0; i < invalidatedCells.size(); i++) {
+			int index = invalidatedCells.get(i);
+			int x = getX(index);
+			int y = getY(index);
+			for (int direction = 0; direction < 8; direction++) {
+				int neighborX = x + DIRECTION_X[direction];
+				int neighborY = y + DIRECTION_Y[direction];
+				if (isInRegion(neighborX, neighborY) && baseDirections[getIndex(neighborX, neighborY)] == ((direction + 4) & 7)) {
+					invalidate(getIndex(neighborX, neighborY));
+				}
+			}
+		}
+
+		// refill from the valid cells around the invalidated and changed cells
+		heap.clear();
+		touchedCells.clear();
+		for (int i = 0; i < invalidatedCells.size(); i++) {
+			touchedCells.add(invalidatedCells.get(i));
+			seedNeighbors(invalidatedCells.get(i));
+		}
+		for (int i = 0; i < pendingChanges.size(); i++) {
+			seedNeighbors(pendingChanges.get(i));
+		}
+		pendingChanges.clear();
+		int anchorIndex = getIndex(anchorX, anchorY);
+		if (isOpen(anchorX, anchorY) && costs[anchorIndex] != 0) {
+			costs[anchorIndex] = 0;
+			heap.add(LongHeap.encode(0, anchorIndex));
+		}
+		propagate();
+		for (int i = 0; i < touchedCells.size(); i++) {
+			int index = touchedCells.get(i);
+			directions[index] = baseDirections[index];
+		}
+		if (!updateWindow()) {
+			rebuild(goalX, goalY);
+		}
+
+	}
+
+	/**
+	 * Rebuilds the whole field around the specified goal, which becomes the new anchor.
+	 */
+	private void rebuild(int x, int y) {
+		anchorX = goalX = x;
+		anchorY = goalY = y;
+		int shift = GeometryConstants.SECTION_SHIFT;
+		int sectionMask = GeometryConstants.SECTION_SIZE - 1;
+		int width = solidityMap.getWidth();
+		int height = solidityMap.getHeight();
+		int clampedX = Math.max(0, Math.min(width - 1, x));
+		int clampedY = Math.max(0, Math.min(height - 1, y));
+		minX = Math.max(0, ((clampedX >> shift) - sectionRadius) << shift);
+		minY = Math.max(0, ((clampedY >> shift) - sectionRadius) << shift);
+		maxX = Math.min(width - 1, (((clampedX >> shift) + sectionRadius) << shift) | sectionMask);
+		maxY = Math.min(height - 1, (((clampedY >> shift) + sectionRadius) << shift) | sectionMask);
+		regionWidth = maxX - minX + 1;
+		int cellCount = regionWidth * (maxY - minY + 1);
+		if (costs == null || costs.length != cellCount) {
+			costs = new int[cellCount];
+			baseDirections = new byte[cellCount];
+			directions = new byte[cellCount];
+		}
+		Arrays.fill(costs, UNREACHABLE);
+		Arrays.fill(baseDirections, (byte)NO_DIRECTION);
+		pendingChanges.clear();
+		touchedCells.clear();
+		heap.clear();
+		if (isOpen(x, y)) {
+			costs[getIndex(x, y)] = 0;
+			heap.add(LongHeap.encode(0, getIndex(x, y)));
+			propagate();
+		}
+		System.arraycopy(baseDirections, 0, directions, 0, cellCount);
+		windowMinX = windowMinY = 0;
+		windowMaxX = windowMaxY = -1;
+	}
+
+	/**
+	 * Runs Dijkstra's algorithm from the cells in the heap, lowering costs where possible. Cells whose cost changes
+	 * are added to the touched cells.
+	 */
+	private void propagate() {
+		while (!heap.isEmpty()) {
+			long element = heap.poll();
+			int index = LongHeap.decodeNode(element);
+			int cost = LongHeap.decodePriority(element);
+			if (cost != costs[index]) {
+				continue;
+			}
+			int x = getX(index);
+			int y = getY(index);
+			for (int direction = 0; direction < 8; direction++) {
+				if (!canMove(x, y, direction)) {
+					continue;
+				}
+				int neighborIndex = getIndex(x + DIRECTION_X[direction], y + DIRECTION_Y[direction]);
+				int neighborCost = cost + ((direction & 1) == 0 ? JumpPointSearch.STRAIGHT_COST : JumpPointSearch.DIAGONAL_COST);
+				if (neighborCost < costs[neighborIndex]) {
+					costs[neighborIndex] = neighborCost;
+					baseDirections[neighborIndex] = (byte)((direction + 4) & 7);
+					touchedCells.add(neighborIndex);
+					heap.add(LongHeap.encode(neighborCost, neighborIndex));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Restores the base directions in the old goal window, then searches the window around the anchor from the
+	 * goal and lets every cell that reaches the goal within the window lead there directly.
+	 *
+	 * @return true on success, false if the anchor cannot be reached from the goal within the window
+	 */
+	private boolean updateWindow() {
+		for (int y = windowMinY; y <= windowMaxY; y++) {
+			for (int x = windowMinX; x <= windowMaxX; x++) {
+				directions[getIndex(x, y)] = baseDirections[getIndex(x, y)];
+			}
+		}
+		if (goalX == anchorX && goalY == anchorY) {
+			windowMinX = windowMinY = 0;
+			windowMaxX = windowMaxY = -1;
+			return true;
+		}
+		if (!isOpen(goalX, goalY)) {
+			return false;
+		}
+		windowMinX = Math.max(minX, anchorX - WINDOW_RADIUS);
+		windowMinY = Math.max(minY, anchorY - WINDOW_RADIUS);
+		windowMaxX = Math.min(maxX, anchorX + WINDOW_RADIUS);
+		windowMaxY = Math.min(maxY, anchorY + WINDOW_RADIUS);
+		Arrays.fill(windowCosts, UNREACHABLE);
+		heap.clear();
+		windowCosts[getWindowIndex(goalX, goalY)] = 0;
+		directions[getIndex(goalX, goalY)] = NO_DIRECTION;
+		heap.add(LongHeap.encode(0, getWindowIndex(goalX, goalY)));
+		while (!heap.isEmpty()) {
+			long element = heap.poll();
+			int windowIndex = LongHeap.decodeNode(element);
+			int cost = LongHeap.decodePriority(element);
+			if (cost != windowCosts[windowIndex]) {
+				continue;
+			}
+			int x = windowMinX + windowIndex % WINDOW_SIZE;
+			int y = windowMinY + windowIndex / WINDOW_SIZE;
+			for (int direction = 0; direction < 8; direction++) {
+				int neighborX = x + DIRECTION_X[direction];
+				int neighborY = y + DIRECTION_Y[direction];
+				if (neighborX < windowMinX || neighborX > windowMaxX || neighborY < windowMinY || neighborY > windowMaxY || !canMove(x, y, direction)) {
+					continue;
+				}
+				int neighborWindowIndex = getWindowIndex(neighborX, neighborY);
+				int neighborCost = cost + ((direction & 1) == 0 ? JumpPointSearch.STRAIGHT_COST : JumpPointSearch.DIAGONAL_COST);
+				if (neighborCost < windowCosts[neighborWindowIndex]) {
+					windowCosts[neighborWindowIndex] = neighborCost;
+					directions[getIndex(neighborX, neighborY)] = (byte)((direction + 4) & 7);
+					heap.add(LongHeap.encode(neighborCost, neighborWindowIndex));
+				}
+			}
+		}
+		return windowCosts[getWindowIndex(anchorX, anchorY)] != UNREACHABLE;
+	}
+
+	private void invalidate(int index) {
+		if (costs[index] != UNREACHABLE) {
+			costs[index] = UNREACHABLE;
+			baseDirections[index] = NO_DIRECTION;
+			invalidatedCells.add(index);
+		}
+	}
+
+	private void seedNeighbors(int index) {
+		int x = getX(index);
+		int y = getY(index);
+		for (int direction = 0; direction < 8; direction++) {
+			int neighborX = x + DIRECTION_X[direction];
+			int neighborY = y + DIRECTION_Y[direction];
+			if (isInRegion(neighborX, neighborY)) {
+				int neighborIndex = getIndex(neighborX, neighborY);
+				if (costs[neighborIndex] != UNREACHABLE) {
+					heap.add(LongHeap.encode(costs[neighborIndex], neighborIndex));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the base direction of a cell moves into or diagonally past the specified block.
+	 */
+	private boolean isMoveThrough(int x, int y, int blockX, int blockY) {
+		int direction = baseDirections[getIndex(x, y)];
+		if (direction < 0) {
+			return false;
+		}
+		int targetX = x + DIRECTION_X[direction];
+		int targetY = y + DIRECTION_Y[direction];
+		if (targetX == blockX && targetY == blockY) {
+			return true;
+		}
+		return (direction & 1) != 0 && ((targetX == blockX && y == blockY) || (x == blockX && targetY == blockY));
+	}
+
+	private boolean canMove(int x, int y, int direction) {
+		int dx = DIRECTION_X[direction];
+		int dy = DIRECTION_Y[direction];
+		return isOpen(x + dx, y + dy) && ((direction & 1) == 0 || (isOpen(x + dx, y) && isOpen(x, y + dy)));
+	}
+
+	private boolean isOpen(int x, int y) {
+		return isInRegion(x, y) && !solidityMap.isSolid(x, y);
+	}
+
+	private boolean isInRegion(int x, int y) {
+		return x >= minX && x <= maxX && y >= minY && y <= maxY;
+	}
+
+	private int getIndex(int x, int y) {
+		return (y - minY) * regionWidth + (x - minX);
+	}
+
+	private int getX(int index) {
+		return minX + index % regionWidth;
+	}
+
+	private int getY(int index) {
+		return minY + index / regionWidth;
+	}
+
+	private int getWindowIndex(int x, int y) {
+		return (y - windowMinY) * WINDOW_SIZE + (x - windowMinX);
+	}
+
+}
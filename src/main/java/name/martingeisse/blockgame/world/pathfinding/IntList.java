@@ -0,0 +1,37 @@
+package name.martingeisse.blockgame.world.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive int values.
+ */
+final class IntList {
+
+	private int[] elements = new int[16];
+	private int size;
+
+	int size() {
+		return size;
+	}
+
+	int get(int index) {
+		return elements[index];
+	}
+
+	void add(int value) {
+		if (size == elements.length) {
+			elements = Arrays.copyOf(elements, 2 * size);
+		}
+		elements[size] = value;
+		size++;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	int[] toArray() {
+		return Arrays.copyOf(elements, size);
+	}
+
+}
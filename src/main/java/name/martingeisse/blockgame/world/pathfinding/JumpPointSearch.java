@@ -0,0 +1,261 @@
+package name.martingeisse.blockgame.world.pathfinding;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+
+/**
+ * Jump point search over the non-solid blocks of a {@link PathfindingSnapshot}, confined to a rectangular region of at most
+ * one section. Movement is 8-connected, but diagonal moves are only allowed if both adjacent straight neighbors are
+ * free, so paths never cut corners.
+ *
+ * Costs are integers: {@link #STRAIGHT_COST} per straight step and {@link #DIAGONAL_COST} per diagonal step.
+ *
+ * An instance keeps its working arrays between searches and must only be used by one thread at a time.
+ */
+final class JumpPointSearch {
+
+	static final int STRAIGHT_COST = 10;
+	static final int DIAGONAL_COST = 14;
+
+	private static final int MAX_CELLS = GeometryConstants.SECTION_SIZE * GeometryConstants.SECTION_SIZE;
+
+	private final int[] costs = new int[MAX_CELLS];
+	private final int[] parents = new int[MAX_CELLS];
+	private final int[] openStamps = new int[MAX_CELLS];
+	private final int[] closedStamps = new int[MAX_CELLS];
+	private final int[] neighborDirections = new int[16];
+	private final LongHeap heap = new LongHeap(256);
+	private final IntList reversedPath = new IntList();
+	private int stamp;
+
+	private PathfindingSnapshot snapshot;
+	private int minX;
+	private int minY;
+	private int maxX;
+	private int maxY;
+	private int regionWidth;
+	private int goalX;
+	private int goalY;
+
+	/**
+	 * Searches a path within the region (minX, minY) .. (maxX, maxY), inclusive.
+	 *
+	 * @param snapshot the snapshot whose blocks to search
+	 * @param waypoints if not null, receives the jump points of the path as (x, y) pairs, including start and goal
+	 * @return the path cost, or -1 if there is no path within the region
+	 */
+	int search(PathfindingSnapshot snapshot, int minX, int minY, int maxX, int maxY, int startX, int startY, int goalX, int goalY, IntList waypoints) {
+		this.snapshot = snapshot;
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.regionWidth = maxX - minX + 1;
+		this.goalX = goalX;
+		this.goalY = goalY;
+		if (!isWalkable(startX, startY) || !isWalkable(goalX, goalY)) {
+			return -1;
+		}
+
+		stamp++;
+		heap.clear();
+		int startIndex = toIndex(startX, startY);
+		costs[startIndex] = 0;
+		parents[startIndex] = -1;
+		openStamps[startIndex] = stamp;
+		heap.add(LongHeap.encode(getHeuristic(startX, startY), startIndex));
+		while (!heap.isEmpty()) {
+			int index = LongHeap.decodeNode(heap.poll());
+			if (closedStamps[index] == stamp) {
+				continue;
+			}
+			closedStamps[index] = stamp;
+			int x = minX + index % regionWidth;
+			int y = minY + index / regionWidth;
+			if (x == goalX && y == goalY) {
+				if (waypoints != null) {
+					reconstructPath(index, waypoints);
+				}
+				return costs[index];
+			}
+			int directionCount = findNeighborDirections(index, x, y);
+			for (int i = 0; i < directionCount; i += 2) {
+				int dx = neighborDirections[i];
+				int dy = neighborDirections[i + 1];
+				int jumpIndex = (dx != 0 && dy != 0) ? jumpDiagonal(x + dx, y + dy, dx, dy) : jumpStraight(x + dx, y + dy, dx, dy);
+				if (jumpIndex < 0 || closedStamps[jumpIndex] == stamp) {
+					continue;
+				}
+				int jumpX = minX + jumpIndex % regionWidth;
+				int jumpY = minY + jumpIndex / regionWidth;
+				int cost = costs[index] + getOctileDistance(jumpX - x, jumpY - y);
+				if (openStamps[jumpIndex] != stamp || cost < costs[jumpIndex]) {
+					openStamps[jumpIndex] = stamp;
+					costs[jumpIndex] = cost;
+					parents[jumpIndex] = index;
+					heap.add(LongHeap.encode(cost + getHeuristic(jumpX, jumpY), jumpIndex));
+				}
+			}
+		}
+		return -1;
+	}
+
+	private void reconstructPath(int goalIndex, IntList waypoints) {
+		reversedPath.clear();
+		for (int index = goalIndex; index >= 0; index = parents[index]) {
+			reversedPath.add(index);
+		}
+		for (int i = reversedPath.size() - 1; i >= 0; i--) {
+			int index = reversedPath.get(i);
+			waypoints.add(minX + index % regionWidth);
+			waypoints.add(minY + index / regionWidth);
+		}
+	}
+
+	/**
+	 * Stores the directions worth exploring from a node in {@link #neighborDirections} as (dx, dy) pairs and
+	 * returns the number of array elements used. Directions that cannot lead to a shorter path than one through
+	 * the parent node are pruned.
+	 */
+	private int findNeighborDirections(int index, int x, int y) {
+		int count = 0;
+		int parentIndex = parents[index];
+		if (parentIndex < 0) {
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					if ((dx != 0 || dy != 0) && (dx == 0 || dy == 0 || (isWalkable(x + dx, y) && isWalkable(x, y + dy)))) {
+						neighborDirections[count++] = dx;
+						neighborDirections[count++] = dy;
+					}
+				}
+			}
+			return count;
+		}
+		int dx = Integer.signum(x - (minX + parentIndex % regionWidth));
+		int dy = Integer.signum(y - (minY + parentIndex / regionWidth));
+		if (dx != 0 && dy != 0) {
+			boolean horizontalWalkable = isWalkable(x + dx, y);
+			boolean verticalWalkable = isWalkable(x, y + dy);
+			if (verticalWalkable) {
+				neighborDirections[count++] = 0;
+				neighborDirections[count++] = dy;
+			}
+			if (horizontalWalkable) {
+				neighborDirections[count++] = dx;
+				neighborDirections[count++] = 0;
+			}
+			if (horizontalWalkable && verticalWalkable) {
+				neighborDirections[count++] = dx;
+				neighborDirections[count++] = dy;
+			}
+		} else if (dx != 0) {
+			boolean nextWalkable = isWalkable(x + dx, y);
+			boolean upWalkable = isWalkable(x, y + 1);
+			boolean downWalkable = isWalkable(x, y - 1);
+			if (nextWalkable) {
+				neighborDirections[count++] = dx;
+				neighborDirections[count++] = 0;
+				if (upWalkable) {
+					neighborDirections[count++] = dx;
+					neighborDirections[count++] = 1;
+				}
+				if (downWalkable) {
+					neighborDirections[count++] = dx;
+					neighborDirections[count++] = -1;
+				}
+			}
+			if (upWalkable) {
+				neighborDirections[count++] = 0;
+				neighborDirections[count++] = 1;
+			}
+			if (downWalkable) {
+				neighborDirections[count++] = 0;
+				neighborDirections[count++] = -1;
+			}
+		} else {
+			boolean nextWalkable = isWalkable(x, y + dy);
+			boolean rightWalkable = isWalkable(x + 1, y);
+			boolean leftWalkable = isWalkable(x - 1, y);
+			if (nextWalkable) {
+				neighborDirections[count++] = 0;
+				neighborDirections[count++] = dy;
+				if (rightWalkable) {
+					neighborDirections[count++] = 1;
+					neighborDirections[count++] = dy;
+				}
+				if (leftWalkable) {
+					neighborDirections[count++] = -1;
+					neighborDirections[count++] = dy;
+				}
+			}
+			if (rightWalkable) {
+				neighborDirections[count++] = 1;
+				neighborDirections[count++] = 0;
+			}
+			if (leftWalkable) {
+				neighborDirections[count++] = -1;
+				neighborDirections[count++] = 0;
+			}
+		}
+		return count;
+	}
+
+	private int jumpStraight(int x, int y, int dx, int dy) {
+		while (true) {
+			if (!isWalkable(x, y)) {
+				return -1;
+			}
+			if (x == goalX && y == goalY) {
+				return toIndex(x, y);
+			}
+			if (dx != 0) {
+				if ((isWalkable(x, y - 1) && !isWalkable(x - dx, y - 1)) || (isWalkable(x, y + 1) && !isWalkable(x - dx, y + 1))) {
+					return toIndex(x, y);
+				}
+			} else {
+				if ((isWalkable(x - 1, y) && !isWalkable(x - 1, y - dy)) || (isWalkable(x + 1, y) && !isWalkable(x + 1, y - dy))) {
+					return toIndex(x, y);
+				}
+			}
+			x += dx;
+			y += dy;
+		}
+	}
+
+	private int jumpDiagonal(int x, int y, int dx, int dy) {
+		while (true) {
+			if (!isWalkable(x, y)) {
+				return -1;
+			}
+			if (x == goalX && y == goalY) {
+				return toIndex(x, y);
+			}
+			if (jumpStraight(x + dx, y, dx, 0) >= 0 || jumpStraight(x, y + dy, 0, dy) >= 0) {
+				return toIndex(x, y);
+			}
+			if (!isWalkable(x + dx, y) || !isWalkable(x, y + dy)) {
+				return -1;
+			}
+			x += dx;
+			y += dy;
+		}
+	}
+
+	private boolean isWalkable(int x, int y) {
+		return x >= minX && x <= maxX && y >= minY && y <= maxY && !snapshot.isSolid(x, y);
+	}
+
+	private int toIndex(int x, int y) {
+		return (y - minY) * regionWidth + (x - minX);
+	}
+
+	private int getHeuristic(int x, int y) {
+		return getOctileDistance(goalX - x, goalY - y);
+	}
+
+	static int getOctileDistance(int dx, int dy) {
+		dx = Math.abs(dx);
+		dy = Math.abs(dy);
+		return (dx > dy) ? (STRAIGHT_COST * (dx - dy) + DIAGONAL_COST * dy) : (STRAIGHT_COST * (dy - dx) + DIAGONAL_COST * dx);
+	}
+
+}
@@ -0,0 +1,78 @@
+package name.martingeisse.blockgame.world.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of primitive long values. Search algorithms encode the priority in the upper and the node in
+ * the lower 32 bits, which avoids boxing and a comparator.
+ */
+final class LongHeap {
+
+	private long[] elements;
+	private int size;
+
+	LongHeap(int initialCapacity) {
+		this.elements = new long[initialCapacity];
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	void add(long value) {
+		if (size == elements.length) {
+			elements = Arrays.copyOf(elements, 2 * size);
+		}
+		int index = size;
+		size++;
+		while (index > 0) {
+			int parent = (index - 1) >> 1;
+			if (elements[parent] <= value) {
+				break;
+			}
+			elements[index] = elements[parent];
+			index = parent;
+		}
+		elements[index] = value;
+	}
+
+	long poll() {
+		long result = elements[0];
+		size--;
+		long last = elements[size];
+		int index = 0;
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && elements[child + 1] < elements[child]) {
+				child++;
+			}
+			if (last <= elements[child]) {
+				break;
+			}
+			elements[index] = elements[child];
+			index = child;
+		}
+		elements[index] = last;
+		return result;
+	}
+
+	static long encode(int priority, int node) {
+		return ((long)priority << 32) | (node & 0xffffffffL);
+	}
+
+	static int decodePriority(long value) {
+		return (int)(value >> 32);
+	}
+
+	static int decodeNode(long value) {
+		return (int)value;
+	}
+
+}
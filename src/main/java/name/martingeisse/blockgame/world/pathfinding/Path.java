@@ -0,0 +1,56 @@
+package name.martingeisse.blockgame.world.pathfinding;
+
+/**
+ * A path found by the {@link PathfindingService}. The path is stored as a sequence of waypoint blocks; consecutive
+ * waypoints are connected by a straight or diagonal line of free blocks, so an agent can steer from one waypoint
+ * directly to the next.
+ */
+public final class Path {
+
+	private final int[] waypoints;
+	private final int cost;
+
+	Path(int[] waypoints, int cost) {
+		this.waypoints = waypoints;
+		this.cost = cost;
+	}
+
+	/**
+	 * Returns the number of waypoints, including start and goal.
+	 *
+	 * @return the number of waypoints
+	 */
+	public int getWaypointCount() {
+		return waypoints.length / 2;
+	}
+
+	/**
+	 * Returns the x position of a waypoint.
+	 *
+	 * @param index the waypoint index
+	 * @return the x position
+	 */
+	public int getWaypointX(int index) {
+		return waypoints[2 * index];
+	}
+
+	/**
+	 * Returns the y position of a waypoint.
+	 *
+	 * @param index the waypoint index
+	 * @return the y position
+	 */
+	public int getWaypointY(int index) {
+		return waypoints[2 * index + 1];
+	}
+
+	/**
+	 * Returns the length of the path, in blocks (diagonal steps count as sqrt(2), approximately).
+	 *
+	 * @return the length
+	 */
+	public double getLength() {
+		return (double)cost / JumpPointSearch.STRAIGHT_COST;
+	}
+
+}
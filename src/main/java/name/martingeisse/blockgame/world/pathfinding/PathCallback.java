@@ -0,0 +1,16 @@
+package name.martingeisse.blockgame.world.pathfinding;
+
+/**
+ * Receives the result of a path query. Callbacks are invoked on the thread that calls
+ * {@link PathfindingService#update()}, i.e. the tick thread.
+ */
+public interface PathCallback {
+
+	/**
+	 * Called when a path query has finished.
+	 *
+	 * @param path the path, or null if the goal cannot be reached
+	 */
+	public void onPathResult(Path path);
+
+}
@@ -0,0 +1,472 @@
+package name.martingeisse.blockgame.world.pathfinding;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.geometry.SectionId;
+import name.martingeisse.blockgame.world.DirtySectionTracker;
+import name.martingeisse.blockgame.world.Plane;
+import name.martingeisse.blockgame.world.SolidityMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Finds paths between free blocks of a {@link Plane} using hierarchical pathfinding (HPA*).
+ *
+ * The plane is divided into sections. Where free blocks on both sides of a section border meet, entrances are
+ * placed (one in the middle of each run of such blocks, or one at each end for long runs). For each section, the
+ * costs between its entrances are precomputed using jump point search confined to that section. A long path query
+ * then only searches the small graph of entrances and refines the result section by section.
+ *
+ * When blocks change, only the affected sections (as reported by the plane's block change feed) and their
+ * neighbors are rebuilt, in {@link #update()}.
+ *
+ * Queries submitted through {@link #findPath(int, int, int, int, PathCallback)} run on the executor passed to the
+ * constructor; their results are collected and handed to the callbacks in {@link #update()}, which must be called
+ * on the tick thread. Queries do not read the block map itself, which the tick thread keeps changing, but an
+ * immutable snapshot of the solid blocks and the section graphs taken in the last {@link #update()}. A result is
+ * therefore consistent, but may already be outdated when it is delivered; callers should request a new path when
+ * they notice that.
+ */
+public final class PathfindingService {
+
+	private static Logger logger = LogManager.getLogger(PathfindingService.class);
+
+	/**
+	 * Runs of free border blocks up to this length get a single entrance in the middle; longer runs get two, one at
+	 * each end.
+	 */
+	public static final int MAX_SINGLE_ENTRANCE_RUN_LENGTH = 6;
+
+	private static final int START_NODE = -1;
+	private static final int GOAL_NODE = -2;
+
+	/**
+	 * An upper bound for the number of entrances of a section, which all lie on its border.
+	 */
+	private static final int MAX_ENTRANCES_PER_SECTION = 4 * GeometryConstants.SECTION_SIZE;
+
+	private final SolidityMap solidityMap;
+	private final DirtySectionTracker dirtySectionTracker;
+	private final Executor executor;
+	private final int width;
+	private final int height;
+	private final int sectionCountX;
+	private final int sectionCountY;
+
+	/**
+	 * The entrance positions (y coordinates) on the east border of each section. Only used by the tick thread.
+	 */
+	private final int[][] eastBorderEntrances;
+
+	/**
+	 * The entrance positions (x coordinates) on the north border of each section. Only used by the tick thread.
+	 */
+	private final int[][] northBorderEntrances;
+
+	private volatile PathfindingSnapshot snapshot;
+	private final ThreadLocal<JumpPointSearch> searches = ThreadLocal.withInitial(JumpPointSearch::new);
+	private final ThreadLocal<EntranceSearch> entranceSearches = ThreadLocal.withInitial(EntranceSearch::new);
+	private final ConcurrentLinkedQueue<Runnable> completedQueries = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Constructor. Builds the abstract graph for the whole plane.
+	 *
+	 * @param plane the plane to find paths in
+	 * @param executor the executor that runs path queries
+	 */
+	public PathfindingService(Plane plane, Executor executor) {
+		this.solidityMap = plane.getSolidityMap();
+		this.dirtySectionTracker = new DirtySectionTracker(plane);
+		this.executor = executor;
+		this.width = plane.getWidth();
+		this.height = plane.getHeight();
+		int mask = GeometryConstants.SECTION_SIZE - 1;
+		this.sectionCountX = (width + mask) >> GeometryConstants.SECTION_SHIFT;
+		this.sectionCountY = (height + mask) >> GeometryConstants.SECTION_SHIFT;
+		this.eastBorderEntrances = new int[sectionCountX * sectionCountY][];
+		this.northBorderEntrances = new int[sectionCountX * sectionCountY][];
+		PathfindingSnapshot initialSnapshot = new PathfindingSnapshot(width, height, sectionCountX, new int[sectionCountX * sectionCountY][], new SectionGraph[sectionCountX * sectionCountY]);
+		for (int sectionY = 0; sectionY < sectionCountY; sectionY++) {
+			for (int sectionX = 0; sectionX < sectionCountX; sectionX++) {
+				copySectionRows(initialSnapshot, sectionX, sectionY);
+				rebuildBorders(sectionX, sectionY);
+			}
+		}
+		for (int sectionY = 0; sectionY < sectionCountY; sectionY++) {
+			for (int sectionX = 0; sectionX < sectionCountX; sectionX++) {
+				rebuildSectionGraph(initialSnapshot, sectionX, sectionY);
+			}
+		}
+		this.snapshot = initialSnapshot;
+	}
+
+	/**
+	 * Submits a path query. The callback will be invoked from {@link #update()} once the query has finished, with
+	 * null as the result if the query failed. Must be called on the tick thread.
+	 *
+	 * @param fromX the x position of the start block
+	 * @param fromY the y position of the start block
+	 * @param toX the x position of the goal block
+	 * @param toY the y position of the goal block
+	 * @param callback the callback that receives the result
+	 */
+	public void findPath(int fromX, int fromY, int toX, int toY, PathCallback callback) {
+		PathfindingSnapshot snapshot = this.snapshot;
+		executor.execute(() -> {
+			Path path;
+			try {
+				path = computePath(snapshot, fromX, fromY, toX, toY);
+			} catch (Throwable e) {
+				logger.error("path query failed", e);
+				path = null;
+			}
+			Path result = path;
+			completedQueries.add(() -> callback.onPathResult(result));
+		});
+	}
+
+	/**
+	 * Rebuilds the parts of the abstract graph affected by block changes, then delivers the results of finished
+	 * queries. Must be called on the tick thread.
+	 */
+	public void update() {
+		if (!dirtySectionTracker.isEmpty()) {
+			PathfindingSnapshot nextSnapshot = new PathfindingSnapshot(width, height, sectionCountX, snapshot.sectionRows.clone(), snapshot.sectionGraphs.clone());
+			Set<SectionId> graphsToRebuild = new HashSet<>();
+			for (SectionId dirtySection : dirtySectionTracker.drain()) {
+				int sectionX = dirtySection.getX();
+				int sectionY = dirtySection.getY();
+				copySectionRows(nextSnapshot, sectionX, sectionY);
+				rebuildBorders(sectionX, sectionY);
+				rebuildBorders(sectionX - 1, sectionY);
+				rebuildBorders(sectionX, sectionY - 1);
+				graphsToRebuild.add(dirtySection);
+				graphsToRebuild.add(new SectionId(sectionX - 1, sectionY));
+				graphsToRebuild.add(new SectionId(sectionX + 1, sectionY));
+				graphsToRebuild.add(new SectionId(sectionX, sectionY - 1));
+				graphsToRebuild.add(new SectionId(sectionX, sectionY + 1));
+			}
+			for (SectionId section : graphsToRebuild) {
+				rebuildSectionGraph(nextSnapshot, section.getX(), section.getY());
+			}
+			snapshot = nextSnapshot;
+		}
+		Runnable completedQuery;
+		while ((completedQuery = completedQueries.poll()) != null) {
+			completedQuery.run();
+		}
+	}
+
+	/**
+	 * Computes a path on the calling thread, using the snapshot taken in the last {@link #update()}.
+	 *
+	 * @param fromX the x position of the start block
+	 * @param fromY the y position of the start block
+	 * @param toX the x position of the goal block
+	 * @param toY the y position of the goal block
+	 * @return the path, or null if the goal cannot be reached
+	 */
+	public Path computePath(int fromX, int fromY, int toX, int toY) {
+		return computePath(snapshot, fromX, fromY, toX, toY);
+	}
+
+	private Path computePath(PathfindingSnapshot snapshot, int fromX, int fromY, int toX, int toY) {
+		if (snapshot.isSolid(fromX, fromY) || snapshot.isSolid(toX, toY)) {
+			return null;
+		}
+		JumpPointSearch search = searches.get();
+		int shift = GeometryConstants.SECTION_SHIFT;
+		int startSectionX = fromX >> shift;
+		int startSectionY = fromY >> shift;
+		int goalSectionX = toX >> shift;
+		int goalSectionY = toY >> shift;
+		boolean sameSection = (startSectionX == goalSectionX && startSectionY == goalSectionY);
+
+		// try a direct path within the section first
+		if (sameSection) {
+			IntList waypoints = new IntList();
+			int cost = searchInSection(snapshot, search, startSectionX, startSectionY, fromX, fromY, toX, toY, waypoints);
+			if (cost >= 0) {
+				return new Path(waypoints.toArray(), cost);
+			}
+		}
+
+		// connect start and goal to the entrances of their sections
+		SectionGraph startGraph = snapshot.sectionGraphs[getSectionIndex(startSectionX, startSectionY)];
+		int[] startCosts = new int[startGraph.getEntranceCount()];
+		for (int i = 0; i < startCosts.length; i++) {
+			startCosts[i] = searchInSection(snapshot, search, startSectionX, startSectionY, fromX, fromY, startGraph.getEntranceX(i), startGraph.getEntranceY(i), null);
+		}
+		SectionGraph goalGraph = snapshot.sectionGraphs[getSectionIndex(goalSectionX, goalSectionY)];
+		int[] goalCosts = new int[goalGraph.getEntranceCount()];
+		for (int i = 0; i < goalCosts.length; i++) {
+			goalCosts[i] = searchInSection(snapshot, search, goalSectionX, goalSectionY, goalGraph.getEntranceX(i), goalGraph.getEntranceY(i), toX, toY, null);
+		}
+
+		// A* over the entrance graph. Nodes are identified by the cell index (y * width + x) of the entrance and
+		// stored in the slots of the entrance search (see getEntranceSlot()).
+		EntranceSearch entranceSearch = entranceSearches.get();
+		entranceSearch.begin(getEntranceSlot(sectionCountX * sectionCountY, 0));
+		entranceSearch.reach(EntranceSearch.START_SLOT, START_NODE, 0, -1);
+		LongHeap heap = entranceSearch.heap;
+		heap.add(LongHeap.encode(JumpPointSearch.getOctileDistance(toX - fromX, toY - fromY), EntranceSearch.START_SLOT));
+		while (!heap.isEmpty()) {
+			int slot = LongHeap.decodeNode(heap.poll());
+			if (!entranceSearch.close(slot)) {
+				continue;
+			}
+			if (slot == EntranceSearch.GOAL_SLOT) {
+				return refinePath(snapshot, search, entranceSearch, fromX, fromY, toX, toY);
+			}
+			int nodeCost = entranceSearch.costs[slot];
+			if (slot == EntranceSearch.START_SLOT) {
+				int startSection = getSectionIndex(startSectionX, startSectionY);
+				for (int i = 0; i < startCosts.length; i++) {
+					if (startCosts[i] >= 0) {
+						relax(entranceSearch, slot, getEntranceSlot(startSection, i), getNodeId(startGraph.getEntranceX(i), startGraph.getEntranceY(i)), nodeCost + startCosts[i], toX, toY);
+					}
+				}
+				continue;
+			}
+			int node = entranceSearch.nodes[slot];
+			int x = node % width;
+			int y = node / width;
+			int sectionX = x >> shift;
+			int sectionY = y >> shift;
+
+			// edges to the goal
+			if (sectionX == goalSectionX && sectionY == goalSectionY) {
+				int goalIndex = goalGraph.indexOf(x, y);
+				if (goalIndex >= 0 && goalCosts[goalIndex] >= 0) {
+					relax(entranceSearch, slot, EntranceSearch.GOAL_SLOT, GOAL_NODE, nodeCost + goalCosts[goalIndex], toX, toY);
+				}
+			}
+
+			// edges within the section
+			int section = getSectionIndex(sectionX, sectionY);
+			SectionGraph graph = snapshot.sectionGraphs[section];
+			int index = graph.indexOf(x, y);
+			if (index >= 0) {
+				for (int other = 0; other < graph.getEntranceCount(); other++) {
+					int cost = graph.getCost(index, other);
+					if (other != index && cost >= 0) {
+						relax(entranceSearch, slot, getEntranceSlot(section, other), getNodeId(graph.getEntranceX(other), graph.getEntranceY(other)), nodeCost + cost, toX, toY);
+					}
+				}
+			}
+
+			// edges to the neighbor sections
+			for (int direction = 0; direction < 4; direction++) {
+				int neighborX = x + (direction == 0 ? 1 : direction == 1 ? -1 : 0);
+				int neighborY = y + (direction == 2 ? 1 : direction == 3 ? -1 : 0);
+				if (neighborX < 0 || neighborX >= width || neighborY < 0 || neighborY >= height) {
+					continue;
+				}
+				int neighborSectionX = neighborX >> shift;
+				int neighborSectionY = neighborY >> shift;
+				if (neighborSectionX == sectionX && neighborSectionY == sectionY) {
+					continue;
+				}
+				int neighborSection = getSectionIndex(neighborSectionX, neighborSectionY);
+				int neighborIndex = snapshot.sectionGraphs[neighborSection].indexOf(neighborX, neighborY);
+				if (neighborIndex >= 0) {
+					relax(entranceSearch, slot, getEntranceSlot(neighborSection, neighborIndex), getNodeId(neighborX, neighborY), nodeCost + JumpPointSearch.STRAIGHT_COST, toX, toY);
+				}
+			}
+
+		}
+		return null;
+	}
+
+	private void relax(EntranceSearch entranceSearch, int fromSlot, int toSlot, int toNode, int cost, int goalX, int goalY) {
+		if (entranceSearch.reach(toSlot, toNode, cost, fromSlot)) {
+			int heuristic = (toNode == GOAL_NODE ? 0 : JumpPointSearch.getOctileDistance(goalX - toNode % width, goalY - toNode / width));
+			entranceSearch.heap.add(LongHeap.encode(cost + heuristic, toSlot));
+		}
+	}
+
+	/**
+	 * Turns the abstract path (start, entrances..., goal) into waypoints by searching each section-internal step.
+	 */
+	private Path refinePath(PathfindingSnapshot snapshot, JumpPointSearch search, EntranceSearch entranceSearch, int fromX, int fromY, int toX, int toY) {
+		int cost = entranceSearch.costs[EntranceSearch.GOAL_SLOT];
+		IntList nodes = new IntList();
+		for (int slot = EntranceSearch.GOAL_SLOT; slot != EntranceSearch.START_SLOT; slot = entranceSearch.parents[slot]) {
+			nodes.add(entranceSearch.nodes[slot]);
+		}
+		IntList waypoints = new IntList();
+		waypoints.add(fromX);
+		waypoints.add(fromY);
+		int shift = GeometryConstants.SECTION_SHIFT;
+		int x = fromX;
+		int y = fromY;
+		IntList segment = new IntList();
+		for (int i = nodes.size() - 1; i >= 0; i--) {
+			int node = nodes.get(i);
+			int nextX = (node == GOAL_NODE ? toX : node % width);
+			int nextY = (node == GOAL_NODE ? toY : node / width);
+			if ((x >> shift) == (nextX >> shift) && (y >> shift) == (nextY >> shift)) {
+				segment.clear();
+				if (searchInSection(snapshot, search, x >> shift, y >> shift, x, y, nextX, nextY, segment) < 0) {
+					return null;
+				}
+				for (int j = 2; j < segment.size(); j++) {
+					waypoints.add(segment.get(j));
+				}
+			} else {
+				waypoints.add(nextX);
+				waypoints.add(nextY);
+			}
+			x = nextX;
+			y = nextY;
+		}
+		return new Path(waypoints.toArray(), cost);
+	}
+
+	private int getNodeId(int x, int y) {
+		return y * width + x;
+	}
+
+	private static int getEntranceSlot(int sectionIndex, int entranceIndex) {
+		return 2 + sectionIndex * MAX_ENTRANCES_PER_SECTION + entranceIndex;
+	}
+
+	private int getSectionIndex(int sectionX, int sectionY) {
+		return sectionY * sectionCountX + sectionX;
+	}
+
+	private int getSectionMinX(int sectionX) {
+		return sectionX << GeometryConstants.SECTION_SHIFT;
+	}
+
+	private int getSectionMaxX(int sectionX) {
+		return Math.min(getSectionMinX(sectionX) + GeometryConstants.SECTION_SIZE, width) - 1;
+	}
+
+	private int getSectionMinY(int sectionY) {
+		return sectionY << GeometryConstants.SECTION_SHIFT;
+	}
+
+	private int getSectionMaxY(int sectionY) {
+		return Math.min(getSectionMinY(sectionY) + GeometryConstants.SECTION_SIZE, height) - 1;
+	}
+
+	private int searchInSection(PathfindingSnapshot snapshot, JumpPointSearch search, int sectionX, int sectionY, int fromX, int fromY, int toX, int toY, IntList waypoints) {
+		return search.search(snapshot, getSectionMinX(sectionX), getSectionMinY(sectionY), getSectionMaxX(sectionX), getSectionMaxY(sectionY), fromX, fromY, toX, toY, waypoints);
+	}
+
+	/**
+	 * Copies the solid blocks of a section from the block map into a snapshot that has not been published yet.
+	 */
+	private void copySectionRows(PathfindingSnapshot snapshot, int sectionX, int sectionY) {
+		if (sectionX < 0 || sectionX >= sectionCountX || sectionY < 0 || sectionY >= sectionCountY) {
+			return;
+		}
+		int[] rows = new int[GeometryConstants.SECTION_SIZE];
+		solidityMap.copySectionRows(sectionX, sectionY, rows);
+		snapshot.sectionRows[getSectionIndex(sectionX, sectionY)] = rows;
+	}
+
+	/**
+	 * Recomputes the entrances on the east and north borders of a section.
+	 */
+	private void rebuildBorders(int sectionX, int sectionY) {
+		if (sectionX < 0 || sectionX >= sectionCountX || sectionY < 0 || sectionY >= sectionCountY) {
+			return;
+		}
+		int sectionIndex = getSectionIndex(sectionX, sectionY);
+		IntList entrances = new IntList();
+		if (sectionX + 1 < sectionCountX) {
+			int x = getSectionMaxX(sectionX);
+			int runStart = -1;
+			for (int y = getSectionMinY(sectionY); y <= getSectionMaxY(sectionY) + 1; y++) {
+				boolean open = (y <= getSectionMaxY(sectionY) && !solidityMap.isSolid(x, y) && !solidityMap.isSolid(x + 1, y));
+				runStart = handleBorderRun(entrances, runStart, y, open);
+			}
+		}
+		eastBorderEntrances[sectionIndex] = entrances.toArray();
+		entrances.clear();
+		if (sectionY + 1 < sectionCountY) {
+			int y = getSectionMaxY(sectionY);
+			int runStart = -1;
+			for (int x = getSectionMinX(sectionX); x <= getSectionMaxX(sectionX) + 1; x++) {
+				boolean open = (x <= getSectionMaxX(sectionX) && !solidityMap.isSolid(x, y) && !solidityMap.isSolid(x, y + 1));
+				runStart = handleBorderRun(entrances, runStart, x, open);
+			}
+		}
+		northBorderEntrances[sectionIndex] = entrances.toArray();
+	}
+
+	private static int handleBorderRun(IntList entrances, int runStart, int position, boolean open) {
+		if (open) {
+			return (runStart < 0 ? position : runStart);
+		}
+		if (runStart >= 0) {
+			int runEnd = position - 1;
+			if (runEnd - runStart + 1 > MAX_SINGLE_ENTRANCE_RUN_LENGTH) {
+				entrances.add(runStart);
+				entrances.add(runEnd);
+			} else {
+				entrances.add((runStart + runEnd) / 2);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Collects the entrances of a section from the borders it shares with its neighbors and computes the costs
+	 * between them, then stores the new graph in a snapshot that has not been published yet.
+	 */
+	private void rebuildSectionGraph(PathfindingSnapshot snapshot, int sectionX, int sectionY) {
+		if (sectionX < 0 || sectionX >= sectionCountX || sectionY < 0 || sectionY >= sectionCountY) {
+			return;
+		}
+		int minX = getSectionMinX(sectionX);
+		int maxX = getSectionMaxX(sectionX);
+		int minY = getSectionMinY(sectionY);
+		int maxY = getSectionMaxY(sectionY);
+		IntList entrances = new IntList();
+		for (int y : eastBorderEntrances[getSectionIndex(sectionX, sectionY)]) {
+			addEntrance(entrances, maxX, y);
+		}
+		for (int x : northBorderEntrances[getSectionIndex(sectionX, sectionY)]) {
+			addEntrance(entrances, x, maxY);
+		}
+		if (sectionX > 0) {
+			for (int y : eastBorderEntrances[getSectionIndex(sectionX - 1, sectionY)]) {
+				addEntrance(entrances, minX, y);
+			}
+		}
+		if (sectionY > 0) {
+			for (int x : northBorderEntrances[getSectionIndex(sectionX, sectionY - 1)]) {
+				addEntrance(entrances, x, minY);
+			}
+		}
+		int count = entrances.size() / 2;
+		int[] costs = new int[count * count];
+		JumpPointSearch search = searches.get();
+		for (int i = 0; i < count; i++) {
+			for (int j = i + 1; j < count; j++) {
+				int cost = searchInSection(snapshot, search, sectionX, sectionY, entrances.get(2 * i), entrances.get(2 * i + 1), entrances.get(2 * j), entrances.get(2 * j + 1), null);
+				costs[i * count + j] = cost;
+				costs[j * count + i] = cost;
+			}
+		}
+		snapshot.sectionGraphs[getSectionIndex(sectionX, sectionY)] = (count == 0 ? SectionGraph.EMPTY : new SectionGraph(entrances.toArray(), costs));
+	}
+
+	private static void addEntrance(IntList entrances, int x, int y) {
+		for (int i = 0; i < entrances.size(); i += 2) {
+			if (entrances.get(i) == x && entrances.get(i + 1) == y) {
+				return;
+			}
+		}
+		entrances.add(x);
+		entrances.add(y);
+	}
+
+}
@@ -0,0 +1,48 @@
+package name.martingeisse.blockgame.world.pathfinding;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+
+/**
+ * The state of a {@link PathfindingService} that path queries read: the solid bits of each section, in the row
+ * layout of {@link name.martingeisse.blockgame.world.SolidityMap}, and the entrance graph of each section, both
+ * taken in the same {@link PathfindingService#update()}. Once published, a snapshot does not change; the tick thread
+ * publishes a new one with copies of the changed sections instead, so a query sees a single consistent version of
+ * the block map and the graphs built from it while the simulation goes on.
+ */
+final class PathfindingSnapshot {
+
+	private final int width;
+	private final int height;
+	private final int sectionCountX;
+
+	/**
+	 * the rows of each section, one int per row with one bit per block
+	 */
+	final int[][] sectionRows;
+
+	/**
+	 * the entrance graph of each section
+	 */
+	final SectionGraph[] sectionGraphs;
+
+	PathfindingSnapshot(int width, int height, int sectionCountX, int[][] sectionRows, SectionGraph[] sectionGraphs) {
+		this.width = width;
+		this.height = height;
+		this.sectionCountX = sectionCountX;
+		this.sectionRows = sectionRows;
+		this.sectionGraphs = sectionGraphs;
+	}
+
+	/**
+	 * Checks whether a block is solid. Blocks outside the plane are solid.
+	 */
+	boolean isSolid(int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height) {
+			return true;
+		}
+		int shift = GeometryConstants.SECTION_SHIFT;
+		int mask = GeometryConstants.SECTION_SIZE - 1;
+		return (sectionRows[(y >> shift) * sectionCountX + (x >> shift)][y & mask] & (1 << (x & mask))) != 0;
+	}
+
+}
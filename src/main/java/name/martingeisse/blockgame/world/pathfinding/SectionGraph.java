@@ -0,0 +1,53 @@
+package name.martingeisse.blockgame.world.pathfinding;
+
+/**
+ * The part of the abstract path graph that belongs to a single section: the entrance cells of the section (cells
+ * at the section border that connect to a free cell in the neighbor section) and the path costs between each pair
+ * of them within the section. Instances are immutable, so worker threads can use them while the tick thread
+ * replaces them.
+ */
+final class SectionGraph {
+
+	static final SectionGraph EMPTY = new SectionGraph(new int[0], new int[0]);
+
+	/**
+	 * the entrance cells as (x, y) pairs
+	 */
+	private final int[] entrances;
+
+	/**
+	 * the costs between entrances i and j at index (i * entranceCount + j), or -1 if not connected
+	 */
+	private final int[] costs;
+
+	SectionGraph(int[] entrances, int[] costs) {
+		this.entrances = entrances;
+		this.costs = costs;
+	}
+
+	int getEntranceCount() {
+		return entrances.length / 2;
+	}
+
+	int getEntranceX(int index) {
+		return entrances[2 * index];
+	}
+
+	int getEntranceY(int index) {
+		return entrances[2 * index + 1];
+	}
+
+	int getCost(int from, int to) {
+		return costs[from * getEntranceCount() + to];
+	}
+
+	int indexOf(int x, int y) {
+		for (int i = 0; i < entrances.length; i += 2) {
+			if (entrances[i] == x && entrances[i + 1] == y) {
+				return i / 2;
+			}
+		}
+		return -1;
+	}
+
+}
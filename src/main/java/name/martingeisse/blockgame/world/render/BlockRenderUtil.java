@@ -0,0 +1,64 @@
+package name.martingeisse.blockgame.world.render;
+
+import name.martingeisse.blockgame.geometry.RectangularRegion;
+import name.martingeisse.blockgame.system.RenderCommandBuffer;
+import name.martingeisse.blockgame.system.Texture;
+import name.martingeisse.blockgame.system.TextureAtlas;
+import name.martingeisse.blockgame.world.AtlasTextureProvider;
+import name.martingeisse.blockgame.world.TextureProvider;
+
+/**
+ * Draws blocks one quad per block, for renderers that do not use a {@link SectionRenderer}. Used by both the plane
+ * itself and the render states taken from it.
+ */
+public final class BlockRenderUtil {
+
+	/**
+	 * Prevent instantiation.
+	 */
+	private BlockRenderUtil() {
+	}
+
+	/**
+	 * Draws the blocks of a block source within the visible region. If the texture provider has an atlas, all
+	 * blocks are drawn with a single texture bind, using the images of the block textures in the atlas.
+	 *
+	 * @param commandBuffer the command buffer to record into
+	 * @param source the blocks to draw
+	 * @param textureProvider provides the block textures
+	 * @param visibleRegion the cells to draw blocks for; blocks outside it are skipped
+	 */
+	public static void drawBlocks(RenderCommandBuffer commandBuffer, BlockSource source, TextureProvider textureProvider, RectangularRegion visibleRegion) {
+		commandBuffer.setColor(RenderCommandBuffer.WHITE);
+		int startX = Math.max(visibleRegion.getStartX(), 0);
+		int startY = Math.max(visibleRegion.getStartY(), 0);
+		int endX = Math.min(visibleRegion.getEndX(), source.getWidth());
+		int endY = Math.min(visibleRegion.getEndY(), source.getHeight());
+		TextureAtlas atlas = (textureProvider instanceof AtlasTextureProvider ? ((AtlasTextureProvider)textureProvider).getAtlas() : null);
+		if (atlas != null) {
+			AtlasTextureProvider atlasTextureProvider = (AtlasTextureProvider)textureProvider;
+			commandBuffer.bindTexture(atlas.getTexture());
+			for (int x = startX; x < endX; x++) {
+				for (int y = startY; y < endY; y++) {
+					int handle = atlasTextureProvider.getAtlasHandle(source.getBlock(x, y));
+					if (handle < 0) {
+						continue;
+					}
+					commandBuffer.drawQuad(x - 0.5f, y - 0.5f, x + 0.5f, y + 0.5f, atlas.getMinU(handle), atlas.getMinV(handle), atlas.getMaxU(handle), atlas.getMaxV(handle));
+				}
+			}
+			return;
+		}
+		for (int x = startX; x < endX; x++) {
+			for (int y = startY; y < endY; y++) {
+				Texture texture = textureProvider.getBlockTexture(source.getBlock(x, y));
+				if (texture == null) {
+					continue;
+				}
+				commandBuffer.bindTexture(texture);
+				commandBuffer.drawQuad(x, y, 0.5f);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,32 @@
+package name.martingeisse.blockgame.world.render;
+
+/**
+ * Provides the blocks of a plane, either directly or from a snapshot. This is what the block drawing code in
+ * {@link BlockRenderUtil} reads.
+ */
+public interface BlockSource {
+
+	/**
+	 * Returns the width of the plane.
+	 *
+	 * @return the width
+	 */
+	public int getWidth();
+
+	/**
+	 * Returns the height of the plane.
+	 *
+	 * @return the height
+	 */
+	public int getHeight();
+
+	/**
+	 * Returns a single block.
+	 *
+	 * @param x the x position
+	 * @param y the y position
+	 * @return the block, or 0 for positions outside the plane
+	 */
+	public int getBlock(int x, int y);
+
+}
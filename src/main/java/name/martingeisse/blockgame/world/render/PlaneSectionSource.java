@@ -0,0 +1,89 @@
+package name.martingeisse.blockgame.world.render;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.world.BlockChangeListener;
+import name.martingeisse.blockgame.world.Plane;
+
+/**
+ * A {@link SectionSource} that reads the blocks directly from a plane and counts the block changes per section as
+ * versions. Only to be used on the thread that changes the plane; the threaded renderer uses {@link RenderState}
+ * instead.
+ */
+public final class PlaneSectionSource implements SectionSource, BlockChangeListener {
+
+	private static final int SECTION_SIZE = GeometryConstants.SECTION_SIZE;
+	private static final int SECTION_SHIFT = GeometryConstants.SECTION_SHIFT;
+
+	private final Plane plane;
+	private final int sectionCountX;
+	private final int sectionCountY;
+	private final int[] sectionVersions;
+
+	/**
+	 * Constructor. Registers the source as a listener with the plane.
+	 *
+	 * @param plane the plane
+	 */
+	public PlaneSectionSource(Plane plane) {
+		this.plane = plane;
+		this.sectionCountX = (plane.getWidth() + SECTION_SIZE - 1) >> SECTION_SHIFT;
+		this.sectionCountY = (plane.getHeight() + SECTION_SIZE - 1) >> SECTION_SHIFT;
+		this.sectionVersions = new int[sectionCountX * sectionCountY];
+		plane.addBlockChangeListener(this);
+	}
+
+	// override
+	@Override
+	public void onBlockChanged(int x, int y, int oldValue, int newValue) {
+		sectionVersions[(y >> SECTION_SHIFT) * sectionCountX + (x >> SECTION_SHIFT)]++;
+	}
+
+	// override
+	@Override
+	public int getWidth() {
+		return plane.getWidth();
+	}
+
+	// override
+	@Override
+	public int getHeight() {
+		return plane.getHeight();
+	}
+
+	// override
+	@Override
+	public int getBlock(int x, int y) {
+		return plane.getBlock(x, y);
+	}
+
+	// override
+	@Override
+	public Object getSourceId() {
+		return this;
+	}
+
+	// override
+	@Override
+	public int getSectionCountX() {
+		return sectionCountX;
+	}
+
+	// override
+	@Override
+	public int getSectionCountY() {
+		return sectionCountY;
+	}
+
+	// override
+	@Override
+	public int getSectionVersion(int sectionX, int sectionY) {
+		return sectionVersions[sectionY * sectionCountX + sectionX];
+	}
+
+	// override
+	@Override
+	public void copySectionBlocks(int sectionX, int sectionY, byte[] destination) {
+		plane.getBlocks(sectionX << SECTION_SHIFT, sectionY << SECTION_SHIFT, SECTION_SIZE, SECTION_SIZE, destination);
+	}
+
+}
@@ -0,0 +1,316 @@
+package name.martingeisse.blockgame.world.render;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.geometry.RectangularRegion;
+import name.martingeisse.blockgame.system.RenderCommandBuffer;
+import name.martingeisse.blockgame.system.Texture;
+import name.martingeisse.blockgame.world.Camera;
+import name.martingeisse.blockgame.world.Plane;
+import name.martingeisse.blockgame.world.Player;
+import name.martingeisse.blockgame.world.TextureProvider;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A snapshot of everything needed to draw a plane: the blocks, the player positions and the camera, with the
+ * previous and current positions for interpolation. Once published by a {@link RenderStatePublisher}, a render
+ * state does not change until the reader has released it, so it can be drawn while the simulation goes on.
+ *
+ * Blocks are stored per section. Each section has a version number that changes whenever its blocks change, so
+ * renderers can keep per-section caches and detect changed sections even if they skipped some published states.
+ */
+public final class RenderState implements SectionSource {
+
+	private static final int SECTION_SIZE = GeometryConstants.SECTION_SIZE;
+	private static final int SECTION_SHIFT = GeometryConstants.SECTION_SHIFT;
+
+	private final Object sourceId;
+	private final int width;
+	private final int height;
+	private final int sectionCountX;
+	private final int sectionCountY;
+	private final byte[][] sectionBlocks;
+	private final int[] sectionVersions;
+	private final BitSet staleSections;
+	private long tick;
+	private long publishTime;
+	private float screenX;
+	private float screenY;
+	private float previousScreenX;
+	private float previousScreenY;
+	private float zoom = 1.0f;
+	private int playerCount;
+	private double[] playerX = new double[4];
+	private double[] playerY = new double[4];
+	private double[] previousPlayerX = new double[4];
+	private double[] previousPlayerY = new double[4];
+
+	RenderState(Object sourceId, int width, int height) {
+		this.sourceId = sourceId;
+		this.width = width;
+		this.height = height;
+		this.sectionCountX = (width + SECTION_SIZE - 1) >> SECTION_SHIFT;
+		this.sectionCountY = (height + SECTION_SIZE - 1) >> SECTION_SHIFT;
+		this.sectionBlocks = new byte[sectionCountX * sectionCountY][SECTION_SIZE * SECTION_SIZE];
+		this.sectionVersions = new int[sectionCountX * sectionCountY];
+		this.staleSections = new BitSet();
+		staleSections.set(0, sectionBlocks.length);
+	}
+
+	/**
+	 * Marks a section as changed, so its blocks get copied the next time this state is written.
+	 */
+	void markStale(int sectionIndex) {
+		staleSections.set(sectionIndex);
+	}
+
+	/**
+	 * Copies the current simulation state into this render state. Only copies the blocks of stale sections.
+	 */
+	void write(Plane plane, Camera camera, int[] currentSectionVersions, long tick) {
+		for (int i = staleSections.nextSetBit(0); i >= 0; i = staleSections.nextSetBit(i + 1)) {
+			int minX = (i % sectionCountX) << SECTION_SHIFT;
+			int minY = (i / sectionCountX) << SECTION_SHIFT;
+			plane.getBlocks(minX, minY, SECTION_SIZE, SECTION_SIZE, sectionBlocks[i]);
+			sectionVersions[i] = currentSectionVersions[i];
+		}
+		staleSections.clear();
+		this.screenX = camera.getScreenX();
+		this.screenY = camera.getScreenY();
+		this.previousScreenX = camera.getPreviousScreenX();
+		this.previousScreenY = camera.getPreviousScreenY();
+		this.zoom = camera.getZoom();
+		List<Player> players = plane.getPlayerSet().getPlayers();
+		playerCount = players.size();
+		if (playerX.length < playerCount) {
+			int newLength = Math.max(playerCount, 2 * playerX.length);
+			playerX = Arrays.copyOf(playerX, newLength);
+			playerY = Arrays.copyOf(playerY, newLength);
+			previousPlayerX = Arrays.copyOf(previousPlayerX, newLength);
+			previousPlayerY = Arrays.copyOf(previousPlayerY, newLength);
+		}
+		for (int i = 0; i < playerCount; i++) {
+			Player player = players.get(i);
+			playerX[i] = player.getPositionX();
+			playerY[i] = player.getPositionY();
+			previousPlayerX[i] = player.getPreviousPositionX();
+			previousPlayerY[i] = player.getPreviousPositionY();
+		}
+		this.tick = tick;
+		this.publishTime = System.nanoTime();
+	}
+
+	/**
+	 * Returns the number of the simulation tick this state was taken after. This is 0 if no state has been
+	 * published yet.
+	 *
+	 * @return the tick
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Returns the time this state was published, as returned by {@link System#nanoTime()}.
+	 *
+	 * @return the publish time
+	 */
+	public long getPublishTime() {
+		return publishTime;
+	}
+
+	/**
+	 * Returns the interpolation factor (0..1) between the previous and the current positions, based on how much of
+	 * the tick after this state has elapsed.
+	 *
+	 * @param now the current time, as returned by {@link System#nanoTime()}
+	 * @param tickNanos the length of a simulation tick in nanoseconds
+	 * @return the interpolation factor
+	 */
+	public double getInterpolation(long now, long tickNanos) {
+		return Math.max(0.0, Math.min(1.0, (double)(now - publishTime) / tickNanos));
+	}
+
+	/**
+	 * Getter method for the width.
+	 *
+	 * @return the width
+	 */
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Getter method for the height.
+	 *
+	 * @return the height
+	 */
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the source id, which is the same for all render states of a publisher.
+	 *
+	 * @return the source id
+	 */
+	@Override
+	public Object getSourceId() {
+		return sourceId;
+	}
+
+	/**
+	 * Returns the number of sections along the x axis.
+	 *
+	 * @return the number of sections
+	 */
+	@Override
+	public int getSectionCountX() {
+		return sectionCountX;
+	}
+
+	/**
+	 * Returns the number of sections along the y axis.
+	 *
+	 * @return the number of sections
+	 */
+	@Override
+	public int getSectionCountY() {
+		return sectionCountY;
+	}
+
+	/**
+	 * Returns the version of a section. The version changes whenever a block in the section changes.
+	 *
+	 * @param sectionX the x coordinate of the section
+	 * @param sectionY the y coordinate of the section
+	 * @return the version
+	 */
+	@Override
+	public int getSectionVersion(int sectionX, int sectionY) {
+		return sectionVersions[sectionY * sectionCountX + sectionX];
+	}
+
+	@Override
+	public void copySectionBlocks(int sectionX, int sectionY, byte[] destination) {
+		System.arraycopy(sectionBlocks[sectionY * sectionCountX + sectionX], 0, destination, 0, SECTION_SIZE * SECTION_SIZE);
+	}
+
+	/**
+	 * Returns a single block.
+	 *
+	 * @param x the x position
+	 * @param y the y position
+	 * @return the block, or 0 for positions outside the plane
+	 */
+	@Override
+	public int getBlock(int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height) {
+			return 0;
+		}
+		byte[] blocks = sectionBlocks[(y >> SECTION_SHIFT) * sectionCountX + (x >> SECTION_SHIFT)];
+		return blocks[((y & (SECTION_SIZE - 1)) << SECTION_SHIFT) + (x & (SECTION_SIZE - 1))] & 0xff;
+	}
+
+	/**
+	 * Returns the camera's x position.
+	 *
+	 * @param interpolation the interpolation factor (0..1) between the previous and the current position
+	 * @return the x position
+	 */
+	public float getScreenX(double interpolation) {
+		return previousScreenX + (screenX - previousScreenX) * (float)interpolation;
+	}
+
+	/**
+	 * Returns the camera's y position.
+	 *
+	 * @param interpolation the interpolation factor (0..1) between the previous and the current position
+	 * @return the y position
+	 */
+	public float getScreenY(double interpolation) {
+		return previousScreenY + (screenY - previousScreenY) * (float)interpolation;
+	}
+
+	/**
+	 * Returns the camera's zoom.
+	 *
+	 * @return the zoom
+	 */
+	public float getZoom() {
+		return zoom;
+	}
+
+	/**
+	 * Returns the number of players.
+	 *
+	 * @return the number of players
+	 */
+	public int getPlayerCount() {
+		return playerCount;
+	}
+
+	/**
+	 * Returns the x position of a player.
+	 *
+	 * @param index the player index
+	 * @param interpolation the interpolation factor (0..1) between the previous and the current position
+	 * @return the x position
+	 */
+	public double getPlayerX(int index, double interpolation) {
+		return previousPlayerX[index] + (playerX[index] - previousPlayerX[index]) * interpolation;
+	}
+
+	/**
+	 * Returns the y position of a player.
+	 *
+	 * @param index the player index
+	 * @param interpolation the interpolation factor (0..1) between the previous and the current position
+	 * @return the y position
+	 */
+	public double getPlayerY(int index, double interpolation) {
+		return previousPlayerY[index] + (playerY[index] - previousPlayerY[index]) * interpolation;
+	}
+
+	/**
+	 * Draws the blocks within the visible region and the players of this state. The projection must have been set
+	 * up by the caller.
+	 *
+	 * @param commandBuffer the command buffer to record into
+	 * @param textureProvider provides the block textures
+	 * @param playerTexture the player texture
+	 * @param interpolation the interpolation factor (0..1) between the previous and the current positions
+	 * @param visibleRegion the cells to draw blocks for; blocks outside it are skipped
+	 */
+	public void draw(RenderCommandBuffer commandBuffer, TextureProvider textureProvider, Texture playerTexture, double interpolation, RectangularRegion visibleRegion) {
+		if (textureProvider == null) {
+			return;
+		}
+		BlockRenderUtil.drawBlocks(commandBuffer, this, textureProvider, visibleRegion);
+		drawPlayers(commandBuffer, playerTexture, interpolation);
+	}
+
+	/**
+	 * Draws the players of this state, for renderers that draw the blocks by other means. The players are separated
+	 * from the blocks by a barrier, so they stay on top when the commands get sorted.
+	 *
+	 * @param commandBuffer the command buffer to record into
+	 * @param playerTexture the player texture
+	 * @param interpolation the interpolation factor (0..1) between the previous and the current positions
+	 */
+	public void drawPlayers(RenderCommandBuffer commandBuffer, Texture playerTexture, double interpolation) {
+		if (playerTexture != null) {
+			commandBuffer.barrier();
+			commandBuffer.setColor(RenderCommandBuffer.WHITE);
+			commandBuffer.bindTexture(playerTexture);
+			for (int i = 0; i < playerCount; i++) {
+				commandBuffer.drawQuad((float)getPlayerX(i, interpolation), (float)getPlayerY(i, interpolation), (float)Player.PLAYER_RADIUS);
+			}
+		}
+	}
+
+}
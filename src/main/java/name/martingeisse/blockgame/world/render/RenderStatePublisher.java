@@ -0,0 +1,74 @@
+package name.martingeisse.blockgame.world.render;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.world.BlockChangeListener;
+import name.martingeisse.blockgame.world.Camera;
+import name.martingeisse.blockgame.world.Plane;
+
+/**
+ * Hands render states from the simulation thread to the render thread through a {@link TripleBuffer}. The simulation
+ * thread calls {@link #publish(Camera)} after each tick; the render thread calls {@link #acquire()} each frame and
+ * draws the latest published state, without either of them waiting for the other.
+ *
+ * Each of the three states remembers which sections changed since it was last written, so publishing only copies
+ * the blocks of changed sections.
+ */
+public final class RenderStatePublisher implements BlockChangeListener {
+
+	private final Plane plane;
+	private final int sectionCountX;
+	private final RenderState[] states;
+	private final TripleBuffer<RenderState> buffer;
+	private final int[] sectionVersions;
+	private long tick;
+
+	/**
+	 * Constructor. Registers the publisher as a listener with the plane.
+	 *
+	 * @param plane the plane
+	 */
+	public RenderStatePublisher(Plane plane) {
+		this.plane = plane;
+		this.states = new RenderState[3];
+		for (int i = 0; i < states.length; i++) {
+			states[i] = new RenderState(this, plane.getWidth(), plane.getHeight());
+		}
+		this.sectionCountX = states[0].getSectionCountX();
+		this.buffer = new TripleBuffer<>(states[0], states[1], states[2]);
+		this.sectionVersions = new int[sectionCountX * states[0].getSectionCountY()];
+		plane.addBlockChangeListener(this);
+	}
+
+	// override
+	@Override
+	public void onBlockChanged(int x, int y, int oldValue, int newValue) {
+		int sectionIndex = (y >> GeometryConstants.SECTION_SHIFT) * sectionCountX + (x >> GeometryConstants.SECTION_SHIFT);
+		sectionVersions[sectionIndex]++;
+		for (RenderState state : states) {
+			state.markStale(sectionIndex);
+		}
+	}
+
+	/**
+	 * Takes a render state from the current simulation state and publishes it. Must be called from the simulation
+	 * thread.
+	 *
+	 * @param camera the camera
+	 */
+	public void publish(Camera camera) {
+		tick++;
+		buffer.getWriteBuffer().write(plane, camera, sectionVersions, tick);
+		buffer.publish();
+	}
+
+	/**
+	 * Returns the latest published render state. The state stays valid until the next call. Must be called from the
+	 * render thread.
+	 *
+	 * @return the render state
+	 */
+	public RenderState acquire() {
+		return buffer.acquire();
+	}
+
+}
@@ -0,0 +1,109 @@
+package name.martingeisse.blockgame.world.render;
+
+/**
+ * Keeps track of which section meshes have been built, from which section version and texture coordinate
+ * generation, and which ones are being built. This is the part of the {@link SectionRenderer} cache that does not
+ * need OpenGL.
+ *
+ * The state is bound to the source id and the section dimensions of a {@link SectionSource}, not to the source
+ * itself: the render states of a {@link RenderStatePublisher} take turns being drawn, but share their section
+ * versions, so the meshes built from one of them stay valid for the others.
+ */
+final class SectionBuildTracker {
+
+	private Object sourceId;
+	private int generation;
+	private int sectionCountX;
+	private int sectionCountY;
+	private int[] builtVersions = new int[0];
+	private int[] builtTextureCoordinateGenerations = new int[0];
+	private boolean[] built = new boolean[0];
+	private boolean[] building = new boolean[0];
+
+	/**
+	 * Binds the tracker to a section source. If the source has a different source id or different section
+	 * dimensions than the previous one, all sections are marked as not built and a new generation starts, so
+	 * builds that are still running for the old source can be recognized and discarded.
+	 *
+	 * @param source the section source
+	 * @return true if the tracker has been reset, false if the state of the previous source was kept
+	 */
+	boolean bind(SectionSource source) {
+		Object sourceId = source.getSourceId();
+		int sectionCountX = source.getSectionCountX();
+		int sectionCountY = source.getSectionCountY();
+		if (sourceId == this.sourceId && sectionCountX == this.sectionCountX && sectionCountY == this.sectionCountY) {
+			return false;
+		}
+		this.sourceId = sourceId;
+		this.sectionCountX = sectionCountX;
+		this.sectionCountY = sectionCountY;
+		generation++;
+		int sectionCount = sectionCountX * sectionCountY;
+		builtVersions = new int[sectionCount];
+		builtTextureCoordinateGenerations = new int[sectionCount];
+		built = new boolean[sectionCount];
+		building = new boolean[sectionCount];
+		return true;
+	}
+
+	/**
+	 * Forgets the bound source, so the next {@link #bind(SectionSource)} resets the tracker.
+	 */
+	void unbind() {
+		sourceId = null;
+	}
+
+	/**
+	 * Checks whether a section needs a new mesh, i.e. it is not being built and has not been built from the
+	 * specified version and texture coordinate generation.
+	 */
+	boolean needsBuild(int index, int version, int textureCoordinateGeneration) {
+		return !building[index] && !(built[index] && builtVersions[index] == version && builtTextureCoordinateGenerations[index] == textureCoordinateGeneration);
+	}
+
+	/**
+	 * Marks a section as being built.
+	 */
+	void onBuildStarted(int index) {
+		building[index] = true;
+	}
+
+	/**
+	 * Marks a section as built from the specified version and texture coordinate generation.
+	 */
+	void onBuilt(int index, int version, int textureCoordinateGeneration) {
+		building[index] = false;
+		built[index] = true;
+		builtVersions[index] = version;
+		builtTextureCoordinateGenerations[index] = textureCoordinateGeneration;
+	}
+
+	/**
+	 * Getter method for the generation, which changes whenever the tracker is reset.
+	 *
+	 * @return the generation
+	 */
+	int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Getter method for the sectionCountX.
+	 *
+	 * @return the sectionCountX
+	 */
+	int getSectionCountX() {
+		return sectionCountX;
+	}
+
+	/**
+	 * Getter method for the sectionCountY.
+	 *
+	 * @return the sectionCountY
+	 */
+	int getSectionCountY() {
+		return sectionCountY;
+	}
+
+}
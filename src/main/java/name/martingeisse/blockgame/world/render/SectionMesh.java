@@ -0,0 +1,179 @@
+package name.martingeisse.blockgame.world.render;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * The CPU-side mesh of a section: quads covering the drawn blocks, sorted by block type so each type can be drawn
+ * with a single texture bind. The vertices are stored in a direct buffer that can be uploaded to a vertex buffer object
+ * as is. Each vertex consists of the x and y position in world units, followed by the u and v texture coordinates.
+ *
+ * Meshes are built by a {@link SectionMeshBuilder} and are meant to be reused; the buffer is allocated once with
+ * enough room for a quad per block of the section, which is the most a mesh can need.
+ */
+public final class SectionMesh {
+
+	/**
+	 * The number of floats per vertex.
+	 */
+	public static final int FLOATS_PER_VERTEX = 4;
+
+	/**
+	 * The distance between two vertices in bytes.
+	 */
+	public static final int VERTEX_STRIDE = FLOATS_PER_VERTEX * 4;
+
+	/**
+	 * The offset of the texture coordinates within a vertex in bytes.
+	 */
+	public static final int TEXTURE_COORDINATE_OFFSET = 2 * 4;
+
+	/**
+	 * The maximum number of quads of a section mesh.
+	 */
+	public static final int MAX_QUAD_COUNT = GeometryConstants.SECTION_SIZE * GeometryConstants.SECTION_SIZE;
+
+	private final FloatBuffer vertices;
+	private final int[] runBlockTypes = new int[256];
+	private final int[] runFirstVertices = new int[256];
+	private final int[] runVertexCounts = new int[256];
+	private int runCount;
+	private int sectionX;
+	private int sectionY;
+	private int version;
+
+	/**
+	 * Constructor.
+	 */
+	public SectionMesh() {
+		this.vertices = ByteBuffer.allocateDirect(MAX_QUAD_COUNT * 4 * VERTEX_STRIDE).order(ByteOrder.nativeOrder()).asFloatBuffer();
+	}
+
+	/**
+	 * Prepares this mesh for building. Clears the vertices and runs.
+	 */
+	void begin(int sectionX, int sectionY, int version) {
+		this.sectionX = sectionX;
+		this.sectionY = sectionY;
+		this.version = version;
+		this.runCount = 0;
+		vertices.clear();
+	}
+
+	/**
+	 * Starts a run of quads with the same block type. Must be followed by the quads of the run.
+	 */
+	void beginRun(int blockType) {
+		runBlockTypes[runCount] = blockType;
+		runFirstVertices[runCount] = vertices.position() / FLOATS_PER_VERTEX;
+		runVertexCounts[runCount] = 0;
+		runCount++;
+	}
+
+	/**
+	 * Adds a quad to the current run, with the texture coordinates covering (minU, minV) .. (maxU, maxV). The
+	 * minimum v coordinate (the top of the image) is placed at maxY.
+	 */
+	void addQuad(float minX, float minY, float maxX, float maxY, float minU, float minV, float maxU, float maxV) {
+		vertices.put(minX).put(minY).put(minU).put(maxV);
+		vertices.put(maxX).put(minY).put(maxU).put(maxV);
+		vertices.put(maxX).put(maxY).put(maxU).put(minV);
+		vertices.put(minX).put(maxY).put(minU).put(minV);
+		runVertexCounts[runCount - 1] += 4;
+	}
+
+	/**
+	 * Finishes building. Prepares the vertex buffer for reading.
+	 */
+	void end() {
+		vertices.flip();
+	}
+
+	/**
+	 * Getter method for the x coordinate of the section.
+	 *
+	 * @return the section x coordinate
+	 */
+	public int getSectionX() {
+		return sectionX;
+	}
+
+	/**
+	 * Getter method for the y coordinate of the section.
+	 *
+	 * @return the section y coordinate
+	 */
+	public int getSectionY() {
+		return sectionY;
+	}
+
+	/**
+	 * Returns the version of the section this mesh was built from.
+	 *
+	 * @return the version
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the vertex buffer. Its position and limit enclose the vertices of the mesh.
+	 *
+	 * @return the vertices
+	 */
+	public FloatBuffer getVertices() {
+		return vertices;
+	}
+
+	/**
+	 * Returns the number of vertices.
+	 *
+	 * @return the number of vertices
+	 */
+	public int getVertexCount() {
+		return vertices.limit() / FLOATS_PER_VERTEX;
+	}
+
+	/**
+	 * Returns the number of runs, i.e. groups of quads with the same block type.
+	 *
+	 * @return the number of runs
+	 */
+	public int getRunCount() {
+		return runCount;
+	}
+
+	/**
+	 * Returns the block type of a run.
+	 *
+	 * @param run the run index
+	 * @return the block type
+	 */
+	public int getRunBlockType(int run) {
+		return runBlockTypes[run];
+	}
+
+	/**
+	 * Returns the index of the first vertex of a run.
+	 *
+	 * @param run the run index
+	 * @return the first vertex index
+	 */
+	public int getRunFirstVertex(int run) {
+		return runFirstVertices[run];
+	}
+
+	/**
+	 * Returns the number of vertices of a run.
+	 *
+	 * @param run the run index
+	 * @return the number of vertices
+	 */
+	public int getRunVertexCount(int run) {
+		return runVertexCounts[run];
+	}
+
+}
@@ -0,0 +1,206 @@
+package name.martingeisse.blockgame.world.render;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+
+import java.util.Arrays;
+
+/**
+ * Builds the {@link SectionMesh} of a section from its blocks, with the quads grouped by block type using a counting
+ * sort. Block type 0 (empty, and also the value of positions outside the plane) is skipped.
+ *
+ * By default, adjacent blocks of the same type are merged greedily into rectangles, each drawn as a single quad
+ * whose texture coordinates repeat the block texture once per block, so the textures must be set to repeat. A
+ * section that consists of a single block type becomes a single quad. Alternatively, the caller can pass a table
+ * with a rectangle of texture coordinates per block type, e.g. the images of the block textures in a texture atlas;
+ * these cannot repeat, so each block is drawn as a quad of its own, and block types whose entry is NaN are skipped.
+ *
+ * This does not use OpenGL, so meshes can be built on worker threads and without a display. A builder keeps some
+ * scratch space and must only be used by one thread at a time.
+ */
+public final class SectionMeshBuilder {
+
+	private static final int SECTION_SIZE = GeometryConstants.SECTION_SIZE;
+	private static final int SECTION_SHIFT = GeometryConstants.SECTION_SHIFT;
+	private static final int SECTION_AREA = SECTION_SIZE * SECTION_SIZE;
+
+	private final int[] typeCounts = new int[256];
+	private final short[] sortedBlocks = new short[SECTION_AREA];
+	private final boolean[] covered = new boolean[SECTION_AREA];
+	private final short[] rectangleStarts = new short[SECTION_AREA];
+	private final byte[] rectangleWidths = new byte[SECTION_AREA];
+	private final byte[] rectangleHeights = new byte[SECTION_AREA];
+
+	/**
+	 * Builds a mesh, merging adjacent blocks of the same type.
+	 *
+	 * @param sectionX the x coordinate of the section
+	 * @param sectionY the y coordinate of the section
+	 * @param version the version of the section, stored in the mesh
+	 * @param blocks the blocks of the section, row by row
+	 * @param mesh the mesh to build into
+	 */
+	public void build(int sectionX, int sectionY, int version, byte[] blocks, SectionMesh mesh) {
+		build(sectionX, sectionY, version, blocks, null, mesh);
+	}
+
+	/**
+	 * Builds a mesh using a texture coordinate table.
+	 *
+	 * @param sectionX the x coordinate of the section
+	 * @param sectionY the y coordinate of the section
+	 * @param version the version of the section, stored in the mesh
+	 * @param blocks the blocks of the section, row by row
+	 * @param textureCoordinates the texture coordinates (minU, minV, maxU, maxV) of each block type, with NaN
+	 * for block types that are not drawn, or null to merge adjacent blocks of the same type into quads with
+	 * repeated texture coordinates
+	 * @param mesh the mesh to build into
+	 */
+	public void build(int sectionX, int sectionY, int version, byte[] blocks, float[] textureCoordinates, SectionMesh mesh) {
+		mesh.begin(sectionX, sectionY, version);
+		if (textureCoordinates == null) {
+			buildMerged(sectionX, sectionY, blocks, mesh);
+		} else {
+			buildPerBlock(sectionX, sectionY, blocks, textureCoordinates, mesh);
+		}
+		mesh.end();
+	}
+
+	private void buildMerged(int sectionX, int sectionY, byte[] blocks, SectionMesh mesh) {
+		float baseX = (sectionX << SECTION_SHIFT) - 0.5f;
+		float baseY = (sectionY << SECTION_SHIFT) - 0.5f;
+
+		// a section that consists of a single block type becomes a single quad
+		byte firstBlock = blocks[0];
+		int uniformLength = 1;
+		while (uniformLength < SECTION_AREA && blocks[uniformLength] == firstBlock) {
+			uniformLength++;
+		}
+		if (uniformLength == SECTION_AREA) {
+			if (firstBlock != 0) {
+				mesh.beginRun(firstBlock & 0xff);
+				mesh.addQuad(baseX, baseY, baseX + SECTION_SIZE, baseY + SECTION_SIZE, 0.0f, 0.0f, SECTION_SIZE, SECTION_SIZE);
+			}
+			return;
+		}
+
+		// Cover the blocks with rectangles: starting at the first uncovered block in row order, extend to the right
+		// as far as possible, then extend that whole width upwards as far as possible.
+		Arrays.fill(covered, false);
+		Arrays.fill(typeCounts, 0);
+		int rectangleCount = 0;
+		for (int y = 0; y < SECTION_SIZE; y++) {
+			for (int x = 0; x < SECTION_SIZE; x++) {
+				int start = (y << SECTION_SHIFT) + x;
+				byte block = blocks[start];
+				if (covered[start] || block == 0) {
+					continue;
+				}
+				int width = 1;
+				while (x + width < SECTION_SIZE && !covered[start + width] && blocks[start + width] == block) {
+					width++;
+				}
+				int height = 1;
+				extendHeight:
+				while (y + height < SECTION_SIZE) {
+					int rowStart = start + (height << SECTION_SHIFT);
+					for (int i = rowStart; i < rowStart + width; i++) {
+						if (covered[i] || blocks[i] != block) {
+							break extendHeight;
+						}
+					}
+					height++;
+				}
+				for (int row = 0; row < height; row++) {
+					int rowStart = start + (row << SECTION_SHIFT);
+					Arrays.fill(covered, rowStart, rowStart + width, true);
+				}
+				rectangleStarts[rectangleCount] = (short)start;
+				rectangleWidths[rectangleCount] = (byte)width;
+				rectangleHeights[rectangleCount] = (byte)height;
+				rectangleCount++;
+				typeCounts[block & 0xff]++;
+				x += width - 1;
+			}
+		}
+
+		// sort the rectangles by type
+		int position = 0;
+		for (int type = 1; type < 256; type++) {
+			int count = typeCounts[type];
+			typeCounts[type] = position;
+			position += count;
+		}
+		for (int i = 0; i < rectangleCount; i++) {
+			sortedBlocks[typeCounts[blocks[rectangleStarts[i]] & 0xff]++] = (short)i;
+		}
+
+		// emit a quad per rectangle, starting a new run whenever the type changes
+		int previousType = 0;
+		for (int i = 0; i < rectangleCount; i++) {
+			int rectangle = sortedBlocks[i];
+			int start = rectangleStarts[rectangle];
+			int type = blocks[start] & 0xff;
+			if (type != previousType) {
+				mesh.beginRun(type);
+				previousType = type;
+			}
+			float minX = baseX + (start & (SECTION_SIZE - 1));
+			float minY = baseY + (start >> SECTION_SHIFT);
+			int width = rectangleWidths[rectangle];
+			int height = rectangleHeights[rectangle];
+			mesh.addQuad(minX, minY, minX + width, minY + height, 0.0f, 0.0f, width, height);
+		}
+
+	}
+
+	private void buildPerBlock(int sectionX, int sectionY, byte[] blocks, float[] textureCoordinates, SectionMesh mesh) {
+
+		// count the blocks of each type and turn the counts into start positions
+		Arrays.fill(typeCounts, 0);
+		for (int i = 0; i < SECTION_AREA; i++) {
+			typeCounts[blocks[i] & 0xff]++;
+		}
+		int position = 0;
+		for (int type = 1; type < 256; type++) {
+			int count = typeCounts[type];
+			typeCounts[type] = position;
+			position += count;
+		}
+
+		// sort the block positions by type
+		for (int i = 0; i < SECTION_AREA; i++) {
+			int type = blocks[i] & 0xff;
+			if (type != 0) {
+				sortedBlocks[typeCounts[type]++] = (short)i;
+			}
+		}
+
+		// emit a quad per block, starting a new run whenever the type changes
+		int baseX = sectionX << SECTION_SHIFT;
+		int baseY = sectionY << SECTION_SHIFT;
+		int previousType = 0;
+		float minU = Float.NaN, minV = 0.0f, maxU = 0.0f, maxV = 0.0f;
+		for (int i = 0; i < position; i++) {
+			int index = sortedBlocks[i];
+			int type = blocks[index] & 0xff;
+			if (type != previousType) {
+				previousType = type;
+				minU = textureCoordinates[4 * type];
+				minV = textureCoordinates[4 * type + 1];
+				maxU = textureCoordinates[4 * type + 2];
+				maxV = textureCoordinates[4 * type + 3];
+				if (Float.isNaN(minU)) {
+					continue;
+				}
+				mesh.beginRun(type);
+			} else if (Float.isNaN(minU)) {
+				continue;
+			}
+			float x = baseX + (index & (SECTION_SIZE - 1));
+			float y = baseY + (index >> SECTION_SHIFT);
+			mesh.addQuad(x - 0.5f, y - 0.5f, x + 0.5f, y + 0.5f, minU, minV, maxU, maxV);
+		}
+
+	}
+
+}
@@ -0,0 +1,356 @@
+package name.martingeisse.blockgame.world.render;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.geometry.RectangularRegion;
+import name.martingeisse.blockgame.system.RenderCommandBuffer;
+import name.martingeisse.blockgame.system.Texture;
+import name.martingeisse.blockgame.system.TextureAtlas;
+import name.martingeisse.blockgame.world.AtlasTextureProvider;
+import name.martingeisse.blockgame.world.TextureProvider;
+import org.lwjgl.opengl.GL15;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws the blocks of a plane with one vertex buffer object per section, instead of issuing immediate-mode calls
+ * for each block every frame. A section's mesh is rebuilt only when its version changes. Meshes are built on
+ * worker threads, sections closer to the camera first, and uploaded on the render thread when done; until then,
+ * the previous mesh of the section stays visible, and a section that has never been built is not drawn. Only the
+ * sections that overlap the visible region are built and drawn, so the cost of a frame does not depend on the size
+ * of the plane; the meshes of other sections are kept, and brought up to date when they become visible again.
+ *
+ * By default, adjacent blocks of the same type are merged into single quads with repeated textures (see
+ * {@link SectionMeshBuilder}), and the block textures are set to repeat when first used. Since repeating only works
+ * with whole textures, an atlas is only used if merging is turned off: if the texture provider is an
+ * {@link AtlasTextureProvider} then, the meshes use the texture coordinates of the block images in the atlas, and all
+ * sections are drawn with a single texture bind and one draw call per section. The meshes are rebuilt when the
+ * texture coordinates change.
+ *
+ * All methods must be called from the render thread, which must have a current OpenGL context.
+ */
+public final class SectionRenderer {
+
+	private static final int SECTION_SIZE = GeometryConstants.SECTION_SIZE;
+
+	private final ThreadPoolExecutor executor;
+	private final ThreadLocal<SectionMeshBuilder> builders = ThreadLocal.withInitial(SectionMeshBuilder::new);
+	private final ConcurrentLinkedQueue<BuildJob> completedJobs = new ConcurrentLinkedQueue<>();
+	private final ArrayDeque<BuildJob> freeJobs = new ArrayDeque<>();
+	private final SectionBuildTracker tracker = new SectionBuildTracker();
+	private SectionSource source;
+	private int sectionCountX;
+	private int sectionCountY;
+	private int[] bufferIds = new int[0];
+	private int[][] sectionRuns = new int[0][];
+	private int[] sectionRunCounts = new int[0];
+	private int[] sectionVertexCounts = new int[0];
+	private boolean[] builtWithAtlas = new boolean[0];
+	private final float[] currentTextureCoordinates = new float[256 * 4];
+	private float[] textureCoordinates;
+	private int textureCoordinateGeneration;
+	private boolean mergingBlocks = true;
+	private final Set<Texture> repeatingTextures = new HashSet<>();
+
+	/**
+	 * Constructor for a renderer that uses about half of the available processors to build meshes.
+	 */
+	public SectionRenderer() {
+		this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param builderThreadCount the number of threads that build meshes
+	 */
+	public SectionRenderer(int builderThreadCount) {
+		this.executor = new ThreadPoolExecutor(builderThreadCount, builderThreadCount, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "section-mesh-builder");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Getter method for the mergingBlocks flag.
+	 *
+	 * @return true if adjacent blocks of the same type are merged into single quads, false if each block is a quad
+	 */
+	public boolean isMergingBlocks() {
+		return mergingBlocks;
+	}
+
+	/**
+	 * Setter method for the mergingBlocks flag. Turning merging off only has an effect if the texture provider is
+	 * an {@link AtlasTextureProvider}, and rebuilds all meshes to use the atlas.
+	 *
+	 * @param mergingBlocks true to merge adjacent blocks of the same type into single quads, false to draw each
+	 * block as a quad of its own, which allows to use a texture atlas
+	 */
+	public void setMergingBlocks(boolean mergingBlocks) {
+		this.mergingBlocks = mergingBlocks;
+	}
+
+	/**
+	 * Draws the blocks of a section source within the visible region. Requests new meshes for visible sections
+	 * that have changed and uploads the meshes that have been built since the last call; this happens immediately,
+	 * while the drawing itself is recorded into the command buffer. The projection must have been set up by the
+	 * caller.
+	 *
+	 * @param commandBuffer the command buffer to record into
+	 * @param source the section source to draw
+	 * @param textureProvider provides the block textures
+	 * @param cameraX the x position of the camera, which determines the order in which meshes are built
+	 * @param cameraY the y position of the camera, which determines the order in which meshes are built
+	 * @param visibleRegion the visible cells
+	 */
+	public void draw(RenderCommandBuffer commandBuffer, SectionSource source, TextureProvider textureProvider, float cameraX, float cameraY, RectangularRegion visibleRegion) {
+		this.source = source;
+		if (tracker.bind(source)) {
+			reset();
+		}
+		uploadCompletedMeshes();
+		if (textureProvider != null) {
+			updateTextureCoordinates(textureProvider);
+		}
+		RectangularRegion visibleSections = visibleRegion.divideAndRoundToOuter(GeometryConstants.SECTION_CLUSTER_SIZE);
+		int startX = Math.max(visibleSections.getStartX(), 0);
+		int startY = Math.max(visibleSections.getStartY(), 0);
+		int endX = Math.min(visibleSections.getEndX(), sectionCountX);
+		int endY = Math.min(visibleSections.getEndY(), sectionCountY);
+		for (int sectionY = startY; sectionY < endY; sectionY++) {
+			for (int sectionX = startX; sectionX < endX; sectionX++) {
+				requestMeshIfChanged(sectionX, sectionY, cameraX, cameraY);
+			}
+		}
+		if (textureProvider == null) {
+			return;
+		}
+		commandBuffer.setColor(RenderCommandBuffer.WHITE);
+		TextureAtlas atlas = getAtlas(textureProvider);
+		for (int sectionY = startY; sectionY < endY; sectionY++) {
+			for (int sectionX = startX; sectionX < endX; sectionX++) {
+				int index = sectionY * sectionCountX + sectionX;
+				if (builtWithAtlas[index] && atlas != null) {
+					drawSectionFromAtlas(commandBuffer, index, atlas);
+				} else {
+					drawSection(commandBuffer, index, textureProvider);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops all meshes after the tracker has been bound to a section source with a different source id or
+	 * different dimensions. Meshes of the old source that are still being built are discarded when done. Drawing
+	 * the render states of one publisher in turn does not get here, since they share their source id.
+	 */
+	private void reset() {
+		deleteBuffers();
+		sectionCountX = tracker.getSectionCountX();
+		sectionCountY = tracker.getSectionCountY();
+		int sectionCount = sectionCountX * sectionCountY;
+		bufferIds = new int[sectionCount];
+		sectionRuns = new int[sectionCount][];
+		sectionRunCounts = new int[sectionCount];
+		sectionVertexCounts = new int[sectionCount];
+		builtWithAtlas = new boolean[sectionCount];
+	}
+
+	/**
+	 * Determines the texture coordinates of each block type from the atlas of the texture provider, if any, and
+	 * starts a new texture coordinate generation if they have changed, so all meshes get rebuilt.
+	 */
+	private void updateTextureCoordinates(TextureProvider textureProvider) {
+		TextureAtlas atlas = getAtlas(textureProvider);
+		if (atlas == null) {
+			if (textureCoordinates != null) {
+				textureCoordinates = null;
+				textureCoordinateGeneration++;
+			}
+			return;
+		}
+		AtlasTextureProvider atlasTextureProvider = (AtlasTextureProvider)textureProvider;
+		for (int type = 0; type < 256; type++) {
+			int handle = (type == 0 ? -1 : atlasTextureProvider.getAtlasHandle(type));
+			if (handle < 0) {
+				Arrays.fill(currentTextureCoordinates, 4 * type, 4 * type + 4, Float.NaN);
+			} else {
+				currentTextureCoordinates[4 * type] = atlas.getMinU(handle);
+				currentTextureCoordinates[4 * type + 1] = atlas.getMinV(handle);
+				currentTextureCoordinates[4 * type + 2] = atlas.getMaxU(handle);
+				currentTextureCoordinates[4 * type + 3] = atlas.getMaxV(handle);
+			}
+		}
+		if (textureCoordinates == null || !Arrays.equals(currentTextureCoordinates, textureCoordinates)) {
+			textureCoordinates = currentTextureCoordinates.clone();
+			textureCoordinateGeneration++;
+		}
+	}
+
+	/**
+	 * Returns the atlas to use for the block textures, or null to use the individual textures.
+	 */
+	private TextureAtlas getAtlas(TextureProvider textureProvider) {
+		if (mergingBlocks || !(textureProvider instanceof AtlasTextureProvider)) {
+			return null;
+		}
+		return ((AtlasTextureProvider)textureProvider).getAtlas();
+	}
+
+	private void requestMeshIfChanged(int sectionX, int sectionY, float cameraX, float cameraY) {
+		int index = sectionY * sectionCountX + sectionX;
+		int version = source.getSectionVersion(sectionX, sectionY);
+		if (!tracker.needsBuild(index, version, textureCoordinateGeneration)) {
+			return;
+		}
+		BuildJob job = freeJobs.poll();
+		if (job == null) {
+			job = new BuildJob();
+		}
+		job.generation = tracker.getGeneration();
+		job.sectionX = sectionX;
+		job.sectionY = sectionY;
+		job.version = version;
+		job.textureCoordinateGeneration = textureCoordinateGeneration;
+		job.hasTextureCoordinates = (textureCoordinates != null);
+		if (textureCoordinates != null) {
+			System.arraycopy(textureCoordinates, 0, job.textureCoordinates, 0, textureCoordinates.length);
+		}
+		float dx = (sectionX + 0.5f) * SECTION_SIZE - 0.5f - cameraX;
+		float dy = (sectionY + 0.5f) * SECTION_SIZE - 0.5f - cameraY;
+		job.priority = dx * dx + dy * dy;
+		job.failure = null;
+		source.copySectionBlocks(sectionX, sectionY, job.blocks);
+		tracker.onBuildStarted(index);
+		executor.execute(job);
+	}
+
+	private void uploadCompletedMeshes() {
+		BuildJob job;
+		while ((job = completedJobs.poll()) != null) {
+			if (job.failure != null) {
+				throw new RuntimeException("could not build section mesh", job.failure);
+			}
+			if (job.generation == tracker.getGeneration()) {
+				upload(job.sectionY * sectionCountX + job.sectionX, job);
+			}
+			freeJobs.add(job);
+		}
+	}
+
+	private void upload(int index, BuildJob job) {
+		SectionMesh mesh = job.mesh;
+		tracker.onBuilt(index, mesh.getVersion(), job.textureCoordinateGeneration);
+		builtWithAtlas[index] = job.hasTextureCoordinates;
+		sectionVertexCounts[index] = mesh.getVertexCount();
+		int runCount = mesh.getRunCount();
+		int[] runs = sectionRuns[index];
+		if (runs == null || runs.length < 3 * runCount) {
+			runs = sectionRuns[index] = new int[3 * runCount];
+		}
+		for (int run = 0; run < runCount; run++) {
+			runs[3 * run] = mesh.getRunBlockType(run);
+			runs[3 * run + 1] = mesh.getRunFirstVertex(run);
+			runs[3 * run + 2] = mesh.getRunVertexCount(run);
+		}
+		sectionRunCounts[index] = runCount;
+		if (mesh.getVertexCount() == 0) {
+			return;
+		}
+		if (bufferIds[index] == 0) {
+			bufferIds[index] = GL15.glGenBuffers();
+		}
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, bufferIds[index]);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, mesh.getVertices(), GL15.GL_STATIC_DRAW);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+	}
+
+	private void drawSection(RenderCommandBuffer commandBuffer, int index, TextureProvider textureProvider) {
+		int runCount = sectionRunCounts[index];
+		int[] runs = sectionRuns[index];
+		for (int run = 0; run < runCount; run++) {
+			Texture texture = textureProvider.getBlockTexture(runs[3 * run]);
+			if (texture != null) {
+				if (repeatingTextures.add(texture)) {
+					texture.setRepeating(true);
+				}
+				commandBuffer.bindTexture(texture);
+				commandBuffer.drawVertexBuffer(bufferIds[index], runs[3 * run + 1], runs[3 * run + 2]);
+			}
+		}
+	}
+
+	private void drawSectionFromAtlas(RenderCommandBuffer commandBuffer, int index, TextureAtlas atlas) {
+		int vertexCount = sectionVertexCounts[index];
+		if (vertexCount == 0) {
+			return;
+		}
+		commandBuffer.bindTexture(atlas.getTexture());
+		commandBuffer.drawVertexBuffer(bufferIds[index], 0, vertexCount);
+	}
+
+	private void deleteBuffers() {
+		for (int i = 0; i < bufferIds.length; i++) {
+			if (bufferIds[i] != 0) {
+				GL15.glDeleteBuffers(bufferIds[i]);
+				bufferIds[i] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Deletes all vertex buffers and stops the builder threads.
+	 */
+	public void dispose() {
+		executor.shutdownNow();
+		deleteBuffers();
+		tracker.unbind();
+		source = null;
+	}
+
+	/**
+	 * Builds the mesh of a single section on a builder thread.
+	 */
+	private final class BuildJob implements Runnable, Comparable<BuildJob> {
+
+		private final byte[] blocks = new byte[SECTION_SIZE * SECTION_SIZE];
+		private final SectionMesh mesh = new SectionMesh();
+		private final float[] textureCoordinates = new float[256 * 4];
+		private boolean hasTextureCoordinates;
+		private int textureCoordinateGeneration;
+		private int generation;
+		private int sectionX;
+		private int sectionY;
+		private int version;
+		private float priority;
+		private volatile Throwable failure;
+
+		// override
+		@Override
+		public void run() {
+			try {
+				builders.get().build(sectionX, sectionY, version, blocks, hasTextureCoordinates ? textureCoordinates : null, mesh);
+			} catch (Throwable e) {
+				failure = e;
+			} finally {
+				completedJobs.add(this);
+			}
+		}
+
+		// override
+		@Override
+		public int compareTo(BuildJob other) {
+			return Float.compare(priority, other.priority);
+		}
+
+	}
+
+}
@@ -0,0 +1,50 @@
+package name.martingeisse.blockgame.world.render;
+
+/**
+ * Provides the blocks of a plane section by section, with a version number per section that changes whenever a
+ * block in the section changes. This is what section-level render caches are built from.
+ */
+public interface SectionSource extends BlockSource {
+
+	/**
+	 * Returns an object that identifies the sequence of section versions this source belongs to. Sources with the
+	 * same id share their section versions, like the render states of one {@link RenderStatePublisher}, so a cache
+	 * built from one of them stays valid for the others.
+	 *
+	 * @return the source id
+	 */
+	public Object getSourceId();
+
+	/**
+	 * Returns the number of sections along the x axis.
+	 *
+	 * @return the number of sections
+	 */
+	public int getSectionCountX();
+
+	/**
+	 * Returns the number of sections along the y axis.
+	 *
+	 * @return the number of sections
+	 */
+	public int getSectionCountY();
+
+	/**
+	 * Returns the version of a section. The version changes whenever a block in the section changes.
+	 *
+	 * @param sectionX the x coordinate of the section
+	 * @param sectionY the y coordinate of the section
+	 * @return the version
+	 */
+	public int getSectionVersion(int sectionX, int sectionY);
+
+	/**
+	 * Copies the blocks of a section to an array, row by row. Blocks outside the plane are returned as 0.
+	 *
+	 * @param sectionX    the x coordinate of the section
+	 * @param sectionY    the y coordinate of the section
+	 * @param destination the array to copy to, with at least SECTION_SIZE * SECTION_SIZE elements
+	 */
+	public void copySectionBlocks(int sectionX, int sectionY, byte[] destination);
+
+}
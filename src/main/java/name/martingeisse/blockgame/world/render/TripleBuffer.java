@@ -0,0 +1,67 @@
+package name.martingeisse.blockgame.world.render;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free handoff of buffers from a single writer thread to a single reader thread. Of the three buffers, one is
+ * owned by the writer, one by the reader, and the third holds the latest published data. Publishing and acquiring
+ * swap a buffer with the third one atomically, so neither side ever waits for the other, and the reader always
+ * gets the latest data while skipping older data it did not pick up in time.
+ *
+ * @param <T> the buffer type
+ */
+public final class TripleBuffer<T> {
+
+	private static final int INDEX_MASK = 3;
+	private static final int FRESH_FLAG = 4;
+
+	private final Object[] buffers;
+	private final AtomicInteger middle = new AtomicInteger(1);
+	private int writeIndex = 0;
+	private int readIndex = 2;
+
+	/**
+	 * Constructor. The third buffer is the one the reader gets until the first buffer has been published.
+	 *
+	 * @param first the first buffer
+	 * @param second the second buffer
+	 * @param third the third buffer
+	 */
+	public TripleBuffer(T first, T second, T third) {
+		this.buffers = new Object[] {first, second, third};
+	}
+
+	/**
+	 * Returns the buffer owned by the writer. Only to be called by the writer thread.
+	 *
+	 * @return the write buffer
+	 */
+	@SuppressWarnings("unchecked")
+	public T getWriteBuffer() {
+		return (T)buffers[writeIndex];
+	}
+
+	/**
+	 * Publishes the write buffer, making it available to the reader. The writer gets another buffer in exchange,
+	 * which contains older data. Only to be called by the writer thread.
+	 */
+	public void publish() {
+		writeIndex = middle.getAndSet(writeIndex | FRESH_FLAG) & INDEX_MASK;
+	}
+
+	/**
+	 * Returns the latest published buffer. If nothing has been published since the last call, this returns the
+	 * same buffer again. The buffer stays owned by the reader until the next call. Only to be called by the reader
+	 * thread.
+	 *
+	 * @return the read buffer
+	 */
+	@SuppressWarnings("unchecked")
+	public T acquire() {
+		if ((middle.get() & FRESH_FLAG) != 0) {
+			readIndex = middle.getAndSet(readIndex) & INDEX_MASK;
+		}
+		return (T)buffers[readIndex];
+	}
+
+}
@@ -0,0 +1,243 @@
+package name.martingeisse.blockgame.world.trigger;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.geometry.RectangularRegion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A static spatial index of trigger regions. Each trigger is identified by its index in the list of regions passed
+ * to the constructor. A trigger region covers the cells of its {@link RectangularRegion}; since block centers are at
+ * integer coordinates, this is the area from (startX - 0.5, startY - 0.5) to (endX - 0.5, endY - 0.5).
+ *
+ * Triggers are bucketed by section, and the buckets are stored packed in a single array, so a query only looks at
+ * the triggers of the sections it touches, no matter how many triggers there are in the whole plane. Parts of a
+ * region outside the plane are ignored.
+ *
+ * Segment queries are not thread-safe since they use internal state to report each trigger only once.
+ */
+public final class TriggerIndex {
+
+	private static final int SECTION_SHIFT = GeometryConstants.SECTION_SHIFT;
+
+	private final int width;
+	private final int height;
+	private final int sectionCountX;
+	private final List<RectangularRegion> regions;
+	private final int[] startX;
+	private final int[] startY;
+	private final int[] endX;
+	private final int[] endY;
+	private final int[] bucketStart;
+	private final int[] bucketTriggerIds;
+	private final int[] queryStamps;
+	private int queryStamp;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param width the width of the plane
+	 * @param height the height of the plane
+	 * @param regions the trigger regions
+	 */
+	public TriggerIndex(int width, int height, List<RectangularRegion> regions) {
+		this.width = width;
+		this.height = height;
+		this.sectionCountX = (width + GeometryConstants.SECTION_SIZE - 1) >> SECTION_SHIFT;
+		int sectionCountY = (height + GeometryConstants.SECTION_SIZE - 1) >> SECTION_SHIFT;
+		this.regions = new ArrayList<>(regions);
+		int count = regions.size();
+		this.startX = new int[count];
+		this.startY = new int[count];
+		this.endX = new int[count];
+		this.endY = new int[count];
+		this.queryStamps = new int[count];
+
+		// clip the regions to the plane; regions that become empty are not put into any bucket
+		for (int id = 0; id < count; id++) {
+			RectangularRegion region = regions.get(id);
+			startX[id] = Math.max(region.getStartX(), 0);
+			startY[id] = Math.max(region.getStartY(), 0);
+			endX[id] = Math.min(region.getEndX(), width);
+			endY[id] = Math.min(region.getEndY(), height);
+		}
+
+		// count the triggers per section, then turn the counts into bucket boundaries
+		this.bucketStart = new int[sectionCountX * sectionCountY + 1];
+		for (int id = 0; id < count; id++) {
+			if (startX[id] < endX[id] && startY[id] < endY[id]) {
+				for (int sy = startY[id] >> SECTION_SHIFT; sy <= (endY[id] - 1) >> SECTION_SHIFT; sy++) {
+					for (int sx = startX[id] >> SECTION_SHIFT; sx <= (endX[id] - 1) >> SECTION_SHIFT; sx++) {
+						bucketStart[sy * sectionCountX + sx + 1]++;
+					}
+				}
+			}
+		}
+		for (int i = 1; i < bucketStart.length; i++) {
+			bucketStart[i] += bucketStart[i - 1];
+		}
+
+		// fill the buckets; each bucket ends up sorted by trigger ID
+		this.bucketTriggerIds = new int[bucketStart[bucketStart.length - 1]];
+		int[] cursors = Arrays.copyOf(bucketStart, bucketStart.length - 1);
+		for (int id = 0; id < count; id++) {
+			if (startX[id] < endX[id] && startY[id] < endY[id]) {
+				for (int sy = startY[id] >> SECTION_SHIFT; sy <= (endY[id] - 1) >> SECTION_SHIFT; sy++) {
+					for (int sx = startX[id] >> SECTION_SHIFT; sx <= (endX[id] - 1) >> SECTION_SHIFT; sx++) {
+						bucketTriggerIds[cursors[sy * sectionCountX + sx]++] = id;
+					}
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Returns the number of triggers.
+	 *
+	 * @return the number of triggers
+	 */
+	public int getTriggerCount() {
+		return regions.size();
+	}
+
+	/**
+	 * Returns the region of a trigger, as passed to the constructor.
+	 *
+	 * @param triggerId the trigger ID
+	 * @return the region
+	 */
+	public RectangularRegion getRegion(int triggerId) {
+		return regions.get(triggerId);
+	}
+
+	/**
+	 * Reports all triggers whose region contains the specified point, in ascending order of their IDs.
+	 *
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @param consumer receives the trigger IDs
+	 */
+	public void forEachAtPoint(double x, double y, IntConsumer consumer) {
+		int cellX = (int)Math.floor(x + 0.5);
+		int cellY = (int)Math.floor(y + 0.5);
+		if (cellX < 0 || cellX >= width || cellY < 0 || cellY >= height) {
+			return;
+		}
+		int bucket = (cellY >> SECTION_SHIFT) * sectionCountX + (cellX >> SECTION_SHIFT);
+		for (int i = bucketStart[bucket]; i < bucketStart[bucket + 1]; i++) {
+			int id = bucketTriggerIds[i];
+			if (cellX >= startX[id] && cellX < endX[id] && cellY >= startY[id] && cellY < endY[id]) {
+				consumer.accept(id);
+			}
+		}
+	}
+
+	/**
+	 * Reports all triggers whose region is touched by the line segment between the specified points. Each trigger
+	 * is reported once, but in no particular order.
+	 *
+	 * @param x1 the x coordinate of the first point
+	 * @param y1 the y coordinate of the first point
+	 * @param x2 the x coordinate of the second point
+	 * @param y2 the y coordinate of the second point
+	 * @param consumer receives the trigger IDs
+	 */
+	public void forEachAlongSegment(double x1, double y1, double x2, double y2, IntConsumer consumer) {
+
+		// determine the sections touched by the bounding box of the segment
+		int minCellX = Math.max((int)Math.floor(Math.min(x1, x2) + 0.5), 0);
+		int minCellY = Math.max((int)Math.floor(Math.min(y1, y2) + 0.5), 0);
+		int maxCellX = Math.min((int)Math.floor(Math.max(x1, x2) + 0.5), width - 1);
+		int maxCellY = Math.min((int)Math.floor(Math.max(y1, y2) + 0.5), height - 1);
+		if (minCellX > maxCellX || minCellY > maxCellY) {
+			return;
+		}
+
+		// triggers that span several sections appear in several buckets, so mark the ones already tested
+		queryStamp++;
+		if (queryStamp == 0) {
+			Arrays.fill(queryStamps, 0);
+			queryStamp = 1;
+		}
+
+		for (int sy = minCellY >> SECTION_SHIFT; sy <= maxCellY >> SECTION_SHIFT; sy++) {
+			for (int sx = minCellX >> SECTION_SHIFT; sx <= maxCellX >> SECTION_SHIFT; sx++) {
+				int bucket = sy * sectionCountX + sx;
+				for (int i = bucketStart[bucket]; i < bucketStart[bucket + 1]; i++) {
+					int id = bucketTriggerIds[i];
+					if (queryStamps[id] != queryStamp) {
+						queryStamps[id] = queryStamp;
+						if (intersectsSegment(id, x1, y1, x2, y2)) {
+							consumer.accept(id);
+						}
+					}
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Clips the segment against the slabs of the trigger region along both axes. Like {@link #forEachAtPoint}, the
+	 * slabs contain their start edge but not their end edge, so the parameter range of each slab is open at the end
+	 * where the segment crosses the end edge, and a segment that only grazes an end edge or corner is not reported.
+	 */
+	private boolean intersectsSegment(int id, double x1, double y1, double x2, double y2) {
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double tMin = 0.0;
+		double tMax = 1.0;
+		boolean tMinOpen = false;
+		boolean tMaxOpen = false;
+		if (dx == 0.0) {
+			if (x1 < startX[id] - 0.5 || x1 >= endX[id] - 0.5) {
+				return false;
+			}
+		} else {
+			double tStart = (startX[id] - 0.5 - x1) / dx;
+			double tEnd = (endX[id] - 0.5 - x1) / dx;
+			double tEntry = (dx > 0.0 ? tStart : tEnd);
+			double tExit = (dx > 0.0 ? tEnd : tStart);
+			if (tEntry > tMin) {
+				tMin = tEntry;
+				tMinOpen = (dx < 0.0);
+			} else if (tEntry == tMin) {
+				tMinOpen |= (dx < 0.0);
+			}
+			if (tExit < tMax) {
+				tMax = tExit;
+				tMaxOpen = (dx > 0.0);
+			} else if (tExit == tMax) {
+				tMaxOpen |= (dx > 0.0);
+			}
+		}
+		if (dy == 0.0) {
+			if (y1 < startY[id] - 0.5 || y1 >= endY[id] - 0.5) {
+				return false;
+			}
+		} else {
+			double tStart = (startY[id] - 0.5 - y1) / dy;
+			double tEnd = (endY[id] - 0.5 - y1) / dy;
+			double tEntry = (dy > 0.0 ? tStart : tEnd);
+			double tExit = (dy > 0.0 ? tEnd : tStart);
+			if (tEntry > tMin) {
+				tMin = tEntry;
+				tMinOpen = (dy < 0.0);
+			} else if (tEntry == tMin) {
+				tMinOpen |= (dy < 0.0);
+			}
+			if (tExit < tMax) {
+				tMax = tExit;
+				tMaxOpen = (dy > 0.0);
+			} else if (tExit == tMax) {
+				tMaxOpen |= (dy > 0.0);
+			}
+		}
+		return tMin < tMax || (tMin == tMax && !tMinOpen && !tMaxOpen);
+	}
+
+}
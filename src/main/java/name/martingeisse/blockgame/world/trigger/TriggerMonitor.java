@@ -0,0 +1,181 @@
+package name.martingeisse.blockgame.world.trigger;
+
+import name.martingeisse.blockgame.world.Player;
+import name.martingeisse.blockgame.world.event.GameplayEventBus;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Tracks which trigger regions each player is in and publishes enter / leave events to a {@link GameplayEventBus}
+ * by comparing against the previous tick.
+ *
+ * Besides the regions at the old and new position, the segment between them is checked, so a player that moves
+ * through a small region within a single tick still produces an enter and a leave event for it. Players that did
+ * not move are skipped. A player that is no longer in the player list is forgotten without leave events.
+ */
+public final class TriggerMonitor {
+
+	private final TriggerIndex index;
+	private final GameplayEventBus eventBus;
+	private final Map<Player, PlayerState> playerStates = new IdentityHashMap<>();
+	private final IdBuffer pointIds = new IdBuffer();
+	private final IdBuffer segmentIds = new IdBuffer();
+	private long tick;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param index the trigger index
+	 * @param eventBus the bus to publish events to
+	 */
+	public TriggerMonitor(TriggerIndex index, GameplayEventBus eventBus) {
+		this.index = index;
+		this.eventBus = eventBus;
+	}
+
+	/**
+	 * Getter method for the trigger index.
+	 *
+	 * @return the trigger index
+	 */
+	public TriggerIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Checks whether the specified player is currently within the specified trigger region, as of the last update.
+	 *
+	 * @param player the player
+	 * @param triggerId the trigger ID
+	 * @return true if the player is within the region, false if not
+	 */
+	public boolean isInside(Player player, int triggerId) {
+		PlayerState state = playerStates.get(player);
+		return (state != null && state.contains(triggerId));
+	}
+
+	/**
+	 * Updates the trigger regions of all players and publishes the resulting events. Must be called once per tick,
+	 * after the players have moved.
+	 *
+	 * @param players the players
+	 */
+	public void update(List<Player> players) {
+		tick++;
+		for (int i = 0; i < players.size(); i++) {
+			updatePlayer(players.get(i));
+		}
+		for (Iterator<PlayerState> iterator = playerStates.values().iterator(); iterator.hasNext(); ) {
+			if (iterator.next().lastUpdateTick != tick) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private void updatePlayer(Player player) {
+		double x = player.getPositionX();
+		double y = player.getPositionY();
+		PlayerState state = playerStates.get(player);
+		if (state == null) {
+			state = new PlayerState();
+			state.x = x;
+			state.y = y;
+			playerStates.put(player, state);
+		} else if (state.x == x && state.y == y) {
+			state.lastUpdateTick = tick;
+			return;
+		}
+		state.lastUpdateTick = tick;
+
+		// the regions at the new position, sorted by ID
+		pointIds.count = 0;
+		index.forEachAtPoint(x, y, pointIds);
+
+		// regions left since the last tick
+		for (int i = 0; i < state.memberCount; i++) {
+			int id = state.members[i];
+			if (!pointIds.contains(id)) {
+				eventBus.publishTrigger(player, id, false);
+			}
+		}
+
+		// regions passed through within this tick
+		if (state.x != x || state.y != y) {
+			segmentIds.count = 0;
+			index.forEachAlongSegment(state.x, state.y, x, y, segmentIds);
+			for (int i = 0; i < segmentIds.count; i++) {
+				int id = segmentIds.ids[i];
+				if (!state.contains(id) && !pointIds.contains(id)) {
+					eventBus.publishTrigger(player, id, true);
+					eventBus.publishTrigger(player, id, false);
+				}
+			}
+		}
+
+		// regions entered since the last tick
+		for (int i = 0; i < pointIds.count; i++) {
+			int id = pointIds.ids[i];
+			if (!state.contains(id)) {
+				eventBus.publishTrigger(player, id, true);
+			}
+		}
+
+		state.x = x;
+		state.y = y;
+		if (state.members.length < pointIds.count) {
+			state.members = new int[pointIds.ids.length];
+		}
+		System.arraycopy(pointIds.ids, 0, state.members, 0, pointIds.count);
+		state.memberCount = pointIds.count;
+	}
+
+	/**
+	 * Collects trigger IDs from a query.
+	 */
+	private static final class IdBuffer implements IntConsumer {
+
+		private int[] ids = new int[16];
+		private int count;
+
+		// override
+		@Override
+		public void accept(int triggerId) {
+			if (count == ids.length) {
+				ids = Arrays.copyOf(ids, 2 * count);
+			}
+			ids[count] = triggerId;
+			count++;
+		}
+
+		/**
+		 * Only valid for point queries, whose IDs are sorted.
+		 */
+		private boolean contains(int triggerId) {
+			return Arrays.binarySearch(ids, 0, count, triggerId) >= 0;
+		}
+
+	}
+
+	/**
+	 * The trigger state of a single player.
+	 */
+	private static final class PlayerState {
+
+		private double x;
+		private double y;
+		private int[] members = new int[0];
+		private int memberCount;
+		private long lastUpdateTick;
+
+		private boolean contains(int triggerId) {
+			return Arrays.binarySearch(members, 0, memberCount, triggerId) >= 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,94 @@
+package name.martingeisse.blockgame.geometry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the rounding rules of {@link FixedPoint}, which the deterministic physics mode relies on.
+ */
+public class FixedPointTest {
+
+	@Test
+	public void testConversions() {
+		assertEquals(3 * FixedPoint.ONE, FixedPoint.fromInt(3));
+		assertEquals(-3 * FixedPoint.ONE, FixedPoint.fromInt(-3));
+		assertEquals(FixedPoint.ONE + FixedPoint.HALF, FixedPoint.fromDouble(1.5));
+		assertEquals(-1.25, FixedPoint.toDouble(FixedPoint.fromDouble(-1.25)), 0.0);
+	}
+
+	@Test
+	public void testMulAndDiv() {
+		assertEquals(FixedPoint.fromDouble(3.75), FixedPoint.mul(FixedPoint.fromDouble(1.5), FixedPoint.fromDouble(2.5)));
+		assertEquals(FixedPoint.fromDouble(-3.75), FixedPoint.mul(FixedPoint.fromDouble(-1.5), FixedPoint.fromDouble(2.5)));
+		assertEquals(FixedPoint.fromDouble(0.75), FixedPoint.div(FixedPoint.fromDouble(1.5), FixedPoint.fromInt(2)));
+		assertEquals(FixedPoint.ONE / 3, FixedPoint.div(FixedPoint.ONE, FixedPoint.fromInt(3)));
+		assertEquals(-FixedPoint.ONE / 3, FixedPoint.div(-FixedPoint.ONE, FixedPoint.fromInt(3)));
+		assertEquals(FixedPoint.fromInt(-4), FixedPoint.div(FixedPoint.fromInt(10), FixedPoint.fromDouble(-2.5)));
+		assertEquals(FixedPoint.fromInt(6), FixedPoint.mulDiv(FixedPoint.fromInt(4), FixedPoint.fromInt(3), FixedPoint.fromInt(2)));
+	}
+
+	@Test
+	public void testMulTruncatesTowardsZero() {
+		assertEquals(0, FixedPoint.mul(1, FixedPoint.HALF));
+		assertEquals(0, FixedPoint.mul(-1, FixedPoint.HALF));
+		assertEquals(1, FixedPoint.mul(3, FixedPoint.HALF));
+		assertEquals(-1, FixedPoint.mul(-3, FixedPoint.HALF));
+	}
+
+	@Test
+	public void testFrictionDecaysToZeroFromBothSides() {
+		long friction = FixedPoint.fromDouble(0.9);
+		long positive = FixedPoint.fromDouble(5.0);
+		long negative = FixedPoint.fromDouble(-5.0);
+		for (int i = 0; i < 1000; i++) {
+			positive = FixedPoint.mul(positive, friction);
+			negative = FixedPoint.mul(negative, friction);
+		}
+		assertEquals(0, positive);
+		assertEquals(0, negative);
+	}
+
+	@Test
+	public void testFloorAndRound() {
+		assertEquals(1, FixedPoint.floor(FixedPoint.fromDouble(1.75)));
+		assertEquals(-2, FixedPoint.floor(FixedPoint.fromDouble(-1.25)));
+		assertEquals(-1, FixedPoint.floor(-1));
+		assertEquals(2, FixedPoint.round(FixedPoint.fromDouble(1.5)));
+		assertEquals(1, FixedPoint.round(FixedPoint.fromDouble(1.25)));
+		for (double value = -3.0; value <= 3.0; value += 0.25) {
+			assertEquals(Math.round(value), FixedPoint.round(FixedPoint.fromDouble(value)));
+		}
+	}
+
+	@Test
+	public void testSqrt() {
+		assertEquals(0, FixedPoint.sqrt(0));
+		assertEquals(FixedPoint.fromInt(2), FixedPoint.sqrt(FixedPoint.fromInt(4)));
+		assertEquals(FixedPoint.fromDouble(1.5), FixedPoint.sqrt(FixedPoint.fromDouble(2.25)));
+		long root = FixedPoint.sqrt(FixedPoint.fromInt(2));
+		long two = FixedPoint.fromInt(2) << FixedPoint.FRACTION_BITS;
+		assertTrue(root * root <= two);
+		assertTrue((root + 1) * (root + 1) > two);
+	}
+
+	@Test
+	public void testSqrtOfProduct() {
+		long x = FixedPoint.fromInt(3);
+		long y = FixedPoint.fromInt(4);
+		assertEquals(FixedPoint.fromInt(5), FixedPoint.sqrtOfProduct(x * x + y * y));
+	}
+
+	@Test
+	public void testSqrtOfNegativeValue() {
+		try {
+			FixedPoint.sqrt(-FixedPoint.ONE);
+			fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
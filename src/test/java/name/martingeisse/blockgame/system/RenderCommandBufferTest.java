@@ -0,0 +1,233 @@
+package name.martingeisse.blockgame.system;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link RenderCommandBuffer#sortQuadsByTexture()} groups quads by texture without moving them across
+ * barriers or state changes.
+ */
+public class RenderCommandBufferTest {
+
+	private Texture textureA;
+	private Texture textureB;
+	private Texture textureC;
+	private RenderCommandBuffer buffer;
+
+	@Before
+	public void setUp() {
+		textureA = Texture.createPlaceholder(1, 1);
+		textureB = Texture.createPlaceholder(1, 1);
+		textureC = Texture.createPlaceholder(1, 1);
+		buffer = new RenderCommandBuffer();
+	}
+
+	/**
+	 * Records a quad whose left edge is its id, so the replayed order can be told apart.
+	 */
+	private void drawQuad(int id) {
+		buffer.drawQuad(id, 0, id + 1, 1, 0, 0, 1, 1);
+	}
+
+	/**
+	 * Replays the buffer and returns one event per quad, barrier and color change.
+	 */
+	private List<String> replay() {
+		RecordingBackend backend = new RecordingBackend();
+		buffer.replay(backend);
+		return backend.events;
+	}
+
+	private String name(Texture texture) {
+		return (texture == textureA ? "A" : texture == textureB ? "B" : texture == textureC ? "C" : "?");
+	}
+
+	@Test
+	public void testGroupsQuadsByTexture() {
+		buffer.bindTexture(textureA);
+		drawQuad(0);
+		buffer.bindTexture(textureB);
+		drawQuad(1);
+		buffer.bindTexture(textureA);
+		drawQuad(2);
+		buffer.bindTexture(textureB);
+		drawQuad(3);
+		buffer.sortQuadsByTexture();
+		assertEquals(Arrays.asList("A0", "A2", "B1", "B3"), replay());
+		assertEquals(6, buffer.getCommandCount());
+	}
+
+	@Test
+	public void testKeepsTheBoundTextureOfEachBatch() {
+		buffer.bindTexture(textureA);
+		drawQuad(0);
+		buffer.bindTexture(textureB);
+		drawQuad(1);
+		buffer.bindTexture(textureA);
+		drawQuad(2);
+		buffer.barrier();
+		buffer.bindTexture(textureB);
+		drawQuad(3);
+		buffer.bindTexture(textureA);
+		drawQuad(4);
+		buffer.bindTexture(textureB);
+		drawQuad(5);
+		buffer.sortQuadsByTexture();
+
+		// the first batch ends with A bound, so the second one starts with the A quads and needs a single bind
+		RecordingBackend backend = new RecordingBackend();
+		buffer.replay(backend);
+		assertEquals(Arrays.asList("B1", "A0", "A2", "barrier", "A4", "B3", "B5"), backend.events);
+		assertEquals(3, backend.bindCount);
+		assertSame(textureB, backend.boundTexture);
+	}
+
+	@Test
+	public void testDoesNotMoveQuadsAcrossStateChanges() {
+		buffer.bindTexture(textureA);
+		drawQuad(0);
+		buffer.bindTexture(textureB);
+		drawQuad(1);
+		buffer.setColor(RenderCommandBuffer.WHITE);
+		buffer.bindTexture(textureA);
+		drawQuad(2);
+		buffer.barrier();
+		buffer.bindTexture(textureB);
+		drawQuad(3);
+		buffer.sortQuadsByTexture();
+		assertEquals(Arrays.asList("A0", "B1", "color", "A2", "barrier", "B3"), replay());
+	}
+
+	@Test
+	public void testRandomCommands() {
+		Random random = new Random(1);
+		Texture[] textures = {textureA, textureB, textureC};
+		for (int round = 0; round < 200; round++) {
+			buffer.reset();
+			int commandCount = random.nextInt(60);
+			int id = 0;
+			for (int i = 0; i < commandCount; i++) {
+				int kind = random.nextInt(10);
+				if (kind < 4) {
+					buffer.bindTexture(textures[random.nextInt(textures.length)]);
+				} else if (kind < 9) {
+					drawQuad(id);
+					id++;
+				} else {
+					buffer.barrier();
+				}
+			}
+			RecordingBackend original = new RecordingBackend();
+			buffer.replay(original);
+			buffer.sortQuadsByTexture();
+			RecordingBackend sorted = new RecordingBackend();
+			buffer.replay(sorted);
+
+			// each batch keeps its quads, and the quads of each texture keep their order
+			List<List<String>> originalBatches = splitAtBarriers(original.events);
+			List<List<String>> sortedBatches = splitAtBarriers(sorted.events);
+			assertEquals(originalBatches.size(), sortedBatches.size());
+			for (int i = 0; i < originalBatches.size(); i++) {
+				for (String texture : new String[] {"?", "A", "B", "C"}) {
+					assertEquals(filterByTexture(originalBatches.get(i), texture), filterByTexture(sortedBatches.get(i), texture));
+				}
+				assertEquals(originalBatches.get(i).size(), sortedBatches.get(i).size());
+			}
+			assertTrue(sorted.bindCount <= original.bindCount);
+			assertSame(original.boundTexture, sorted.boundTexture);
+		}
+	}
+
+	private static List<List<String>> splitAtBarriers(List<String> events) {
+		List<List<String>> batches = new ArrayList<>();
+		batches.add(new ArrayList<>());
+		for (String event : events) {
+			if (event.equals("barrier")) {
+				batches.add(new ArrayList<>());
+			} else {
+				batches.get(batches.size() - 1).add(event);
+			}
+		}
+		return batches;
+	}
+
+	private static List<String> filterByTexture(List<String> events, String texture) {
+		List<String> result = new ArrayList<>();
+		for (String event : events) {
+			if (event.startsWith(texture)) {
+				result.add(event);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Records the replayed quads as the name of their texture followed by their id.
+	 */
+	private final class RecordingBackend implements RenderBackend {
+
+		private final List<String> events = new ArrayList<>();
+		private Texture boundTexture;
+		private int bindCount;
+
+		@Override
+		public void begin() {
+		}
+
+		@Override
+		public void clearScreen(int rgba) {
+		}
+
+		@Override
+		public void setProjection(float left, float right, float bottom, float top) {
+		}
+
+		@Override
+		public void setTranslation(float x, float y) {
+		}
+
+		@Override
+		public void setBlending(boolean blending) {
+		}
+
+		@Override
+		public void setColor(int rgba) {
+			events.add("color");
+		}
+
+		@Override
+		public void bindTexture(Texture texture) {
+			boundTexture = texture;
+			bindCount++;
+		}
+
+		@Override
+		public void drawQuad(float minX, float minY, float maxX, float maxY, float minU, float minV, float maxU, float maxV) {
+			events.add(name(boundTexture) + (int)minX);
+		}
+
+		@Override
+		public void drawVertexBuffer(int bufferId, int firstVertex, int vertexCount) {
+		}
+
+		@Override
+		public void barrier() {
+			events.add("barrier");
+		}
+
+		@Override
+		public void end() {
+		}
+
+	}
+
+}
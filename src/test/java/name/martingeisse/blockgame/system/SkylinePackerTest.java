@@ -0,0 +1,131 @@
+package name.martingeisse.blockgame.system;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the positions chosen by a {@link SkylinePacker}, also when the skyline grows to many segments.
+ */
+public class SkylinePackerTest {
+
+	/**
+	 * Packs a rectangle and checks that it lies within the area and does not overlap the rectangles packed before.
+	 *
+	 * @return true if the rectangle was packed, false if it did not fit
+	 */
+	private static boolean packAndCheck(SkylinePacker packer, List<int[]> packed, int width, int height) {
+		if (!packer.pack(width, height)) {
+			return false;
+		}
+		int x = packer.getLastX();
+		int y = packer.getLastY();
+		assertTrue(x >= 0 && y >= 0 && x + width <= packer.getWidth() && y + height <= packer.getHeight());
+		for (int[] other : packed) {
+			boolean separate = (x + width <= other[0] || other[0] + other[2] <= x || y + height <= other[1] || other[1] + other[3] <= y);
+			assertTrue(separate);
+		}
+		packed.add(new int[] {x, y, width, height});
+		return true;
+	}
+
+	@Test
+	public void testBottomLeftPlacement() {
+		SkylinePacker packer = new SkylinePacker(32, 32);
+		assertTrue(packer.pack(16, 20));
+		assertEquals(0, packer.getLastX());
+		assertEquals(0, packer.getLastY());
+		assertTrue(packer.pack(16, 10));
+		assertEquals(16, packer.getLastX());
+		assertEquals(0, packer.getLastY());
+
+		// the lowest position wins over the leftmost one
+		assertTrue(packer.pack(8, 8));
+		assertEquals(16, packer.getLastX());
+		assertEquals(10, packer.getLastY());
+
+		// a rectangle that spans both columns rests on the higher one
+		assertTrue(packer.pack(32, 4));
+		assertEquals(0, packer.getLastX());
+		assertEquals(20, packer.getLastY());
+		assertFalse(packer.pack(1, 9));
+		assertTrue(packer.pack(1, 8));
+	}
+
+	@Test
+	public void testFullArea() {
+		SkylinePacker packer = new SkylinePacker(32, 32);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(packer.pack(16, 16));
+			assertEquals(16 * (i % 2), packer.getLastX());
+			assertEquals(16 * (i / 2), packer.getLastY());
+		}
+		assertFalse(packer.pack(1, 1));
+		assertFalse(new SkylinePacker(32, 32).pack(33, 1));
+		assertFalse(new SkylinePacker(32, 32).pack(1, 33));
+	}
+
+	@Test
+	public void testManySegments() {
+		SkylinePacker packer = new SkylinePacker(100, 10);
+		List<int[]> packed = new ArrayList<>();
+
+		// alternating heights keep neighboring segments from being merged, so the segment arrays have to grow
+		for (int i = 0; i < 100; i++) {
+			assertTrue(packAndCheck(packer, packed, 1, 1 + i % 2));
+			assertEquals(i, packer.getLastX());
+			assertEquals(0, packer.getLastY());
+		}
+
+		// fill the gaps above the lower segments, which merges the skyline again
+		for (int i = 0; i < 50; i++) {
+			assertTrue(packAndCheck(packer, packed, 1, 1));
+			assertEquals(1, packer.getLastY());
+		}
+		assertTrue(packAndCheck(packer, packed, 100, 8));
+		assertEquals(0, packer.getLastX());
+		assertEquals(2, packer.getLastY());
+		assertFalse(packer.pack(1, 1));
+	}
+
+	@Test
+	public void testRandomRectanglesDoNotOverlap() {
+		Random random = new Random(1);
+		SkylinePacker packer = new SkylinePacker(256, 256);
+		List<int[]> packed = new ArrayList<>();
+		int area = 0;
+		for (int i = 0; i < 500; i++) {
+			int width = 1 + random.nextInt(24);
+			int height = 1 + random.nextInt(24);
+			if (packAndCheck(packer, packed, width, height)) {
+				area += width * height;
+			}
+		}
+		assertTrue(packed.size() > 100);
+		assertTrue(area <= 256 * 256);
+	}
+
+	@Test
+	public void testInvalidSizes() {
+		try {
+			new SkylinePacker(0, 10);
+			fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new SkylinePacker(10, 10).pack(5, 0);
+			fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
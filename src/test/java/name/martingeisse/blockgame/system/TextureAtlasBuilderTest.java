@@ -0,0 +1,65 @@
+package name.martingeisse.blockgame.system;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the size chosen by a {@link TextureAtlasBuilder} and the placement of the images in the atlas.
+ */
+public class TextureAtlasBuilderTest {
+
+	private static BufferedImage createImage(int width, int height, int color) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, color);
+			}
+		}
+		return image;
+	}
+
+	@Test
+	public void testAtlasGrowsUntilImagesFit() {
+
+		// the images have less area than 64 x 64 but do not fit into it, so the atlas must grow
+		TextureAtlasBuilder builder = new TextureAtlasBuilder();
+		builder.setPadding(0);
+		builder.add("a", createImage(40, 40, 0xffff0000));
+		builder.add("b", createImage(40, 40, 0xff00ff00));
+		TextureAtlas atlas = builder.build();
+		assertEquals(128, atlas.getWidth());
+		assertEquals(64, atlas.getHeight());
+
+		int a = atlas.getHandle("a");
+		int b = atlas.getHandle("b");
+		assertEquals(40.0f / 128, atlas.getMaxU(a) - atlas.getMinU(a), 1e-6);
+		assertEquals(40.0f / 64, atlas.getMaxV(a) - atlas.getMinV(a), 1e-6);
+		assertTrue(atlas.getMaxU(a) <= atlas.getMinU(b) || atlas.getMaxU(b) <= atlas.getMinU(a));
+		assertEquals(0xffff0000, atlas.getPixel((int)(atlas.getMinU(a) * 128), (int)(atlas.getMinV(a) * 64)));
+		assertEquals(0xff00ff00, atlas.getPixel((int)(atlas.getMaxU(b) * 128) - 1, (int)(atlas.getMaxV(b) * 64) - 1));
+
+	}
+
+	@Test
+	public void testPaddingRepeatsEdgePixels() {
+		BufferedImage image = createImage(2, 2, 0xff0000ff);
+		image.setRGB(0, 0, 0xffffffff);
+		TextureAtlasBuilder builder = new TextureAtlasBuilder();
+		builder.setPadding(2);
+		builder.add("image", image);
+		TextureAtlas atlas = builder.build();
+		assertEquals(8, atlas.getWidth());
+		assertEquals(8, atlas.getHeight());
+		int handle = atlas.getHandle("image");
+		int x = (int)(atlas.getMinU(handle) * 8);
+		int y = (int)(atlas.getMinV(handle) * 8);
+		assertEquals(0xffffffff, atlas.getPixel(x - 2, y - 2));
+		assertEquals(0xffffffff, atlas.getPixel(x, y - 1));
+		assertEquals(0xff0000ff, atlas.getPixel(x + 3, y + 3));
+	}
+
+}
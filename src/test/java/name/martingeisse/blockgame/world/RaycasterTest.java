@@ -0,0 +1,130 @@
+package name.martingeisse.blockgame.world;
+
+import name.martingeisse.blockgame.geometry.FixedPoint;
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.world.collision.CircleShape;
+import name.martingeisse.blockgame.world.collision.Collision;
+import name.martingeisse.blockgame.world.collision.CollisionUtil;
+import name.martingeisse.blockgame.world.collision.FixedPointCollision;
+import name.martingeisse.blockgame.world.collision.FixedPointCollisionUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Casts rays and sweeps shapes against the {@link SolidityMap} of a plane that is empty except for a wall at x = 20
+ * with a gap at y = 30. The plane spans several sections, so rays also cross empty sections.
+ */
+public class RaycasterTest {
+
+	private static final int SIZE = 3 * GeometryConstants.SECTION_SIZE;
+	private static final int AIR = 1;
+	private static final int WALL = 4;
+	private static final double EPSILON = 1e-9;
+
+	private Plane plane;
+	private Raycaster raycaster;
+
+	@Before
+	public void setUp() {
+		plane = new Plane(SIZE, SIZE);
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				plane.setBlock(x, y, (x == 20 && y != 30) ? WALL : AIR);
+			}
+		}
+		raycaster = plane.getRaycaster();
+	}
+
+	@Test
+	public void testRayHitsWall() {
+		int[] hitBlocks = new int[2];
+		double[] hitDistances = new double[1];
+		raycaster.castRays(new double[] {10, 10}, new double[] {2, 0}, 1, 100, hitDistances, hitBlocks);
+		assertEquals(9.5, hitDistances[0], EPSILON);
+		assertEquals(20, hitBlocks[0]);
+		assertEquals(10, hitBlocks[1]);
+		assertEquals(9.5 * Math.sqrt(2), raycaster.castRay(10, 10, 1, 1, 100), EPSILON);
+	}
+
+	@Test
+	public void testRayStopsAtMaxDistance() {
+		assertEquals(Double.POSITIVE_INFINITY, raycaster.castRay(10, 10, 1, 0, 9), 0);
+	}
+
+	@Test
+	public void testRayThroughGapAndEmptySectionsHitsPlaneBorder() {
+		int[] hitBlocks = new int[2];
+		double[] hitDistances = new double[1];
+		raycaster.castRays(new double[] {10, 30}, new double[] {1, 0}, 1, 1000, hitDistances, hitBlocks);
+		assertEquals(SIZE - 0.5 - 10, hitDistances[0], EPSILON);
+		assertEquals(SIZE, hitBlocks[0]);
+		assertEquals(30, hitBlocks[1]);
+	}
+
+	@Test
+	public void testRayStartingInSolidBlock() {
+		assertEquals(0, raycaster.castRay(20, 10, 1, 0, 100), 0);
+		assertEquals(0, raycaster.castRay(20, 10, 0, 0, 100), 0);
+		assertEquals(Double.POSITIVE_INFINITY, raycaster.castRay(10, 10, 0, 0, 100), 0);
+	}
+
+	@Test
+	public void testLineOfSight() {
+		assertTrue(raycaster.hasLineOfSight(10, 10, 19, 10));
+		assertFalse(raycaster.hasLineOfSight(10, 10, 30, 10));
+		assertFalse(raycaster.hasLineOfSight(10, 10, 20, 10));
+		assertTrue(raycaster.hasLineOfSight(10, 30, 30, 30));
+	}
+
+	@Test
+	public void testRaySeesBlockChanges() {
+		plane.setBlock(15, 10, WALL);
+		assertEquals(4.5, raycaster.castRay(10, 10, 1, 0, 100), EPSILON);
+		plane.setBlock(15, 10, AIR);
+		plane.setBlock(20, 10, AIR);
+		assertEquals(SIZE - 0.5 - 10, raycaster.castRay(10, 10, 1, 0, 1000), EPSILON);
+	}
+
+	@Test
+	public void testSweptCircleStopsAtWall() {
+		Collision collision = CollisionUtil.sweep(new CircleShape(0.3), 10, 10, 12, 0, plane.getSolidityMap());
+		assertNotNull(collision);
+		assertEquals((19.5 - 0.3 - 10) / 12, collision.getMovementFraction(), EPSILON);
+		assertEquals(-1, collision.getSurfaceNormalX(), EPSILON);
+		assertEquals(0, collision.getSurfaceNormalY(), EPSILON);
+		assertEquals(20, collision.getBlockX());
+		assertEquals(10, collision.getBlockY());
+	}
+
+	@Test
+	public void testFastSweepDoesNotTunnelThroughWall() {
+		Collision collision = CollisionUtil.sweep(new CircleShape(0.3), 10, 10, 60, 0, plane.getSolidityMap());
+		assertNotNull(collision);
+		assertEquals(20, collision.getBlockX());
+	}
+
+	@Test
+	public void testSweptCirclePassesThroughGap() {
+		assertNull(CollisionUtil.sweep(new CircleShape(0.3), 10, 30, 20, 0, plane.getSolidityMap()));
+	}
+
+	@Test
+	public void testFixedPointSweepStopsAtWall() {
+		long radius = FixedPoint.fromDouble(0.3);
+		FixedPointCollision collision = FixedPointCollisionUtil.checkSphereBlockCollision(FixedPoint.fromInt(10), FixedPoint.fromInt(10),
+			FixedPoint.fromInt(12), 0, radius, plane.getSolidityMap());
+		assertNotNull(collision);
+		assertEquals(-FixedPoint.ONE, collision.getSurfaceNormalX());
+		assertEquals(0, collision.getSurfaceNormalY());
+		assertEquals(20, collision.getBlockX());
+		assertEquals(10, collision.getBlockY());
+		assertEquals((19.5 - 0.3 - 10) / 12, FixedPoint.toDouble(collision.getMovementFraction()), 1e-4);
+	}
+
+}
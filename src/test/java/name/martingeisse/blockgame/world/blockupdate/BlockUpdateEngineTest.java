@@ -0,0 +1,149 @@
+package name.martingeisse.blockgame.world.blockupdate;
+
+import name.martingeisse.blockgame.world.Plane;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that scheduled updates run exactly when they are due, also for delays that wrap around a level of the
+ * timing wheel or have to move down several levels.
+ */
+public class BlockUpdateEngineTest {
+
+	private static final int SIZE = 64;
+	private static final int BLOCK_TYPE = 2;
+
+	private Plane plane;
+	private BlockUpdateEngine engine;
+	private List<long[]> updates;
+
+	@Before
+	public void setUp() {
+		plane = new Plane(SIZE, SIZE);
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				plane.setBlock(x, y, BLOCK_TYPE);
+			}
+		}
+		engine = new BlockUpdateEngine(plane);
+		updates = new ArrayList<>();
+		engine.register(BLOCK_TYPE, new BlockBehavior() {
+
+			@Override
+			public void onScheduledUpdate(BlockUpdateEngine engine, int x, int y, int data) {
+				updates.add(new long[] {engine.getCurrentTick(), x, y, data});
+			}
+
+			@Override
+			public void onFastCollision(BlockUpdateEngine engine, int x, int y, int normalX, int normalY) {
+			}
+
+		});
+	}
+
+	private void tickUntil(long tick) {
+		while (engine.getCurrentTick() < tick) {
+			engine.tick();
+		}
+	}
+
+	@Test
+	public void testUpdatesRunWhenDue() {
+		long[] startTicks = {0, 1, 63, 64, 4000, 4095, 262143};
+		int[] delays = {1, 2, 63, 64, 65, 127, 128, 4095, 4096, 4097, 3 * 4096 + 5, 262143, 262144, 262145};
+		List<long[]> expected = new ArrayList<>();
+		for (int i = 0; i < startTicks.length; i++) {
+			tickUntil(startTicks[i]);
+			for (int j = 0; j < delays.length; j++) {
+				engine.schedule(i, j, delays[j], j);
+				expected.add(new long[] {startTicks[i] + delays[j], i, j});
+			}
+		}
+		tickUntil(startTicks[startTicks.length - 1] + 262145);
+		assertEquals(expected.size(), updates.size());
+		for (long[] update : updates) {
+			long dueTick = startTicks[(int)update[1]] + delays[(int)update[2]];
+			assertEquals(dueTick, update[0]);
+		}
+		assertEquals(0, engine.getActiveCellCount());
+	}
+
+	@Test
+	public void testMaximumDelayWrapsAroundTopLevel() {
+		long maxDelay = (1L << 24) - 1;
+		tickUntil(100);
+		engine.schedule(1, 1, Integer.MAX_VALUE, 0);
+		engine.schedule(2, 2, (int)maxDelay, 0);
+		tickUntil(100 + maxDelay - 1);
+		assertEquals(0, updates.size());
+		engine.tick();
+		assertEquals(2, updates.size());
+		assertEquals(100 + maxDelay, updates.get(0)[0]);
+		assertEquals(100 + maxDelay, updates.get(1)[0]);
+	}
+
+	@Test
+	public void testUpdatesDueInSameTickRunInSchedulingOrder() {
+		tickUntil(10);
+		engine.schedule(5, 5, 4100, 0);
+		tickUntil(20);
+		engine.schedule(6, 6, 4090, 1);
+		tickUntil(4050);
+		engine.schedule(7, 7, 60, 2);
+		tickUntil(4100);
+		engine.schedule(8, 8, 10, 3);
+		tickUntil(4110);
+		assertEquals(4, updates.size());
+		for (int i = 0; i < 4; i++) {
+			assertEquals(4110, updates.get(i)[0]);
+			assertEquals(i, updates.get(i)[3]);
+		}
+	}
+
+	@Test
+	public void testCellHasAtMostOnePendingUpdate() {
+		engine.schedule(3, 4, 10, 1);
+		engine.schedule(3, 4, 5, 2);
+		assertTrue(engine.isScheduled(3, 4));
+		assertEquals(1, engine.getActiveCellCount());
+		tickUntil(10);
+		assertEquals(1, updates.size());
+		assertEquals(10, updates.get(0)[0]);
+		assertEquals(1, updates.get(0)[3]);
+		assertFalse(engine.isScheduled(3, 4));
+		assertEquals(0, engine.getActiveCellCount());
+	}
+
+	@Test
+	public void testRescheduleFromUpdate() {
+		engine.register(BLOCK_TYPE, new BlockBehavior() {
+
+			@Override
+			public void onScheduledUpdate(BlockUpdateEngine engine, int x, int y, int data) {
+				updates.add(new long[] {engine.getCurrentTick(), x, y, data});
+				if (data > 0) {
+					engine.schedule(x, y, 64, data - 1);
+				}
+			}
+
+			@Override
+			public void onFastCollision(BlockUpdateEngine engine, int x, int y, int normalX, int normalY) {
+			}
+
+		});
+		engine.schedule(0, 0, 1, 100);
+		tickUntil(1 + 64 * 100);
+		assertEquals(101, updates.size());
+		for (int i = 0; i < updates.size(); i++) {
+			assertEquals(1 + 64 * i, updates.get(i)[0]);
+		}
+	}
+
+}
@@ -0,0 +1,181 @@
+package name.martingeisse.blockgame.world.history;
+
+import name.martingeisse.blockgame.world.Plane;
+import name.martingeisse.blockgame.world.Player;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Changes blocks and players of a plane by hand between ticks, without running the physics, and checks the state
+ * restored by a {@link RewindBuffer}.
+ */
+public class RewindBufferTest {
+
+	private static final int SIZE = 64;
+	private static final int AIR = 1;
+	private static final int WALL = 4;
+
+	private Plane plane;
+
+	@Before
+	public void setUp() {
+		plane = new Plane(SIZE, SIZE);
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				plane.setBlock(x, y, AIR);
+			}
+		}
+	}
+
+	private Player addPlayer(double x, double y) {
+		Player player = new Player();
+		player.setPositionX(x);
+		player.setPositionY(y);
+		plane.getPlayerSet().add(player);
+		return player;
+	}
+
+	private static void move(Player player, double x, double y) {
+		player.setPositionX(x);
+		player.setPositionY(y);
+		player.setVelocityX(x / 10);
+		player.setVelocityY(y / 10);
+	}
+
+	private static void assertPosition(Player player, double x, double y) {
+		assertEquals(x, player.getPositionX(), 0);
+		assertEquals(y, player.getPositionY(), 0);
+	}
+
+	@Test
+	public void testRewindBlocksAndPlayers() {
+		Player player = addPlayer(5, 5);
+		RewindBuffer buffer = new RewindBuffer(plane, 10);
+		plane.setRewindBuffer(buffer);
+		plane.setBlock(1, 1, WALL);
+		move(player, 6, 6);
+		buffer.onTickCompleted();
+		plane.setBlock(1, 1, AIR);
+		plane.setBlock(2, 2, WALL);
+		move(player, 7, 7);
+		buffer.onTickCompleted();
+
+		// changes since the newest tick are undone as well
+		plane.setBlock(3, 3, WALL);
+		move(player, 8, 8);
+
+		buffer.rewindTo(1);
+		assertEquals(1, buffer.getNewestTick());
+		assertEquals(WALL, plane.getBlock(1, 1));
+		assertEquals(AIR, plane.getBlock(2, 2));
+		assertEquals(AIR, plane.getBlock(3, 3));
+		assertPosition(player, 6, 6);
+		assertEquals(0.6, player.getVelocityX(), 0);
+
+		buffer.rewindTo(0);
+		assertEquals(AIR, plane.getBlock(1, 1));
+		assertPosition(player, 5, 5);
+		assertEquals(0, player.getVelocityX(), 0);
+		assertFalse(buffer.canRewindTo(1));
+	}
+
+	@Test
+	public void testRewindAfterPlayerRemoval() {
+		Player removed = addPlayer(10, 10);
+		Player kept = addPlayer(20, 20);
+		RewindBuffer buffer = new RewindBuffer(plane, 10);
+		plane.setRewindBuffer(buffer);
+		move(removed, 11, 11);
+		move(kept, 21, 21);
+		buffer.onTickCompleted();
+
+		// the new player gets the slot of the removed one
+		plane.getPlayerSet().remove(removed);
+		Player added = addPlayer(30, 30);
+		buffer.onTickCompleted();
+		move(added, 31, 31);
+		move(kept, 22, 22);
+		buffer.onTickCompleted();
+
+		// the new player gets back to where it was first seen, and the history of the removed player is not applied
+		// to it; the removed player itself is not touched
+		buffer.rewindTo(0);
+		assertPosition(kept, 20, 20);
+		assertPosition(added, 30, 30);
+		assertPosition(removed, 11, 11);
+
+		// the slot is tracked for the new player from now on
+		move(added, 32, 32);
+		buffer.onTickCompleted();
+		buffer.rewindTo(0);
+		assertPosition(added, 30, 30);
+	}
+
+	@Test
+	public void testRemovedPlayerSlotsAreReused() {
+		RewindBuffer buffer = new RewindBuffer(plane, 10);
+		plane.setRewindBuffer(buffer);
+		for (int i = 0; i < 100; i++) {
+			Player player = addPlayer(i, i);
+			buffer.onTickCompleted();
+			move(player, i + 1, i + 1);
+			buffer.onTickCompleted();
+			plane.getPlayerSet().remove(player);
+		}
+		Player player = addPlayer(0, 0);
+		buffer.onTickCompleted();
+		move(player, 1, 1);
+		buffer.onTickCompleted();
+		buffer.rewindTo(buffer.getOldestTick());
+		assertPosition(player, 0, 0);
+	}
+
+	@Test
+	public void testWindow() {
+		RewindBuffer buffer = new RewindBuffer(plane, 3);
+		plane.setRewindBuffer(buffer);
+		for (int i = 0; i < 5; i++) {
+			plane.setBlock(i, 0, WALL);
+			buffer.onTickCompleted();
+		}
+		assertEquals(5, buffer.getNewestTick());
+		assertEquals(2, buffer.getOldestTick());
+		assertTrue(buffer.canRewindTo(2));
+		assertFalse(buffer.canRewindTo(1));
+		try {
+			buffer.rewindTo(1);
+			fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		buffer.rewindTo(2);
+		assertEquals(WALL, plane.getBlock(1, 0));
+		assertEquals(AIR, plane.getBlock(2, 0));
+	}
+
+	@Test
+	public void testFullLogDropsOldestTicks() {
+		RewindBuffer buffer = new RewindBuffer(plane, 10, 4, 4);
+		plane.setRewindBuffer(buffer);
+		plane.setBlock(0, 0, WALL);
+		plane.setBlock(1, 0, WALL);
+		buffer.onTickCompleted();
+		plane.setBlock(2, 0, WALL);
+		plane.setBlock(3, 0, WALL);
+		buffer.onTickCompleted();
+		assertEquals(0, buffer.getOldestTick());
+		plane.setBlock(4, 0, WALL);
+		buffer.onTickCompleted();
+		assertEquals(1, buffer.getOldestTick());
+		for (int x = 5; x < 10; x++) {
+			plane.setBlock(x, 0, WALL);
+		}
+		assertEquals(buffer.getNewestTick() + 1, buffer.getOldestTick());
+	}
+
+}
@@ -0,0 +1,249 @@
+package name.martingeisse.blockgame.world.pathfinding;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.world.BlockTypes;
+import name.martingeisse.blockgame.world.Plane;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the paths found by a {@link PathfindingService} with a plain Dijkstra search over all blocks that uses
+ * the same movement rules and costs.
+ */
+public class PathfindingServiceTest {
+
+	private static final int SECTION_SIZE = GeometryConstants.SECTION_SIZE;
+	private static final int SIZE = 3 * SECTION_SIZE;
+	private static final int AIR = 1;
+	private static final int WALL = 4;
+
+	private Plane plane;
+
+	@Before
+	public void setUp() {
+		plane = new Plane(SIZE, SIZE);
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				plane.setBlock(x, y, AIR);
+			}
+		}
+	}
+
+	private void scatterWalls(long seed, double density) {
+		Random random = new Random(seed);
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				if (random.nextDouble() < density) {
+					plane.setBlock(x, y, WALL);
+				}
+			}
+		}
+	}
+
+	private boolean isFree(int x, int y) {
+		return !BlockTypes.isSolid(plane.getBlock(x, y));
+	}
+
+	private boolean canStep(int x, int y, int dx, int dy) {
+		return isFree(x + dx, y + dy) && (dx == 0 || dy == 0 || (isFree(x + dx, y) && isFree(x, y + dy)));
+	}
+
+	/**
+	 * Returns the cost of the cheapest path, or -1 if the goal cannot be reached.
+	 */
+	private int computeReferenceCost(int fromX, int fromY, int toX, int toY) {
+		return computeReferenceCost(fromX, fromY, toX, toY, 0, 0, SIZE - 1, SIZE - 1);
+	}
+
+	/**
+	 * Returns the cost of the cheapest path that stays within the specified region, or -1 if there is none.
+	 */
+	private int computeReferenceCost(int fromX, int fromY, int toX, int toY, int minX, int minY, int maxX, int maxY) {
+		if (!isFree(fromX, fromY) || !isFree(toX, toY)) {
+			return -1;
+		}
+		int[] costs = new int[SIZE * SIZE];
+		Arrays.fill(costs, Integer.MAX_VALUE);
+		costs[fromY * SIZE + fromX] = 0;
+		PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+		queue.add(new long[] {0, fromY * SIZE + fromX});
+		while (!queue.isEmpty()) {
+			long[] entry = queue.poll();
+			int index = (int)entry[1];
+			if (entry[0] > costs[index]) {
+				continue;
+			}
+			int x = index % SIZE;
+			int y = index / SIZE;
+			if (x == toX && y == toY) {
+				return costs[index];
+			}
+			for (int dy = -1; dy <= 1; dy++) {
+				for (int dx = -1; dx <= 1; dx++) {
+					boolean inRegion = (x + dx >= minX && x + dx <= maxX && y + dy >= minY && y + dy <= maxY);
+					if ((dx != 0 || dy != 0) && inRegion && canStep(x, y, dx, dy)) {
+						int neighbor = (y + dy) * SIZE + (x + dx);
+						int cost = costs[index] + (dx != 0 && dy != 0 ? JumpPointSearch.DIAGONAL_COST : JumpPointSearch.STRAIGHT_COST);
+						if (cost < costs[neighbor]) {
+							costs[neighbor] = cost;
+							queue.add(new long[] {cost, neighbor});
+						}
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Walks the path from waypoint to waypoint, checking that each step is allowed, and returns its cost.
+	 */
+	private int walk(Path path, int fromX, int fromY, int toX, int toY) {
+		assertEquals(fromX, path.getWaypointX(0));
+		assertEquals(fromY, path.getWaypointY(0));
+		assertEquals(toX, path.getWaypointX(path.getWaypointCount() - 1));
+		assertEquals(toY, path.getWaypointY(path.getWaypointCount() - 1));
+		int cost = 0;
+		for (int i = 1; i < path.getWaypointCount(); i++) {
+			int x = path.getWaypointX(i - 1);
+			int y = path.getWaypointY(i - 1);
+			int dx = Integer.signum(path.getWaypointX(i) - x);
+			int dy = Integer.signum(path.getWaypointY(i) - y);
+			while (x != path.getWaypointX(i) || y != path.getWaypointY(i)) {
+				assertTrue(canStep(x, y, dx, dy));
+				x += dx;
+				y += dy;
+				cost += (dx != 0 && dy != 0 ? JumpPointSearch.DIAGONAL_COST : JumpPointSearch.STRAIGHT_COST);
+			}
+		}
+		assertEquals((double)cost / JumpPointSearch.STRAIGHT_COST, path.getLength(), 1e-9);
+		return cost;
+	}
+
+	@Test
+	public void testPathsWithinSectionAreOptimal() {
+		scatterWalls(1, 0.25);
+		PathfindingService service = new PathfindingService(plane, Runnable::run);
+		Random random = new Random(2);
+		int pathCount = 0;
+		for (int i = 0; i < 300; i++) {
+			int minX = random.nextInt(3) * SECTION_SIZE;
+			int minY = random.nextInt(3) * SECTION_SIZE;
+			int maxX = minX + SECTION_SIZE - 1;
+			int maxY = minY + SECTION_SIZE - 1;
+			int fromX = minX + random.nextInt(SECTION_SIZE);
+			int fromY = minY + random.nextInt(SECTION_SIZE);
+			int toX = minX + random.nextInt(SECTION_SIZE);
+			int toY = minY + random.nextInt(SECTION_SIZE);
+			int sectionCost = computeReferenceCost(fromX, fromY, toX, toY, minX, minY, maxX, maxY);
+			if (sectionCost >= 0) {
+
+				// if start and goal are connected within their section, the direct search in the section is used
+				Path path = service.computePath(fromX, fromY, toX, toY);
+				assertNotNull(path);
+				assertEquals(sectionCost, walk(path, fromX, fromY, toX, toY));
+				pathCount++;
+
+			}
+		}
+		assertTrue(pathCount > 100);
+	}
+
+	@Test
+	public void testPathsAcrossSectionsAreValid() {
+		scatterWalls(3, 0.2);
+		PathfindingService service = new PathfindingService(plane, Runnable::run);
+		Random random = new Random(4);
+		int pathCount = 0;
+		for (int i = 0; i < 300; i++) {
+			int fromX = random.nextInt(SIZE);
+			int fromY = random.nextInt(SIZE);
+			int toX = random.nextInt(SIZE);
+			int toY = random.nextInt(SIZE);
+			Path path = service.computePath(fromX, fromY, toX, toY);
+			int referenceCost = computeReferenceCost(fromX, fromY, toX, toY);
+			if (referenceCost < 0) {
+				assertNull(path);
+			} else {
+
+				// the path through the entrance graph is not always optimal, but it is never shorter than the optimum
+				assertNotNull(path);
+				assertTrue(walk(path, fromX, fromY, toX, toY) >= referenceCost);
+				pathCount++;
+
+			}
+		}
+		assertTrue(pathCount > 100);
+	}
+
+	@Test
+	public void testStraightPathThroughEntrancesIsOptimal() {
+
+		// long open borders get an entrance at each end, so a path along the bottom row passes through them
+		PathfindingService service = new PathfindingService(plane, Runnable::run);
+		Path path = service.computePath(2, 0, SIZE - 3, 0);
+		assertNotNull(path);
+		assertEquals((SIZE - 5) * JumpPointSearch.STRAIGHT_COST, walk(path, 2, 0, SIZE - 3, 0));
+
+	}
+
+	@Test
+	public void testSolidStartOrGoal() {
+		plane.setBlock(10, 10, WALL);
+		PathfindingService service = new PathfindingService(plane, Runnable::run);
+		assertNull(service.computePath(10, 10, 20, 20));
+		assertNull(service.computePath(20, 20, 10, 10));
+		assertNull(service.computePath(20, 20, -1, 10));
+	}
+
+	@Test
+	public void testEnclosedGoal() {
+		int centerX = SECTION_SIZE + SECTION_SIZE / 2;
+		int centerY = SECTION_SIZE + SECTION_SIZE / 2;
+		for (int i = -2; i <= 2; i++) {
+			plane.setBlock(centerX + i, centerY - 2, WALL);
+			plane.setBlock(centerX + i, centerY + 2, WALL);
+			plane.setBlock(centerX - 2, centerY + i, WALL);
+			plane.setBlock(centerX + 2, centerY + i, WALL);
+		}
+		PathfindingService service = new PathfindingService(plane, Runnable::run);
+		assertNull(service.computePath(centerX + 5, centerY, centerX, centerY));
+		assertNull(service.computePath(5, 5, centerX, centerY));
+		assertNull(service.computePath(centerX, centerY, SIZE - 5, SIZE - 5));
+		assertNotNull(service.computePath(centerX, centerY, centerX + 1, centerY + 1));
+	}
+
+	@Test
+	public void testWallBuiltAfterConstructionSeparatesHalves() {
+		PathfindingService service = new PathfindingService(plane, Runnable::run);
+		assertNotNull(service.computePath(5, 5, SIZE - 5, 5));
+		for (int y = 0; y < SIZE; y++) {
+			plane.setBlock(SECTION_SIZE + 3, y, WALL);
+		}
+
+		// queries see the snapshot of the last update, so the wall only counts after the next one
+		assertNotNull(service.computePath(5, 5, SIZE - 5, 5));
+		service.update();
+		assertNull(service.computePath(5, 5, SIZE - 5, 5));
+
+		Path[] result = new Path[1];
+		boolean[] delivered = new boolean[1];
+		service.findPath(5, 5, SIZE - 5, 5, path -> {
+			result[0] = path;
+			delivered[0] = true;
+		});
+		service.update();
+		assertTrue(delivered[0]);
+		assertNull(result[0]);
+	}
+
+}
@@ -0,0 +1,107 @@
+package name.martingeisse.blockgame.world.render;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.world.Camera;
+import name.martingeisse.blockgame.world.Plane;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.IdentityHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a {@link SectionBuildTracker} and a {@link SectionMeshBuilder} the way the {@link SectionRenderer} does,
+ * but synchronously and without OpenGL.
+ */
+public class SectionBuildTrackerTest {
+
+	private static final int SECTION_SIZE = GeometryConstants.SECTION_SIZE;
+
+	private Plane plane;
+	private RenderStatePublisher publisher;
+	private Camera camera;
+	private SectionBuildTracker tracker;
+	private SectionMeshBuilder builder;
+	private SectionMesh mesh;
+	private byte[] blocks;
+
+	@Before
+	public void setUp() {
+		plane = new Plane(3 * SECTION_SIZE, 2 * SECTION_SIZE + 5);
+		publisher = new RenderStatePublisher(plane);
+		camera = new Camera();
+		tracker = new SectionBuildTracker();
+		builder = new SectionMeshBuilder();
+		mesh = new SectionMesh();
+		blocks = new byte[SECTION_SIZE * SECTION_SIZE];
+	}
+
+	/**
+	 * Binds the tracker to a source and builds all sections that need a new mesh, like a frame of the renderer.
+	 *
+	 * @return the number of sections built
+	 */
+	private int drawFrame(SectionSource source) {
+		tracker.bind(source);
+		int buildCount = 0;
+		for (int sectionY = 0; sectionY < source.getSectionCountY(); sectionY++) {
+			for (int sectionX = 0; sectionX < source.getSectionCountX(); sectionX++) {
+				int index = sectionY * source.getSectionCountX() + sectionX;
+				int version = source.getSectionVersion(sectionX, sectionY);
+				if (tracker.needsBuild(index, version, 0)) {
+					tracker.onBuildStarted(index);
+					source.copySectionBlocks(sectionX, sectionY, blocks);
+					builder.build(sectionX, sectionY, version, blocks, mesh);
+					tracker.onBuilt(index, mesh.getVersion(), 0);
+					buildCount++;
+				}
+			}
+		}
+		return buildCount;
+	}
+
+	@Test
+	public void alternatingRenderStatesDoNotRebuild() {
+		plane.setBlock(1, 1, 1);
+		publisher.publish(camera);
+		RenderState first = publisher.acquire();
+		assertEquals(9, drawFrame(first));
+		IdentityHashMap<RenderState, Boolean> seenStates = new IdentityHashMap<>();
+		seenStates.put(first, true);
+		for (int i = 0; i < 10; i++) {
+			publisher.publish(camera);
+			RenderState state = publisher.acquire();
+			seenStates.put(state, true);
+			assertFalse(tracker.bind(state));
+			assertEquals(0, drawFrame(state));
+		}
+		assertEquals(3, seenStates.size());
+	}
+
+	@Test
+	public void changedSectionIsRebuiltOnce() {
+		publisher.publish(camera);
+		drawFrame(publisher.acquire());
+		plane.setBlock(SECTION_SIZE + 3, 4, 1);
+		publisher.publish(camera);
+		assertEquals(1, drawFrame(publisher.acquire()));
+		for (int i = 0; i < 5; i++) {
+			publisher.publish(camera);
+			assertEquals(0, drawFrame(publisher.acquire()));
+		}
+	}
+
+	@Test
+	public void differentSourceResets() {
+		publisher.publish(camera);
+		drawFrame(publisher.acquire());
+		int generation = tracker.getGeneration();
+		assertTrue(tracker.bind(plane.getSectionSource()));
+		assertTrue(tracker.getGeneration() != generation);
+		assertEquals(9, drawFrame(plane.getSectionSource()));
+	}
+
+}
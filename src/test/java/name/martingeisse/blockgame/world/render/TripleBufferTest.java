@@ -0,0 +1,91 @@
+package name.martingeisse.blockgame.world.render;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks which buffer the writer and the reader of a {@link TripleBuffer} own after each handoff, and that the
+ * reader never sees a buffer while the writer is still filling it.
+ */
+public class TripleBufferTest {
+
+	@Test
+	public void testHandoff() {
+		String first = "first";
+		String second = "second";
+		String third = "third";
+		TripleBuffer<String> buffer = new TripleBuffer<>(first, second, third);
+		assertSame(first, buffer.getWriteBuffer());
+		assertSame(third, buffer.acquire());
+
+		// the writer gets the unused buffer in exchange
+		buffer.publish();
+		assertSame(second, buffer.getWriteBuffer());
+		assertSame(first, buffer.acquire());
+		assertSame(first, buffer.acquire());
+
+		// the reader gives back its buffer, which the writer gets with the next publish
+		buffer.publish();
+		assertSame(third, buffer.getWriteBuffer());
+		assertSame(second, buffer.acquire());
+		buffer.publish();
+		assertSame(first, buffer.getWriteBuffer());
+		assertSame(third, buffer.acquire());
+	}
+
+	@Test
+	public void testReaderSkipsOlderData() {
+		String first = "first";
+		String second = "second";
+		String third = "third";
+		TripleBuffer<String> buffer = new TripleBuffer<>(first, second, third);
+		buffer.publish();
+		buffer.publish();
+		assertSame(first, buffer.getWriteBuffer());
+		assertSame(second, buffer.acquire());
+		buffer.publish();
+		buffer.publish();
+		buffer.publish();
+		assertSame(third, buffer.getWriteBuffer());
+		assertSame(first, buffer.acquire());
+	}
+
+	@Test
+	public void testConcurrentHandoff() throws Exception {
+		TripleBuffer<long[]> buffer = new TripleBuffer<>(new long[2], new long[2], new long[2]);
+		int publishCount = 200000;
+		AtomicBoolean done = new AtomicBoolean();
+		Thread writer = new Thread(() -> {
+			for (int i = 1; i <= publishCount; i++) {
+				long[] data = buffer.getWriteBuffer();
+				data[0] = i;
+				data[1] = -i;
+				buffer.publish();
+			}
+			done.set(true);
+		});
+		writer.start();
+
+		// each buffer the reader gets must be complete and at least as new as the previous one
+		long last = 0;
+		boolean finished = false;
+		while (!finished) {
+			finished = done.get();
+			long[] data = buffer.acquire();
+			long sequenceNumber = data[0];
+			assertEquals(-sequenceNumber, data[1]);
+			assertTrue(sequenceNumber >= last);
+			last = sequenceNumber;
+		}
+		writer.join();
+		assertEquals(publishCount, buffer.acquire()[0]);
+		assertFalse(writer.isAlive());
+	}
+
+}
@@ -0,0 +1,170 @@
+package name.martingeisse.blockgame.world.trigger;
+
+import name.martingeisse.blockgame.geometry.GeometryConstants;
+import name.martingeisse.blockgame.geometry.RectangularRegion;
+import name.martingeisse.blockgame.world.Plane;
+import name.martingeisse.blockgame.world.Player;
+import name.martingeisse.blockgame.world.event.GameplayEventBus;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the edges of trigger regions for point and segment queries, and the enter / leave events that a
+ * {@link TriggerMonitor} derives from them. Region 0 covers the cells (10, 10) to (11, 11), i.e. the area from
+ * (9.5, 9.5) to (11.5, 11.5), which contains its start edges but not its end edges.
+ */
+public class TriggerIndexTest {
+
+	private static final int SIZE = 3 * GeometryConstants.SECTION_SIZE;
+
+	private TriggerIndex index;
+
+	@Before
+	public void setUp() {
+		index = new TriggerIndex(SIZE, SIZE, Arrays.asList(
+			new RectangularRegion(10, 10, 12, 12),
+			new RectangularRegion(20, 20, 80, 25),
+			new RectangularRegion(-5, -5, 2, 2),
+			new RectangularRegion(SIZE, 0, SIZE + 5, 5)
+		));
+	}
+
+	private List<Integer> atPoint(double x, double y) {
+		List<Integer> ids = new ArrayList<>();
+		index.forEachAtPoint(x, y, ids::add);
+		return ids;
+	}
+
+	private List<Integer> alongSegment(double x1, double y1, double x2, double y2) {
+		List<Integer> ids = new ArrayList<>();
+		index.forEachAlongSegment(x1, y1, x2, y2, ids::add);
+		Collections.sort(ids);
+		return ids;
+	}
+
+	@Test
+	public void testPointOnEdges() {
+		assertEquals(Arrays.asList(0), atPoint(9.5, 9.5));
+		assertEquals(Arrays.asList(0), atPoint(11.49, 11.49));
+		assertEquals(Arrays.asList(), atPoint(11.5, 10));
+		assertEquals(Arrays.asList(), atPoint(10, 11.5));
+		assertEquals(Arrays.asList(), atPoint(9.49, 10));
+	}
+
+	@Test
+	public void testRegionsAreClippedToPlane() {
+		assertEquals(Arrays.asList(2), atPoint(0, 0));
+		assertEquals(Arrays.asList(), atPoint(-1, -1));
+		assertEquals(Arrays.asList(), atPoint(SIZE, 2));
+		assertEquals(Arrays.asList(2), alongSegment(-10, 1, 10, 1));
+		assertEquals(Arrays.asList(), alongSegment(SIZE - 0.5, 0, SIZE + 10, 4));
+	}
+
+	@Test
+	public void testSegmentThroughRegion() {
+		assertEquals(Arrays.asList(0), alongSegment(5, 10, 15, 10));
+		assertEquals(Arrays.asList(0), alongSegment(5, 5, 15, 15));
+		assertEquals(Arrays.asList(0), alongSegment(10, 10, 10.5, 10.5));
+		assertEquals(Arrays.asList(), alongSegment(5, 5, 9, 9));
+	}
+
+	@Test
+	public void testSegmentAcrossSectionsReportsRegionOnce() {
+		assertEquals(Arrays.asList(1), alongSegment(5, 22, SIZE - 1, 22));
+		assertEquals(Arrays.asList(0, 1), alongSegment(5, 5, 30, 30));
+	}
+
+	@Test
+	public void testSegmentTouchingStartEdgeOrCorner() {
+		assertEquals(Arrays.asList(0), alongSegment(5, 9.5, 20, 9.5));
+		assertEquals(Arrays.asList(0), alongSegment(9.5, 5, 9.5, 20));
+		assertEquals(Arrays.asList(0), alongSegment(5, 5, 9.5, 9.5));
+		assertEquals(Arrays.asList(0), alongSegment(8.5, 10.5, 9.5, 9.5));
+		assertEquals(Arrays.asList(0), alongSegment(5, 10, 9.5, 10));
+	}
+
+	@Test
+	public void testSegmentTouchingEndEdgeOrCorner() {
+		assertEquals(Arrays.asList(), alongSegment(5, 11.5, 20, 11.5));
+		assertEquals(Arrays.asList(), alongSegment(11.5, 5, 11.5, 20));
+		assertEquals(Arrays.asList(), alongSegment(15, 15, 11.5, 11.5));
+		assertEquals(Arrays.asList(), alongSegment(10.5, 12.5, 12.5, 10.5));
+		assertEquals(Arrays.asList(), alongSegment(20, 10, 11.5, 10));
+		assertEquals(Arrays.asList(), alongSegment(11.5, 10, 20, 10));
+		assertEquals(Arrays.asList(), alongSegment(12.5, 8.5, 11.5, 9.5));
+		assertEquals(Arrays.asList(), alongSegment(8.5, 12.5, 9.5, 11.5));
+	}
+
+	@Test
+	public void testMonitorEvents() {
+		Plane plane = new Plane(SIZE, SIZE);
+		GameplayEventBus eventBus = plane.getEventBus();
+		TriggerMonitor monitor = new TriggerMonitor(index, eventBus);
+		List<String> events = new ArrayList<>();
+		eventBus.addTriggerHandler(triggerEvents -> {
+			for (int i = 0; i < triggerEvents.getCount(); i++) {
+				events.add((triggerEvents.isEntered(i) ? "enter " : "leave ") + triggerEvents.getTriggerId(i));
+			}
+		});
+		Player player = new Player();
+		List<Player> players = Collections.singletonList(player);
+
+		// start outside, then step onto the start corner and stay
+		player.setPositionX(5);
+		player.setPositionY(5);
+		monitor.update(players);
+		player.setPositionX(9.5);
+		player.setPositionY(9.5);
+		monitor.update(players);
+		monitor.update(players);
+		eventBus.dispatch();
+		assertEquals(Arrays.asList("enter 0"), events);
+		assertTrue(monitor.isInside(player, 0));
+
+		// leave across the end edge; being on the end edge counts as outside
+		events.clear();
+		player.setPositionX(11.5);
+		monitor.update(players);
+		eventBus.dispatch();
+		assertEquals(Arrays.asList("leave 0"), events);
+		assertFalse(monitor.isInside(player, 0));
+
+		// graze the end corner and move along the end edge within a tick: no events
+		events.clear();
+		player.setPositionX(12.5);
+		player.setPositionY(10.5);
+		monitor.update(players);
+		player.setPositionX(10.5);
+		player.setPositionY(12.5);
+		monitor.update(players);
+		player.setPositionX(5);
+		player.setPositionY(11.5);
+		monitor.update(players);
+		eventBus.dispatch();
+		assertEquals(Arrays.asList(), events);
+
+		// pass through the region and along the start edge within a tick: enter and leave
+		player.setPositionX(15);
+		player.setPositionY(10);
+		monitor.update(players);
+		player.setPositionX(9.5);
+		player.setPositionY(20);
+		monitor.update(players);
+		player.setPositionX(9.5);
+		player.setPositionY(5);
+		monitor.update(players);
+		eventBus.dispatch();
+		assertEquals(Arrays.asList("enter 0", "leave 0", "enter 0", "leave 0"), events);
+
+	}
+
+}